@@ -0,0 +1,62 @@
+package com.yqrb.config;
+
+import com.alibaba.fastjson.JSON;
+import com.yqrb.pojo.vo.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 运维接口访问控制（摘流、Netty运行指标、系统公告广播）
+ * 配置了运维令牌时要求请求头 X-Ops-Token 与之一致；未配置时只允许本机访问（127.0.0.1/::1）
+ */
+@Component
+public class OpsAccessInterceptor implements HandlerInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(OpsAccessInterceptor.class);
+
+    public static final String TOKEN_HEADER = "X-Ops-Token";
+
+    @Value("${custom.netty.ops.token:}")
+    private String token;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (allowed(request)) {
+            return true;
+        }
+        log.warn("【运维接口】拒绝访问，路径：{}，来源：{}", request.getRequestURI(), request.getRemoteAddr());
+        response.setStatus(HttpStatus.FORBIDDEN.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        response.getWriter().write(JSON.toJSONString(Result.forbidden(
+                token == null || token.isEmpty() ? "运维接口仅允许本机访问" : "运维令牌无效")));
+        return false;
+    }
+
+    private boolean allowed(HttpServletRequest request) {
+        if (token == null || token.isEmpty()) {
+            return isLoopback(request.getRemoteAddr());
+        }
+        String provided = request.getHeader(TOKEN_HEADER);
+        return provided != null && MessageDigest.isEqual(
+                provided.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isLoopback(String remoteAddr) {
+        try {
+            // remoteAddr为IP字面量，不触发DNS解析
+            return remoteAddr != null && InetAddress.getByName(remoteAddr).isLoopbackAddress();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
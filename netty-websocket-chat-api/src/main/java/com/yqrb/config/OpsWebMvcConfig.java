@@ -0,0 +1,23 @@
+package com.yqrb.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.Resource;
+
+/**
+ * 运维接口拦截配置：摘流、Netty运行指标与系统公告广播接口需运维令牌或本机访问
+ */
+@Configuration
+public class OpsWebMvcConfig implements WebMvcConfigurer {
+
+    @Resource
+    private OpsAccessInterceptor opsAccessInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(opsAccessInterceptor).addPathPatterns("/netty/drain/**", "/netty/metrics/**",
+                "/newspaper/broadcast/**");
+    }
+}
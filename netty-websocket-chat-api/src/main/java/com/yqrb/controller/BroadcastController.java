@@ -0,0 +1,37 @@
+package com.yqrb.controller;
+
+import com.yqrb.pojo.query.BroadcastParam;
+import com.yqrb.pojo.vo.Result;
+import com.yqrb.service.BroadcastService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * 系统公告广播接口（管理员使用）
+ * 需运维令牌（请求头X-Ops-Token）或本机访问，且请求头ReceiverId必须是客服/管理员
+ */
+@RestController
+@RequestMapping("/newspaper/broadcast")
+@Api(tags = "系统公告广播接口")
+public class BroadcastController {
+
+    @Resource
+    private BroadcastService broadcastService;
+
+    @PostMapping("/send")
+    @ApiOperation("广播系统公告（目标：ALL_CS/ALL_USERS/PRE_SALE_VISITORS/SESSIONS），返回本节点投递统计")
+    public Result<Map<String, Object>> broadcast(
+            @RequestBody BroadcastParam param,
+            @RequestHeader("ReceiverId") String receiverId
+    ) {
+        return broadcastService.broadcast(param, receiverId);
+    }
+}
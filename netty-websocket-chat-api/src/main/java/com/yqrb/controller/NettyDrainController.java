@@ -0,0 +1,41 @@
+package com.yqrb.controller;
+
+import com.yqrb.netty.drain.DrainCoordinator;
+import com.yqrb.pojo.vo.Result;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * 节点优雅摘流接口（运维发布使用）：摘流后本节点不再接入新连接，在线客户端分散重连到其他节点
+ * 访问控制见OpsAccessInterceptor（运维令牌或本机访问）
+ */
+@RestController
+@RequestMapping("/netty/drain")
+@Api(tags = "Netty优雅摘流接口")
+public class NettyDrainController {
+
+    @Resource
+    private DrainCoordinator drainCoordinator;
+
+    @PostMapping("/start")
+    @ApiOperation("开始摘流（停止接入、推送SYSTEM_RECONNECT_LATER并分散关闭连接），不可撤销，返回当前进度")
+    public Result<Map<String, Object>> start() {
+        if (!drainCoordinator.start("API")) {
+            return Result.success(drainCoordinator.snapshot(), "摘流已在进行中或已完成");
+        }
+        return Result.success(drainCoordinator.snapshot(), "摘流已开始");
+    }
+
+    @GetMapping("/status")
+    @ApiOperation("查询摘流进度（状态、已通知/已关闭/剩余连接数、业务线程池排队数、处理中消息数）")
+    public Result<Map<String, Object>> status() {
+        return Result.success(drainCoordinator.snapshot());
+    }
+}
@@ -0,0 +1,136 @@
+package com.yqrb.controller;
+
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.fallback.FallbackChannel;
+import com.yqrb.netty.fallback.FallbackTransport;
+import com.yqrb.netty.fallback.PollFallbackSink;
+import com.yqrb.netty.fallback.SseFallbackSink;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.pojo.vo.Result;
+import com.yqrb.service.ReceiverIdService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket降级传输接口（代理服务器不放行WebSocket时使用，替代轮询消息列表/未读数）
+ * 降级连接与WebSocket连接注册在同一连接注册表，消息转发与系统推送同样送达；请求由Servlet异步挂起，不占用容器线程。
+ * 客户端在收到open后再拉取一次未读消息（补齐建立连接之前的消息），发送消息仍调用各自的HTTP发送接口。
+ * 与被替代的消息列表/未读数接口一致，请求头ReceiverId需通过校验，且必须是路径中接收者ID加R_FIXED_0000_前缀（同WebSocket连接的权限校验）。
+ */
+@RestController
+@RequestMapping("/netty/fallback")
+@Api(tags = "WebSocket降级传输接口（SSE/长轮询）")
+public class NettyFallbackController {
+
+    @Resource
+    private FallbackTransport fallbackTransport;
+
+    @Resource
+    private ReceiverIdService receiverIdService;
+
+    @GetMapping(value = "/{scope}/sse/{receiverId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation("SSE接收消息：事件open（data=connectionId）、message（data=与WebSocket相同的消息JSON）、close（服务端关闭），参数错误时推送reject后结束")
+    public SseEmitter sse(
+            @ApiParam("服务：after-sale / pre-sale") @PathVariable String scope,
+            @ApiParam("接收者ID（LYQY_USER_/LYQY_CS_开头，同WebSocket路径）") @PathVariable String receiverId,
+            @ApiParam("会话ID（售前为PRE_SESSION_开头的售前会话ID）") @RequestParam(required = false) String sessionId,
+            @ApiParam("ReceiverId（请求头传递，R_FIXED_0000_ + 路径中的接收者ID）") @RequestHeader("ReceiverId") String authReceiverId,
+            HttpServletRequest request
+    ) {
+        SseEmitter emitter = new SseEmitter(TimeUnit.SECONDS.toMillis(fallbackTransport.getSseTimeoutSeconds()));
+        SseFallbackSink sink = new SseFallbackSink(emitter);
+        try {
+            authorize(receiverId, authReceiverId);
+            FallbackChannel channel = fallbackTransport.open(parseScope(scope), receiverId, sessionId, remoteAddress(request), sink);
+            sink.bind(fallbackTransport, channel);
+        } catch (IllegalArgumentException | IllegalStateException | SecurityException e) {
+            try {
+                emitter.send(SseEmitter.event().name("reject").data(e.getMessage()));
+            } catch (IOException ignored) {
+                // 客户端已断开
+            }
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    @GetMapping("/{scope}/poll/{receiverId}")
+    @ApiOperation("长轮询接收消息：不带connectionId为建立连接（立即返回connectionId），之后带connectionId与上次返回的ack轮询，无消息时挂起到超时返回空列表")
+    public DeferredResult<Result<Map<String, Object>>> poll(
+            @ApiParam("服务：after-sale / pre-sale") @PathVariable String scope,
+            @ApiParam("接收者ID（LYQY_USER_/LYQY_CS_开头）") @PathVariable String receiverId,
+            @ApiParam("会话ID（建立连接时必传）") @RequestParam(required = false) String sessionId,
+            @ApiParam("连接ID（建立连接后返回）") @RequestParam(required = false) String connectionId,
+            @ApiParam("已收到的最大序号（上次返回的ack，首次为0）") @RequestParam(required = false, defaultValue = "0") long ack,
+            @ApiParam("ReceiverId（请求头传递，R_FIXED_0000_ + 路径中的接收者ID）") @RequestHeader("ReceiverId") String authReceiverId,
+            HttpServletRequest request
+    ) {
+        PollFallbackSink sink = new PollFallbackSink(TimeUnit.SECONDS.toMillis(fallbackTransport.getPollTimeoutSeconds()),
+                connectionId, ack);
+        try {
+            authorize(receiverId, authReceiverId);
+            RelayScope relayScope = parseScope(scope);
+            if (connectionId == null || connectionId.trim().isEmpty()) {
+                FallbackChannel channel = fallbackTransport.open(relayScope, receiverId, sessionId, remoteAddress(request), sink);
+                sink.bind(fallbackTransport, channel.connectionId());
+            } else {
+                sink.bind(fallbackTransport, connectionId);
+                if (!fallbackTransport.poll(relayScope, connectionId, receiverId, ack, sink)) {
+                    sink.getResult().setResult(Result.notFound("降级连接不存在或已关闭，请重新建立"));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            sink.getResult().setResult(Result.paramError(e.getMessage()));
+        } catch (IllegalStateException e) {
+            sink.getResult().setResult(Result.error(e.getMessage()));
+        } catch (SecurityException e) {
+            sink.getResult().setResult(Result.unauthorized(e.getMessage()));
+        }
+        return sink.getResult();
+    }
+
+    /**
+     * 请求头ReceiverId校验（同消息列表/未读数接口），并且只能接收自己的消息
+     * 路径中的接收者ID不带前缀（LYQY_USER_/LYQY_CS_开头，同WebSocket路径），请求头为加R_FIXED_0000_前缀后的ReceiverId
+     * @throws SecurityException 校验失败
+     */
+    private void authorize(String receiverId, String authReceiverId) {
+        if (!(ConnectionContext.AUTH_PREFIX + receiverId).equals(authReceiverId)) {
+            throw new SecurityException("无权接收其他接收者的消息");
+        }
+        if (!receiverIdService.validateReceiverId(authReceiverId)) {
+            throw new SecurityException("ReceiverId无效或已过期");
+        }
+    }
+
+    private static RelayScope parseScope(String scope) {
+        if ("after-sale".equals(scope)) {
+            return RelayScope.AFTER_SALE;
+        }
+        if ("pre-sale".equals(scope)) {
+            return RelayScope.PRE_SALE;
+        }
+        throw new IllegalArgumentException("服务类型错误，仅支持after-sale/pre-sale");
+    }
+
+    private static InetSocketAddress remoteAddress(HttpServletRequest request) {
+        return InetSocketAddress.createUnresolved(request.getRemoteAddr(), request.getRemotePort());
+    }
+}
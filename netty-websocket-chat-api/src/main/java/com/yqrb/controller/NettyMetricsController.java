@@ -0,0 +1,212 @@
+package com.yqrb.controller;
+
+import com.yqrb.netty.NettyWebSocketServerHandler;
+import com.yqrb.netty.admission.AdmissionControl;
+import com.yqrb.netty.audit.AuditLog;
+import com.yqrb.netty.broadcast.BroadcastDispatcher;
+import com.yqrb.netty.capture.TrafficCapture;
+import com.yqrb.netty.compression.CompressionStage;
+import com.yqrb.netty.executor.NettyBusinessExecutor;
+import com.yqrb.netty.executor.SessionLaneExecutor;
+import com.yqrb.netty.fallback.FallbackTransport;
+import com.yqrb.netty.handshake.HandshakeStage;
+import com.yqrb.netty.idle.IdleSweeper;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.outbound.ReplayBatchWriter;
+import com.yqrb.netty.placement.SessionPlacement;
+import com.yqrb.netty.pre.PreSaleNettyWebSocketServerHandler;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.watchdog.EventLoopWatchdog;
+import com.yqrb.netty.watchdog.StallRecord;
+import com.yqrb.pojo.vo.Result;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Netty WebSocket运行指标接口（运维监控使用，含阻塞现场堆栈与receiverId，访问控制见OpsAccessInterceptor）
+ */
+@RestController
+@RequestMapping("/netty/metrics")
+@Api(tags = "Netty运行指标接口")
+public class NettyMetricsController {
+
+    @Resource
+    private NettyBusinessExecutor nettyBusinessExecutor;
+
+    @Resource
+    private SessionLaneExecutor sessionLaneExecutor;
+
+    @Resource
+    private HandshakeStage handshakeStage;
+
+    @Resource
+    private OutboundQueueManager outboundQueueManager;
+
+    @Resource
+    private ReplayBatchWriter replayBatchWriter;
+
+    @Resource
+    private CompressionStage compressionStage;
+
+    @Resource
+    private AuditLog auditLog;
+
+    @Resource
+    private MessageRelay messageRelay;
+
+    @Resource
+    private SessionPlacement sessionPlacement;
+
+    @Resource
+    private PresenceService presenceService;
+
+    @Resource
+    private BroadcastDispatcher broadcastDispatcher;
+
+    @Resource
+    private AdmissionControl admissionControl;
+
+    @Resource
+    private IdleSweeper idleSweeper;
+
+    @Resource
+    private EventLoopWatchdog eventLoopWatchdog;
+
+    @Resource
+    private TrafficCapture trafficCapture;
+
+    @Resource
+    private FallbackTransport fallbackTransport;
+
+    @GetMapping
+    @ApiOperation("查询Netty WebSocket运行指标（业务线程池队列深度等）")
+    public Result<Map<String, Object>> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("businessExecutor", nettyBusinessExecutor.snapshot());
+        metrics.put("sessionExecutor", sessionLaneExecutor.snapshot());
+        metrics.put("handshake", handshakeStage.snapshot());
+        metrics.put("outboundQueue", outboundQueueManager.snapshot());
+        metrics.put("replay", replayBatchWriter.snapshot());
+        metrics.put("compression", compressionStage.snapshot());
+        metrics.put("audit", auditLog.snapshot());
+        metrics.put("registry", registry().getData());
+        metrics.put("relay", messageRelay.snapshot());
+        metrics.put("placement", sessionPlacement.snapshot());
+        metrics.put("presence", presenceService.snapshot());
+        metrics.put("broadcast", broadcastDispatcher.snapshot());
+        metrics.put("admission", admissionControl.snapshot());
+        metrics.put("idle", idleSweeper.snapshot());
+        metrics.put("eventLoop", eventLoopWatchdog.snapshot());
+        metrics.put("capture", trafficCapture.snapshot());
+        metrics.put("fallback", fallbackTransport.snapshot());
+        return Result.success(metrics);
+    }
+
+    @GetMapping("/business-executor/queue-depth")
+    @ApiOperation("查询业务线程池当前排队任务数")
+    public Result<Integer> businessExecutorQueueDepth() {
+        return Result.success(nettyBusinessExecutor.queueDepth());
+    }
+
+    @GetMapping("/session-executor")
+    @ApiOperation("查询会话车道指标（各车道利用率、排队深度、提交/完成/拒绝数）")
+    public Result<Map<String, Object>> sessionExecutor() {
+        return Result.success(sessionLaneExecutor.snapshot());
+    }
+
+    @GetMapping("/handshake")
+    @ApiOperation("查询WebSocket握手阶段指标（耗时、请求字节数、聚合上限对比）")
+    public Result<Map<String, Object>> handshake() {
+        return Result.success(handshakeStage.snapshot());
+    }
+
+    @GetMapping("/outbound-queue")
+    @ApiOperation("查询出站队列指标（积压条数/字节、溢出与降级次数）")
+    public Result<Map<String, Object>> outboundQueue() {
+        return Result.success(outboundQueueManager.snapshot());
+    }
+
+    @GetMapping("/compression")
+    @ApiOperation("查询WebSocket压缩指标（协商通道数、压缩率、压缩CPU耗时）")
+    public Result<Map<String, Object>> compression() {
+        return Result.success(compressionStage.snapshot());
+    }
+
+    @GetMapping("/registry")
+    @ApiOperation("查询在线连接注册表指标（接收者数、连接数、会话数、过期更新拒绝次数）")
+    public Result<Map<String, Object>> registry() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("afterSale", NettyWebSocketServerHandler.RECEIVER_REGISTRY.snapshot());
+        metrics.put("preSale", PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.snapshot());
+        return Result.success(metrics);
+    }
+
+    @GetMapping("/relay")
+    @ApiOperation("查询跨节点消息中继指标（目录租约数、转发批次、无路由降级次数）")
+    public Result<Map<String, Object>> relay() {
+        return Result.success(messageRelay.snapshot());
+    }
+
+    @GetMapping("/placement")
+    @ApiOperation("查询会话放置指标（哈希环成员、本节点接受/重定向/重平衡连接数）")
+    public Result<Map<String, Object>> placement() {
+        return Result.success(sessionPlacement.snapshot());
+    }
+
+    @GetMapping("/presence")
+    @ApiOperation("查询在线状态指标（在线接收者/客服数、待刷新变化数、批量刷新次数）")
+    public Result<Map<String, Object>> presence() {
+        return Result.success(presenceService.snapshot());
+    }
+
+    @GetMapping("/admission")
+    @ApiOperation("查询准入控制指标（握手/消息限流拒绝数、业务处理并发数、令牌桶数量）")
+    public Result<Map<String, Object>> admission() {
+        return Result.success(admissionControl.snapshot());
+    }
+
+    @GetMapping("/idle")
+    @ApiOperation("查询空闲检测指标（时间轮登记通道数、服务端Ping数、超时关闭数、单次扫描耗时）")
+    public Result<Map<String, Object>> idle() {
+        return Result.success(idleSweeper.snapshot());
+    }
+
+    @GetMapping("/event-loop")
+    @ApiOperation("查询EventLoop排队延迟指标（每个EventLoop的延迟直方图、P99/最大延迟、阻塞次数）")
+    public Result<Map<String, Object>> eventLoop() {
+        return Result.success(eventLoopWatchdog.snapshot());
+    }
+
+    @GetMapping("/event-loop/stalls")
+    @ApiOperation("查询最近的EventLoop阻塞现场（阻塞时长、通道、业务处理器、Worker线程堆栈）")
+    public Result<List<StallRecord>> eventLoopStalls() {
+        return Result.success(eventLoopWatchdog.recentStalls());
+    }
+
+    @GetMapping("/capture")
+    @ApiOperation("查询流量抓包指标（是否抓包中、当前段、记录数/字节数、丢弃数）")
+    public Result<Map<String, Object>> capture() {
+        return Result.success(trafficCapture.snapshot());
+    }
+
+    @GetMapping("/fallback")
+    @ApiOperation("查询WebSocket降级传输指标（SSE/长轮询连接数、轮询次数、拒绝数、发送车道排队数）")
+    public Result<Map<String, Object>> fallback() {
+        return Result.success(fallbackTransport.snapshot());
+    }
+
+    @GetMapping("/audit")
+    @ApiOperation("查询消息审计日志指标（入队、抽样跳过、缓冲满丢弃、落盘条数）")
+    public Result<Map<String, Object>> audit() {
+        return Result.success(auditLog.snapshot());
+    }
+}
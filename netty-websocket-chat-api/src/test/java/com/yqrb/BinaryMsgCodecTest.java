@@ -0,0 +1,77 @@
+package com.yqrb;
+
+import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.codec.BinaryMsgCodec;
+import com.yqrb.pojo.vo.PreSaleChatMessageVO;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * chat.binary.v1二进制协议验证：售前/售后消息往返一致，并对比JSON的帧大小与编解码耗时
+ */
+public class BinaryMsgCodecTest {
+
+    public static void main(String[] args) {
+        PooledByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+        // 1. 售后消息往返
+        WebSocketMsgVO msg = new WebSocketMsgVO();
+        msg.setReceiverId("LYQY_CS_5fc5bff4b77d2e6436a618aa");
+        msg.setUserId("LYQY_USER_5fbb6357b77d2e6436a46336");
+        msg.setMsgContent("您好，我想咨询一下登报挂失的流程和费用");
+        msg.setMsgType(WebSocketMsgVO.MSG_TYPE_TEXT);
+        msg.setSessionId("SESSION_8600d39e8ae844828c9d4bb17ed118ac");
+        msg.setSendTime(new Date(System.currentTimeMillis() / 1000 * 1000));
+        msg.setSenderType(WebSocketMsgVO.SENDER_TYPE_USER);
+        ByteBuf buf = BinaryMsgCodec.encode(alloc, msg);
+        int binarySize = buf.readableBytes();
+        WebSocketMsgVO decoded = BinaryMsgCodec.decodeWebSocketMsg(buf);
+        buf.release();
+        int jsonSize = JSON.toJSONString(msg).getBytes(StandardCharsets.UTF_8).length;
+        System.out.println("售后消息往返一致：" + msg.equals(decoded) + "，二进制" + binarySize + "字节，JSON" + jsonSize + "字节");
+        System.out.println("  常量字段复用常量实例：" + (decoded.getMsgType() == WebSocketMsgVO.MSG_TYPE_TEXT));
+
+        // 2. 售前消息往返（含整数字段、未设置字段）
+        PreSaleChatMessageVO preSale = new PreSaleChatMessageVO();
+        preSale.setId(123456789L);
+        preSale.setMsgId("a1b2c3d4e5f6");
+        preSale.setSenderId("LYQY_USER_1");
+        preSale.setSenderType(PreSaleChatMessageVO.SENDER_TYPE_USER);
+        preSale.setReceiverId("LYQY_CS_1");
+        preSale.setContent("售前咨询：广告版面价格");
+        preSale.setMsgType(PreSaleChatMessageVO.MSG_TYPE_TEXT);
+        preSale.setPreSaleSessionId("PRE_SESSION_1");
+        preSale.setSendTime(new Date(System.currentTimeMillis()));
+        preSale.setIsRead(PreSaleChatMessageVO.IS_READ_NO);
+        buf = BinaryMsgCodec.encode(alloc, preSale);
+        PreSaleChatMessageVO preSaleDecoded = BinaryMsgCodec.decodePreSaleMsg(buf);
+        buf.release();
+        System.out.println("售前消息往返一致：" + preSale.equals(preSaleDecoded));
+
+        // 3. 与JSON编解码耗时对比（含预热）
+        int rounds = 500_000;
+        for (int i = 0; i < 100_000; i++) {
+            ByteBuf b = BinaryMsgCodec.encode(alloc, msg);
+            BinaryMsgCodec.decodeWebSocketMsg(b);
+            b.release();
+            JSON.parseObject(JSON.toJSONString(msg), WebSocketMsgVO.class);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            ByteBuf b = BinaryMsgCodec.encode(alloc, msg);
+            BinaryMsgCodec.decodeWebSocketMsg(b);
+            b.release();
+        }
+        long binaryNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            JSON.parseObject(JSON.toJSONString(msg), WebSocketMsgVO.class);
+        }
+        long jsonNanos = System.nanoTime() - start;
+        System.out.println("编解码" + rounds + "次：二进制 " + binaryNanos / rounds + "ns/次，JSON " + jsonNanos / rounds + "ns/次");
+    }
+}
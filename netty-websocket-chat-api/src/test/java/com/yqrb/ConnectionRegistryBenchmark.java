@@ -0,0 +1,81 @@
+package com.yqrb;
+
+import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.registry.ConnectionRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线注册表按sessionId查找：原遍历方式 vs 二级索引，分别在1万/5万/10万连接下对比单次查找耗时
+ */
+public class ConnectionRegistryBenchmark {
+
+    private static final int LOOKUPS = 2000;
+
+    public static void main(String[] args) {
+        for (int size : new int[]{10_000, 50_000, 100_000}) {
+            run(size);
+        }
+    }
+
+    private static void run(int size) {
+        ConnectionRegistry registry = new ConnectionRegistry(NettyConstant.RECEIVER_ID_KEY, NettyConstant.SESSION_ID_KEY);
+        Map<String, Channel> legacyMap = new ConcurrentHashMap<>();
+        Channel[] channels = new Channel[size];
+        for (int i = 0; i < size; i++) {
+            EmbeddedChannel channel = new EmbeddedChannel();
+            registry.register("LYQY_USER_" + i, "SESSION_" + i, channel);
+            legacyMap.put("LYQY_USER_" + i, channel);
+            channels[i] = channel;
+        }
+
+        // 预热
+        lookupLegacy(legacyMap, size);
+        lookupIndexed(registry, size);
+
+        long start = System.nanoTime();
+        int legacyHits = lookupLegacy(legacyMap, size);
+        long legacyNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        int indexedHits = lookupIndexed(registry, size);
+        long indexedNanos = System.nanoTime() - start;
+
+        System.out.println("连接数：" + size
+                + "，遍历查找：" + legacyNanos / LOOKUPS / 1000 + "μs/次（命中" + legacyHits + "）"
+                + "，索引查找：" + indexedNanos / LOOKUPS + "ns/次（命中" + indexedHits + "）");
+
+        // 关闭后索引同步清理
+        for (Channel channel : channels) {
+            registry.unregister(channel);
+            channel.close();
+        }
+        System.out.println("  全部注销后：receiverId索引" + registry.size() + "，sessionId索引" + registry.sessionCount());
+    }
+
+    private static int lookupLegacy(Map<String, Channel> legacyMap, int size) {
+        int hits = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            String sessionId = "SESSION_" + (i * 7919 % size);
+            for (Channel channel : legacyMap.values()) {
+                if (sessionId.equals(channel.attr(NettyConstant.SESSION_ID_KEY).get())) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static int lookupIndexed(ConnectionRegistry registry, int size) {
+        int hits = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (registry.getBySessionId("SESSION_" + (i * 7919 % size)) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,129 @@
+package com.yqrb;
+
+import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.registry.ConnectionRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 在线注册表并发压测（模拟重连风暴）：
+ * 1. 多线程反复“新连接注册 + 旧连接注销”，同时有线程对随机连接做会话绑定
+ * 2. 部分连接注销先于注册执行（过期注册），必须被拒绝
+ * 结束时校验：每个接收者只剩最新连接，会话索引中没有已注销通道，全部注销后索引清空
+ */
+public class ConnectionRegistryStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 10_000;
+    private static final int RECEIVERS = 64;
+    private static final int SESSIONS = 32;
+
+    public static void main(String[] args) throws Exception {
+        ConnectionRegistry registry = new ConnectionRegistry(NettyConstant.RECEIVER_ID_KEY, NettyConstant.SESSION_ID_KEY);
+        AtomicReferenceArray<Channel> current = new AtomicReferenceArray<>(RECEIVERS);
+        AtomicInteger staleAccepted = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        int r = random.nextInt(RECEIVERS);
+                        String receiverId = "LYQY_CS_" + r;
+                        String sessionId = "SESSION_" + random.nextInt(SESSIONS);
+                        if (random.nextInt(10) == 0) {
+                            // 关闭先于握手监听执行：注册必须被拒绝
+                            Channel stale = new EmbeddedChannel();
+                            registry.unregister(stale);
+                            if (registry.register(receiverId, sessionId, stale) != 0) {
+                                staleAccepted.incrementAndGet();
+                            }
+                            continue;
+                        }
+                        Channel channel = new EmbeddedChannel();
+                        registry.register(receiverId, sessionId, channel);
+                        Channel previous = current.getAndSet(r, channel);
+                        if (previous != null) {
+                            registry.unregister(previous);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "registry-stress-" + t).start();
+        }
+        // 会话绑定线程：对随机接收者的当前连接绑定随机会话（可能与该连接的注销并发）
+        Thread binder = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (running.get()) {
+                Channel channel = current.get(random.nextInt(RECEIVERS));
+                if (channel != null) {
+                    registry.bindSession(channel, "SESSION_" + random.nextInt(SESSIONS));
+                }
+            }
+        }, "registry-stress-binder");
+        binder.start();
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        running.set(false);
+        binder.join();
+        long millis = (System.nanoTime() - begin) / 1_000_000;
+
+        // 校验1：每个接收者只剩最新连接
+        int expectedChannels = 0;
+        Set<Channel> live = new HashSet<>();
+        boolean receiversOk = true;
+        for (int r = 0; r < RECEIVERS; r++) {
+            Channel channel = current.get(r);
+            Set<Channel> registered = registry.getChannelsByReceiverId("LYQY_CS_" + r);
+            if (channel == null) {
+                receiversOk &= registered.isEmpty();
+                continue;
+            }
+            expectedChannels++;
+            live.add(channel);
+            receiversOk &= registered.size() == 1 && registered.contains(channel);
+        }
+        // 校验2：会话索引中只有仍在线的连接
+        boolean sessionsOk = true;
+        for (int s = 0; s < SESSIONS; s++) {
+            for (Channel channel : registry.getChannelsBySessionId("SESSION_" + s)) {
+                sessionsOk &= live.contains(channel);
+            }
+        }
+        System.out.println("线程数：" + THREADS + "，每线程轮数：" + ROUNDS + "，耗时：" + millis + "ms");
+        System.out.println("接收者索引正确：" + receiversOk + "，连接数：" + registry.channelCount() + "/" + expectedChannels);
+        System.out.println("会话索引无残留：" + sessionsOk + "，过期注册被接受次数：" + staleAccepted.get()
+                + "，过期更新拒绝次数：" + registry.staleUpdates());
+
+        // 校验3：全部注销后索引清空
+        for (Channel channel : live) {
+            registry.unregister(channel);
+        }
+        boolean emptyOk = registry.size() == 0 && registry.sessionCount() == 0 && registry.channelCount() == 0;
+        System.out.println("全部注销后索引清空：" + emptyOk + "，" + registry.snapshot());
+
+        boolean passed = receiversOk && sessionsOk && emptyOk && staleAccepted.get() == 0
+                && registry.channelCount() == 0;
+        System.out.println(passed ? "压测通过" : "压测失败");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
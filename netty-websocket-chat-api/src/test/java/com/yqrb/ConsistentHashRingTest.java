@@ -0,0 +1,76 @@
+package com.yqrb;
+
+import com.yqrb.netty.placement.ConsistentHashRing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 会话放置一致性哈希环测试：
+ * 1. 3个节点时10万个sessionId分布均匀（最大/最小占比偏差有限）
+ * 2. 加入第4个节点只迁移约1/4的会话，且迁移的会话全部归属新节点
+ * 3. 移除一个节点只迁移原属于它的会话
+ * 4. 成员相同（顺序不同）的两个环归属一致
+ */
+public class ConsistentHashRingTest {
+
+    private static final int SESSIONS = 100_000;
+    private static final int VIRTUAL_NODES = 160;
+
+    public static void main(String[] args) {
+        String[] sessionIds = new String[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            sessionIds[i] = "SESSION_" + Long.toHexString(i * 0x9E3779B97F4A7C15L);
+        }
+        ConsistentHashRing three = new ConsistentHashRing(Arrays.asList("node-A", "node-B", "node-C"), VIRTUAL_NODES);
+        ConsistentHashRing four = new ConsistentHashRing(Arrays.asList("node-A", "node-B", "node-C", "node-D"), VIRTUAL_NODES);
+        ConsistentHashRing two = new ConsistentHashRing(Arrays.asList("node-A", "node-C"), VIRTUAL_NODES);
+        ConsistentHashRing reordered = new ConsistentHashRing(Arrays.asList("node-C", "node-A", "node-B"), VIRTUAL_NODES);
+
+        // 1. 分布
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sessionId : sessionIds) {
+            counts.merge(three.owner(sessionId), 1, Integer::sum);
+        }
+        int max = counts.values().stream().max(Integer::compare).orElse(0);
+        int min = counts.values().stream().min(Integer::compare).orElse(0);
+        boolean balanceOk = counts.size() == 3 && max < SESSIONS / 3 * 1.25 && min > SESSIONS / 3 * 0.75;
+        System.out.println("3节点分布：" + counts);
+
+        // 2. 加入节点
+        int movedOnJoin = 0;
+        boolean joinTargetOk = true;
+        // 3. 移除节点
+        int movedOnLeave = 0;
+        boolean leaveSourceOk = true;
+        // 4. 成员顺序无关
+        boolean deterministicOk = true;
+        for (String sessionId : sessionIds) {
+            String before = three.owner(sessionId);
+            String afterJoin = four.owner(sessionId);
+            if (!before.equals(afterJoin)) {
+                movedOnJoin++;
+                joinTargetOk &= "node-D".equals(afterJoin);
+            }
+            String afterLeave = two.owner(sessionId);
+            if (!before.equals(afterLeave)) {
+                movedOnLeave++;
+                leaveSourceOk &= "node-B".equals(before);
+            }
+            deterministicOk &= before.equals(reordered.owner(sessionId));
+        }
+        double joinRatio = movedOnJoin / (double) SESSIONS;
+        boolean joinOk = joinTargetOk && joinRatio > 0.15 && joinRatio < 0.35;
+        boolean leaveOk = leaveSourceOk && movedOnLeave == counts.get("node-B");
+        System.out.println("加入node-D迁移比例：" + String.format("%.3f", joinRatio) + "，迁移目标均为新节点：" + joinTargetOk);
+        System.out.println("移除node-B迁移会话数：" + movedOnLeave + "，均来自node-B：" + leaveSourceOk);
+        System.out.println("成员顺序无关：" + deterministicOk);
+
+        boolean passed = balanceOk && joinOk && leaveOk && deterministicOk;
+        System.out.println(passed ? "测试通过" : "测试失败");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.yqrb;
+
+import com.yqrb.netty.watchdog.EventLoopWatchdog;
+import com.yqrb.netty.watchdog.StallRecord;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EventLoop阻塞监控测试（不启动Spring容器，直接监控一个本地EventLoopGroup）：
+ * 1. 空闲EventLoop持续有探针样本，排队延迟远低于阻塞阈值
+ * 2. 在EventLoop上执行阻塞任务：超过阈值后抓到阻塞现场，处理器定位到阻塞方法，堆栈包含Thread.sleep
+ * 3. 阻塞结束后探针执行，回填总阻塞时长，直方图记录到该次大延迟
+ */
+public class EventLoopWatchdogTest {
+
+    private static final long BLOCK_MILLIS = 600;
+
+    public static void main(String[] args) throws Exception {
+        EventLoopWatchdog watchdog = new EventLoopWatchdog();
+        ReflectionTestUtils.setField(watchdog, "enabled", true);
+        ReflectionTestUtils.setField(watchdog, "probeIntervalMillis", 20L);
+        ReflectionTestUtils.setField(watchdog, "stallThresholdMillis", 100L);
+        ReflectionTestUtils.setField(watchdog, "maxStalls", 10);
+        ReflectionTestUtils.setField(watchdog, "stackDepth", 32);
+        watchdog.init();
+
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(2);
+        watchdog.watch("test-loop", group);
+        try {
+            // 1. 空闲阶段
+            Thread.sleep(300);
+            Map<String, Object> idle = loop(watchdog, "test-loop-0");
+            long idleSamples = (Long) idle.get("samples");
+            long idleMax = (Long) idle.get("maxLagMicros");
+            boolean idleOk = idleSamples > 0 && idleMax < 100_000 && watchdog.recentStalls().isEmpty();
+            System.out.println("空闲阶段样本数：" + idleSamples + "，最大延迟：" + idleMax + "μs");
+
+            // 2. 阻塞test-loop-0
+            EventLoop blocked = group.next();
+            blocked.submit(EventLoopWatchdogTest::blockingHandler).sync();
+            Thread.sleep(200);
+
+            List<StallRecord> stalls = watchdog.recentStalls();
+            StallRecord stall = stalls.isEmpty() ? null : stalls.get(0);
+            boolean captureOk = stall != null
+                    && stall.getHandler() != null && stall.getHandler().contains("EventLoopWatchdogTest.blockingHandler")
+                    && stall.getStack().stream().anyMatch(frame -> frame.contains("Thread.sleep"))
+                    && stall.getLagMillisAtCapture() >= 100;
+            System.out.println("阻塞现场：" + (stall == null ? null : stall.getEventLoop() + "，处理器：" + stall.getHandler()
+                    + "，抓取时已阻塞：" + stall.getLagMillisAtCapture() + "ms，总阻塞：" + stall.getDurationMillis() + "ms"));
+
+            // 3. 恢复后回填与直方图
+            Map<String, Object> after = loop(watchdog, stall == null ? "test-loop-0" : stall.getEventLoop());
+            boolean recoverOk = stall != null && stall.getDurationMillis() >= BLOCK_MILLIS - 150
+                    && (Long) after.get("maxLagMicros") >= 100_000 && (Long) after.get("stalls") == 1
+                    && stalls.size() == 1;
+            System.out.println("恢复后最大延迟：" + after.get("maxLagMicros") + "μs，直方图：" + after.get("histogram"));
+
+            System.out.println();
+            System.out.println("空闲阶段：" + (idleOk ? "通过" : "失败"));
+            System.out.println("阻塞抓取：" + (captureOk ? "通过" : "失败"));
+            System.out.println("恢复回填：" + (recoverOk ? "通过" : "失败"));
+            if (!idleOk || !captureOk || !recoverOk) {
+                System.exit(1);
+            }
+        } finally {
+            watchdog.shutdown();
+            group.shutdownGracefully();
+        }
+    }
+
+    // 模拟channelRead0中的同步数据库写入
+    private static void blockingHandler() {
+        try {
+            Thread.sleep(BLOCK_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> loop(EventLoopWatchdog watchdog, String name) {
+        Map<String, Object> loops = (Map<String, Object>) watchdog.snapshot().get("eventLoops");
+        return (Map<String, Object>) loops.get(name);
+    }
+}
@@ -0,0 +1,469 @@
+package com.yqrb;
+
+import com.yqrb.controller.NettyFallbackController;
+import com.yqrb.netty.NettyWebSocketServerHandler;
+import com.yqrb.netty.drain.DrainCoordinator;
+import com.yqrb.netty.executor.NettyBusinessExecutor;
+import com.yqrb.netty.fallback.FallbackChannel;
+import com.yqrb.netty.fallback.FallbackEvent;
+import com.yqrb.netty.fallback.FallbackSink;
+import com.yqrb.netty.fallback.FallbackTransport;
+import com.yqrb.netty.idle.IdleSweeper;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.netty.watchdog.EventLoopWatchdog;
+import com.yqrb.pojo.vo.ReceiverIdSessionVO;
+import com.yqrb.pojo.vo.Result;
+import com.yqrb.pojo.vo.ResultCode;
+import com.yqrb.service.ReceiverIdService;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 降级传输测试（不启动Spring容器，手工组装FallbackTransport及其依赖，用假接收者代替SseEmitter/DeferredResult）：
+ * 1. 长轮询：首个接收者收到OPEN；消息按序号递增送达；不确认时下一次轮询重发（响应丢失）；确认后的条目不再重发
+ * 2. 关闭：CLOSE事件随最后一批交给接收者后通道关闭、从注册表/在线状态注销，已交付的条目不重复转离线
+ * 3. 水位：无人取走时超过高水位进入出站队列，队列溢出转离线回调；逐批确认后送达数 + 离线数 = 投递数，顺序不变
+ * 4. SSE：推送成功即移除、按序连续推送直到CLOSE；推送失败关闭通道，未送达条目全部转离线
+ * 5. 接口鉴权：请求头ReceiverId为R_FIXED_0000_ + 路径接收者ID且校验通过才建立连接，其余（不带前缀、他人ID、已失效）返回401
+ */
+public class FallbackTransportTest {
+
+    private static final RelayScope SCOPE = RelayScope.AFTER_SALE;
+    private static final long WAIT_MILLIS = 500;
+
+    public static void main(String[] args) throws Exception {
+        NettyBusinessExecutor businessExecutor = new NettyBusinessExecutor();
+        ReflectionTestUtils.setField(businessExecutor, "laneCount", 2);
+        ReflectionTestUtils.setField(businessExecutor, "laneQueueCapacity", 1024);
+        ReflectionTestUtils.setField(businessExecutor, "shutdownTimeoutSeconds", 1);
+        businessExecutor.init();
+
+        OutboundQueueManager outboundQueueManager = new OutboundQueueManager();
+        ReflectionTestUtils.setField(outboundQueueManager, "maxQueuedMessages", 4);
+        ReflectionTestUtils.setField(outboundQueueManager, "maxQueuedBytes", 1024 * 1024L);
+        ReflectionTestUtils.setField(outboundQueueManager, "nettyBusinessExecutor", businessExecutor);
+
+        IdleSweeper idleSweeper = new IdleSweeper();
+        ReflectionTestUtils.setField(idleSweeper, "pingIntervalSeconds", 25);
+        ReflectionTestUtils.setField(idleSweeper, "wheelSlots", 64);
+        ReflectionTestUtils.setField(idleSweeper, "serverPing", false);
+        idleSweeper.init();
+
+        // 在线状态只用内存计数（不调用init，不连接Redis/DB）；中继、摘流、EventLoop监控保持未启用
+        PresenceService presenceService = new PresenceService();
+
+        FallbackTransport transport = new FallbackTransport();
+        ReflectionTestUtils.setField(transport, "enabled", true);
+        ReflectionTestUtils.setField(transport, "eventLoopThreads", 1);
+        ReflectionTestUtils.setField(transport, "pollTimeoutSeconds", 25);
+        ReflectionTestUtils.setField(transport, "sseTimeoutSeconds", 300);
+        ReflectionTestUtils.setField(transport, "idleTimeoutSeconds", 60);
+        ReflectionTestUtils.setField(transport, "maxBatchMessages", 100);
+        ReflectionTestUtils.setField(transport, "sendLaneCount", 1);
+        ReflectionTestUtils.setField(transport, "sendLaneQueueCapacity", 1024);
+        ReflectionTestUtils.setField(transport, "writeBufferLowWaterMark", 512);
+        ReflectionTestUtils.setField(transport, "writeBufferHighWaterMark", 1024);
+        ReflectionTestUtils.setField(transport, "outboundQueueManager", outboundQueueManager);
+        ReflectionTestUtils.setField(transport, "idleSweeper", idleSweeper);
+        ReflectionTestUtils.setField(transport, "presenceService", presenceService);
+        ReflectionTestUtils.setField(transport, "messageRelay", new MessageRelay());
+        ReflectionTestUtils.setField(transport, "drainCoordinator", new DrainCoordinator());
+        ReflectionTestUtils.setField(transport, "eventLoopWatchdog", new EventLoopWatchdog());
+        transport.init();
+
+        AtomicInteger spilled = new AtomicInteger();
+
+        // 1. 长轮询：有序送达、响应丢失重发、确认裁剪
+        String pollUser = "LYQY_USER_fallback_poll";
+        PollSink first = new PollSink();
+        FallbackChannel pollChannel = transport.open(SCOPE, pollUser, "SESSION_FB_1", address(), first);
+        String connectionId = pollChannel.connectionId();
+        List<FallbackEvent> opened = first.await();
+        boolean openOk = opened.size() == 1 && opened.get(0).getType() == FallbackEvent.Type.OPEN
+                && connectionId.equals(opened.get(0).getData())
+                && presenceService.isOnline(SCOPE, pollUser)
+                && NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannelsByReceiverId(pollUser).contains(pollChannel);
+
+        for (int i = 1; i <= 3; i++) {
+            deliver(outboundQueueManager, pollChannel, i, spilled);
+        }
+        Thread.sleep(100);
+        List<FallbackEvent> batch = poll(transport, connectionId, pollUser, 0);
+        // 响应丢失：客户端带着旧的ack再次轮询，同一批条目按相同序号重发
+        List<FallbackEvent> resent = poll(transport, connectionId, pollUser, 0);
+        boolean orderedOk = messages(batch).equals(expected(1, 3)) && seqs(batch).equals(expectedSeqs(1, 3));
+        boolean resendOk = messages(resent).equals(expected(1, 3)) && seqs(resent).equals(expectedSeqs(1, 3));
+
+        // 确认到3后挂起，新消息到达立即返回；再用ack=3轮询只重发4，1-3已从写缓冲移除
+        PollSink parked = new PollSink();
+        transport.poll(SCOPE, connectionId, pollUser, 3, parked);
+        deliver(outboundQueueManager, pollChannel, 4, spilled);
+        List<FallbackEvent> fourth = parked.await();
+        List<FallbackEvent> fourthAgain = poll(transport, connectionId, pollUser, 3);
+        boolean ackOk = messages(fourth).equals(expected(4, 4)) && seqs(fourth).equals(expectedSeqs(4, 4))
+                && messages(fourthAgain).equals(expected(4, 4)) && seqs(fourthAgain).equals(expectedSeqs(4, 4));
+        System.out.println("长轮询：OPEN " + openOk + "，有序 " + orderedOk + "，重发 " + resendOk + "，确认裁剪 " + ackOk);
+
+        // 2. 关闭：消息5 + 关闭帧（摘流/重定向的写法），逐批确认直到CLOSE
+        deliver(outboundQueueManager, pollChannel, 5, spilled);
+        pollChannel.writeAndFlush(new CloseWebSocketFrame(4503, "RECONNECT_LATER"));
+        Thread.sleep(100);
+        List<FallbackEvent> tail = new ArrayList<>();
+        long ack = 4;
+        for (int i = 0; i < 5 && !closed(tail); i++) {
+            List<FallbackEvent> events = poll(transport, connectionId, pollUser, ack);
+            if (events == null) {
+                break;
+            }
+            tail.addAll(events);
+            ack = lastSeq(events, ack);
+        }
+        pollChannel.closeFuture().await(WAIT_MILLIS);
+        Thread.sleep(100);
+        boolean closeOk = messages(tail).equals(expected(5, 5)) && closed(tail)
+                && "4503 RECONNECT_LATER".equals(tail.get(tail.size() - 1).getData())
+                && tail.get(tail.size() - 1).getSeq() == 6
+                && !pollChannel.isActive() && !transport.isOpen(connectionId)
+                && !presenceService.isOnline(SCOPE, pollUser)
+                && NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannelsByReceiverId(pollUser).isEmpty()
+                && !transport.poll(SCOPE, connectionId, pollUser, ack, new PollSink())
+                && spilled.get() == 0;
+        System.out.println("关闭：事件 " + tail.size() + "，已关闭 " + !pollChannel.isActive() + "，离线数 " + spilled.get()
+                + "，结果 " + closeOk);
+
+        // 3. 水位：无人取走，大消息超过高水位后进入出站队列（上限4条），其余溢出转离线
+        String spillUser = "LYQY_USER_fallback_spill";
+        PollSink spillOpen = new PollSink();
+        FallbackChannel spillChannel = transport.open(SCOPE, spillUser, "SESSION_FB_2", address(), spillOpen);
+        String spillId = spillChannel.connectionId();
+        spillOpen.await();
+        AtomicInteger spillCount = new AtomicInteger();
+        int total = 20;
+        for (int i = 1; i <= total; i++) {
+            deliver(outboundQueueManager, spillChannel, i, 600, spillCount);
+        }
+        Thread.sleep(300);
+        List<FallbackEvent> received = new ArrayList<>();
+        ack = 0;
+        for (int i = 0; i < total; i++) {
+            List<FallbackEvent> events = poll(transport, spillId, spillUser, ack);
+            if (events == null || events.isEmpty()) {
+                break;
+            }
+            received.addAll(events);
+            ack = lastSeq(events, ack);
+        }
+        List<Integer> indexes = messages(received);
+        boolean ascending = true;
+        for (int i = 1; i < indexes.size(); i++) {
+            ascending &= indexes.get(i) > indexes.get(i - 1);
+        }
+        boolean spillOk = spillCount.get() > 0 && indexes.size() + spillCount.get() == total && ascending
+                && seqs(received).equals(expectedSeqs(1, indexes.size()));
+        System.out.println("水位：送达 " + indexes.size() + "，转离线 " + spillCount.get() + "，有序 " + ascending
+                + "，结果 " + spillOk);
+        transport.close(spillChannel);
+
+        // 4. SSE：推送成功即移除并继续推送，直到CLOSE
+        String sseUser = "LYQY_USER_fallback_sse";
+        SseSink sse = new SseSink(false);
+        FallbackChannel sseChannel = transport.open(SCOPE, sseUser, "SESSION_FB_3", address(), sse);
+        AtomicInteger sseSpilled = new AtomicInteger();
+        for (int i = 1; i <= 5; i++) {
+            deliver(outboundQueueManager, sseChannel, i, sseSpilled);
+        }
+        List<FallbackEvent> streamed = new ArrayList<>();
+        FallbackEvent event;
+        while (messages(streamed).size() < 5 && (event = sse.events.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            streamed.add(event);
+        }
+        // 与摘流一致：出站队列排空后再写关闭帧（超过高水位的消息暂存在出站队列，直接写关闭帧会排到它们前面）
+        sseChannel.writeAndFlush(new CloseWebSocketFrame(4503, "RECONNECT_LATER"));
+        while ((event = sse.events.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            streamed.add(event);
+            if (event.getType() == FallbackEvent.Type.CLOSE) {
+                break;
+            }
+        }
+        sseChannel.closeFuture().await(WAIT_MILLIS);
+        Thread.sleep(100);
+        boolean sseOk = !streamed.isEmpty() && streamed.get(0).getType() == FallbackEvent.Type.OPEN
+                && messages(streamed).equals(expected(1, 5)) && seqs(streamed).equals(expectedSeqs(1, 5))
+                && closed(streamed) && streamed.get(streamed.size() - 1).getSeq() == 6
+                && !sseChannel.isActive() && sse.closed && sseSpilled.get() == 0;
+        System.out.println("SSE：事件 " + streamed.size() + "，结果 " + sseOk);
+
+        // SSE推送失败：通道关闭，写缓冲中未送达的条目按写失败转离线
+        SseSink failing = new SseSink(true);
+        FallbackChannel failingChannel = transport.open(SCOPE, "LYQY_USER_fallback_sse_fail", "SESSION_FB_4", address(), failing);
+        AtomicInteger failSpilled = new AtomicInteger();
+        for (int i = 1; i <= 3; i++) {
+            deliver(outboundQueueManager, failingChannel, i, failSpilled);
+        }
+        failingChannel.closeFuture().await(WAIT_MILLIS);
+        Thread.sleep(300);
+        boolean sseFailOk = !failingChannel.isActive() && failSpilled.get() == 3;
+        System.out.println("SSE推送失败：已关闭 " + !failingChannel.isActive() + "，转离线 " + failSpilled.get()
+                + "，结果 " + sseFailOk);
+
+        // 5. 接口鉴权：假ReceiverId服务只认可Redis中存在的（带R_FIXED_0000_前缀的）ReceiverId
+        String authUser = "LYQY_USER_fallback_auth";
+        NettyFallbackController controller = new NettyFallbackController();
+        ReflectionTestUtils.setField(controller, "fallbackTransport", transport);
+        ReflectionTestUtils.setField(controller, "receiverIdService", new StoredReceiverIds("R_FIXED_0000_" + authUser));
+        Result<Map<String, Object>> accepted = pollEndpoint(controller, authUser, "R_FIXED_0000_" + authUser);
+        boolean acceptedOk = accepted != null && accepted.isSuccess() && accepted.getData() != null
+                && transport.isOpen((String) accepted.getData().get("connectionId"));
+        boolean rejectedOk = unauthorized(pollEndpoint(controller, authUser, authUser))
+                && unauthorized(pollEndpoint(controller, "LYQY_USER_fallback_other", "R_FIXED_0000_" + authUser))
+                && unauthorized(pollEndpoint(controller, "LYQY_USER_fallback_expired", "R_FIXED_0000_LYQY_USER_fallback_expired"));
+        for (Channel channel : NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannelsByReceiverId(authUser)) {
+            transport.close((FallbackChannel) channel);
+            channel.closeFuture().await(WAIT_MILLIS);
+        }
+        boolean authOk = acceptedOk && rejectedOk;
+        System.out.println("接口鉴权：带前缀通过 " + acceptedOk + "，其余拒绝 " + rejectedOk + "，结果 " + authOk);
+
+        System.out.println("降级传输指标：" + transport.snapshot());
+        transport.shutdown();
+        idleSweeper.shutdown();
+        businessExecutor.shutdown();
+
+        boolean ok = openOk && orderedOk && resendOk && ackOk && closeOk && spillOk && sseOk && sseFailOk && authOk;
+        System.out.println(ok ? "降级传输测试通过" : "降级传输测试失败");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void deliver(OutboundQueueManager manager, FallbackChannel channel, int index, AtomicInteger spilled) {
+        deliver(manager, channel, index, 0, spilled);
+    }
+
+    /**
+     * @param paddingChars 填充长度（水位测试用大消息，其余场景的积压保持在高水位以下）
+     */
+    private static void deliver(OutboundQueueManager manager, FallbackChannel channel, int index, int paddingChars,
+                                AtomicInteger spilled) {
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < paddingChars; i++) {
+            padding.append('x');
+        }
+        String json = "{\"msgContent\":\"" + index + "\",\"padding\":\"" + padding + "\"}";
+        manager.deliver(channel, new TextWebSocketFrame(json), spilled::incrementAndGet);
+    }
+
+    /**
+     * 发起一次长轮询；挂起超过等待时间视为无消息，解除接收者并返回空列表；连接不存在返回null
+     */
+    private static List<FallbackEvent> poll(FallbackTransport transport, String connectionId, String receiverId,
+                                            long ack) throws Exception {
+        PollSink sink = new PollSink();
+        if (!transport.poll(SCOPE, connectionId, receiverId, ack, sink)) {
+            return null;
+        }
+        try {
+            return sink.result.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            transport.detach(connectionId, sink);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 调用长轮询接口建立连接，等待DeferredResult完成
+     */
+    @SuppressWarnings("unchecked")
+    private static Result<Map<String, Object>> pollEndpoint(NettyFallbackController controller, String receiverId,
+                                                            String authReceiverId) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("127.0.0.1");
+        DeferredResult<Result<Map<String, Object>>> result = controller.poll("after-sale", receiverId,
+                "SESSION_FB_5", null, 0, authReceiverId, request);
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!result.hasResult() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return (Result<Map<String, Object>>) result.getResult();
+    }
+
+    private static boolean unauthorized(Result<?> result) {
+        return result != null && ResultCode.UNAUTHORIZED.equals(result.getCode());
+    }
+
+    private static List<Integer> messages(List<FallbackEvent> events) {
+        List<Integer> indexes = new ArrayList<>();
+        for (FallbackEvent event : events) {
+            if (event.getType() == FallbackEvent.Type.MESSAGE) {
+                String data = event.getData();
+                int start = data.indexOf("\"msgContent\":\"") + "\"msgContent\":\"".length();
+                indexes.add(Integer.parseInt(data.substring(start, data.indexOf('"', start))));
+            }
+        }
+        return indexes;
+    }
+
+    private static List<Long> seqs(List<FallbackEvent> events) {
+        List<Long> seqs = new ArrayList<>();
+        for (FallbackEvent event : events) {
+            if (event.getType() == FallbackEvent.Type.MESSAGE) {
+                seqs.add(event.getSeq());
+            }
+        }
+        return seqs;
+    }
+
+    private static List<Integer> expected(int from, int to) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private static List<Long> expectedSeqs(long from, long to) {
+        List<Long> seqs = new ArrayList<>();
+        for (long i = from; i <= to; i++) {
+            seqs.add(i);
+        }
+        return seqs;
+    }
+
+    private static long lastSeq(List<FallbackEvent> events, long ack) {
+        return events.isEmpty() ? ack : Math.max(ack, events.get(events.size() - 1).getSeq());
+    }
+
+    private static boolean closed(List<FallbackEvent> events) {
+        return !events.isEmpty() && events.get(events.size() - 1).getType() == FallbackEvent.Type.CLOSE;
+    }
+
+    private static InetSocketAddress address() {
+        return InetSocketAddress.createUnresolved("127.0.0.1", 50000);
+    }
+
+    /**
+     * 假长轮询接收者：一次性，send/close任一先到即完成
+     */
+    private static final class PollSink implements FallbackSink {
+        final CompletableFuture<List<FallbackEvent>> result = new CompletableFuture<>();
+
+        @Override
+        public boolean streaming() {
+            return false;
+        }
+
+        @Override
+        public void send(List<FallbackEvent> events) {
+            result.complete(new ArrayList<>(events));
+        }
+
+        @Override
+        public void close() {
+            result.complete(Collections.emptyList());
+        }
+
+        List<FallbackEvent> await() throws Exception {
+            return result.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 假SSE接收者：事件按推送顺序进入队列；fail=true时推送业务消息抛出异常（模拟客户端断开）
+     */
+    private static final class SseSink implements FallbackSink {
+        final BlockingQueue<FallbackEvent> events = new LinkedBlockingQueue<>();
+        final boolean fail;
+        volatile boolean closed;
+
+        SseSink(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public boolean streaming() {
+            return true;
+        }
+
+        @Override
+        public void send(List<FallbackEvent> batch) throws Exception {
+            for (FallbackEvent event : batch) {
+                if (fail && event.getType() == FallbackEvent.Type.MESSAGE) {
+                    throw new IOException("Broken pipe");
+                }
+                events.add(event);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * 假ReceiverId服务：只有登记过的ReceiverId校验通过
+     */
+    private static final class StoredReceiverIds implements ReceiverIdService {
+        final List<String> stored;
+
+        StoredReceiverIds(String... stored) {
+            this.stored = Arrays.asList(stored);
+        }
+
+        @Override
+        public ReceiverIdSessionVO generateReceiverId(String userId, String userName) {
+            return null;
+        }
+
+        @Override
+        public boolean validateReceiverId(String receiverId) {
+            return stored.contains(receiverId);
+        }
+
+        @Override
+        public boolean refreshReceiverIdExpire(String receiverId) {
+            return false;
+        }
+
+        @Override
+        public boolean destroyReceiverId(String receiverId) {
+            return false;
+        }
+
+        @Override
+        public ReceiverIdSessionVO getReceiverIdSession(String receiverId) {
+            return null;
+        }
+
+        @Override
+        public boolean markOnline(String receiverId) {
+            return validateReceiverId(receiverId);
+        }
+
+        @Override
+        public boolean markOffline(String receiverId) {
+            return validateReceiverId(receiverId);
+        }
+    }
+}
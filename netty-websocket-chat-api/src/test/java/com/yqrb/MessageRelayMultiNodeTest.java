@@ -0,0 +1,123 @@
+package com.yqrb;
+
+import com.yqrb.netty.relay.InMemoryRelayBroker;
+import com.yqrb.netty.relay.RelayEndpoint;
+import com.yqrb.netty.relay.RelayEnvelope;
+import com.yqrb.netty.relay.RelayNode;
+import com.yqrb.netty.relay.RelayScope;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 跨节点消息中继测试（单JVM内两个节点共用内存broker，无需Redis）：
+ * 1. 接收者在节点B上线后，节点A发给它的消息经中继到达B，且按批次合并发布
+ * 2. 目标不在任何节点、接收者下线释放租约、节点宕机（租约未过期但已无订阅）时均走离线降级
+ */
+public class MessageRelayMultiNodeTest {
+
+    private static final int MESSAGES = 250;
+    private static final int BATCH_MAX = 100;
+
+    /**
+     * 模拟节点本地注册表：local中的接收者视为本节点在线，投递时计数
+     */
+    static class StubEndpoint implements RelayEndpoint {
+        final Set<String> local = ConcurrentHashMap.newKeySet();
+        final Map<String, AtomicInteger> received = new ConcurrentHashMap<>();
+
+        @Override
+        public int deliver(RelayEnvelope envelope) {
+            if (!local.contains(envelope.getReceiverId())) {
+                return 0;
+            }
+            received.computeIfAbsent(envelope.getReceiverId(), k -> new AtomicInteger()).incrementAndGet();
+            return 1;
+        }
+
+        @Override
+        public boolean isLocal(String receiverId) {
+            return local.contains(receiverId);
+        }
+
+        int count(String receiverId) {
+            AtomicInteger counter = received.get(receiverId);
+            return counter == null ? 0 : counter.get();
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        InMemoryRelayBroker broker = new InMemoryRelayBroker();
+        RelayNode nodeA = new RelayNode("node-A", broker, 30_000, BATCH_MAX, 5);
+        RelayNode nodeB = new RelayNode("node-B", broker, 30_000, BATCH_MAX, 5);
+        StubEndpoint endpointA = new StubEndpoint();
+        StubEndpoint endpointB = new StubEndpoint();
+        nodeA.registerEndpoint(RelayScope.AFTER_SALE, endpointA);
+        nodeB.registerEndpoint(RelayScope.AFTER_SALE, endpointB);
+        nodeA.start();
+        nodeB.start();
+        AtomicInteger offline = new AtomicInteger();
+
+        // 1. 客服在节点B上线，节点A连续发送消息
+        endpointB.local.add("LYQY_CS_1");
+        nodeB.online(RelayScope.AFTER_SALE, "LYQY_CS_1");
+        Thread.sleep(100);
+        boolean onlineOk = nodeA.isOnlineElsewhere(RelayScope.AFTER_SALE, "LYQY_CS_1")
+                && !nodeB.isOnlineElsewhere(RelayScope.AFTER_SALE, "LYQY_CS_1");
+        for (int i = 0; i < MESSAGES; i++) {
+            nodeA.route(RelayScope.AFTER_SALE, "LYQY_CS_1", "SESSION_1", "{\"msgContent\":\"" + i + "\"}",
+                    offline::incrementAndGet);
+        }
+        awaitUntil(() -> endpointB.count("LYQY_CS_1") == MESSAGES, 5000);
+        long batches = (Long) nodeA.snapshot().get("batchesOut");
+        boolean relayOk = endpointB.count("LYQY_CS_1") == MESSAGES && endpointA.count("LYQY_CS_1") == 0 && offline.get() == 0;
+        boolean batchOk = batches >= (MESSAGES + BATCH_MAX - 1) / BATCH_MAX && batches < MESSAGES;
+        System.out.println("目录登记：" + onlineOk + "，中继送达：" + endpointB.count("LYQY_CS_1") + "/" + MESSAGES
+                + "，发布批次：" + batches);
+
+        // 2. 目标不在任何节点：离线降级
+        nodeA.route(RelayScope.AFTER_SALE, "LYQY_USER_404", null, "{}", offline::incrementAndGet);
+        Thread.sleep(100);
+        boolean noRouteOk = offline.get() == 1;
+
+        // 3. 客服在B下线：租约释放，再发走离线降级
+        endpointB.local.remove("LYQY_CS_1");
+        nodeB.offline(RelayScope.AFTER_SALE, "LYQY_CS_1");
+        Thread.sleep(100);
+        boolean releaseOk = !nodeA.isOnlineElsewhere(RelayScope.AFTER_SALE, "LYQY_CS_1");
+        nodeA.route(RelayScope.AFTER_SALE, "LYQY_CS_1", "SESSION_1", "{}", offline::incrementAndGet);
+        Thread.sleep(100);
+        releaseOk &= offline.get() == 2;
+
+        // 4. 节点B宕机（只断开订阅，不释放租约）：发布无订阅者，走离线降级
+        endpointB.local.add("LYQY_CS_2");
+        nodeB.online(RelayScope.AFTER_SALE, "LYQY_CS_2");
+        Thread.sleep(100);
+        broker.close("node-B");
+        nodeA.route(RelayScope.AFTER_SALE, "LYQY_CS_2", null, "{}", offline::incrementAndGet);
+        Thread.sleep(100);
+        boolean nodeGoneOk = offline.get() == 3 && (Long) nodeA.snapshot().get("nodeGone") >= 1;
+
+        System.out.println("无路由降级：" + noRouteOk + "，下线释放租约：" + releaseOk + "，节点宕机降级：" + nodeGoneOk);
+        System.out.println("节点A：" + nodeA.snapshot());
+        System.out.println("节点B：" + nodeB.snapshot());
+        nodeA.stop();
+        nodeB.stop();
+
+        boolean passed = onlineOk && relayOk && batchOk && noRouteOk && releaseOk && nodeGoneOk;
+        System.out.println(passed ? "测试通过" : "测试失败");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
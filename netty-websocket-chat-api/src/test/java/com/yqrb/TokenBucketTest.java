@@ -0,0 +1,78 @@
+package com.yqrb;
+
+import com.yqrb.netty.admission.TokenBucket;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 准入控制令牌桶测试（使用显式时间戳，结果与机器速度无关）：
+ * 1. 空闲桶可连续通过burst次，第burst+1次被拒绝，等待一个间隔后恢复1个令牌
+ * 2. 被拒绝的请求不消耗令牌，Retry-After与实际可通过时间一致
+ * 3. 多线程并发扣减同一个桶，放行总数不超过burst
+ */
+public class TokenBucketTest {
+
+    public static void main(String[] args) throws Exception {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        long t0 = 1_000 * second;
+
+        // 1. 10个/秒，突发5
+        TokenBucket bucket = new TokenBucket(10, 5);
+        int passed = 0;
+        for (int i = 0; i < 8; i++) {
+            if (bucket.tryAcquire(t0)) {
+                passed++;
+            }
+        }
+        boolean burstOk = passed == 5;
+        long retryAfter = bucket.retryAfterMillis(t0);
+        boolean retryOk = retryAfter == 100 && !bucket.tryAcquire(t0 + second / 10 - 1) && bucket.tryAcquire(t0 + second / 10);
+        System.out.println("突发放行：" + passed + "/8，建议重试：" + retryAfter + "ms");
+
+        // 2. 按速率持续发送：1秒内每10ms一次，约放行10个（+突发余量）
+        TokenBucket steady = new TokenBucket(10, 1);
+        int steadyPassed = 0;
+        for (int i = 0; i < 100; i++) {
+            if (steady.tryAcquire(t0 + i * second / 100)) {
+                steadyPassed++;
+            }
+        }
+        boolean steadyOk = steadyPassed == 10;
+        boolean idleOk = !steady.isIdle(t0 + second / 2) && steady.isIdle(t0 + 2 * second);
+        System.out.println("持续发送放行：" + steadyPassed + "/100，空闲判定：" + idleOk);
+
+        // 3. 并发扣减：8个线程同一时刻抢100个突发令牌
+        TokenBucket shared = new TokenBucket(1, 100);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        if (shared.tryAcquire(t0)) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        boolean concurrentOk = granted.get() == 100;
+        System.out.println("并发放行：" + granted.get() + "/8000");
+
+        boolean allPassed = burstOk && retryOk && steadyOk && idleOk && concurrentOk;
+        System.out.println(allPassed ? "测试通过" : "测试失败");
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.yqrb;
+
+import com.yqrb.netty.capture.CaptureFormat;
+import com.yqrb.netty.capture.CaptureReader;
+import com.yqrb.netty.capture.CaptureRecord;
+import com.yqrb.netty.capture.TrafficCapture;
+import com.yqrb.netty.relay.RelayScope;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 流量抓包测试（EmbeddedChannel模拟握手完成后的WebSocket通道，不启动Spring容器）：
+ * 1. 单连接：OPEN记录URI与子协议，文本/二进制帧原样记录并继续传递给后续处理器，关闭记录CLOSE
+ * 2. 多线程多连接并发抓包：小段文件触发多次切换，读回的记录数与写入一致，每个连接内的顺序不变
+ * 3. 段数达到上限后停止抓包并计数丢弃，已写入的记录仍可完整读回
+ */
+public class TrafficCaptureTest {
+
+    private static final int THREADS = 4;
+    private static final int FRAMES_PER_THREAD = 500;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("netty-capture-test");
+
+        // 1. 单连接
+        TrafficCapture capture = newCapture(dir.resolve("single"), 16 * 1024, 64);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        capture.install(channel.pipeline(), RelayScope.AFTER_SALE);
+        channel.pipeline().fireUserEventTriggered(new WebSocketServerProtocolHandler.HandshakeComplete(
+                "/newspaper/websocket/LYQY_USER_1?sessionId=S1", new DefaultHttpHeaders(), "chat.binary.v1"));
+        channel.writeInbound(new TextWebSocketFrame("{\"msgContent\":\"你好\"}"));
+        channel.writeInbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[]{1, 2, 3})));
+        WebSocketFrame passedText = channel.readInbound();
+        WebSocketFrame passedBinary = channel.readInbound();
+        boolean passThroughOk = passedText instanceof TextWebSocketFrame && passedBinary instanceof BinaryWebSocketFrame
+                && "{\"msgContent\":\"你好\"}".equals(((TextWebSocketFrame) passedText).text());
+        passedText.release();
+        passedBinary.release();
+        channel.close();
+        capture.shutdown();
+
+        List<CaptureRecord> single = CaptureReader.readAll(CaptureReader.segments(dir.resolve("single"),
+                CaptureReader.latestCapture(dir.resolve("single"))));
+        boolean singleOk = single.size() == 4
+                && single.get(0).getType() == CaptureFormat.TYPE_OPEN
+                && "/newspaper/websocket/LYQY_USER_1?sessionId=S1".equals(single.get(0).openUri())
+                && "chat.binary.v1".equals(single.get(0).openSubprotocol())
+                && single.get(0).getScope() == RelayScope.AFTER_SALE
+                && "{\"msgContent\":\"你好\"}".equals(single.get(1).text())
+                && single.get(2).getType() == CaptureFormat.TYPE_BINARY && single.get(2).getPayload().length == 3
+                && single.get(3).getType() == CaptureFormat.TYPE_CLOSE;
+        System.out.println("单连接记录数：" + single.size() + "，透传：" + passThroughOk);
+
+        // 2. 并发抓包 + 段切换
+        Path concurrentDir = dir.resolve("concurrent");
+        TrafficCapture concurrent = newCapture(concurrentDir, 16 * 1024, 256);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            new Thread(() -> {
+                try {
+                    EmbeddedChannel ch = new EmbeddedChannel();
+                    concurrent.install(ch.pipeline(), RelayScope.PRE_SALE);
+                    ch.pipeline().fireUserEventTriggered(new WebSocketServerProtocolHandler.HandshakeComplete(
+                            "/pre-sale/websocket/LYQY_USER_" + thread + "?preSaleSessionId=P" + thread, new DefaultHttpHeaders(), null));
+                    start.await();
+                    for (int i = 0; i < FRAMES_PER_THREAD; i++) {
+                        ch.writeInbound(new TextWebSocketFrame(thread + ":" + i + ":" + "x"));
+                        ((WebSocketFrame) ch.readInbound()).release();
+                    }
+                    ch.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        concurrent.shutdown();
+
+        String prefix = CaptureReader.latestCapture(concurrentDir);
+        List<Path> segments = CaptureReader.segments(concurrentDir, prefix);
+        List<CaptureRecord> records = CaptureReader.readAll(segments);
+        Map<Long, Integer> nextSeq = new HashMap<>();
+        boolean orderOk = true;
+        int frames = 0;
+        for (CaptureRecord record : records) {
+            if (record.getType() != CaptureFormat.TYPE_TEXT) {
+                continue;
+            }
+            frames++;
+            int seq = Integer.parseInt(record.text().split(":")[1]);
+            int expected = nextSeq.getOrDefault(record.getConnectionId(), 0);
+            if (seq != expected) {
+                orderOk = false;
+            }
+            nextSeq.put(record.getConnectionId(), seq + 1);
+        }
+        boolean concurrentOk = frames == THREADS * FRAMES_PER_THREAD && orderOk && segments.size() > 1
+                && records.size() == THREADS * (FRAMES_PER_THREAD + 2)
+                && records.get(0).getScope() == RelayScope.PRE_SALE && records.get(0).openSubprotocol() == null;
+        System.out.println("并发抓包段数：" + segments.size() + "，记录数：" + records.size() + "，数据帧：" + frames + "，连接内有序：" + orderOk);
+
+        // 3. 段数上限
+        Path limitedDir = dir.resolve("limited");
+        TrafficCapture limited = newCapture(limitedDir, 1024, 2);
+        EmbeddedChannel limitedChannel = new EmbeddedChannel();
+        limited.install(limitedChannel.pipeline(), RelayScope.AFTER_SALE);
+        limitedChannel.pipeline().fireUserEventTriggered(new WebSocketServerProtocolHandler.HandshakeComplete(
+                "/newspaper/websocket/LYQY_CS_1?sessionId=S2", new DefaultHttpHeaders(), null));
+        for (int i = 0; i < 200; i++) {
+            limitedChannel.writeInbound(new TextWebSocketFrame("message-" + i));
+            ((WebSocketFrame) limitedChannel.readInbound()).release();
+        }
+        Map<String, Object> limitedMetrics = limited.snapshot();
+        List<CaptureRecord> kept = CaptureReader.readAll(CaptureReader.segments(limitedDir, CaptureReader.latestCapture(limitedDir)));
+        boolean limitOk = Boolean.FALSE.equals(limitedMetrics.get("capturing"))
+                && (Long) limitedMetrics.get("records") == kept.size() && kept.size() < 201;
+        System.out.println("段数上限：" + limitedMetrics + "，读回：" + kept.size());
+        limited.shutdown();
+
+        System.out.println();
+        System.out.println("单连接抓包：" + (singleOk && passThroughOk ? "通过" : "失败"));
+        System.out.println("并发抓包：" + (concurrentOk ? "通过" : "失败"));
+        System.out.println("段数上限：" + (limitOk ? "通过" : "失败"));
+        if (!singleOk || !passThroughOk || !concurrentOk || !limitOk) {
+            System.exit(1);
+        }
+    }
+
+    private static TrafficCapture newCapture(Path dir, int segmentBytes, int maxSegments) {
+        TrafficCapture capture = new TrafficCapture();
+        ReflectionTestUtils.setField(capture, "enabled", true);
+        ReflectionTestUtils.setField(capture, "dir", dir.toString());
+        ReflectionTestUtils.setField(capture, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(capture, "maxSegments", maxSegments);
+        capture.init();
+        return capture;
+    }
+}
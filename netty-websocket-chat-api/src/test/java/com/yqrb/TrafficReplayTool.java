@@ -0,0 +1,287 @@
+package com.yqrb;
+
+import com.yqrb.netty.capture.CaptureFormat;
+import com.yqrb.netty.capture.CaptureReader;
+import com.yqrb.netty.capture.CaptureRecord;
+import com.yqrb.netty.relay.RelayScope;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 抓包回放工具（压测使用，需先在被测环境开启custom.netty.capture抓取真实流量）
+ * 1. replay：按抓包中的连接逐个建立WebSocket连接（握手URI、子协议与原连接一致），
+ *    按原时间间隔发送入站数据帧并在原时间关闭；speed>1时按倍数压缩时间（如10=10倍速）
+ * 2. dump：按连接输出握手地址与消息（相对时间+内容），可直接改写为NettyWebSocketClientTest风格的客户端
+ * 参数（均可省略）：模式(replay/dump) 抓包目录 抓包前缀(latest=最近一次) 倍速 售后地址 售前地址
+ * 示例：replay logs/capture latest 10 ws://127.0.0.1:8081 ws://127.0.0.1:8089
+ */
+public class TrafficReplayTool {
+
+    // 回放开始前的准备时间（建立调度）
+    private static final long LEAD_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    // 最后一条记录之后等待服务端响应的时间
+    private static final long GRACE_MILLIS = 3000;
+
+    private static final AtomicInteger connected = new AtomicInteger();
+    private static final AtomicInteger failed = new AtomicInteger();
+    private static final AtomicInteger framesSent = new AtomicInteger();
+    private static final AtomicInteger framesReceived = new AtomicInteger();
+    private static final AtomicLong maxSendLagMicros = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "replay";
+        Path dir = Paths.get(args.length > 1 ? args[1] : "logs/capture");
+        String prefix = args.length > 2 && !"latest".equals(args[2]) ? args[2] : CaptureReader.latestCapture(dir);
+        double speed = args.length > 3 ? Double.parseDouble(args[3]) : 1.0;
+        String afterSaleBase = args.length > 4 ? args[4] : "ws://127.0.0.1:8081";
+        String preSaleBase = args.length > 5 ? args[5] : "ws://127.0.0.1:8089";
+        if (prefix == null) {
+            System.out.println("❌ 目录下没有抓包文件：" + dir.toAbsolutePath());
+            return;
+        }
+
+        List<CaptureRecord> records = CaptureReader.readAll(CaptureReader.segments(dir, prefix));
+        Map<Long, ReplayConnection> connections = group(records);
+        System.out.println("=== 抓包：" + prefix + "，记录数：" + records.size() + "，连接数：" + connections.size() + " ===");
+        if (connections.isEmpty()) {
+            return;
+        }
+        if ("dump".equals(mode)) {
+            dump(connections, afterSaleBase, preSaleBase);
+        } else {
+            replay(connections, speed, afterSaleBase, preSaleBase);
+        }
+    }
+
+    /**
+     * 按连接号分组（记录已按时间排序；OPEN之前的记录不会出现）
+     */
+    private static Map<Long, ReplayConnection> group(List<CaptureRecord> records) {
+        Map<Long, ReplayConnection> connections = new LinkedHashMap<>();
+        for (CaptureRecord record : records) {
+            if (record.getType() == CaptureFormat.TYPE_OPEN) {
+                connections.put(record.getConnectionId(), new ReplayConnection(record));
+                continue;
+            }
+            ReplayConnection connection = connections.get(record.getConnectionId());
+            if (connection == null) {
+                continue;
+            }
+            if (record.getType() == CaptureFormat.TYPE_CLOSE) {
+                connection.close = record;
+            } else {
+                connection.frames.add(record);
+            }
+        }
+        return connections;
+    }
+
+    private static void dump(Map<Long, ReplayConnection> connections, String afterSaleBase, String preSaleBase) {
+        for (ReplayConnection connection : connections.values()) {
+            long openNanos = connection.open.getOffsetNanos();
+            System.out.println();
+            System.out.println("# 连接" + connection.open.getConnectionId() + "（" + connection.open.getScope() + "）");
+            System.out.println("WS_URL = " + baseOf(connection.open.getScope(), afterSaleBase, preSaleBase) + connection.open.openUri());
+            if (connection.open.openSubprotocol() != null) {
+                System.out.println("SUBPROTOCOL = " + connection.open.openSubprotocol());
+            }
+            for (CaptureRecord frame : connection.frames) {
+                long offsetMillis = TimeUnit.NANOSECONDS.toMillis(frame.getOffsetNanos() - openNanos);
+                String content = frame.getType() == CaptureFormat.TYPE_TEXT ? frame.text() : "<" + frame.getPayload().length + "字节二进制>";
+                System.out.println("+" + offsetMillis + "ms " + content);
+            }
+            if (connection.close != null) {
+                System.out.println("+" + TimeUnit.NANOSECONDS.toMillis(connection.close.getOffsetNanos() - openNanos) + "ms CLOSE");
+            }
+        }
+    }
+
+    private static void replay(Map<Long, ReplayConnection> connections, double speed, String afterSaleBase,
+                               String preSaleBase) throws Exception {
+        long firstNanos = Long.MAX_VALUE;
+        long lastNanos = 0;
+        for (ReplayConnection connection : connections.values()) {
+            firstNanos = Math.min(firstNanos, connection.open.getOffsetNanos());
+            lastNanos = Math.max(lastNanos, connection.lastOffsetNanos());
+        }
+        long captureStart = firstNanos;
+        long replayStart = System.nanoTime() + LEAD_NANOS;
+        // 抓包时间轴 -> 回放时间轴（按倍速压缩）
+        LongUnaryOperator targetOf = offset -> replayStart + (long) ((offset - captureStart) / speed);
+        System.out.println("原始时长：" + TimeUnit.NANOSECONDS.toSeconds(lastNanos - firstNanos) + "s，倍速：" + speed
+                + "，预计回放时长：" + TimeUnit.NANOSECONDS.toSeconds((long) ((lastNanos - firstNanos) / speed)) + "s");
+
+        EventLoopGroup group = new NioEventLoopGroup();
+        CountDownLatch finished = new CountDownLatch(connections.size());
+        try {
+            for (ReplayConnection connection : connections.values()) {
+                URI uri = URI.create(baseOf(connection.open.getScope(), afterSaleBase, preSaleBase) + connection.open.openUri());
+                long delay = targetOf.applyAsLong(connection.open.getOffsetNanos()) - System.nanoTime();
+                group.schedule(() -> connect(group, uri, connection, targetOf, finished), Math.max(0, delay), TimeUnit.NANOSECONDS);
+            }
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(targetOf.applyAsLong(lastNanos) - System.nanoTime()) + GRACE_MILLIS;
+            finished.await(Math.max(GRACE_MILLIS, waitMillis), TimeUnit.MILLISECONDS);
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+
+        System.out.println();
+        System.out.println("连接成功：" + connected.get() + "/" + connections.size() + "，失败：" + failed.get());
+        System.out.println("发送帧数：" + framesSent.get() + "，收到服务端帧数：" + framesReceived.get());
+        System.out.println("最大发送偏差：" + maxSendLagMicros.get() / 1000 + "ms（实际发送时间 - 按倍速计算的目标时间）");
+    }
+
+    private static void connect(EventLoopGroup group, URI uri, ReplayConnection connection,
+                                LongUnaryOperator targetOf, CountDownLatch finished) {
+        // 通道关闭时计数（连接失败在下方监听器中计数）
+        connection.finished = finished;
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new HttpClientCodec());
+                        ch.pipeline().addLast(new HttpObjectAggregator(8192));
+                        ch.pipeline().addLast(new WebSocketClientProtocolHandler(uri, WebSocketVersion.V13,
+                                connection.open.openSubprotocol(), false, new DefaultHttpHeaders(), 1024 * 1024));
+                        ch.pipeline().addLast(new ReplayHandler(connection, targetOf));
+                    }
+                });
+        bootstrap.connect(uri.getHost(), uri.getPort()).addListener(future -> {
+            if (!future.isSuccess()) {
+                failed.incrementAndGet();
+                finished.countDown();
+            }
+        });
+    }
+
+    private static String baseOf(RelayScope scope, String afterSaleBase, String preSaleBase) {
+        return scope == RelayScope.PRE_SALE ? preSaleBase : afterSaleBase;
+    }
+
+    /**
+     * 握手完成后按目标时间调度该连接的全部数据帧与关闭（同一EventLoop上按时间顺序执行，保持原连接内顺序）
+     */
+    static class ReplayHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+        private final ReplayConnection connection;
+        private final LongUnaryOperator targetOf;
+
+        ReplayHandler(ReplayConnection connection, LongUnaryOperator targetOf) {
+            this.connection = connection;
+            this.targetOf = targetOf;
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                connected.incrementAndGet();
+                Channel channel = ctx.channel();
+                for (CaptureRecord frame : connection.frames) {
+                    long target = targetOf.applyAsLong(frame.getOffsetNanos());
+                    channel.eventLoop().schedule(() -> send(channel, frame, target),
+                            Math.max(0, target - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+                if (connection.close != null) {
+                    long target = targetOf.applyAsLong(connection.close.getOffsetNanos());
+                    channel.eventLoop().schedule(() -> {
+                        channel.writeAndFlush(new CloseWebSocketFrame(1000, "replay"));
+                        channel.close();
+                    }, Math.max(0, target - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        private void send(Channel channel, CaptureRecord frame, long target) {
+            if (!channel.isActive()) {
+                return;
+            }
+            WebSocketFrame out;
+            if (frame.getType() == CaptureFormat.TYPE_TEXT) {
+                out = new TextWebSocketFrame(frame.isFinalFragment(), 0, Unpooled.wrappedBuffer(frame.getPayload()));
+            } else if (frame.getType() == CaptureFormat.TYPE_BINARY) {
+                out = new BinaryWebSocketFrame(frame.isFinalFragment(), 0, Unpooled.wrappedBuffer(frame.getPayload()));
+            } else {
+                out = new ContinuationWebSocketFrame(frame.isFinalFragment(), 0, Unpooled.wrappedBuffer(frame.getPayload()));
+            }
+            channel.writeAndFlush(out);
+            framesSent.incrementAndGet();
+            long lagMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - target);
+            long max = maxSendLagMicros.get();
+            while (lagMicros > max && !maxSendLagMicros.compareAndSet(max, lagMicros)) {
+                max = maxSendLagMicros.get();
+            }
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+            framesReceived.incrementAndGet();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (connection.finished != null) {
+                connection.finished.countDown();
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            System.err.println("❌ 连接" + connection.open.getConnectionId() + "异常：" + cause.getMessage());
+            ctx.close();
+        }
+    }
+
+    static class ReplayConnection {
+        final CaptureRecord open;
+        final List<CaptureRecord> frames = new ArrayList<>();
+        CaptureRecord close;
+        volatile CountDownLatch finished;
+
+        ReplayConnection(CaptureRecord open) {
+            this.open = open;
+        }
+
+        long lastOffsetNanos() {
+            if (close != null) {
+                return close.getOffsetNanos();
+            }
+            return frames.isEmpty() ? open.getOffsetNanos() : frames.get(frames.size() - 1).getOffsetNanos();
+        }
+    }
+}
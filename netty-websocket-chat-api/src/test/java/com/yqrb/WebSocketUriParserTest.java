@@ -0,0 +1,76 @@
+package com.yqrb;
+
+import com.yqrb.netty.handshake.WebSocketUriParser;
+
+/**
+ * 握手URI解析器验证：解析结果与原split解析一致，并对比两种方式的耗时
+ */
+public class WebSocketUriParserTest {
+    private static final String BASE_PATH = "/newspaper/websocket";
+
+    public static void main(String[] args) {
+        WebSocketUriParser parser = new WebSocketUriParser(BASE_PATH, "sessionId");
+
+        // 1. 正常/边界URI解析结果
+        String[] uris = {
+                "/newspaper/websocket/LYQY_USER_5fbb6357b77d2e6436a46336?sessionId=SESSION_8600d39e8ae844828c9d4bb17ed118ac",
+                "/newspaper/websocket/LYQY_CS_5fc5bff4b77d2e6436a618aa?token=abc&sessionId=SESSION_1&x=1",
+                "/newspaper/websocket/LYQY_CS_5fc5bff4b77d2e6436a618aa?sessionId=SESSION_1&placed=1",
+                "/newspaper/websocket/LYQY_CS_5fc5bff4b77d2e6436a618aa?placedX=1&sessionIdX=SESSION_2",
+                "/newspaper/websocket/LYQY_CS_5fc5bff4b77d2e6436a618aa?sessionId=",
+                "/newspaper/websocket/LYQY_CS_5fc5bff4b77d2e6436a618aa",
+                "/newspaper/websocket/?sessionId=SESSION_1",
+                "/pre-sale/websocket/LYQY_USER_1?sessionId=SESSION_1"
+        };
+        for (String uri : uris) {
+            System.out.println(uri);
+            System.out.println("  receiverId：" + parser.parseReceiverId(uri) + "，sessionId：" + parser.parseSessionId(uri)
+                    + "，placed：" + parser.parseQueryParam(uri, "placed"));
+        }
+
+        // 2. 与原split解析方式对比耗时（含预热）
+        String uri = uris[0];
+        int rounds = 2_000_000;
+        for (int i = 0; i < 200_000; i++) {
+            parser.parseReceiverId(uri);
+            parser.parseSessionId(uri);
+            legacyReceiverId(uri);
+            legacySessionId(uri);
+        }
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < rounds; i++) {
+            sink += parser.parseReceiverId(uri).length() + parser.parseSessionId(uri).length();
+        }
+        long parserNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += legacyReceiverId(uri).length() + legacySessionId(uri).length();
+        }
+        long legacyNanos = System.nanoTime() - start;
+        System.out.println("\n解析" + rounds + "次：WebSocketUriParser " + parserNanos / rounds + "ns/次，"
+                + "原split方式 " + legacyNanos / rounds + "ns/次（校验值：" + sink + "）");
+    }
+
+    // 原NettyWebSocketServer中的解析方式
+    private static String legacyReceiverId(String uri) {
+        String receiverId = uri.substring((BASE_PATH + "/").length());
+        if (receiverId.contains("?")) {
+            receiverId = receiverId.split("\\?")[0];
+        }
+        return receiverId;
+    }
+
+    private static String legacySessionId(String uri) {
+        if (!uri.contains("?sessionId=")) {
+            return null;
+        }
+        String paramPart = uri.substring(uri.indexOf("?") + 1);
+        for (String pair : paramPart.split("&")) {
+            if (pair.startsWith("sessionId=")) {
+                return pair.substring("sessionId=".length()).trim();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,32 @@
+package com.yqrb.pojo.query;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 系统公告广播参数POJO
+ */
+@Data
+public class BroadcastParam {
+
+    public static final String TARGET_ALL_CS = "ALL_CS"; // 售后全部在线客服
+    public static final String TARGET_ALL_USERS = "ALL_USERS"; // 售后全部在线用户
+    public static final String TARGET_PRE_SALE_VISITORS = "PRE_SALE_VISITORS"; // 售前全部在线访客
+    public static final String TARGET_SESSIONS = "SESSIONS"; // 指定会话（售后sessionId / 售前preSaleSessionId）的全部连接
+
+    /**
+     * 广播目标：ALL_CS / ALL_USERS / PRE_SALE_VISITORS / SESSIONS
+     */
+    private String target;
+
+    /**
+     * 目标会话ID列表（target=SESSIONS时必传）
+     */
+    private List<String> sessionIds;
+
+    /**
+     * 公告内容
+     */
+    private String content;
+}
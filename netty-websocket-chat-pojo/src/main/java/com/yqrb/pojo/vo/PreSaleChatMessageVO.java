@@ -35,6 +35,9 @@ public class PreSaleChatMessageVO {
 
     public static final String MSG_TYPE_TEXT = PreSaleChatMessagePO.MSG_TYPE_TEXT;
     public static final String MSG_TYPE_SYSTEM_TIP = PreSaleChatMessagePO.MSG_TYPE_SYSTEM_TIP;
+    public static final String MSG_TYPE_ANNOUNCEMENT = "SYSTEM_ANNOUNCEMENT"; // 系统公告（广播，不落库），content为公告内容
+    public static final String MSG_TYPE_RATE_LIMITED = "SYSTEM_RATE_LIMITED"; // 准入限流拒绝（不落库），content为拒绝原因
+    public static final String MSG_TYPE_RECONNECT_LATER = "SYSTEM_RECONNECT_LATER"; // 节点摘流（不落库），content为建议重连等待毫秒数
 
     public static final Integer IS_READ_NO = PreSaleChatMessagePO.IS_READ_NO;
     public static final Integer IS_READ_YES = PreSaleChatMessagePO.IS_READ_YES;
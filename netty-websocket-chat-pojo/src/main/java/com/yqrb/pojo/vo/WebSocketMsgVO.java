@@ -17,6 +17,10 @@ public class WebSocketMsgVO {
     public static final String MSG_TYPE_TEXT = "TEXT";
     public static final String MSG_TYPE_PAY_REMIND = "PAY_REMIND";
     public static final String MSG_TYPE_SYSTEM_TIP = "SYSTEM_TIP";
+    public static final String MSG_TYPE_REDIRECT = "SYSTEM_REDIRECT"; // 会话归属其他节点，msgContent为重连URL
+    public static final String MSG_TYPE_ANNOUNCEMENT = "SYSTEM_ANNOUNCEMENT"; // 系统公告（广播）
+    public static final String MSG_TYPE_RATE_LIMITED = "SYSTEM_RATE_LIMITED"; // 准入限流拒绝，msgContent为拒绝原因
+    public static final String MSG_TYPE_RECONNECT_LATER = "SYSTEM_RECONNECT_LATER"; // 节点摘流，msgContent为建议重连等待毫秒数
 
     // 发送者类型常量
     public static final String SENDER_TYPE_USER = "USER";
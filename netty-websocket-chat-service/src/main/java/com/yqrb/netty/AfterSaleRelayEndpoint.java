@@ -0,0 +1,61 @@
+package com.yqrb.netty;
+
+import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.audit.AuditEventType;
+import com.yqrb.netty.audit.AuditLog;
+import com.yqrb.netty.relay.RelayEndpoint;
+import com.yqrb.netty.relay.RelayEnvelope;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 售后中继端点：其他节点转来的消息投递到本节点的售后连接
+ * 带sessionId的聊天消息只投递到绑定了该会话的连接，不带sessionId的系统提醒投递到接收者全部连接
+ */
+public class AfterSaleRelayEndpoint implements RelayEndpoint {
+    private static final Logger logger = LoggerFactory.getLogger(AfterSaleRelayEndpoint.class);
+
+    private final AuditLog auditLog;
+
+    public AfterSaleRelayEndpoint(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    @Override
+    public int deliver(RelayEnvelope envelope) {
+        String receiverId = envelope.getReceiverId();
+        String sessionId = envelope.getSessionId();
+        List<Channel> channels;
+        if (sessionId != null) {
+            channels = NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannels(receiverId, sessionId);
+        } else {
+            channels = new ArrayList<>();
+            for (Channel channel : NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannelsByReceiverId(receiverId)) {
+                if (channel.isActive()) {
+                    channels.add(channel);
+                }
+            }
+        }
+        if (channels.isEmpty()) {
+            return 0;
+        }
+        WebSocketMsgVO msg = JSON.parseObject(envelope.getPayload(), WebSocketMsgVO.class);
+        NettyWebSocketServerHandler.deliverLocal(channels, msg,
+                () -> logger.info("【节点中继-售后】本地投递降级，接收者：{}，会话ID：{}，来源节点：{}",
+                        receiverId, sessionId, envelope.getOrigin()));
+        for (Channel channel : channels) {
+            auditLog.record(AuditEventType.MESSAGE_FORWARD, channel, receiverId, sessionId, 0, "RELAY:" + envelope.getOrigin());
+        }
+        return channels.size();
+    }
+
+    @Override
+    public boolean isLocal(String receiverId) {
+        return !NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannelsByReceiverId(receiverId).isEmpty();
+    }
+}
@@ -1,7 +1,26 @@
 package com.yqrb.netty;
 
-import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.admission.AdmissionControl;
+import com.yqrb.netty.audit.AuditLog;
+import com.yqrb.netty.capture.TrafficCapture;
+import com.yqrb.netty.compression.CompressionStage;
+import com.yqrb.netty.drain.DrainCoordinator;
 import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.executor.NettyBusinessExecutor;
+import com.yqrb.netty.handshake.HandshakeStage;
+import com.yqrb.netty.handshake.HandshakeStatsHandler;
+import com.yqrb.netty.handshake.WebSocketUriParser;
+import com.yqrb.netty.idle.IdleSweeper;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.outbound.ReplayBatchWriter;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.placement.SessionPlacement;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.netty.transport.NettyTransportFactory;
+import com.yqrb.netty.transport.NettyTransportOptions;
+import com.yqrb.netty.watchdog.EventLoopWatchdog;
 import com.yqrb.pojo.query.OfflineMsgQueryParam;
 import com.yqrb.pojo.vo.ChatMessageVO;
 import com.yqrb.pojo.vo.OfflineMsgVO;
@@ -12,16 +31,9 @@ import com.yqrb.service.OfflineMsgService;
 import com.yqrb.util.SpringContextUtil;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
-import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,7 +43,11 @@ import org.springframework.util.CollectionUtils;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -75,289 +91,138 @@ public class NettyWebSocketServer {
     private int bossThreadCount;
     @Value("${custom.netty.websocket.worker-thread-count:0}")
     private int workerThreadCount;
+    @Value("${custom.netty.websocket.acceptor-count:1}")
+    private int acceptorCount;
+    @Value("${custom.netty.websocket.so-backlog:1024}")
+    private int soBacklog;
+    @Value("${custom.netty.websocket.so-keepalive:true}")
+    private boolean soKeepalive;
+    @Value("${custom.netty.websocket.tcp-nodelay:true}")
+    private boolean tcpNodelay;
+    @Value("${custom.netty.websocket.write-buffer-low-water-mark:32768}")
+    private int writeBufferLowWaterMark;
+    @Value("${custom.netty.websocket.write-buffer-high-water-mark:65536}")
+    private int writeBufferHighWaterMark;
+    @Value("${custom.netty.websocket.pooled-allocator:true}")
+    private boolean pooledAllocator;
     @Value("${custom.netty.websocket.idle-timeout:30}")
     private int idleTimeout;
+    // 统一网关模式下不再单独监听端口，由NettyWebSocketGateway按路径路由到本类的处理链
+    @Value("${custom.netty.gateway.enabled:false}")
+    private boolean gatewayEnabled;
 
     // 注入OfflineMsgService
     @Autowired
     private OfflineMsgService offlineMsgService;
 
-    public static final AttributeKey<String> CLIENT_WEBSOCKET_URI = AttributeKey.valueOf("CLIENT_WEBSOCKET_URI");
+    // 业务线程池：握手后的阻塞型补偿推送在此执行
+    @Autowired
+    private NettyBusinessExecutor nettyBusinessExecutor;
+
+    // 传输层工厂：epoll/NIO选择、SO_REUSEPORT多Acceptor、子通道参数
+    @Autowired
+    private NettyTransportFactory nettyTransportFactory;
+
+    // 握手阶段处理器工厂：小上限聚合、握手超时、握手耗时/字节统计
+    @Autowired
+    private HandshakeStage handshakeStage;
+
+    // 出站队列：背压感知的消息投递
+    @Autowired
+    private OutboundQueueManager outboundQueueManager;
+
+    // 批量补偿推送：一次flush / chat.batch.v1数组帧
+    @Autowired
+    private ReplayBatchWriter replayBatchWriter;
+
+    // permessage-deflate压缩：客户端协商后，超过阈值的帧压缩发送
+    @Autowired
+    private CompressionStage compressionStage;
+
+    // 消息审计日志：无锁环形缓冲 + 后台写线程
+    @Autowired
+    private AuditLog auditLog;
+
+    // 跨节点消息中继（多实例部署时接收者可能连在其他节点）
+    @Autowired
+    private MessageRelay messageRelay;
+
+    // 在线状态（内存为准，批量落Redis）
+    @Autowired
+    private PresenceService presenceService;
+
+    // 会话放置：同一会话的双方连到一致性哈希环上的同一节点，消息不跨节点
+    @Autowired
+    private SessionPlacement sessionPlacement;
+
+    // 准入控制：握手按IP限速，入站消息按连接/receiverId限速 + 全局并发上限（持久化前拦截，保护数据库连接池）
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    // 优雅摘流：停止接入、分散重连，stop()时先摘流再关闭EventLoopGroup
+    @Autowired
+    private DrainCoordinator drainCoordinator;
+
+    // 共享时间轮空闲检测：替代每通道IdleStateHandler，握手后服务端定时Ping
+    @Autowired
+    private IdleSweeper idleSweeper;
+
+    // EventLoop阻塞监控：探针测量排队延迟，超过阈值抓取Worker线程堆栈
+    @Autowired
+    private EventLoopWatchdog eventLoopWatchdog;
+
+    // 入站流量抓包（默认关闭）：记录握手URI与入站数据帧到内存映射段文件，供压测回放
+    @Autowired
+    private TrafficCapture trafficCapture;
+
+    public static final String WS_BASE_PATH = "/newspaper/websocket";
+    // 握手URI解析器（receiverId + sessionId）
+    private static final WebSocketUriParser URI_PARSER = new WebSocketUriParser(WS_BASE_PATH, "sessionId");
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private ChannelFuture serverFuture;
+    private List<Channel> serverChannels = Collections.emptyList();
 
     @PostConstruct
     public void start() {
+        // 中继端点与监听方式无关（网关模式下连接同样注册到售后注册表）
+        messageRelay.registerEndpoint(RelayScope.AFTER_SALE, new AfterSaleRelayEndpoint(auditLog));
+        if (gatewayEnabled) {
+            log.info("【售后WebSocket】已启用统一网关模式，不单独监听端口{}，路径{}由网关路由", port, WS_BASE_PATH);
+            return;
+        }
         new Thread(() -> {
-            bossGroup = new NioEventLoopGroup(bossThreadCount);
-            workerGroup = workerThreadCount > 0 ? new NioEventLoopGroup(workerThreadCount) : new NioEventLoopGroup();
+            NettyTransportOptions transportOptions = buildTransportOptions();
+            bossGroup = nettyTransportFactory.newEventLoopGroup(bossThreadCount, "netty-ws-boss");
+            workerGroup = nettyTransportFactory.newEventLoopGroup(workerThreadCount, "netty-ws-worker");
+            eventLoopWatchdog.watch("netty-ws-worker", workerGroup);
 
             try {
                 ServerBootstrap bootstrap = new ServerBootstrap();
-                bootstrap.group(bossGroup, workerGroup)
-                        .channel(NioServerSocketChannel.class)
-                        .option(ChannelOption.SO_BACKLOG, 1024)
-                        .childOption(ChannelOption.SO_KEEPALIVE, true)
+                nettyTransportFactory.configure(bootstrap.group(bossGroup, workerGroup), transportOptions)
                         .childHandler(new ChannelInitializer<SocketChannel>() {
                             @Override
                             protected void initChannel(SocketChannel ch) throws Exception {
-                                ChannelPipeline pipeline = ch.pipeline();
-                                String channelId = ch.id().asShortText();
-                                log.info("【通道初始化】通道ID：{}", channelId);
-
-                                // ===== 1. HTTP基础处理器（必须最先加）=====
-                                pipeline.addLast(new HttpServerCodec()); // HTTP编解码
-                                pipeline.addLast(new ChunkedWriteHandler()); // 大文件支持
-                                pipeline.addLast(new HttpObjectAggregator(64 * 1024 * 1024)); // 64MB，确保完整聚合HTTP请求
-
-                                // ===== 2. 捕获客户端URI（必须在协议升级前，已优化：先传递消息再移除）=====
-                                pipeline.addLast(new ChannelInboundHandlerAdapter() {
-                                    @Override
-                                    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-                                        if (msg instanceof io.netty.handler.codec.http.HttpRequest) {
-                                            io.netty.handler.codec.http.HttpRequest request = (io.netty.handler.codec.http.HttpRequest) msg;
-                                            // 仅处理GET请求（WebSocket握手是GET请求）
-                                            if (request.method().equals(io.netty.handler.codec.http.HttpMethod.GET)) {
-                                                String uri = request.uri();
-                                                ctx.channel().attr(NettyWebSocketServer.CLIENT_WEBSOCKET_URI).set(uri);
-                                                log.info("【URI捕获】通道ID：{}，URI：{}，请求类型：{}",
-                                                        channelId, uri, msg.getClass().getSimpleName());
-
-                                                // 先传递消息，再移除自身Handler（确保请求不被阻断）
-                                                super.channelRead(ctx, msg);
-
-                                                // 移除当前Handler，避免重复处理
-                                                ctx.pipeline().remove(this);
-                                                return;
-                                            }
-                                        }
-                                        // 非GET请求/非HttpRequest，直接传递
-                                        super.channelRead(ctx, msg);
-                                    }
-                                });
-
-                                // ===== 3. 心跳检测（已优化：放在WebSocket协议处理器之前）=====
-                                pipeline.addLast(new IdleStateHandler(idleTimeout, 0, 0, TimeUnit.SECONDS));
-
-                                // ===== 4. WebSocket 协议升级（核心！修改包装方式，让处理器真正生效）=====
-                                String webSocketBasePath = "/newspaper/websocket";
-                                // 1. 直接创建并添加 WebSocketServerProtocolHandler 到流水线（关键：让其自动加载子处理器）
-                                WebSocketServerProtocolHandler wsProtocolHandler = new WebSocketServerProtocolHandler(
-                                        webSocketBasePath,  // 核心前缀路径
-                                        null,               // 子协议（无则为null）
-                                        true,               // 允许扩展
-                                        1024 * 1024,        // 最大帧大小
-                                        false,              // 不允许关闭帧延迟
-                                        true                // 关键：忽略路径中的查询参数和后缀
-                                );
-                                pipeline.addLast("webSocketProtocolHandler", wsProtocolHandler);
-
-                                // 2. 独立添加事件监听器，捕获 HANDSHAKE_COMPLETE 事件（不包装，直接监听，更稳定）
-                                pipeline.addLast(new ChannelInboundHandlerAdapter() {
-                                    @Override
-                                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-                                        // 仅捕获握手完成事件
-                                        if (evt == WebSocketServerProtocolHandler.ServerHandshakeStateEvent.HANDSHAKE_COMPLETE) {
-                                            String channelId = ctx.channel().id().asShortText();
-                                            log.info("【协议升级】通道ID：{}，WebSocket握手成功", channelId);
-
-                                            // 解析纯净ID（通用化：支持用户/客服，不再限定为客服）
-                                            Channel channel = ctx.channel();
-                                            String uri = channel.attr(NettyWebSocketServer.CLIENT_WEBSOCKET_URI).get();
-                                            if (uri != null && uri.startsWith(webSocketBasePath + "/")) {
-                                                String receiverId = uri.substring((webSocketBasePath + "/").length());
-                                                // 去除查询参数，避免ID污染
-                                                if (receiverId.contains("?")) {
-                                                    receiverId = receiverId.split("\\?")[0];
-                                                }
-
-                                                // ======================================
-                                                // 新增：核心校验（售后专属！receiverId必须以LYQY_USER_/LYQY_CS_开头）
-                                                // 拦截错误的receiverId，避免后续拼接/日志/业务逻辑出错
-                                                if (!receiverId.startsWith("LYQY_USER_") && !receiverId.startsWith("LYQY_CS_")) {
-                                                    log.error("【会话注册失败】通道ID：{}，售后receiverId格式错误！必须以LYQY_USER_/LYQY_CS_开头，当前错误receiverId：{}，请检查前端WebSocket URL", channelId, receiverId);
-                                                    ctx.channel().close(); // 直接关闭通道，避免无效连接
-                                                    return;
-                                                }
-                                                // ======================================
-
-                                                // ===== 新增：解析前端传入的sessionId（业务会话ID）+ 基础校验 =====
-                                                String sessionId = parseSessionIdFromUri(uri);
-                                                if (sessionId == null || sessionId.trim().isEmpty()) {
-                                                    log.error("【会话注册失败】通道ID：{}，未传入sessionId参数，URI：{}", channelId, uri);
-                                                    ctx.channel().close(); // 售后必须传sessionId，不传直接关闭通道
-                                                    return;
-                                                }
-
-                                                // ======================================
-                                                // 核心修改：根据ID前缀区分用户/客服，绑定对应的senderType
-                                                // 约定：用户ID前缀 LYQY_USER_，客服ID前缀 LYQY_CS_
-                                                String senderType;
-                                                if (receiverId.startsWith("LYQY_USER_")) {
-                                                    // 用户连接：绑定为USER
-                                                    senderType = WebSocketMsgVO.SENDER_TYPE_USER;
-                                                } else if (receiverId.startsWith("LYQY_CS_")) {
-                                                    // 客服连接：绑定为CS
-                                                    senderType = WebSocketMsgVO.SENDER_TYPE_CS;
-                                                } else {
-                                                    // 默认：未知类型，绑定为USER（可根据业务调整）
-                                                    senderType = WebSocketMsgVO.SENDER_TYPE_USER;
-                                                    log.warn("【会话注册警告】通道ID：{}，ID前缀未匹配（非LYQY_USER_/LYQY_CS_），默认绑定为USER类型，ID：{}", channelId, receiverId);
-                                                }
-                                                // ======================================
-
-                                                // 注册到业务映射表，供后续消息转发使用
-                                                channel.attr(NettyConstant.SESSION_ID_KEY).set(sessionId);
-                                                channel.attr(NettyConstant.RECEIVER_ID_KEY).set(receiverId);
-                                                // 替换原来的强制CS绑定，使用区分后的senderType
-                                                channel.attr(NettyConstant.SENDER_TYPE_KEY).set(senderType);
-                                                channel.attr(NettyConstant.USER_ID_KEY).set(receiverId);
-                                                NettyWebSocketServerHandler.RECEIVER_CHANNEL_MAP.put(receiverId, channel);
-
-                                                // 优化日志：打印sessionId，便于调试（可选，建议加）
-                                                log.info("【会话注册成功】通道ID：{}，ID：{}，连接类型：{}，业务sessionId：{}，已加入在线映射表",
-                                                        channelId, receiverId, senderType, sessionId);
-
-                                                // ======================================
-                                                // 【新增核心代码】查询chat_message未读消息并推送
-                                                // ======================================
-                                                try {
-                                                    // 1. 通过SpringContextUtil获取ChatMessageService Bean（Netty非Spring管理，需手动获取）
-                                                    ChatMessageService chatMessageService = SpringContextUtil.getBean(ChatMessageService.class);
-
-                                                    String authReceiverId = "R_FIXED_0000_"+receiverId;
-                                                    String authSessionId = channel.attr(NettyConstant.SESSION_ID_KEY).get();
-                                                    // 修正日志名称，避免误导
-                                                    log.info("【未读消息推送准备】拼接后的authReceiverId：{}，业务sessionId：{}，原始发送者ID：{}", authReceiverId, authSessionId, receiverId);
-
-                                                    // 2. 调用方法查询该接收方的未读消息
-                                                    Result<List<ChatMessageVO>> unreadResult = chatMessageService.getUnreadMessageListBySessionId(authSessionId, authReceiverId);
-
-                                                    // 3. 校验查询结果，非空才推送
-                                                    if (unreadResult != null && unreadResult.isSuccess() && !CollectionUtils.isEmpty(unreadResult.getData())) {
-                                                        List<ChatMessageVO> unreadMsgList = unreadResult.getData();
-                                                        log.info("【未读消息推送准备】ID：{}，连接类型：{}，找到{}条chat_message未读消息",
-                                                                receiverId, senderType, unreadMsgList.size());
-
-                                                        // 4. 遍历封装为WebSocketMsgVO，推送给当前通道
-                                                        for (ChatMessageVO unreadMsg : unreadMsgList) {
-                                                            WebSocketMsgVO wsMsg = new WebSocketMsgVO();
-                                                            wsMsg.setAttachmentPath(unreadMsg.getAttachmentPath()); // 附件路径（多张用逗号分隔）
-                                                            wsMsg.setReceiverId(unreadMsg.getReceiverId()); // 接收方ID（自身）
-                                                            wsMsg.setUserId(unreadMsg.getSenderId()); // 发送方ID（消息原发送者）
-                                                            wsMsg.setMsgContent(unreadMsg.getContent()); // 消息内容
-                                                            wsMsg.setMsgType(unreadMsg.getMsgType()); // 消息类型
-                                                            wsMsg.setSessionId(unreadMsg.getSessionId()); // 会话ID
-                                                            wsMsg.setSendTime(unreadMsg.getSendTime()); // 消息发送时间
-                                                            wsMsg.setSenderType(unreadMsg.getSenderType()); // 发送者类型（USER/CS/SYSTEM）
-
-                                                            // 5. 写入通道推送消息（和现有离线消息推送写法一致）
-                                                            String jsonMsg = JSON.toJSONString(wsMsg);
-                                                            channel.writeAndFlush(new TextWebSocketFrame(jsonMsg));
-                                                        }
-
-                                                        log.info("【未读消息推送完成】ID：{}，连接类型：{}，成功推送{}条chat_message未读消息",
-                                                                receiverId, senderType, unreadMsgList.size());
-                                                    } else {
-                                                        log.info("【未读消息查询】ID：{}，无chat_message未读消息", receiverId);
-                                                    }
-                                                } catch (Exception e) {
-                                                    log.error("【未读消息推送异常】ID：{}，异常信息：{}", receiverId, e.getMessage(), e);
-                                                    // 异常不阻断后续流程，仅打印日志
-                                                }
-
-                                                // ======================================
-                                                // 【改造后】离线消息（offline_msg）指定会话精准推送逻辑
-                                                // 核心：绑定业务sessionId，按「接收者ID+sessionId+未推送」精准查询/推送/标记
-                                                // ======================================
-                                                // 1. 从通道获取绑定的业务sessionId（和chat_message未读消息用同一个，保证会话统一）
-                                                String bindSessionId = channel.attr(NettyConstant.SESSION_ID_KEY).get();
-                                                // 2. 构建查询参数：新增sessionId过滤，仅查当前会话的未推送离线消息
-                                                OfflineMsgQueryParam queryParam = new OfflineMsgQueryParam();
-                                                queryParam.setServiceStaffId(receiverId); // 接收者ID（用户/客服）
-                                                queryParam.setSessionId(bindSessionId);   // 核心：指定业务会话ID，实现精准查询
-                                                queryParam.setIsPushed(0);                // 仅查询未推送的消息
-                                                List<OfflineMsgVO> offlineMsgList = offlineMsgService.getOfflineMsgList(queryParam);
-
-                                                if (!CollectionUtils.isEmpty(offlineMsgList)) {
-                                                    for (OfflineMsgVO offlineMsgVO : offlineMsgList) {
-                                                        // 构建WebSocket消息并推送：新增设置sessionId，前端可识别所属会话
-                                                        WebSocketMsgVO wsMsg = new WebSocketMsgVO();
-                                                        wsMsg.setMsgType(offlineMsgVO.getMsgType());
-                                                        wsMsg.setMsgContent(offlineMsgVO.getMsgContent());
-                                                        wsMsg.setReceiverId(offlineMsgVO.getServiceStaffId());
-                                                        wsMsg.setSessionId(offlineMsgVO.getSessionId()); // 关键：传递会话ID给前端
-                                                        channel.writeAndFlush(new TextWebSocketFrame(JSON.toJSONString(wsMsg)));
-                                                    }
-                                                    // 3. 标记已推送：调用带「接收者ID+sessionId」的方法，精准标记当前会话的消息
-                                                    offlineMsgService.markOfflineMsgAsPushed(receiverId, bindSessionId);
-                                                    // 优化日志：添加sessionId，便于调试和问题排查
-                                                    log.info("【离线消息补偿推送成功】ID：{}，连接类型：{}，会话ID：{}，共推送{}条离线消息",
-                                                            receiverId, senderType, bindSessionId, offlineMsgList.size());
-                                                } else {
-                                                    // 无消息时也打印sessionId，日志更完整
-                                                    log.info("【离线消息查询】ID：{}，连接类型：{}，会话ID：{}，无offline_msg未读消息",
-                                                            receiverId, senderType, bindSessionId);
-                                                }
-                                            } else {
-                                                log.error("【会话注册失败】通道ID：{}，URI格式错误：{}", channelId, uri);
-                                            }
-
-                                            // 优化：清理无用HTTP处理器（添加存在性判断+异常捕获，避免NoSuchElementException）
-                                            try {
-                                                if (ctx.pipeline().get(HttpServerCodec.class) != null) {
-                                                    ctx.pipeline().remove(HttpServerCodec.class);
-                                                } else {
-                                                    log.warn("【处理器清理】通道ID：{}，HttpServerCodec 已不存在，无需移除", channelId);
-                                                }
-
-                                                if (ctx.pipeline().get(HttpObjectAggregator.class) != null) {
-                                                    ctx.pipeline().remove(HttpObjectAggregator.class);
-                                                } else {
-                                                    log.warn("【处理器清理】通道ID：{}，HttpObjectAggregator 已不存在，无需移除", channelId);
-                                                }
-
-                                                if (ctx.pipeline().get(ChunkedWriteHandler.class) != null) {
-                                                    ctx.pipeline().remove(ChunkedWriteHandler.class);
-                                                } else {
-                                                    log.warn("【处理器清理】通道ID：{}，ChunkedWriteHandler 已不存在，无需移除", channelId);
-                                                }
-                                            } catch (Exception e) {
-                                                log.warn("【处理器清理】通道ID：{}，清理HTTP处理器出现意外异常，不影响后续通信", channelId, e);
-                                            }
-
-                                            // 移除当前事件监听器（仅需执行一次，避免重复监听）
-                                            ctx.pipeline().remove(this);
-                                            return;
-                                        }
-
-                                        // 其他事件，正常传递
-                                        super.userEventTriggered(ctx, evt);
-                                    }
-                                });
-
-                                // ===== 5. 自定义编解码器（必须在协议升级后）=====
-                                pipeline.addLast(new WebSocketMsgCodec());
-
-                                // ===== 6. 业务处理器（最后加，已优化完成）=====
-                                pipeline.addLast(new NettyWebSocketServerHandler());
-
-                                log.info("【通道初始化完成】通道ID：{}，处理器链路：{}", channelId, pipeline.names());
+                                // 阻塞监控标记（只记录正在处理的通道，不处理数据），HTTP编解码紧随其后，其后为售后WebSocket处理链
+                                ch.pipeline().addLast(eventLoopWatchdog.marker());
+                                ch.pipeline().addLast(new HttpServerCodec());
+                                initWebSocketPipeline(ch);
                             }
                         });
 
                 // 绑定端口
-                serverFuture = bootstrap.bind(port).sync();
+                serverChannels = nettyTransportFactory.bind(bootstrap, transportOptions);
+                drainCoordinator.registerAcceptors(serverChannels);
                 log.info("=====================================");
                 log.info("Netty WebSocket服务启动成功");
-                log.info("端口：{}", port);
-                log.info("WebSocket路径：/newspaper/websocket");
+                log.info("端口：{}，传输层：{}，Acceptor数：{}", port, nettyTransportFactory.transportName(), serverChannels.size());
+                log.info("WebSocket路径：{}", WS_BASE_PATH);
                 log.info("=====================================");
 
                 // 阻塞等待服务关闭
-                serverFuture.channel().closeFuture().sync();
+                for (Channel serverChannel : serverChannels) {
+                    serverChannel.closeFuture().sync();
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 log.error("Netty服务启动失败：{}", e.getMessage(), e);
@@ -369,26 +234,273 @@ public class NettyWebSocketServer {
         }, "Netty-WebSocket-Server-Thread").start();
     }
 
-    // 新增：极简解析URI中query参数里的sessionId（只解析sessionId，最小化改动）
-    private String parseSessionIdFromUri(String uri) {
-        if (uri == null || !uri.contains("?sessionId=")) {
-            return null;
+    /**
+     * 售后WebSocket处理链（HttpServerCodec之后的全部处理器）
+     * 独立端口模式由本类的ServerBootstrap调用；统一网关模式由NettyWebSocketGateway按路径路由后调用
+     */
+    public void initWebSocketPipeline(Channel ch) {
+        ChannelPipeline pipeline = ch.pipeline();
+        String channelId = ch.id().asShortText();
+        log.info("【通道初始化】通道ID：{}", channelId);
+
+        // ===== 0. flush合并（位于链路最前端，合并同一轮读/短时间内的多次flush为一次系统调用）=====
+        outboundQueueManager.installFlushConsolidation(pipeline);
+
+        // ===== 0.1 握手准入：按客户端IP限速，超限返回429，不进入协议升级 =====
+        pipeline.addLast(admissionControl.newHandshakeGuard());
+
+        // ===== 1. 握手阶段（精简）：统计耗时/字节 + 小上限聚合（握手GET无请求体，不再预留64MB）=====
+        HandshakeStatsHandler handshakeStats = handshakeStage.newStatsHandler();
+        pipeline.addLast(handshakeStats);
+        pipeline.addLast(handshakeStage.newAggregator());
+
+        // ===== 2. 心跳检测：只记录最后读时间（位于WebSocket协议处理器之前，Ping/Pong同样计入），由共享时间轮判定超时 =====
+        pipeline.addLast(idleSweeper.newTracker(idleTimeout));
+
+        // ===== 2.1 permessage-deflate压缩协商（需位于协议处理器之前）=====
+        compressionStage.install(pipeline);
+
+        // ===== 2.2 心跳/关闭帧审计（需位于协议处理器之前：Ping/Pong/Close由协议处理器消费，不会传到编解码器）=====
+        auditLog.installControlFrameRecorder(pipeline);
+
+        // ===== 3. WebSocket 协议升级（前缀匹配路径，忽略receiverId与查询参数；含握手超时）=====
+        pipeline.addLast("webSocketProtocolHandler", handshakeStage.newProtocolHandler(WS_BASE_PATH));
+
+        // ===== 3.1 流量抓包（开启时安装，只旁路记录解码后的数据帧）=====
+        trafficCapture.install(pipeline, RelayScope.AFTER_SALE);
+
+        // ===== 4. 握手完成监听：URI直接取自HandshakeComplete事件，不再单独捕获 =====
+        pipeline.addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+                // 仅捕获握手完成事件
+                if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+                    long costNanos = handshakeStats.complete();
+                    idleSweeper.track(ctx.channel());
+                    log.info("【协议升级】通道ID：{}，WebSocket握手成功，耗时：{}μs，请求字节数：{}",
+                            channelId, TimeUnit.NANOSECONDS.toMicros(costNanos), handshakeStats.getRequestBytes());
+
+                    // 解析纯净ID（通用化：支持用户/客服，不再限定为客服）
+                    Channel channel = ctx.channel();
+                    String uri = ((WebSocketServerProtocolHandler.HandshakeComplete) evt).requestUri();
+                    String receiverId = URI_PARSER.parseReceiverId(uri);
+                    if (receiverId != null) {
+                        // ======================================
+                        // 新增：核心校验（售后专属！receiverId必须以LYQY_USER_/LYQY_CS_开头）
+                        // 拦截错误的receiverId，避免后续拼接/日志/业务逻辑出错
+                        if (!receiverId.startsWith("LYQY_USER_") && !receiverId.startsWith("LYQY_CS_")) {
+                            log.error("【会话注册失败】通道ID：{}，售后receiverId格式错误！必须以LYQY_USER_/LYQY_CS_开头，当前错误receiverId：{}，请检查前端WebSocket URL", channelId, receiverId);
+                            ctx.channel().close(); // 直接关闭通道，避免无效连接
+                            return;
+                        }
+                        // ======================================
+
+                        // ===== 新增：解析前端传入的sessionId（业务会话ID）+ 基础校验 =====
+                        String sessionId = URI_PARSER.parseSessionId(uri);
+                        if (sessionId == null || sessionId.trim().isEmpty()) {
+                            log.error("【会话注册失败】通道ID：{}，未传入sessionId参数，URI：{}", channelId, uri);
+                            ctx.channel().close(); // 售后必须传sessionId，不传直接关闭通道
+                            return;
+                        }
+
+                        // 会话归属其他节点：推送重定向提示后关闭，不注册（客户端按提示重连到归属节点）
+                        String placementTarget = sessionPlacement.redirectTarget(sessionId, "1".equals(URI_PARSER.parseQueryParam(uri, "placed")));
+                        if (placementTarget != null) {
+                            sessionPlacement.redirect(channel, receiverId, sessionId, placementTarget);
+                            return;
+                        }
+
+                        // ======================================
+                        // 连接上下文：一次性保存receiverId、发送者类型（按ID前缀区分用户/客服：LYQY_USER_ / LYQY_CS_）、
+                        // 权限校验ID与协商的子协议，后续消息处理只需一次属性查找
+                        ConnectionContext context = ConnectionContext.bind(channel, RelayScope.AFTER_SALE, receiverId, sessionId,
+                                ((WebSocketServerProtocolHandler.HandshakeComplete) evt).selectedSubprotocol());
+                        String senderType = context.getSenderType().code();
+                        // ======================================
+                        // 注册到在线注册表（绑定sessionId/receiverId属性，维护receiverId与sessionId两级索引），供后续消息转发使用
+                        // 同一ID的已有连接（其他标签页/设备）保留，不再被新连接替换
+                        int connections = NettyWebSocketServerHandler.RECEIVER_REGISTRY.register(receiverId, sessionId, channel);
+                        if (connections > 0) {
+                            presenceService.connected(RelayScope.AFTER_SALE, receiverId);
+                            // 节点目录登记：其他节点发给该ID的消息转发到本节点
+                            messageRelay.online(RelayScope.AFTER_SALE, receiverId);
+                        }
+                        // 摘流期间完成握手的连接同样分散重连到其他节点
+                        drainCoordinator.onRegistered(channel, RelayScope.AFTER_SALE, receiverId);
+
+                        // 优化日志：打印sessionId，便于调试（可选，建议加）
+                        log.info("【会话注册成功】通道ID：{}，ID：{}，连接类型：{}，业务sessionId：{}，已加入在线映射表，该ID连接数：{}",
+                                channelId, receiverId, senderType, sessionId, connections);
+
+                        // ======================================
+                        // 未读消息 + 离线消息补偿推送：涉及MariaDB查询，提交到业务线程池执行，不阻塞EventLoop
+                        // ======================================
+                        final String replayReceiverId = receiverId;
+                        final String replaySenderType = senderType;
+                        boolean accepted = nettyBusinessExecutor.submit(channel,
+                                () -> replayUnreadAndOfflineMessages(channel, replayReceiverId, replaySenderType));
+                        if (!accepted) {
+                            // 队列已满：本次不补偿，消息仍为未读/未推送状态，下次握手或调用重连接口时会再次补偿
+                            log.warn("【补偿推送拒绝】业务线程池队列已满，ID：{}，会话ID：{}，当前排队任务数：{}",
+                                    receiverId, sessionId, nettyBusinessExecutor.queueDepth());
+                        }
+                    } else {
+                        log.error("【会话注册失败】通道ID：{}，URI格式错误：{}", channelId, uri);
+                    }
+
+                    // HttpServerCodec/HttpObjectAggregator已由Netty握手器在升级成功时移除，这里只需摘除握手统计处理器
+                    ctx.pipeline().remove(handshakeStats);
+
+                    // 移除当前事件监听器（仅需执行一次，避免重复监听）
+                    ctx.pipeline().remove(this);
+                    return;
+                }
+
+                // 其他事件，正常传递
+                super.userEventTriggered(ctx, evt);
+            }
+        });
+
+        // ===== 5. 有界出站队列（通道不可写时暂存，恢复可写后排空；溢出/关闭时转离线存储）=====
+        pipeline.addLast("outboundQueue", outboundQueueManager.newHandler());
+
+        // ===== 6. 自定义编解码器（必须在协议升级后）=====
+        pipeline.addLast(new WebSocketMsgCodec());
+
+        // ===== 6.1 消息准入：按连接/receiverId限速 + 全局并发上限，超限回送SYSTEM_RATE_LIMITED错误帧 =====
+        pipeline.addLast(admissionControl.newMessageGuard(RelayScope.AFTER_SALE));
+
+        // ===== 7. 业务处理器（最后加，已优化完成）=====
+        pipeline.addLast(new NettyWebSocketServerHandler(auditLog));
+
+        log.info("【通道初始化完成】通道ID：{}，处理器链路：{}", channelId, pipeline.names());
+    }
+
+    /**
+     * 握手成功后的未读消息（chat_message）+ 离线消息（offline_msg）补偿推送
+     * 运行在业务线程池中（含数据库查询），消息统一切回通道EventLoop写出
+     */
+    private void replayUnreadAndOfflineMessages(Channel channel, String receiverId, String senderType) {
+        if (!channel.isActive()) {
+            log.info("【补偿推送跳过】通道已关闭，ID：{}", receiverId);
+            return;
         }
-        // 截取?后的部分，按&分割，找到sessionId=xxx的片段
-        String paramPart = uri.substring(uri.indexOf("?") + 1);
-        String[] paramPairs = paramPart.split("&");
-        for (String pair : paramPairs) {
-            if (pair.startsWith("sessionId=")) {
-                return pair.substring("sessionId=".length()).trim();
+        try {
+            // 1. 通过SpringContextUtil获取ChatMessageService Bean（Netty非Spring管理，需手动获取）
+            ChatMessageService chatMessageService = SpringContextUtil.getBean(ChatMessageService.class);
+
+            String authReceiverId = ConnectionContext.AUTH_PREFIX + receiverId;
+            String authSessionId = channel.attr(NettyConstant.SESSION_ID_KEY).get();
+            // 修正日志名称，避免误导
+            log.info("【未读消息推送准备】拼接后的authReceiverId：{}，业务sessionId：{}，原始发送者ID：{}", authReceiverId, authSessionId, receiverId);
+
+            // 2. 调用方法查询该接收方的未读消息
+            Result<List<ChatMessageVO>> unreadResult = chatMessageService.getUnreadMessageListBySessionId(authSessionId, authReceiverId);
+
+            // 3. 校验查询结果，非空才推送
+            if (unreadResult != null && unreadResult.isSuccess() && !CollectionUtils.isEmpty(unreadResult.getData())) {
+                List<ChatMessageVO> unreadMsgList = unreadResult.getData();
+                log.info("【未读消息推送准备】ID：{}，连接类型：{}，找到{}条chat_message未读消息",
+                        receiverId, senderType, unreadMsgList.size());
+
+                // 4. 遍历封装为WebSocketMsgVO，切回EventLoop批量推送给当前通道（只flush一次）
+                List<WebSocketMsgVO> messages = new ArrayList<>(unreadMsgList.size());
+                for (ChatMessageVO unreadMsg : unreadMsgList) {
+                    WebSocketMsgVO wsMsg = new WebSocketMsgVO();
+                    wsMsg.setAttachmentPath(unreadMsg.getAttachmentPath()); // 附件路径（多张用逗号分隔）
+                    wsMsg.setReceiverId(unreadMsg.getReceiverId()); // 接收方ID（自身）
+                    wsMsg.setUserId(unreadMsg.getSenderId()); // 发送方ID（消息原发送者）
+                    wsMsg.setMsgContent(unreadMsg.getContent()); // 消息内容
+                    wsMsg.setMsgType(unreadMsg.getMsgType()); // 消息类型
+                    wsMsg.setSessionId(unreadMsg.getSessionId()); // 会话ID
+                    wsMsg.setSendTime(unreadMsg.getSendTime()); // 消息发送时间
+                    wsMsg.setSenderType(unreadMsg.getSenderType()); // 发送者类型（USER/CS/SYSTEM）
+                    messages.add(wsMsg);
+                }
+                // 降级：消息仍为chat_message未读，下次重连握手或调用重连接口时补偿推送
+                replayBatchWriter.replay(channel, messages, msg -> log.info(
+                        "【未读消息推送降级】ID：{}，会话ID：{}，消息保留为未读", receiverId, msg.getSessionId()));
+
+                log.info("【未读消息推送完成】ID：{}，连接类型：{}，成功推送{}条chat_message未读消息",
+                        receiverId, senderType, unreadMsgList.size());
+            } else {
+                log.info("【未读消息查询】ID：{}，无chat_message未读消息", receiverId);
             }
+        } catch (Exception e) {
+            log.error("【未读消息推送异常】ID：{}，异常信息：{}", receiverId, e.getMessage(), e);
+            // 异常不阻断后续流程，仅打印日志
         }
-        return null;
+
+        // ======================================
+        // 【改造后】离线消息（offline_msg）指定会话精准推送逻辑
+        // 核心：绑定业务sessionId，按「接收者ID+sessionId+未推送」精准查询/推送/标记
+        // ======================================
+        try {
+            // 1. 从通道获取绑定的业务sessionId（和chat_message未读消息用同一个，保证会话统一）
+            String bindSessionId = channel.attr(NettyConstant.SESSION_ID_KEY).get();
+            // 2. 构建查询参数：新增sessionId过滤，仅查当前会话的未推送离线消息
+            OfflineMsgQueryParam queryParam = new OfflineMsgQueryParam();
+            queryParam.setServiceStaffId(receiverId); // 接收者ID（用户/客服）
+            queryParam.setSessionId(bindSessionId);   // 核心：指定业务会话ID，实现精准查询
+            queryParam.setIsPushed(0);                // 仅查询未推送的消息
+            List<OfflineMsgVO> offlineMsgList = offlineMsgService.getOfflineMsgList(queryParam);
+
+            if (!CollectionUtils.isEmpty(offlineMsgList)) {
+                List<WebSocketMsgVO> messages = new ArrayList<>(offlineMsgList.size());
+                Map<WebSocketMsgVO, OfflineMsgVO> sources = new IdentityHashMap<>(offlineMsgList.size());
+                for (OfflineMsgVO offlineMsgVO : offlineMsgList) {
+                    // 构建WebSocket消息并推送：新增设置sessionId，前端可识别所属会话
+                    WebSocketMsgVO wsMsg = new WebSocketMsgVO();
+                    wsMsg.setMsgType(offlineMsgVO.getMsgType());
+                    wsMsg.setMsgContent(offlineMsgVO.getMsgContent());
+                    wsMsg.setReceiverId(offlineMsgVO.getServiceStaffId());
+                    wsMsg.setSessionId(offlineMsgVO.getSessionId()); // 关键：传递会话ID给前端
+                    messages.add(wsMsg);
+                    sources.put(wsMsg, offlineMsgVO);
+                }
+                // 3. 先标记已推送：调用带「接收者ID+sessionId」的方法，精准标记当前会话的消息
+                //    （出站队列溢出/通道关闭的消息由降级回调重新写入离线表，标记在推送之前，避免重新写入的消息被一并标记）
+                offlineMsgService.markOfflineMsgAsPushed(receiverId, bindSessionId);
+                replayBatchWriter.replay(channel, messages, wsMsg -> {
+                    OfflineMsgVO retry = sources.get(wsMsg);
+                    retry.setId(null);
+                    retry.setIsPushed(0);
+                    offlineMsgService.saveOfflineMsg(retry);
+                });
+                // 优化日志：添加sessionId，便于调试和问题排查
+                log.info("【离线消息补偿推送成功】ID：{}，连接类型：{}，会话ID：{}，共推送{}条离线消息",
+                        receiverId, senderType, bindSessionId, offlineMsgList.size());
+            } else {
+                // 无消息时也打印sessionId，日志更完整
+                log.info("【离线消息查询】ID：{}，连接类型：{}，会话ID：{}，无offline_msg未读消息",
+                        receiverId, senderType, bindSessionId);
+            }
+        } catch (Exception e) {
+            log.error("【离线消息补偿推送异常】ID：{}，异常信息：{}", receiverId, e.getMessage(), e);
+        }
+    }
+
+    private NettyTransportOptions buildTransportOptions() {
+        NettyTransportOptions options = new NettyTransportOptions();
+        options.setServerName("售后WebSocket");
+        options.setPort(port);
+        options.setBossThreadCount(bossThreadCount);
+        options.setWorkerThreadCount(workerThreadCount);
+        options.setAcceptorCount(acceptorCount);
+        options.setSoBacklog(soBacklog);
+        options.setSoKeepalive(soKeepalive);
+        options.setTcpNodelay(tcpNodelay);
+        options.setWriteBufferLowWaterMark(writeBufferLowWaterMark);
+        options.setWriteBufferHighWaterMark(writeBufferHighWaterMark);
+        options.setPooledAllocator(pooledAllocator);
+        return options;
     }
 
     @PreDestroy
     public void stop() {
-        if (serverFuture != null) {
-            serverFuture.channel().close().syncUninterruptibly();
+        drainCoordinator.drainOnShutdown();
+        for (Channel serverChannel : serverChannels) {
+            serverChannel.close().syncUninterruptibly();
         }
         if (bossGroup != null) {
             bossGroup.shutdownGracefully();
@@ -1,7 +1,17 @@
 package com.yqrb.netty;
 
-import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.admission.AdmissionControl;
+import com.yqrb.netty.audit.AuditEventType;
+import com.yqrb.netty.audit.AuditLog;
+import com.yqrb.netty.codec.EncodedMessage;
 import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.executor.SessionLaneExecutor;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.registry.ConnectionRegistry;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayScope;
 import com.yqrb.pojo.vo.ChatMessageVO;
 import com.yqrb.pojo.vo.Result;
 import com.yqrb.pojo.vo.WebSocketMsgVO;
@@ -9,11 +19,9 @@ import com.yqrb.service.ChatMessageService;
 import com.yqrb.util.SpringContextUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.concurrent.GlobalEventExecutor;
@@ -21,8 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 
 /**
  * 修复：调整URI解析时机，解决channelActive中URI为null的问题
@@ -30,13 +37,23 @@ import java.util.concurrent.ConcurrentHashMap;
  * 新增：保留消息自定义sessionId，仅为空时用通道自身ID兜底
  * 补充：保留消息自定义senderType，仅为空时用通道属性兜底
  * 核心修复：所有获取通道自身ID的地方，替换为正确的NettyConstant.RECEIVER_ID_KEY
+ * 连接信息（通道自身ID、发送者类型、权限校验ID）统一从ConnectionContext读取，握手时创建
  */
 public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<WebSocketMsgVO> {
     // 注入SLF4J日志对象（统一日志风格）
     private static final Logger logger = LoggerFactory.getLogger(NettyWebSocketServerHandler.class);
 
     private static final ChannelGroup ONLINE_CHANNELS = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
-    public static final Map<String, Channel> RECEIVER_CHANNEL_MAP = new ConcurrentHashMap<>();
+    // 售后在线连接注册表：receiverId -> 通道集合（多标签页/多设备），sessionId -> 通道集合
+    public static final ConnectionRegistry RECEIVER_REGISTRY =
+            new ConnectionRegistry(NettyConstant.RECEIVER_ID_KEY, NettyConstant.SESSION_ID_KEY);
+
+    // 审计日志：逐条消息的接收/转发只入队异步落盘，不再输出INFO日志
+    private final AuditLog auditLog;
+
+    public NettyWebSocketServerHandler(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
 
     // ===== 核心修复：不在channelActive中解析URI，改为首次接收消息时解析 =====
     @Override
@@ -53,27 +70,23 @@ public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<Web
         String channelId = channel.id().asShortText();
         ONLINE_CHANNELS.remove(channel);
 
-        // 优化：高并发下更安全的清理逻辑，添加清理结果日志
-        String removedReceiverId = null;
-        synchronized (RECEIVER_CHANNEL_MAP) {
-            for (Map.Entry<String, Channel> entry : RECEIVER_CHANNEL_MAP.entrySet()) {
-                if (entry.getValue().equals(channel)) {
-                    removedReceiverId = entry.getKey();
-                    RECEIVER_CHANNEL_MAP.remove(removedReceiverId);
-                    break;
-                }
-            }
+        // 按通道自身receiverId注销（同时移除sessionId索引），无需遍历全部连接
+        String removedReceiverId = RECEIVER_REGISTRY.unregister(channel);
+        if (removedReceiverId != null) {
+            SpringContextUtil.getBean(PresenceService.class).disconnected(RelayScope.AFTER_SALE, removedReceiverId);
+            // 多节点：该接收者在本节点已无连接时释放节点目录租约（由中继线程按注册表确认）
+            SpringContextUtil.getBean(MessageRelay.class).offline(RelayScope.AFTER_SALE, removedReceiverId);
         }
 
         // 优化：打印清理结果，便于排查问题
         if (removedReceiverId != null) {
             logger.info("【客户端离线】通道ID：{}，被移除的接收者ID：{}", channelId, removedReceiverId);
         } else {
-            logger.warn("【客户端离线】通道ID：{}，未在RECEIVER_CHANNEL_MAP中找到对应记录", channelId);
+            logger.warn("【客户端离线】通道ID：{}，未在在线注册表中找到对应记录（未完成握手）", channelId);
         }
 
-        // ✅ 修复：替换为RECEIVER_ID_KEY（通道自身ID存在该KEY中）
-        String channelSelfId = channel.attr(NettyConstant.RECEIVER_ID_KEY).get();
+        // 通道自身ID取自连接上下文（未完成握手为null）
+        String channelSelfId = ConnectionContext.receiverIdOf(channel);
         logger.info("【客户端断开】通道ID：{}，通道自身ID：{}，在线人数：{}",
                 channelId,
                 (channelSelfId == null ? "未知" : channelSelfId),
@@ -87,8 +100,7 @@ public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<Web
             if (idleEvent.state() == IdleState.READER_IDLE) {
                 Channel channel = ctx.channel();
                 String channelId = channel.id().asShortText();
-                // ✅ 修复：替换为RECEIVER_ID_KEY（通道自身ID存在该KEY中）
-                String channelSelfId = channel.attr(NettyConstant.RECEIVER_ID_KEY).get();
+                String channelSelfId = ConnectionContext.receiverIdOf(channel);
                 logger.info("【客户端超时】通道ID：{}，通道自身ID：{}", channelId, (channelSelfId == null ? "未知" : channelSelfId));
                 channel.close();
                 return;
@@ -102,25 +114,22 @@ public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<Web
     protected void channelRead0(ChannelHandlerContext ctx, WebSocketMsgVO webSocketMsg) throws Exception {
         Channel currentChannel = ctx.channel();
         String channelId = currentChannel.id().asShortText();
-        // ✅ 修复：替换为RECEIVER_ID_KEY（通道自身ID存在该KEY中，这是权限校验失败的核心根因）
-        String channelSelfId = currentChannel.attr(NettyConstant.RECEIVER_ID_KEY).get();
-        String channelSenderType = currentChannel.attr(NettyConstant.SENDER_TYPE_KEY).get();
-
-        // 优化：日志区分「通道自身ID」、「通道绑定senderType」和「消息自定义值」
-        logger.info("=====================================");
-        logger.info("【消息接收成功】通道ID：{}", channelId);
-        logger.info("通道自身ID（客服/用户ID）：{}", (channelSelfId == null ? "未知" : channelSelfId));
-        logger.info("通道绑定senderType：{}", (channelSenderType == null ? "未知" : channelSenderType));
-        logger.info("消息自带sessionId（自定义）：{}", (webSocketMsg.getSessionId() == null ? "未知" : webSocketMsg.getSessionId()));
-        logger.info("消息自带senderType（自定义）：{}", (webSocketMsg.getSenderType() == null ? "未知" : webSocketMsg.getSenderType()));
-        logger.info("消息内容：{}", JSON.toJSONString(webSocketMsg));
-        logger.info("=====================================");
+        // 连接上下文：一次查找取得通道自身ID、发送者类型与权限校验ID（握手时创建）
+        ConnectionContext context = ConnectionContext.of(currentChannel);
+        String channelSelfId = context == null ? null : context.getReceiverId();
+        String channelSenderType = context == null ? null : context.getSenderType().code();
+
+        // 审计：通道自身ID、消息自带sessionId、消息类型（完整消息内容见DEBUG日志）
+        auditLog.record(AuditEventType.MESSAGE_IN, currentChannel, channelSelfId, webSocketMsg.getSessionId(),
+                webSocketMsg.getMsgContent() == null ? 0 : webSocketMsg.getMsgContent().length(), webSocketMsg.getMsgType());
+        logger.debug("【消息接收成功】通道ID：{}，通道绑定senderType：{}，消息内容：{}", channelId, channelSenderType, webSocketMsg);
 
         // 校验：通道自身ID非空（确保会话已注册）
-        if (channelSelfId == null) {
+        if (context == null) {
             logger.error("【消息处理失败】通道未注册自身ID，通道ID：{}", channelId);
             return;
         }
+        context.recordInbound(webSocketMsg.getMsgContent() == null ? 0 : webSocketMsg.getMsgContent().length());
 
         String receiverId = webSocketMsg.getReceiverId();
         if (receiverId == null || receiverId.trim().isEmpty()) {
@@ -138,10 +147,7 @@ public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<Web
             return;
         }
 
-        // 补全消息默认值（核心：优先保留消息自定义值，仅为空时兜底）
-        if (webSocketMsg.getSendTime() == null) {
-            webSocketMsg.setSendTime(new Date());
-        }
+        // 补全消息默认值（核心：优先保留消息自定义值，仅为空时兜底；sendTime在会话车道上生成）
         if (webSocketMsg.getMsgType() == null) {
             webSocketMsg.setMsgType(WebSocketMsgVO.MSG_TYPE_TEXT);
         }
@@ -156,6 +162,33 @@ public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<Web
             logger.warn("【消息补全】消息无自定义senderType，使用通道绑定类型兜底：{}", webSocketMsg.getSenderType());
         }
 
+        // 持久化与转发交给会话车道：同一sessionId的消息（用户端/客服端来自不同EventLoop）严格按序执行，
+        // 不再占用EventLoop；准入控制的并发名额随任务转交，执行完毕后归还
+        AdmissionControl admissionControl = SpringContextUtil.getBean(AdmissionControl.class);
+        Runnable releasePermit = admissionControl.deferInFlight();
+        boolean queued = SpringContextUtil.getBean(SessionLaneExecutor.class).submit(webSocketMsg.getSessionId(), () -> {
+            try {
+                persistAndForward(webSocketMsg, context, channelId);
+            } finally {
+                releasePermit.run();
+            }
+        });
+        if (!queued) {
+            releasePermit.run();
+            logger.error("【消息处理失败】会话车道队列已满，消息丢弃，通道ID：{}，会话ID：{}", channelId, webSocketMsg.getSessionId());
+            admissionControl.rejectBusy(currentChannel, RelayScope.AFTER_SALE, channelSelfId);
+        }
+    }
+
+    /**
+     * 持久化并转发（会话车道线程执行，同一会话串行）
+     */
+    private void persistAndForward(WebSocketMsgVO webSocketMsg, ConnectionContext context, String channelId) {
+        // 发送时间在车道上生成，与同一会话的持久化顺序一致
+        if (webSocketMsg.getSendTime() == null) {
+            webSocketMsg.setSendTime(new Date());
+        }
+
         // ======================================
         // 【新增核心代码】：调用ChatMessageService，持久化消息到chat_message表
         // ======================================
@@ -163,17 +196,17 @@ public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<Web
             // 1. 通过SpringContextUtil获取ChatMessageService Bean（关键：Netty Handler非Spring管理）
             ChatMessageService chatMessageService = SpringContextUtil.getBean(ChatMessageService.class);
 
-            // 2. 确定权限校验用的ReceiverId（即当前连接的用户ID：channelSelfId，对应你的Controller请求头ReceiverId）
-            String authReceiverId = "R_FIXED_0000_"+channelSelfId;
+            // 2. 权限校验用的ReceiverId（即当前连接的用户ID加固定前缀，对应Controller请求头ReceiverId），握手时已拼好
+            String authReceiverId = context.getAuthReceiverId();
             // 修正日志名称，避免误导
-            logger.info("【权限校验准备】拼接后的authReceiverId：{}，原始发送者ID：{}", authReceiverId, channelSelfId);
+            logger.debug("【权限校验准备】拼接后的authReceiverId：{}，原始发送者ID：{}", authReceiverId, context.getReceiverId());
 
             // 3. 调用业务层sendMessage方法，完成持久化
             Result<ChatMessageVO> persistResult = chatMessageService.sendMessage(webSocketMsg, authReceiverId);
 
             // 4. 持久化结果日志（成功/失败区分）
             if (persistResult != null && persistResult.isSuccess()) {
-                logger.info("【消息持久化成功】通道ID：{}，消息ID：{}，会话ID：{}",
+                logger.debug("【消息持久化成功】通道ID：{}，消息ID：{}，会话ID：{}",
                         channelId, persistResult.getData().getMsgId(), webSocketMsg.getSessionId());
             } else {
                 String errorMsg = persistResult == null ? "持久化返回结果为空" : persistResult.getMsg();
@@ -188,19 +221,15 @@ public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<Web
         // 转发消息（此时sessionId和senderType均已补全，且保留了消息自定义值）
         forwardMessage(webSocketMsg);
 
-        // 非空判断，避免空指针，打印最终结果
-        String userId = webSocketMsg.getUserId() == null ? "未知" : webSocketMsg.getUserId();
-        String msgContent = webSocketMsg.getMsgContent() == null ? "无内容" : webSocketMsg.getMsgContent();
-        logger.info("【消息处理完成】发送者：{}，发送者类型：{}，接收者：{}，内容：{}，最终sessionId：{}",
-                userId, webSocketMsg.getSenderType(), receiverId, msgContent, webSocketMsg.getSessionId());
+        logger.debug("【消息处理完成】发送者：{}，发送者类型：{}，接收者：{}，最终sessionId：{}",
+                webSocketMsg.getUserId(), webSocketMsg.getSenderType(), webSocketMsg.getReceiverId(), webSocketMsg.getSessionId());
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         Channel channel = ctx.channel();
         String channelId = channel.id().asShortText();
-        // ✅ 修复：替换为RECEIVER_ID_KEY（通道自身ID存在该KEY中）
-        String channelSelfId = channel.attr(NettyConstant.RECEIVER_ID_KEY).get();
+        String channelSelfId = ConnectionContext.receiverIdOf(channel);
         logger.error("【通道异常】通道ID：{}，通道自身ID：{}，异常原因：{}",
                 channelId,
                 (channelSelfId == null ? "未知" : channelSelfId),
@@ -209,84 +238,62 @@ public class NettyWebSocketServerHandler extends SimpleChannelInboundHandler<Web
         channel.close();
     }
 
-    /**
-     * 新增：绑定会话信息到Channel（会话建立时调用，使用公共常量类）
-     * @param ctx 通道上下文
-     * @param sessionId 会话ID
-     * @param receiverId 接收者ID（客服/用户）
-     */
-    private void bindSessionInfo(ChannelHandlerContext ctx, String sessionId, String receiverId) {
-        Channel channel = ctx.channel();
-        // 1. 绑定sessionId到Channel属性（使用公共常量类）
-        channel.attr(NettyConstant.SESSION_ID_KEY).set(sessionId);
-        // 2. 绑定receiverId到Channel上下文（使用公共常量类）
-        channel.attr(NettyConstant.RECEIVER_ID_KEY).set(receiverId);
-        // 3. 绑定默认发送者类型（可选，补充完整）
-        channel.attr(NettyConstant.SENDER_TYPE_KEY).set(WebSocketMsgVO.SENDER_TYPE_USER);
-        // 4. 存入接收者-通道映射（高并发安全，先移除旧映射再新增）
-        if (receiverId != null && !receiverId.trim().isEmpty()) {
-            synchronized (RECEIVER_CHANNEL_MAP) {
-                // 移除该接收者对应的旧通道（避免重复映射）
-                RECEIVER_CHANNEL_MAP.remove(receiverId);
-                // 新增最新通道映射
-                RECEIVER_CHANNEL_MAP.put(receiverId, channel);
-            }
-            logger.info("【会话绑定成功】通道ID：{}，sessionId：{}，receiverId：{}",
-                    channel.id().asShortText(), sessionId, receiverId);
-        } else {
-            logger.error("【会话绑定失败】接收者ID为空，通道ID：{}", channel.id().asShortText());
-        }
-    }
-
     /**
      * 优化：增强消息转发健壮性 + 核心新增SESSION_ID强制校验（实现会话隔离）
-     * 关键规则：消息携带的sessionId 必须 == 接收者通道绑定的sessionId，才允许转发
+     * 关键规则：消息携带的sessionId 必须是接收者通道绑定的会话之一，才允许转发
+     * 多连接：接收者所有绑定了该会话的通道都会收到，消息只编码一次
+     * 多节点：接收者在其他节点的连接经MessageRelay转发，所有节点都没有可投递连接时才记为离线
      */
     private void forwardMessage(WebSocketMsgVO webSocketMsg) {
         String targetReceiverId = webSocketMsg.getReceiverId();
         String msgSessionId = webSocketMsg.getSessionId(); // 1. 获取消息携带的sessionId
-        Channel targetChannel = RECEIVER_CHANNEL_MAP.get(targetReceiverId);
-
-        // 原有健壮性判断：通道是否有效（保留）
-        if (targetChannel == null || !targetChannel.isOpen() || !targetChannel.isActive() || !targetChannel.isWritable()) {
-            logger.info("【消息转发失败】目标接收者离线或通道无效，接收者：{}，消息sessionId：{}",
-                    targetReceiverId, msgSessionId);
-            return;
-        }
 
         // ======================================
         // 核心新增：SESSION_ID 强制校验（会话隔离的关键！）
         // ======================================
-        // 2. 从接收者通道中获取其绑定的sessionId（握手时已存入channel.attr）
-        String channelBindSessionId = targetChannel.attr(NettyConstant.SESSION_ID_KEY).get();
-        // 3. 非空+一致性校验，不满足则直接拦截
-        if (channelBindSessionId == null || channelBindSessionId.trim().isEmpty()) {
-            logger.warn("【消息转发拦截】接收者通道未绑定sessionId，接收者：{}，消息sessionId：{}",
-                    targetReceiverId, msgSessionId);
-            return;
+        // 2. 只取接收者绑定了该sessionId的本地通道（握手/会话绑定时已写入会话标签），其余会话的连接不推送
+        List<Channel> targetChannels = RECEIVER_REGISTRY.getChannels(targetReceiverId, msgSessionId);
+        if (targetChannels.isEmpty() && RECEIVER_REGISTRY.getByReceiverId(targetReceiverId) != null) {
+            logger.warn("【消息转发拦截】跨会话消息，拒绝推送！接收者：{}，在线连接数：{}，消息携带sessionId：{}",
+                    targetReceiverId, RECEIVER_REGISTRY.getChannelsByReceiverId(targetReceiverId).size(), msgSessionId);
         }
-        if (!channelBindSessionId.equals(msgSessionId)) {
-            logger.warn("【消息转发拦截】跨会话消息，拒绝推送！接收者：{}，通道绑定sessionId：{}，消息携带sessionId：{}",
-                    targetReceiverId, channelBindSessionId, msgSessionId);
-            return;
+
+        // 3. 本节点投递（经出站队列，背压时暂存，恢复可写后按序写出；不再因暂时不可写判为离线）
+        if (!targetChannels.isEmpty()) {
+            try {
+                deliverLocal(targetChannels, webSocketMsg,
+                        // 降级：消息已持久化为chat_message未读，对方重连握手或调用重连接口时补偿推送
+                        () -> logger.info("【消息转发降级】接收者：{}，会话ID：{}，消息保留为未读，重连后补偿推送",
+                                targetReceiverId, msgSessionId));
+                for (Channel targetChannel : targetChannels) {
+                    auditLog.record(AuditEventType.MESSAGE_FORWARD, targetChannel, targetReceiverId, msgSessionId,
+                            0, webSocketMsg.getSenderType());
+                }
+            } catch (Exception e) {
+                logger.error("【消息转发失败】接收者：{}，会话ID：{}，编码/发送异常：{}",
+                        targetReceiverId, msgSessionId, e.getMessage(), e);
+            }
         }
 
-        // 所有校验通过：才执行消息转发（原有逻辑保留）
+        // 4. 其他节点（多实例部署）：经中继转发；本节点与其他节点都未投递时记为离线（消息已持久化为未读）
+        SpringContextUtil.getBean(MessageRelay.class).route(RelayScope.AFTER_SALE, targetReceiverId, msgSessionId, webSocketMsg,
+                targetChannels.isEmpty()
+                        ? () -> auditLog.record(AuditEventType.MESSAGE_OFFLINE, null, targetReceiverId, msgSessionId, 0, "RECEIVER_OFFLINE")
+                        : null);
+    }
+
+    /**
+     * 本节点投递：同一条消息只编码一次，写到给定的全部本地通道
+     * @param spill 全部通道都无法投递时的降级回调，可为null
+     */
+    public static void deliverLocal(List<Channel> channels, WebSocketMsgVO msg, Runnable spill) {
+        OutboundQueueManager outboundQueueManager = SpringContextUtil.getBean(OutboundQueueManager.class);
+        // 只序列化一次，每个通道写出的是共享内容的retainedDuplicate
+        EncodedMessage encoded = EncodedMessage.of(msg);
         try {
-            String jsonMsg = JSON.toJSONString(webSocketMsg);
-            targetChannel.writeAndFlush(new TextWebSocketFrame(jsonMsg))
-                    .addListener((ChannelFutureListener) future -> {
-                        if (future.isSuccess()) {
-                            logger.info("【消息转发成功】接收者：{}，会话ID：{}，发送者类型：{}",
-                                    targetReceiverId, channelBindSessionId, webSocketMsg.getSenderType());
-                        } else {
-                            logger.error("【消息转发失败】接收者：{}，会话ID：{}，异常原因：{}",
-                                    targetReceiverId, channelBindSessionId, future.cause().getMessage());
-                        }
-                    });
-        } catch (Exception e) {
-            logger.error("【消息转发失败】接收者：{}，会话ID：{}，编码/发送异常：{}",
-                    targetReceiverId, channelBindSessionId, e.getMessage(), e);
+            outboundQueueManager.deliverAll(channels, encoded, spill);
+        } finally {
+            encoded.release();
         }
     }
 }
\ No newline at end of file
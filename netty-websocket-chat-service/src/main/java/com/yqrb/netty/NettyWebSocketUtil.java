@@ -1,17 +1,29 @@
 package com.yqrb.netty;
 
-import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
 import io.netty.channel.Channel;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 
 /**
  * Netty WebSocket 工具类，提供通道查询、消息推送辅助方法
  */
 @Component
 public class NettyWebSocketUtil {
+    @Autowired
+    private MessageRelay messageRelay;
+
+    @Autowired
+    private PresenceService presenceService;
+
     /**
      * 根据 receiverId 获取对应的 WebSocket 通道
      */
@@ -19,32 +31,50 @@ public class NettyWebSocketUtil {
         if (receiverId == null || receiverId.trim().isEmpty()) {
             return null;
         }
-        return NettyWebSocketServerHandler.RECEIVER_CHANNEL_MAP.get(receiverId);
+        return NettyWebSocketServerHandler.RECEIVER_REGISTRY.getByReceiverId(receiverId);
+    }
+
+    /**
+     * 根据 receiverId 获取全部活跃通道（同一接收者可能有多个标签页/设备）
+     */
+    public List<Channel> getChannelsByReceiverId(String receiverId) {
+        if (receiverId == null || receiverId.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Channel> channels = new ArrayList<>();
+        for (Channel channel : NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannelsByReceiverId(receiverId)) {
+            if (channel.isActive()) {
+                channels.add(channel);
+            }
+        }
+        return channels;
     }
 
     /**
-     * 判断 receiverId 是否在线（有活跃通道）
+     * 判断 receiverId 是否在线（本节点在线状态取内存，其他节点查中继目录；暂时不可写由出站队列暂存，不视为离线）
      */
     public boolean isReceiverOnline(String receiverId) {
-        Channel channel = getChannelByReceiverId(receiverId);
-        return channel != null && channel.isActive() && channel.isWritable();
+        return presenceService.isOnline(RelayScope.AFTER_SALE, receiverId)
+                || messageRelay.isOnlineElsewhere(RelayScope.AFTER_SALE, receiverId);
+    }
+
+    /**
+     * 推送给接收者的全部连接（本节点直接投递，其他节点经中继转发）
+     * @param offline 本节点与其他节点都没有可投递连接、或本节点全部连接投递失败时的降级回调，可为null
+     */
+    public void pushToReceiver(WebSocketMsgVO msg, Runnable offline) {
+        List<Channel> channels = getChannelsByReceiverId(msg.getReceiverId());
+        if (!channels.isEmpty()) {
+            NettyWebSocketServerHandler.deliverLocal(channels, msg, offline);
+        }
+        messageRelay.route(RelayScope.AFTER_SALE, msg.getReceiverId(), null, msg, channels.isEmpty() ? offline : null);
     }
 
-    // ========== 新增：根据sessionId查找Netty通道 ==========
+    // ========== 根据sessionId查找Netty通道（注册表二级索引，O(1)） ==========
     public Channel getChannelBySessionId(String sessionId) {
         if (!org.springframework.util.StringUtils.hasText(sessionId)) {
             return null;
         }
-        Map<String, Channel> channelMap = NettyWebSocketServerHandler.RECEIVER_CHANNEL_MAP;
-        if (CollectionUtils.isEmpty(channelMap)) {
-            return null;
-        }
-        for (Channel channel : channelMap.values()) {
-            String bindSessionId = channel.attr(NettyConstant.SESSION_ID_KEY).get();
-            if (sessionId.equals(bindSessionId)) {
-                return channel;
-            }
-        }
-        return null;
+        return NettyWebSocketServerHandler.RECEIVER_REGISTRY.getBySessionId(sessionId);
     }
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package com.yqrb.netty;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONException;
+import com.yqrb.netty.codec.BinaryMsgCodec;
+import com.yqrb.netty.codec.JsonByteBufs;
 import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.context.ConnectionContext;
 import com.yqrb.pojo.vo.ChatMessageVO;
 import com.yqrb.pojo.vo.WebSocketMsgVO;
 import io.netty.buffer.ByteBuf;
@@ -12,7 +14,6 @@ import io.netty.handler.codec.http.websocketx.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.List;
 
@@ -31,20 +32,17 @@ public class WebSocketMsgCodec extends MessageToMessageCodec<WebSocketFrame, Web
     @Override
     protected void decode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
         String clientId = ctx.channel().id().asShortText();
-        logger.info("【编解码器】客户端{}发送了帧类型：{}", clientId, frame.getClass().getSimpleName());
 
         try {
             if (frame instanceof TextWebSocketFrame) {
-                String msgContent = ((TextWebSocketFrame) frame).text();
-                logger.info("【解码】客户端{}发送文本帧：{}", clientId, msgContent);
-
                 WebSocketMsgVO webSocketMsg;
                 try {
-                    // 第一步：尝试按JSON格式解析（支持附件字段）
-                    webSocketMsg = JSON.parseObject(msgContent, WebSocketMsgVO.class);
+                    // 第一步：尝试按JSON格式解析（支持附件字段），直接从帧内容ByteBuf解析，不先转String
+                    webSocketMsg = JsonByteBufs.parse(frame.content(), WebSocketMsgVO.class);
                 } catch (JSONException e) {
                     // 第二步：纯文本消息，支持附件格式扩展
-                    logger.info("【解码】客户端{}发送的是纯文本消息，手动封装VO", clientId);
+                    String msgContent = ((TextWebSocketFrame) frame).text();
+                    logger.debug("【解码】客户端{}发送的是纯文本消息，手动封装VO：{}", clientId, msgContent);
                     webSocketMsg = new WebSocketMsgVO();
 
                     // 扩展格式：receiverId:xxx|sessionId:xxx|msgType:ATTACHMENT|attachmentPath:xxx,xxx|content:xxx
@@ -76,10 +74,11 @@ public class WebSocketMsgCodec extends MessageToMessageCodec<WebSocketFrame, Web
                         }
                     }
 
-                    // 从Channel获取上下文信息
+                    // 从Channel获取上下文信息（当前会话取注册表属性，发送者类型/ID取连接上下文）
                     String channelSelfId = ctx.channel().attr(NettyConstant.SESSION_ID_KEY).get();
-                    String senderType = ctx.channel().attr(NettyConstant.SENDER_TYPE_KEY).get();
-                    String userId = ctx.channel().attr(NettyConstant.USER_ID_KEY).get();
+                    ConnectionContext context = ConnectionContext.of(ctx.channel());
+                    String senderType = context == null ? null : context.getSenderType().code();
+                    String userId = context == null ? null : context.getReceiverId();
 
                     // 填充字段（包含附件路径）
                     webSocketMsg.setMsgContent(realMsgContent);
@@ -98,39 +97,20 @@ public class WebSocketMsgCodec extends MessageToMessageCodec<WebSocketFrame, Web
                 return;
             }
 
-            // 二进制帧处理（可用于直接传输文件字节，可选扩展）
+            // 二进制帧处理：协商chat.binary.v1的客户端按二进制协议直接从ByteBuf解码；其余按UTF-8 JSON解析
             if (frame instanceof BinaryWebSocketFrame) {
-                ByteBuf byteBuf = ((BinaryWebSocketFrame) frame).content();
-                int readerIndex = byteBuf.readerIndex();
-                byte[] bytes = new byte[byteBuf.readableBytes()];
-                byteBuf.readBytes(bytes);
-                byteBuf.readerIndex(readerIndex);
-
-                String jsonStr = new String(bytes, StandardCharsets.UTF_8);
-                logger.info("【解码】客户端{}发送二进制帧：{}", clientId, jsonStr);
-                WebSocketMsgVO webSocketMsg = JSON.parseObject(jsonStr, WebSocketMsgVO.class);
+                ByteBuf byteBuf = frame.content();
+                WebSocketMsgVO webSocketMsg;
+                if (BinaryMsgCodec.isBinaryClient(ctx.channel())) {
+                    webSocketMsg = BinaryMsgCodec.decodeWebSocketMsg(byteBuf.duplicate());
+                } else {
+                    webSocketMsg = JsonByteBufs.parse(byteBuf, WebSocketMsgVO.class);
+                }
                 out.add(webSocketMsg);
                 return;
             }
 
-            // 心跳/关闭帧处理
-            if (frame instanceof PingWebSocketFrame) {
-                logger.info("【解码】客户端{}发送Ping帧，自动回复Pong", clientId);
-                ctx.channel().writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
-                return;
-            }
-            if (frame instanceof PongWebSocketFrame) {
-                logger.info("【解码】客户端{}发送Pong帧（心跳响应）", clientId);
-                return;
-            }
-            if (frame instanceof CloseWebSocketFrame) {
-                logger.info("【解码】客户端{}发送Close帧，关闭通道", clientId);
-                frame.retain();
-                ctx.channel().writeAndFlush(frame);
-                ctx.channel().close();
-                return;
-            }
-
+            // 心跳/关闭帧由WebSocketServerProtocolHandler应答并消费，不会到达这里（审计见ControlFrameRecorder）
             logger.error("【解码】客户端{}发送不支持的帧类型：{}", clientId, frame.getClass().getSimpleName());
 
         } catch (Exception e) {
@@ -138,18 +118,20 @@ public class WebSocketMsgCodec extends MessageToMessageCodec<WebSocketFrame, Web
         }
     }
     /**
-     * 编码：将WebSocketMsgVO转换为WebSocketFrame（保留原有逻辑，无需修改）
+     * 编码：将WebSocketMsgVO转换为WebSocketFrame（默认JSON文本帧；协商chat.binary.v1的客户端编码为二进制帧）
      */
     @Override
     protected void encode(ChannelHandlerContext ctx, WebSocketMsgVO msg, List<Object> out) throws Exception {
-        String clientId = ctx.channel().id().asShortText();
         try {
-            // 1. 将WebSocketMsgVO转换为JSON字符串
-            String jsonStr = JSON.toJSONString(msg);
-            logger.info("【编码】服务端向客户端{}发送文本帧：{}", clientId, jsonStr);
+            if (BinaryMsgCodec.isBinaryClient(ctx.channel())) {
+                out.add(new BinaryWebSocketFrame(BinaryMsgCodec.encode(ctx.alloc(), msg)));
+                return;
+            }
+            // 1. 将WebSocketMsgVO直接序列化为池化ByteBuf（不生成中间JSON字符串）
+            ByteBuf json = JsonByteBufs.write(ctx.alloc(), msg);
 
             // 2. 封装为文本WebSocket帧（优先使用文本帧，高效简洁）
-            TextWebSocketFrame textWebSocketFrame = new TextWebSocketFrame(jsonStr);
+            TextWebSocketFrame textWebSocketFrame = new TextWebSocketFrame(json);
             out.add(textWebSocketFrame);
 
         } catch (JSONException e) {
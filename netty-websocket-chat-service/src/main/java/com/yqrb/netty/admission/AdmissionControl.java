@@ -0,0 +1,324 @@
+package com.yqrb.netty.admission;
+
+import com.yqrb.netty.codec.EncodedMessage;
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.pojo.vo.PreSaleChatMessageVO;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 准入控制与限流（售前/售后共用，处理器工厂）
+ * 1. 握手：按客户端IP令牌桶限制握手速率，超限返回HTTP 429（带Retry-After）后关闭，不进入协议升级
+ * 2. 入站消息：每个连接一个令牌桶 + 每个receiverId一个令牌桶（同一账号多标签页/多设备共享），超限回送类型为
+ *    SYSTEM_RATE_LIMITED的错误帧并丢弃该消息；连续超限达到阈值后以关闭码4429关闭连接
+ * 3. 全局并发上限：处理中的消息数（含已转交会话车道、等待持久化到MariaDB的消息），超出回送SERVER_BUSY错误帧
+ * 4. IP/receiverId令牌桶按需创建，回满后由后台线程定期淘汰，索引大小只与近期活跃的客户端数相关
+ */
+@Component
+public class AdmissionControl {
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    // 连续超限后关闭连接使用的关闭码（4000-4999为应用自定义）
+    public static final int RATE_LIMITED_CLOSE_CODE = 4429;
+
+    // 错误帧原因（msgContent/content）
+    public static final String REASON_CONNECTION_RATE = "CONNECTION_RATE_LIMITED";
+    public static final String REASON_RECEIVER_RATE = "RECEIVER_RATE_LIMITED";
+    public static final String REASON_SERVER_BUSY = "SERVER_BUSY";
+
+    private static final Runnable NO_PERMIT = () -> { };
+    // 当前EventLoop线程正在处理的消息是否持有并发名额（业务处理器转交会话车道时取走，由车道任务归还）
+    private static final FastThreadLocal<Boolean> HOLDING = new FastThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+
+    @Value("${custom.netty.websocket.admission.enabled:true}")
+    private boolean enabled;
+    @Value("${custom.netty.websocket.admission.handshake-per-ip-rate:10}")
+    private double handshakePerIpRate;
+    @Value("${custom.netty.websocket.admission.handshake-per-ip-burst:30}")
+    private int handshakePerIpBurst;
+    @Value("${custom.netty.websocket.admission.message-per-connection-rate:10}")
+    private double messagePerConnectionRate;
+    @Value("${custom.netty.websocket.admission.message-per-connection-burst:20}")
+    private int messagePerConnectionBurst;
+    @Value("${custom.netty.websocket.admission.message-per-receiver-rate:20}")
+    private double messagePerReceiverRate;
+    @Value("${custom.netty.websocket.admission.message-per-receiver-burst:40}")
+    private int messagePerReceiverBurst;
+    @Value("${custom.netty.websocket.admission.max-in-flight:256}")
+    private int maxInFlight;
+    @Value("${custom.netty.websocket.admission.max-violations:50}")
+    private int maxViolations;
+    @Value("${custom.netty.websocket.admission.evict-interval-seconds:60}")
+    private long evictIntervalSeconds;
+
+    @Autowired
+    private OutboundQueueManager outboundQueueManager;
+
+    private final Map<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> receiverBuckets = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private final LongAdder handshakesAdmitted = new LongAdder();
+    private final LongAdder handshakesRejected = new LongAdder();
+    private final LongAdder messagesAdmitted = new LongAdder();
+    private final LongAdder connectionRateRejected = new LongAdder();
+    private final LongAdder receiverRateRejected = new LongAdder();
+    private final LongAdder busyRejected = new LongAdder();
+    private final LongAdder violationCloses = new LongAdder();
+
+    private ScheduledExecutorService evictor;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("【准入控制】未启用");
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "netty-admission-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdleBuckets, evictIntervalSeconds, evictIntervalSeconds, TimeUnit.SECONDS);
+        log.info("【准入控制】握手：{}/s（突发{}）每IP，消息：{}/s（突发{}）每连接、{}/s（突发{}）每receiverId，全局并发上限：{}，连续超限{}次关闭",
+                handshakePerIpRate, handshakePerIpBurst, messagePerConnectionRate, messagePerConnectionBurst,
+                messagePerReceiverRate, messagePerReceiverBurst, maxInFlight, maxViolations);
+    }
+
+    /**
+     * 握手准入处理器（每个通道一个实例，位于HttpServerCodec之后、握手聚合之前）
+     */
+    public HandshakeAdmissionHandler newHandshakeGuard() {
+        return new HandshakeAdmissionHandler(this);
+    }
+
+    /**
+     * 消息准入处理器（每个通道一个实例，位于业务编解码器之后、业务处理器之前）
+     */
+    public MessageAdmissionHandler newMessageGuard(RelayScope scope) {
+        return new MessageAdmissionHandler(this, scope,
+                enabled ? new TokenBucket(messagePerConnectionRate, messagePerConnectionBurst) : null);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return 0=放行，>0=拒绝，值为建议重试等待毫秒数
+     */
+    long admitHandshake(String ip) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        TokenBucket bucket = ipBuckets.computeIfAbsent(ip, k -> new TokenBucket(handshakePerIpRate, handshakePerIpBurst));
+        if (bucket.tryAcquire(now)) {
+            handshakesAdmitted.increment();
+            return 0;
+        }
+        handshakesRejected.increment();
+        return Math.max(1, bucket.retryAfterMillis(now));
+    }
+
+    /**
+     * 消息令牌：先扣连接桶，再扣receiverId桶（连接桶已拒绝时不消耗账号额度）
+     * @return null=放行，否则为拒绝原因
+     */
+    String admitMessage(TokenBucket connectionBucket, RelayScope scope, String receiverId) {
+        if (!enabled) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (!connectionBucket.tryAcquire(now)) {
+            connectionRateRejected.increment();
+            return REASON_CONNECTION_RATE;
+        }
+        if (receiverId != null) {
+            TokenBucket bucket = receiverBuckets.computeIfAbsent(scope.name() + ":" + receiverId,
+                    k -> new TokenBucket(messagePerReceiverRate, messagePerReceiverBurst));
+            if (!bucket.tryAcquire(now)) {
+                receiverRateRejected.increment();
+                return REASON_RECEIVER_RATE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 进入业务处理（全局并发计数），返回false表示已达上限，调用方不得再调用exitInFlight
+     */
+    boolean enterInFlight() {
+        if (!enabled) {
+            return true;
+        }
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                busyRejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                messagesAdmitted.increment();
+                int peak = peakInFlight.get();
+                while (current + 1 > peak && !peakInFlight.compareAndSet(peak, current + 1)) {
+                    peak = peakInFlight.get();
+                }
+                return true;
+            }
+        }
+    }
+
+    void exitInFlight() {
+        if (enabled) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * 消息处理器同步处理期间持有名额（MessageAdmissionHandler调用）
+     */
+    void hold() {
+        HOLDING.set(Boolean.TRUE);
+    }
+
+    /**
+     * 同步处理结束：名额未被转交时返回true，由调用方归还
+     */
+    boolean releaseHeld() {
+        boolean held = HOLDING.get();
+        HOLDING.set(Boolean.FALSE);
+        return held;
+    }
+
+    /**
+     * 业务处理器把当前消息转交到其他线程（会话车道）时取走并发名额，返回的回调在任务结束时执行一次以归还名额
+     * 当前消息未经准入控制（关闭或无名额）时返回空操作
+     */
+    public Runnable deferInFlight() {
+        if (!HOLDING.get()) {
+            return NO_PERMIT;
+        }
+        HOLDING.set(Boolean.FALSE);
+        return this::exitInFlight;
+    }
+
+    /**
+     * 业务处理器无法受理（会话车道队列已满）时回送SERVER_BUSY错误帧，消息由调用方丢弃
+     */
+    public void rejectBusy(Channel channel, RelayScope scope, String receiverId) {
+        busyRejected.increment();
+        ConnectionContext context = ConnectionContext.of(channel);
+        if (context != null) {
+            context.recordRejected();
+        }
+        sendRejection(channel, scope, receiverId, REASON_SERVER_BUSY);
+    }
+
+    /**
+     * 当前处于业务处理中的消息数（含会话车道中排队/执行的消息）
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    int getMaxViolations() {
+        return maxViolations;
+    }
+
+    void recordViolationClose() {
+        violationCloses.increment();
+    }
+
+    /**
+     * 回送限流错误帧（按服务选择消息结构，按通道子协议选择JSON/二进制格式）
+     */
+    void sendRejection(Channel channel, RelayScope scope, String receiverId, String reason) {
+        EncodedMessage encoded;
+        if (scope == RelayScope.PRE_SALE) {
+            PreSaleChatMessageVO notice = new PreSaleChatMessageVO();
+            notice.setSenderId("SYSTEM");
+            notice.setSenderType(PreSaleChatMessageVO.SENDER_TYPE_SYSTEM);
+            notice.setReceiverId(receiverId);
+            notice.setMsgType(PreSaleChatMessageVO.MSG_TYPE_RATE_LIMITED);
+            notice.setContent(reason);
+            notice.setSendTime(new Date());
+            encoded = EncodedMessage.of(notice);
+        } else {
+            WebSocketMsgVO notice = new WebSocketMsgVO();
+            notice.setUserId("SYSTEM");
+            notice.setSenderType(WebSocketMsgVO.SENDER_TYPE_SYSTEM);
+            notice.setReceiverId(receiverId);
+            notice.setMsgType(WebSocketMsgVO.MSG_TYPE_RATE_LIMITED);
+            notice.setMsgContent(reason);
+            notice.setSendTime(new Date());
+            encoded = EncodedMessage.of(notice);
+        }
+        try {
+            outboundQueueManager.deliver(channel, encoded.frameFor(channel), null);
+        } finally {
+            encoded.release();
+        }
+    }
+
+    private void evictIdleBuckets() {
+        try {
+            long now = System.nanoTime();
+            ipBuckets.values().removeIf(bucket -> bucket.isIdle(now));
+            receiverBuckets.values().removeIf(bucket -> bucket.isIdle(now));
+        } catch (Exception e) {
+            log.error("【准入控制】淘汰空闲令牌桶异常：{}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("handshakesAdmitted", handshakesAdmitted.sum());
+        metrics.put("handshakesRejected", handshakesRejected.sum());
+        metrics.put("messagesAdmitted", messagesAdmitted.sum());
+        metrics.put("connectionRateRejected", connectionRateRejected.sum());
+        metrics.put("receiverRateRejected", receiverRateRejected.sum());
+        metrics.put("busyRejected", busyRejected.sum());
+        metrics.put("violationCloses", violationCloses.sum());
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("peakInFlight", peakInFlight.get());
+        metrics.put("maxInFlight", maxInFlight);
+        metrics.put("ipBuckets", ipBuckets.size());
+        metrics.put("receiverBuckets", receiverBuckets.size());
+        return metrics;
+    }
+}
@@ -0,0 +1,73 @@
+package com.yqrb.netty.admission;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * 握手准入处理器（每个通道一个实例）
+ * 收到握手请求时按客户端IP扣减令牌：放行后自行移除，不再参与后续帧处理；
+ * 超限时回复429并关闭连接，请求不会进入聚合与协议升级（不解析URI、不注册、不查库）。
+ */
+public class HandshakeAdmissionHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(HandshakeAdmissionHandler.class);
+
+    private final AdmissionControl admission;
+    private boolean rejected;
+
+    HandshakeAdmissionHandler(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (rejected) {
+            // 已拒绝：丢弃该请求剩余的内容块，等待关闭
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        if (!(msg instanceof HttpRequest)) {
+            super.channelRead(ctx, msg);
+            return;
+        }
+        String ip = remoteIp(ctx.channel().remoteAddress());
+        long retryAfterMillis = admission.admitHandshake(ip);
+        if (retryAfterMillis == 0) {
+            ctx.pipeline().remove(this);
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        rejected = true;
+        ReferenceCountUtil.release(msg);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.TOO_MANY_REQUESTS, Unpooled.EMPTY_BUFFER);
+        response.headers().set(HttpHeaderNames.RETRY_AFTER, Math.max(1, (retryAfterMillis + 999) / 1000));
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, 0);
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        log.warn("【准入控制】握手频率超限，已拒绝，通道ID：{}，IP：{}，建议{}ms后重试",
+                ctx.channel().id().asShortText(), ip, retryAfterMillis);
+    }
+
+    private static String remoteIp(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getAddress() == null ? inet.getHostString() : inet.getAddress().getHostAddress();
+        }
+        return String.valueOf(address);
+    }
+}
@@ -0,0 +1,87 @@
+package com.yqrb.netty.admission;
+
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.relay.RelayScope;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 消息准入处理器（每个通道一个实例，持有本连接的令牌桶）
+ * 1. 解码后的业务消息先扣连接桶、再扣receiverId桶，通过后占用一个全局并发名额再交给业务处理器，
+ *    业务处理器同步返回后归还名额；业务处理器把消息转交会话车道时名额随之转交，持久化/转发完成后归还
+ * 2. 被拒绝的消息直接丢弃并回送SYSTEM_RATE_LIMITED错误帧（msgContent为拒绝原因），客户端可稍后重发
+ * 3. 连续被拒绝达到阈值（放行一次即清零）视为异常客户端，以关闭码4429关闭连接
+ */
+public class MessageAdmissionHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(MessageAdmissionHandler.class);
+
+    private final AdmissionControl admission;
+    private final RelayScope scope;
+    private final TokenBucket connectionBucket;
+    private int violations;
+
+    MessageAdmissionHandler(AdmissionControl admission, RelayScope scope, TokenBucket connectionBucket) {
+        this.admission = admission;
+        this.scope = scope;
+        this.connectionBucket = connectionBucket;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (connectionBucket == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        Channel channel = ctx.channel();
+        ConnectionContext context = ConnectionContext.of(channel);
+        String receiverId = context == null ? null : context.getReceiverId();
+        String reason = admission.admitMessage(connectionBucket, scope, receiverId);
+        if (reason == null) {
+            if (admission.enterInFlight()) {
+                violations = 0;
+                admission.hold();
+                try {
+                    ctx.fireChannelRead(msg);
+                } finally {
+                    if (admission.releaseHeld()) {
+                        admission.exitInFlight();
+                    }
+                }
+                return;
+            }
+            reason = AdmissionControl.REASON_SERVER_BUSY;
+        }
+        ReferenceCountUtil.release(msg);
+        if (context != null) {
+            context.recordRejected();
+        }
+        reject(channel, receiverId, reason);
+    }
+
+    private void reject(Channel channel, String receiverId, String reason) {
+        violations++;
+        if (violations > admission.getMaxViolations()) {
+            // 已发起关闭，关闭完成前到达的消息直接丢弃
+            return;
+        }
+        if (violations == admission.getMaxViolations()) {
+            admission.recordViolationClose();
+            log.warn("【准入控制】连续{}条消息被拒绝，关闭连接，通道ID：{}，ID：{}，原因：{}",
+                    violations, channel.id().asShortText(), receiverId, reason);
+            channel.writeAndFlush(new CloseWebSocketFrame(AdmissionControl.RATE_LIMITED_CLOSE_CODE, reason))
+                    .addListener(ChannelFutureListener.CLOSE);
+            return;
+        }
+        if (violations == 1) {
+            // 同一轮连续超限只记一次日志，明细见/netty/metrics/admission计数
+            log.warn("【准入控制】消息被拒绝，通道ID：{}，ID：{}，原因：{}", channel.id().asShortText(), receiverId, reason);
+        }
+        admission.sendRejection(channel, scope, receiverId, reason);
+    }
+}
@@ -0,0 +1,65 @@
+package com.yqrb.netty.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶（GCRA实现：只保存“理论到达时间”一个long，CAS更新，无需定时补充令牌）
+ * 1. 速率rate个/秒，桶容量burst：空闲足够久后可连续通过burst次，之后按速率放行
+ * 2. 被拒绝的请求不消耗令牌，同一个桶可被多个EventLoop并发调用
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    // 理论到达时间（纳秒）：下一个令牌可用的时刻
+    private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param ratePerSecond 每秒放行数（>0）
+     * @param burst 突发容量（>=1）
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("令牌桶参数非法，rate=" + ratePerSecond + "，burst=" + burst);
+        }
+        this.intervalNanos = Math.max(1L, (long) (1_000_000_000L / ratePerSecond));
+        this.toleranceNanos = intervalNanos * (burst - 1);
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    public boolean tryAcquire(long nowNanos) {
+        for (;;) {
+            long current = tat.get();
+            long base = current == Long.MIN_VALUE || current - nowNanos < 0 ? nowNanos : current;
+            if (base - nowNanos > toleranceNanos) {
+                return false;
+            }
+            if (tat.compareAndSet(current, base + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 距下一个令牌可用的等待时间（毫秒，向上取整），可立即通过时为0
+     */
+    public long retryAfterMillis(long nowNanos) {
+        long current = tat.get();
+        if (current == Long.MIN_VALUE) {
+            return 0;
+        }
+        long waitNanos = current - nowNanos - toleranceNanos;
+        return waitNanos <= 0 ? 0 : (waitNanos + 999_999) / 1_000_000;
+    }
+
+    /**
+     * 桶已回满（空闲时间超过burst个间隔），可从索引中淘汰，下次访问重新创建不影响限流结果
+     */
+    public boolean isIdle(long nowNanos) {
+        long current = tat.get();
+        return current == Long.MIN_VALUE || current - nowNanos <= 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.yqrb.netty.audit;
+
+/**
+ * 审计事件类型（每种类型可单独配置记录级别）
+ */
+public enum AuditEventType {
+    // 收到客户端聊天消息
+    MESSAGE_IN,
+    // 消息已投递到接收者通道
+    MESSAGE_FORWARD,
+    // 接收者离线/会话不匹配，未实时投递
+    MESSAGE_OFFLINE,
+    // 心跳与关闭帧
+    FRAME_PING,
+    FRAME_PONG,
+    FRAME_CLOSE
+}
@@ -0,0 +1,13 @@
+package com.yqrb.netty.audit;
+
+/**
+ * 审计记录级别
+ */
+public enum AuditLevel {
+    // 不记录
+    OFF,
+    // 按 custom.netty.audit.sample-every 抽样记录（每N条记1条）
+    SAMPLED,
+    // 全部记录
+    ALL
+}
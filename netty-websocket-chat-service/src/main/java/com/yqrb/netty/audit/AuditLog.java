@@ -0,0 +1,265 @@
+package com.yqrb.netty.audit;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * WebSocket消息审计日志（售前/售后共用），替代逐条消息的INFO日志
+ * 1. 热路径（EventLoop/业务线程）只做级别判断+抽样+入无锁环形缓冲，不做格式化与磁盘I/O
+ * 2. 后台单线程批量取出，写入按天切分的审计文件，每行一条，字段以\t分隔：
+ *    时间戳(毫秒) 事件类型 通道ID 接收者ID 会话ID 字节数 附加信息
+ * 3. 缓冲写满时丢弃新事件并计数，不阻塞调用方
+ * 4. 心跳/关闭帧由协议处理器消费，在其之前旁路记录（ControlFrameRecorder）
+ */
+@Component
+public class AuditLog {
+    private static final Logger log = LoggerFactory.getLogger(AuditLog.class);
+
+    @Value("${custom.netty.audit.enabled:true}")
+    private boolean enabled;
+    @Value("${custom.netty.audit.dir:logs/audit}")
+    private String dir;
+    @Value("${custom.netty.audit.buffer-size:65536}")
+    private int bufferSize;
+    // SAMPLED级别的抽样间隔：每N条记1条
+    @Value("${custom.netty.audit.sample-every:10}")
+    private int sampleEvery;
+    // 未单独配置的事件类型的默认级别
+    @Value("${custom.netty.audit.default-level:ALL}")
+    private AuditLevel defaultLevel;
+    // 按事件类型配置级别，格式：TYPE:LEVEL,TYPE:LEVEL
+    @Value("${custom.netty.audit.levels:FRAME_PING:SAMPLED,FRAME_PONG:SAMPLED}")
+    private String levelsConfig;
+    @Value("${custom.netty.audit.flush-interval-millis:1000}")
+    private long flushIntervalMillis;
+
+    private final AuditLevel[] levels = new AuditLevel[AuditEventType.values().length];
+    private final ControlFrameRecorder controlFrameRecorder = new ControlFrameRecorder(this);
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder writeErrors = new LongAdder();
+
+    private AuditRingBuffer ring;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    // 以下仅写线程访问
+    private BufferedWriter writer;
+    private LocalDate writerDate;
+    private final StringBuilder line = new StringBuilder(256);
+
+    @PostConstruct
+    public void start() {
+        Arrays.fill(levels, enabled ? defaultLevel : AuditLevel.OFF);
+        if (enabled && levelsConfig != null) {
+            for (String item : levelsConfig.split(",")) {
+                String[] pair = item.trim().split(":");
+                if (pair.length == 2) {
+                    try {
+                        levels[AuditEventType.valueOf(pair[0].trim()).ordinal()] = AuditLevel.valueOf(pair[1].trim());
+                    } catch (IllegalArgumentException e) {
+                        log.warn("【审计日志】忽略无效级别配置：{}", item);
+                    }
+                }
+            }
+        }
+        sampleEvery = Math.max(1, sampleEvery);
+        if (!enabled) {
+            log.info("【审计日志】已关闭");
+            return;
+        }
+        ring = new AuditRingBuffer(bufferSize);
+        running = true;
+        writerThread = new Thread(this::writeLoop, "netty-audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("【审计日志】目录：{}，缓冲：{}条，抽样间隔：{}，级别：{}",
+                dir, ring.capacity(), sampleEvery, Arrays.toString(levels));
+    }
+
+    /**
+     * 记录审计事件（任意线程调用，只入队）
+     * @param receiverId 接收者/发送者ID，可为null
+     * @param detail 简短附加信息（如消息类型），不要传完整消息体
+     */
+    public void record(AuditEventType type, Channel channel, String receiverId, String sessionId,
+                       long bytes, String detail) {
+        AuditLevel level = levels[type.ordinal()];
+        if (level == AuditLevel.OFF || ring == null) {
+            return;
+        }
+        if (level == AuditLevel.SAMPLED && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            sampledOut.increment();
+            return;
+        }
+        String channelId = channel == null ? null : channel.id().asShortText();
+        if (ring.offer(System.currentTimeMillis(), type, channelId, receiverId, sessionId, bytes, detail)) {
+            enqueued.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    public boolean isEnabled(AuditEventType type) {
+        return levels[type.ordinal()] != AuditLevel.OFF;
+    }
+
+    /**
+     * 安装心跳/关闭帧审计（需位于WebSocket协议处理器之前），三种帧事件都为OFF时不安装
+     */
+    public void installControlFrameRecorder(ChannelPipeline pipeline) {
+        if (isEnabled(AuditEventType.FRAME_PING) || isEnabled(AuditEventType.FRAME_PONG)
+                || isEnabled(AuditEventType.FRAME_CLOSE)) {
+            pipeline.addLast("controlFrameAudit", controlFrameRecorder);
+        }
+    }
+
+    private void writeLoop() {
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        while (running) {
+            int count = ring.drain(this::writeSlot, 1024);
+            if (count > 0) {
+                dirty = true;
+            }
+            long now = System.nanoTime();
+            if (dirty && (count == 0 || now - lastFlush >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis))) {
+                flush();
+                dirty = false;
+                lastFlush = now;
+            }
+            if (count == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        // 停止前写完剩余事件
+        while (ring.drain(this::writeSlot, 1024) > 0) {
+            // 继续取出
+        }
+        flush();
+        closeWriter();
+    }
+
+    private void writeSlot(AuditRingBuffer.Slot slot) {
+        line.setLength(0);
+        line.append(slot.time).append('\t').append(slot.type).append('\t');
+        appendField(slot.channelId);
+        appendField(slot.receiverId);
+        appendField(slot.sessionId);
+        line.append(slot.bytes).append('\t');
+        if (slot.detail != null) {
+            appendSanitized(slot.detail);
+        }
+        line.append('\n');
+        try {
+            ensureWriter().append(line);
+            written.increment();
+        } catch (IOException e) {
+            writeErrors.increment();
+            closeWriter();
+        }
+    }
+
+    private void appendField(String value) {
+        if (value == null) {
+            line.append('-');
+        } else {
+            appendSanitized(value);
+        }
+        line.append('\t');
+    }
+
+    private void appendSanitized(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            line.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+
+    private BufferedWriter ensureWriter() throws IOException {
+        LocalDate today = LocalDate.now();
+        if (writer == null || !today.equals(writerDate)) {
+            closeWriter();
+            Path directory = Paths.get(dir);
+            Files.createDirectories(directory);
+            Path file = directory.resolve("netty-audit-" + today + ".log");
+            writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+            writerDate = today;
+        }
+        return writer;
+    }
+
+    private void flush() {
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                writeErrors.increment();
+                closeWriter();
+            }
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+                // 关闭失败无需处理
+            }
+            writer = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        log.info("【审计日志】已停止，累计写入：{}条，丢弃：{}条", written.sum(), dropped.sum());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("levels", Arrays.toString(levels));
+        metrics.put("sampleEvery", sampleEvery);
+        metrics.put("bufferCapacity", ring == null ? 0 : ring.capacity());
+        metrics.put("backlog", ring == null ? 0 : ring.size());
+        metrics.put("enqueued", enqueued.sum());
+        metrics.put("sampledOut", sampledOut.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("written", written.sum());
+        metrics.put("writeErrors", writeErrors.sum());
+        return metrics;
+    }
+}
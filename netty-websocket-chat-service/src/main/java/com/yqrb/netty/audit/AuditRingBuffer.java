@@ -0,0 +1,109 @@
+package com.yqrb.netty.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁有界环形缓冲（多生产者/单消费者）
+ * 槽位对象预先分配、循环复用，生产者CAS抢占序号后原位填充字段，入队不产生新对象；
+ * 缓冲已满时直接返回false（由调用方计入丢弃数），绝不阻塞EventLoop。
+ */
+class AuditRingBuffer {
+
+    static final class Slot {
+        long time;
+        AuditEventType type;
+        String channelId;
+        String receiverId;
+        String sessionId;
+        long bytes;
+        String detail;
+    }
+
+    interface SlotConsumer {
+        void accept(Slot slot);
+    }
+
+    private final int mask;
+    private final Slot[] slots;
+    // 每个槽位的序号：== pos 可写，== pos+1 可读，读完置为 pos+capacity
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // 仅消费线程访问
+    private long head;
+
+    AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        slots = new Slot[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offer(long time, AuditEventType type, String channelId, String receiverId,
+                  String sessionId, long bytes, String detail) {
+        long pos = tail.get();
+        int index;
+        for (;;) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        Slot slot = slots[index];
+        slot.time = time;
+        slot.type = type;
+        slot.channelId = channelId;
+        slot.receiverId = receiverId;
+        slot.sessionId = sessionId;
+        slot.bytes = bytes;
+        slot.detail = detail;
+        sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * 消费线程调用：最多取出max条
+     * @return 实际取出条数
+     */
+    int drain(SlotConsumer consumer, int max) {
+        int count = 0;
+        while (count < max) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            Slot slot = slots[index];
+            consumer.accept(slot);
+            slot.type = null;
+            slot.channelId = null;
+            slot.receiverId = null;
+            slot.sessionId = null;
+            slot.detail = null;
+            sequences.lazySet(index, head + slots.length);
+            head++;
+            count++;
+        }
+        return count;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    // 近似积压条数（跨线程读取head，仅用于指标）
+    long size() {
+        return tail.get() - head;
+    }
+}
@@ -0,0 +1,38 @@
+package com.yqrb.netty.audit;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+
+/**
+ * 心跳/关闭帧审计（可共享，位于WebSocket协议处理器之前）
+ * Ping由协议处理器直接回复Pong，Pong被丢弃，Close由协议处理器完成关闭握手，三者都不会传到编解码器，
+ * 只能在协议处理器之前旁路记录；帧原样向后传递，不改变协议处理器的行为。
+ */
+@ChannelHandler.Sharable
+class ControlFrameRecorder extends ChannelInboundHandlerAdapter {
+
+    private final AuditLog auditLog;
+
+    ControlFrameRecorder(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof PingWebSocketFrame) {
+            auditLog.record(AuditEventType.FRAME_PING, ctx.channel(), null, null,
+                    ((PingWebSocketFrame) msg).content().readableBytes(), null);
+        } else if (msg instanceof PongWebSocketFrame) {
+            auditLog.record(AuditEventType.FRAME_PONG, ctx.channel(), null, null,
+                    ((PongWebSocketFrame) msg).content().readableBytes(), null);
+        } else if (msg instanceof CloseWebSocketFrame) {
+            auditLog.record(AuditEventType.FRAME_CLOSE, ctx.channel(), null, null, 0,
+                    String.valueOf(((CloseWebSocketFrame) msg).statusCode()));
+        }
+        ctx.fireChannelRead(msg);
+    }
+}
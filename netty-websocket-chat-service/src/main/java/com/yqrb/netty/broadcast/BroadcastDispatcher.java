@@ -0,0 +1,164 @@
+package com.yqrb.netty.broadcast;
+
+import com.yqrb.netty.codec.EncodedMessage;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 广播投递（售前/售后共用）
+ * 1. 同一条消息只编码一次（EncodedMessage），每个通道写出共享内容的retainedDuplicate
+ * 2. 目标通道按所属EventLoop分组，每个EventLoop上分块写出：每块最多chunk-size个通道，写完一块后把剩余部分重新提交到
+ *    该EventLoop任务队列尾部，期间的读写事件与聊天消息写出照常处理，一次大广播不会长时间独占EventLoop
+ * 3. 写出经出站队列（背压感知），全部完成后回调投递统计
+ */
+@Component
+public class BroadcastDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(BroadcastDispatcher.class);
+
+    @Value("${custom.netty.broadcast.chunk-size:256}")
+    private int chunkSize;
+
+    @Autowired
+    private OutboundQueueManager outboundQueueManager;
+
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder targeted = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+
+    /**
+     * 广播到给定通道（任意线程调用，不阻塞）；encoded由本方法在全部写出后释放
+     * @return 完成时的投递统计：targeted目标通道数、delivered进入出站队列数、inactive已断开跳过数、
+     *         spilled完成时已确认无法投递数（队列溢出/通道关闭，之后发生的计入全局指标）、eventLoops、costMillis
+     */
+    public CompletableFuture<Map<String, Object>> dispatch(Collection<Channel> channels, EncodedMessage encoded) {
+        long begin = System.nanoTime();
+        broadcasts.increment();
+        targeted.add(channels.size());
+        AtomicInteger deliveredCount = new AtomicInteger();
+        AtomicInteger spilledCount = new AtomicInteger();
+        int inactive = 0;
+        Map<EventLoop, List<Channel>> byLoop = new IdentityHashMap<>();
+        for (Channel channel : channels) {
+            if (!channel.isActive()) {
+                inactive++;
+                continue;
+            }
+            byLoop.computeIfAbsent(channel.eventLoop(), loop -> new ArrayList<>()).add(channel);
+        }
+
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        int inactiveCount = inactive;
+        int loops = byLoop.size();
+        AtomicInteger remainingLoops = new AtomicInteger(loops);
+        Runnable finish = () -> {
+            encoded.release();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("targeted", channels.size());
+            result.put("delivered", deliveredCount.get());
+            result.put("inactive", inactiveCount);
+            result.put("spilled", spilledCount.get());
+            result.put("eventLoops", loops);
+            result.put("costMillis", (System.nanoTime() - begin) / 1_000_000);
+            future.complete(result);
+        };
+        if (loops == 0) {
+            finish.run();
+            return future;
+        }
+        Runnable spill = () -> {
+            spilled.increment();
+            spilledCount.incrementAndGet();
+        };
+        byLoop.forEach((loop, loopChannels) -> {
+            Chunk chunk = new Chunk(loop, loopChannels, encoded, spill, deliveredCount, () -> {
+                if (remainingLoops.decrementAndGet() == 0) {
+                    finish.run();
+                }
+            });
+            chunk.submit();
+        });
+        return future;
+    }
+
+    /**
+     * 单个EventLoop上的分块写出任务
+     */
+    private final class Chunk implements Runnable {
+        private final EventLoop loop;
+        private final List<Channel> channels;
+        private final EncodedMessage encoded;
+        private final Runnable spill;
+        private final AtomicInteger deliveredCount;
+        private final Runnable done;
+        private int next;
+
+        Chunk(EventLoop loop, List<Channel> channels, EncodedMessage encoded, Runnable spill,
+              AtomicInteger deliveredCount, Runnable done) {
+            this.loop = loop;
+            this.channels = channels;
+            this.encoded = encoded;
+            this.spill = spill;
+            this.deliveredCount = deliveredCount;
+            this.done = done;
+        }
+
+        void submit() {
+            try {
+                loop.execute(this);
+            } catch (Exception e) {
+                // EventLoop已关闭（停机中）：剩余通道不再投递
+                log.warn("【广播】EventLoop已关闭，剩余{}个通道未投递", channels.size() - next);
+                done.run();
+            }
+        }
+
+        @Override
+        public void run() {
+            chunks.increment();
+            int end = Math.min(next + Math.max(1, chunkSize), channels.size());
+            for (; next < end; next++) {
+                Channel channel = channels.get(next);
+                // 当前在该通道EventLoop内，deliver直接入队写出
+                if (outboundQueueManager.deliver(channel, encoded.frameFor(channel), spill)) {
+                    delivered.increment();
+                    deliveredCount.incrementAndGet();
+                }
+            }
+            if (next < channels.size()) {
+                // 让出EventLoop：剩余通道排到任务队列尾部，先处理已就绪的IO与其他任务
+                submit();
+            } else {
+                done.run();
+            }
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("chunkSize", chunkSize);
+        metrics.put("broadcasts", broadcasts.sum());
+        metrics.put("targeted", targeted.sum());
+        metrics.put("delivered", delivered.sum());
+        metrics.put("spilled", spilled.sum());
+        metrics.put("chunks", chunks.sum());
+        return metrics;
+    }
+}
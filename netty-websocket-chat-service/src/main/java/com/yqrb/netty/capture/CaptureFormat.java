@@ -0,0 +1,31 @@
+package com.yqrb.netty.capture;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流量抓包文件格式（写入与回放共用，大端字节序）
+ * 段文件头（24字节）：魔数"NWSCAP01"(8) + 抓包开始时间epoch毫秒(8) + 段序号(8)
+ * 记录：总长度int(4，含自身) + 距抓包开始的纳秒数long(8) + 连接号long(8) + 类型byte(1) + 服务byte(1) + 标志byte(1) + 负载
+ * 记录先写内容、最后写长度；长度为0表示段内后续未写入（段文件按固定大小预分配，尾部为0）
+ */
+public final class CaptureFormat {
+
+    public static final byte[] MAGIC = "NWSCAP01".getBytes(StandardCharsets.US_ASCII);
+    public static final int SEGMENT_HEADER_BYTES = 24;
+    public static final int RECORD_HEADER_BYTES = 4 + 8 + 8 + 1 + 1 + 1;
+
+    // 记录类型：OPEN负载为 握手URI + '\n' + 子协议（可为空）
+    public static final byte TYPE_OPEN = 1;
+    public static final byte TYPE_TEXT = 2;
+    public static final byte TYPE_BINARY = 3;
+    public static final byte TYPE_CONTINUATION = 4;
+    public static final byte TYPE_CLOSE = 5;
+
+    // 标志位：分片帧的最后一片
+    public static final byte FLAG_FINAL = 1;
+
+    public static final String SEGMENT_SUFFIX = ".seg";
+
+    private CaptureFormat() {
+    }
+}
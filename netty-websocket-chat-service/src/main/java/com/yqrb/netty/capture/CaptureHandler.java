@@ -0,0 +1,62 @@
+package com.yqrb.netty.capture;
+
+import com.yqrb.netty.relay.RelayScope;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+
+/**
+ * 抓包处理器（每个通道一个实例，位于WebSocket协议处理器之后）
+ * 只旁路记录，不修改、不消费消息；握手完成前的HTTP请求不记录。
+ */
+public class CaptureHandler extends ChannelInboundHandlerAdapter {
+
+    private final TrafficCapture capture;
+    private final RelayScope scope;
+    private final long connectionId;
+    private boolean opened;
+
+    CaptureHandler(TrafficCapture capture, RelayScope scope, long connectionId) {
+        this.capture = capture;
+        this.scope = scope;
+        this.connectionId = connectionId;
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+            WebSocketServerProtocolHandler.HandshakeComplete handshake = (WebSocketServerProtocolHandler.HandshakeComplete) evt;
+            opened = true;
+            capture.open(connectionId, scope, handshake.requestUri(), handshake.selectedSubprotocol());
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (opened && msg instanceof WebSocketFrame) {
+            WebSocketFrame frame = (WebSocketFrame) msg;
+            if (frame instanceof TextWebSocketFrame) {
+                capture.frame(connectionId, scope, CaptureFormat.TYPE_TEXT, frame.isFinalFragment(), frame.content());
+            } else if (frame instanceof BinaryWebSocketFrame) {
+                capture.frame(connectionId, scope, CaptureFormat.TYPE_BINARY, frame.isFinalFragment(), frame.content());
+            } else if (frame instanceof ContinuationWebSocketFrame) {
+                capture.frame(connectionId, scope, CaptureFormat.TYPE_CONTINUATION, frame.isFinalFragment(), frame.content());
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (opened) {
+            opened = false;
+            capture.close(connectionId, scope);
+        }
+        super.channelInactive(ctx);
+    }
+}
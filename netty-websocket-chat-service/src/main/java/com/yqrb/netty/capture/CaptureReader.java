@@ -0,0 +1,113 @@
+package com.yqrb.netty.capture;
+
+import com.yqrb.netty.relay.RelayScope;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 抓包文件读取（离线使用：回放工具、由抓包生成客户端脚本）
+ * 一次抓包由若干段文件组成，文件名 {前缀}-{段序号}.seg，按段序号顺序读取即为时间顺序（段内按预留顺序，
+ * 并发写入的相邻记录时间戳可能有微小逆序，回放时按时间戳排序）
+ */
+public final class CaptureReader {
+
+    private CaptureReader() {
+    }
+
+    /**
+     * 目录下最近一次抓包的前缀（按文件名排序取最大），没有抓包文件时返回null
+     */
+    public static String latestCapture(Path dir) throws IOException {
+        List<String> prefixes = prefixes(dir);
+        return prefixes.isEmpty() ? null : prefixes.get(prefixes.size() - 1);
+    }
+
+    public static List<String> prefixes(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(CaptureFormat.SEGMENT_SUFFIX) && name.lastIndexOf('-') > 0)
+                    .map(name -> name.substring(0, name.lastIndexOf('-')))
+                    .distinct()
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 一次抓包的全部段文件（按段序号排序）
+     */
+    public static List<Path> segments(Path dir, String capturePrefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> segments = files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(capturePrefix + "-") && name.endsWith(CaptureFormat.SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+            return Collections.unmodifiableList(segments);
+        }
+    }
+
+    /**
+     * 按段顺序读取全部记录
+     */
+    public static void read(List<Path> segments, Consumer<CaptureRecord> consumer) throws IOException {
+        RelayScope[] scopes = RelayScope.values();
+        for (Path segment : segments) {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            byte[] magic = new byte[CaptureFormat.MAGIC.length];
+            if (buffer.remaining() < CaptureFormat.SEGMENT_HEADER_BYTES) {
+                throw new IOException("抓包段文件不完整：" + segment);
+            }
+            buffer.get(magic);
+            if (!Arrays.equals(magic, CaptureFormat.MAGIC)) {
+                throw new IOException("不是抓包段文件：" + segment);
+            }
+            long startEpochMillis = buffer.getLong();
+            buffer.getLong();
+            while (buffer.remaining() >= CaptureFormat.RECORD_HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                if (length < CaptureFormat.RECORD_HEADER_BYTES || start + length > buffer.limit()) {
+                    // 0=段内后续未写入
+                    break;
+                }
+                long offsetNanos = buffer.getLong();
+                long connectionId = buffer.getLong();
+                byte type = buffer.get();
+                byte scope = buffer.get();
+                byte flags = buffer.get();
+                byte[] payload = new byte[length - CaptureFormat.RECORD_HEADER_BYTES];
+                buffer.get(payload);
+                consumer.accept(new CaptureRecord(startEpochMillis, offsetNanos, connectionId, type,
+                        scope >= 0 && scope < scopes.length ? scopes[scope] : null, flags, payload));
+            }
+        }
+    }
+
+    /**
+     * 读取全部记录并按时间戳排序（回放使用，整次抓包载入内存）
+     */
+    public static List<CaptureRecord> readAll(List<Path> segments) throws IOException {
+        List<CaptureRecord> records = new ArrayList<>();
+        read(segments, records::add);
+        records.sort((a, b) -> Long.compare(a.getOffsetNanos(), b.getOffsetNanos()));
+        return records;
+    }
+}
@@ -0,0 +1,83 @@
+package com.yqrb.netty.capture;
+
+import com.yqrb.netty.relay.RelayScope;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 抓包记录（回放/分析使用）
+ */
+public class CaptureRecord {
+
+    private final long startEpochMillis;
+    private final long offsetNanos;
+    private final long connectionId;
+    private final byte type;
+    private final RelayScope scope;
+    private final byte flags;
+    private final byte[] payload;
+
+    CaptureRecord(long startEpochMillis, long offsetNanos, long connectionId, byte type, RelayScope scope, byte flags,
+                  byte[] payload) {
+        this.startEpochMillis = startEpochMillis;
+        this.offsetNanos = offsetNanos;
+        this.connectionId = connectionId;
+        this.type = type;
+        this.scope = scope;
+        this.flags = flags;
+        this.payload = payload;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * 距抓包开始的纳秒数（同一次抓包的全部段共用同一起点）
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public RelayScope getScope() {
+        return scope;
+    }
+
+    public boolean isFinalFragment() {
+        return (flags & CaptureFormat.FLAG_FINAL) != 0;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public String text() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * OPEN记录的握手URI（路径+查询参数）
+     */
+    public String openUri() {
+        String text = text();
+        int split = text.indexOf('\n');
+        return split < 0 ? text : text.substring(0, split);
+    }
+
+    /**
+     * OPEN记录协商的子协议，未协商为null
+     */
+    public String openSubprotocol() {
+        String text = text();
+        int split = text.indexOf('\n');
+        return split < 0 || split == text.length() - 1 ? null : text.substring(split + 1);
+    }
+}
@@ -0,0 +1,98 @@
+package com.yqrb.netty.capture;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 抓包段文件（固定大小，创建时整体映射到内存）
+ * 多个EventLoop并发追加：先原子预留一段空间，再各自写入互不重叠的区域，不加锁；
+ * 映射在文件通道关闭后仍然有效，由操作系统回写磁盘。
+ */
+final class CaptureSegment {
+
+    private final long index;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicInteger position = new AtomicInteger(CaptureFormat.SEGMENT_HEADER_BYTES);
+
+    private CaptureSegment(long index, Path path, MappedByteBuffer buffer, int capacity) {
+        this.index = index;
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    static CaptureSegment create(Path path, long index, int capacity, long startEpochMillis) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        buffer.put(CaptureFormat.MAGIC);
+        buffer.putLong(startEpochMillis);
+        buffer.putLong(index);
+        return new CaptureSegment(index, path, buffer, capacity);
+    }
+
+    /**
+     * 预留一条记录的空间
+     * @return 记录起始偏移，-1表示本段剩余空间不足（需切换到下一段）
+     */
+    int reserve(int length) {
+        int offset = position.getAndAdd(length);
+        if (offset + length <= capacity && offset >= CaptureFormat.SEGMENT_HEADER_BYTES) {
+            return offset;
+        }
+        // 段已满：把位置固定在末尾，避免后续失败的预留继续累加导致溢出
+        position.set(capacity);
+        return -1;
+    }
+
+    /**
+     * 写入一条记录（负载来自ByteBuf或byte[]，二选一），长度字段最后写入
+     */
+    void write(int offset, int length, long offsetNanos, long connectionId, byte type, byte scope, byte flags,
+               ByteBuf payload, byte[] bytes) {
+        int payloadOffset = offset + CaptureFormat.RECORD_HEADER_BYTES;
+        if (payload != null || bytes != null) {
+            ByteBuffer target = buffer.duplicate();
+            target.limit(offset + length);
+            target.position(payloadOffset);
+            if (payload != null) {
+                payload.getBytes(payload.readerIndex(), target);
+            } else {
+                target.put(bytes);
+            }
+        }
+        buffer.putLong(offset + 4, offsetNanos);
+        buffer.putLong(offset + 12, connectionId);
+        buffer.put(offset + 20, type);
+        buffer.put(offset + 21, scope);
+        buffer.put(offset + 22, flags);
+        buffer.putInt(offset, length);
+    }
+
+    long index() {
+        return index;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int used() {
+        return Math.min(position.get(), capacity);
+    }
+
+    void force() {
+        buffer.force();
+    }
+}
@@ -0,0 +1,181 @@
+package com.yqrb.netty.capture;
+
+import com.yqrb.netty.relay.RelayScope;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 入站流量抓包（售前/售后共用，默认关闭，用于在测试环境回放真实负载形态）
+ * 1. 开启后每个WebSocket连接安装一个CaptureHandler：握手完成记录OPEN（URI+子协议），
+ *    入站数据帧记录原始负载，连接关闭记录CLOSE；每条记录带时间戳与连接号
+ * 2. 记录追加到内存映射的段文件（格式见CaptureFormat），EventLoop上只做原子预留+内存拷贝，无系统调用；
+ *    段写满后切换下一段，段数达到上限后停止抓包（不覆盖已抓取的数据）
+ * 3. 抓包文件含聊天内容原文，只应在授权的测试/压测场景开启
+ * 回放：CaptureReader读取，TrafficReplayTool按原连接与时间间隔（可压缩）驱动服务端
+ */
+@Component
+public class TrafficCapture {
+    private static final Logger log = LoggerFactory.getLogger(TrafficCapture.class);
+
+    @Value("${custom.netty.capture.enabled:false}")
+    private boolean enabled;
+    @Value("${custom.netty.capture.dir:logs/capture}")
+    private String dir;
+    @Value("${custom.netty.capture.segment-bytes:67108864}")
+    private int segmentBytes;
+    @Value("${custom.netty.capture.max-segments:16}")
+    private int maxSegments;
+
+    private String capturePrefix;
+    private long startEpochMillis;
+    private long startNanos;
+    private volatile CaptureSegment current;
+    private volatile boolean stopped = true;
+
+    private final AtomicLong connectionSeq = new AtomicLong();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder recordBytes = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        startEpochMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        capturePrefix = "capture-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(startEpochMillis));
+        try {
+            Files.createDirectories(Paths.get(dir));
+            current = openSegment(0);
+            stopped = false;
+            log.info("【流量抓包】已开启，目录：{}，文件前缀：{}，段大小：{}字节，最多{}段", dir, capturePrefix, segmentBytes, maxSegments);
+        } catch (IOException e) {
+            log.error("【流量抓包】创建段文件失败，抓包未开启：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 安装抓包处理器（需位于WebSocket协议处理器之后：只记录解码后的数据帧）
+     */
+    public void install(ChannelPipeline pipeline, RelayScope scope) {
+        if (stopped) {
+            return;
+        }
+        pipeline.addLast("trafficCapture", new CaptureHandler(this, scope, connectionSeq.incrementAndGet()));
+    }
+
+    void open(long connectionId, RelayScope scope, String uri, String subprotocol) {
+        byte[] payload = (uri + "\n" + (subprotocol == null ? "" : subprotocol)).getBytes(StandardCharsets.UTF_8);
+        append(connectionId, scope, CaptureFormat.TYPE_OPEN, CaptureFormat.FLAG_FINAL, null, payload, payload.length);
+    }
+
+    void frame(long connectionId, RelayScope scope, byte type, boolean finalFragment, ByteBuf content) {
+        append(connectionId, scope, type, finalFragment ? CaptureFormat.FLAG_FINAL : 0, content, null, content.readableBytes());
+    }
+
+    void close(long connectionId, RelayScope scope) {
+        append(connectionId, scope, CaptureFormat.TYPE_CLOSE, CaptureFormat.FLAG_FINAL, null, null, 0);
+    }
+
+    private void append(long connectionId, RelayScope scope, byte type, byte flags, ByteBuf content, byte[] bytes,
+                        int payloadLength) {
+        if (stopped) {
+            return;
+        }
+        int length = CaptureFormat.RECORD_HEADER_BYTES + payloadLength;
+        if (length > segmentBytes - CaptureFormat.SEGMENT_HEADER_BYTES) {
+            dropped.increment();
+            return;
+        }
+        long offsetNanos = System.nanoTime() - startNanos;
+        for (;;) {
+            CaptureSegment segment = current;
+            if (segment == null) {
+                dropped.increment();
+                return;
+            }
+            int offset = segment.reserve(length);
+            if (offset >= 0) {
+                segment.write(offset, length, offsetNanos, connectionId, type, (byte) scope.ordinal(), flags, content, bytes);
+                records.increment();
+                recordBytes.add(length);
+                return;
+            }
+            rotate(segment);
+        }
+    }
+
+    /**
+     * 段写满时切换下一段（只有一个线程真正创建，其余线程重试时使用新段）
+     */
+    private synchronized void rotate(CaptureSegment full) {
+        if (current != full) {
+            return;
+        }
+        full.force();
+        if (full.index() + 1 >= maxSegments) {
+            current = null;
+            stopped = true;
+            log.warn("【流量抓包】段数达到上限{}，停止抓包，累计记录：{}", maxSegments, records.sum());
+            return;
+        }
+        try {
+            current = openSegment(full.index() + 1);
+        } catch (IOException e) {
+            current = null;
+            stopped = true;
+            log.error("【流量抓包】创建段文件失败，停止抓包：{}", e.getMessage(), e);
+        }
+    }
+
+    private CaptureSegment openSegment(long index) throws IOException {
+        Path path = Paths.get(dir, String.format("%s-%04d%s", capturePrefix, index, CaptureFormat.SEGMENT_SUFFIX));
+        return CaptureSegment.create(path, index, segmentBytes, startEpochMillis);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        stopped = true;
+        CaptureSegment segment = current;
+        if (segment != null) {
+            segment.force();
+            log.info("【流量抓包】已停止，最后一段：{}，累计记录：{}", segment.path(), records.sum());
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        CaptureSegment segment = current;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("capturing", !stopped);
+        metrics.put("capturePrefix", capturePrefix);
+        metrics.put("segment", segment == null ? null : segment.index());
+        metrics.put("segmentUsedBytes", segment == null ? 0 : segment.used());
+        metrics.put("connections", connectionSeq.get());
+        metrics.put("records", records.sum());
+        metrics.put("recordBytes", recordBytes.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("elapsedSeconds", enabled ? TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos) : 0);
+        return metrics;
+    }
+}
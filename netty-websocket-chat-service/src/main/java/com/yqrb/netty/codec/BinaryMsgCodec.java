@@ -0,0 +1,165 @@
+package com.yqrb.netty.codec;
+
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.pojo.vo.PreSaleChatMessageVO;
+import com.yqrb.pojo.vo.PreSaleWebSocketMsgVO;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.util.Date;
+
+import static com.yqrb.netty.codec.BinaryMsgProtocol.*;
+
+/**
+ * 聊天消息VO与chat.binary.v1二进制帧的相互转换（字段号一经发布不得修改）
+ * 售后WebSocketMsgVO：1=receiverId 2=userId 3=msgContent 4=msgType 5=sessionId 6=attachmentPath 7=sendTime 8=senderType
+ * 售前PreSaleChatMessageVO：1=id 2=msgId 3=senderId 4=senderType 5=receiverId 6=content 7=msgType
+ *                         8=attachmentPath 9=preSaleSessionId 10=sendTime 11=isRead 12=createTime
+ */
+public final class BinaryMsgCodec {
+
+    private BinaryMsgCodec() {
+    }
+
+    public static boolean isBinaryClient(Channel channel) {
+        ConnectionContext context = ConnectionContext.of(channel);
+        return context != null && SUBPROTOCOL.equals(context.getSubprotocol());
+    }
+
+    /**
+     * 按通道协商的子协议生成推送帧（单接收者）：二进制客户端发二进制帧，其余发JSON文本帧，均直接编码到池化ByteBuf
+     * 多接收者推送使用EncodedMessage，只序列化一次
+     */
+    public static WebSocketFrame toFrame(Channel channel, WebSocketMsgVO msg) {
+        if (isBinaryClient(channel)) {
+            return new BinaryWebSocketFrame(encode(channel.alloc(), msg));
+        }
+        return new TextWebSocketFrame(JsonByteBufs.write(channel.alloc(), msg));
+    }
+
+    public static WebSocketFrame toFrame(Channel channel, PreSaleChatMessageVO msg) {
+        if (isBinaryClient(channel)) {
+            return new BinaryWebSocketFrame(encode(channel.alloc(), msg));
+        }
+        return new TextWebSocketFrame(JsonByteBufs.write(channel.alloc(), msg));
+    }
+
+    /**
+     * 售前补偿推送使用的PreSaleWebSocketMsgVO：二进制客户端按售前字段号编码（与实时推送的PreSaleChatMessageVO一致）
+     */
+    public static WebSocketFrame toFrame(Channel channel, PreSaleWebSocketMsgVO msg) {
+        if (isBinaryClient(channel)) {
+            PreSaleChatMessageVO vo = new PreSaleChatMessageVO();
+            vo.setSenderId(msg.getUserId());
+            vo.setSenderType(msg.getSenderType());
+            vo.setReceiverId(msg.getReceiverId());
+            vo.setContent(msg.getMsgContent());
+            vo.setMsgType(msg.getMsgType());
+            vo.setPreSaleSessionId(msg.getSessionId());
+            vo.setSendTime(msg.getSendTime());
+            return new BinaryWebSocketFrame(encode(channel.alloc(), vo));
+        }
+        return new TextWebSocketFrame(JsonByteBufs.write(channel.alloc(), msg));
+    }
+
+    public static ByteBuf encode(ByteBufAllocator alloc, WebSocketMsgVO msg) {
+        ByteBuf buf = alloc.buffer(estimate(msg.getMsgContent()) + 128);
+        try {
+            buf.writeByte(VERSION);
+            writeString(buf, 1, msg.getReceiverId());
+            writeString(buf, 2, msg.getUserId());
+            writeString(buf, 3, msg.getMsgContent());
+            writeString(buf, 4, msg.getMsgType());
+            writeString(buf, 5, msg.getSessionId());
+            writeString(buf, 6, msg.getAttachmentPath());
+            writeLong(buf, 7, msg.getSendTime() == null ? null : msg.getSendTime().getTime());
+            writeString(buf, 8, msg.getSenderType());
+            return buf;
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    public static ByteBuf encode(ByteBufAllocator alloc, PreSaleChatMessageVO msg) {
+        ByteBuf buf = alloc.buffer(estimate(msg.getContent()) + 160);
+        try {
+            buf.writeByte(VERSION);
+            writeLong(buf, 1, msg.getId());
+            writeString(buf, 2, msg.getMsgId());
+            writeString(buf, 3, msg.getSenderId());
+            writeString(buf, 4, msg.getSenderType());
+            writeString(buf, 5, msg.getReceiverId());
+            writeString(buf, 6, msg.getContent());
+            writeString(buf, 7, msg.getMsgType());
+            writeString(buf, 8, msg.getAttachmentPath());
+            writeString(buf, 9, msg.getPreSaleSessionId());
+            writeLong(buf, 10, msg.getSendTime() == null ? null : msg.getSendTime().getTime());
+            writeLong(buf, 11, msg.getIsRead() == null ? null : msg.getIsRead().longValue());
+            writeLong(buf, 12, msg.getCreateTime() == null ? null : msg.getCreateTime().getTime());
+            return buf;
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 从ByteBuf直接解码（不复制整帧、不经过JSON字符串），会移动readerIndex
+     */
+    public static WebSocketMsgVO decodeWebSocketMsg(ByteBuf buf) {
+        checkVersion(buf);
+        WebSocketMsgVO msg = new WebSocketMsgVO();
+        while (buf.isReadable()) {
+            int tag = (int) readVarint(buf);
+            int wireType = tag & 0x07;
+            switch (tag >>> 3) {
+                case 1: msg.setReceiverId(readString(buf, wireType)); break;
+                case 2: msg.setUserId(readString(buf, wireType)); break;
+                case 3: msg.setMsgContent(readString(buf, wireType)); break;
+                case 4: msg.setMsgType(readString(buf, wireType)); break;
+                case 5: msg.setSessionId(readString(buf, wireType)); break;
+                case 6: msg.setAttachmentPath(readString(buf, wireType)); break;
+                case 7: msg.setSendTime(new Date(readLong(buf, wireType))); break;
+                case 8: msg.setSenderType(readString(buf, wireType)); break;
+                default: skip(buf, wireType);
+            }
+        }
+        return msg;
+    }
+
+    public static PreSaleChatMessageVO decodePreSaleMsg(ByteBuf buf) {
+        checkVersion(buf);
+        PreSaleChatMessageVO msg = new PreSaleChatMessageVO();
+        while (buf.isReadable()) {
+            int tag = (int) readVarint(buf);
+            int wireType = tag & 0x07;
+            switch (tag >>> 3) {
+                case 1: msg.setId(readLong(buf, wireType)); break;
+                case 2: msg.setMsgId(readString(buf, wireType)); break;
+                case 3: msg.setSenderId(readString(buf, wireType)); break;
+                case 4: msg.setSenderType(readString(buf, wireType)); break;
+                case 5: msg.setReceiverId(readString(buf, wireType)); break;
+                case 6: msg.setContent(readString(buf, wireType)); break;
+                case 7: msg.setMsgType(readString(buf, wireType)); break;
+                case 8: msg.setAttachmentPath(readString(buf, wireType)); break;
+                case 9: msg.setPreSaleSessionId(readString(buf, wireType)); break;
+                case 10: msg.setSendTime(new Date(readLong(buf, wireType))); break;
+                case 11: msg.setIsRead((int) readLong(buf, wireType)); break;
+                case 12: msg.setCreateTime(new Date(readLong(buf, wireType))); break;
+                default: skip(buf, wireType);
+            }
+        }
+        return msg;
+    }
+
+    // 预估正文UTF-8长度（中文按3字节）
+    private static int estimate(String content) {
+        return content == null ? 0 : content.length() * 3;
+    }
+}
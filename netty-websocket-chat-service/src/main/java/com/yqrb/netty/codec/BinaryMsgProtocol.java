@@ -0,0 +1,143 @@
+package com.yqrb.netty.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 二进制消息协议 chat.binary.v1（售前/售后共用，握手时通过子协议协商，未协商的客户端仍使用JSON文本帧）
+ * 帧格式：[版本号1字节] + 若干字段，每个字段 = [标签varint] + [值]，标签 = 字段号 << 3 | 值类型
+ * 值类型：0=varint（整数/时间戳毫秒）；2=长度前缀UTF-8字符串；3=常量表下标varint（消息类型/发送者类型等固定取值）
+ * 未识别的字段按值类型跳过，便于后续增加字段；常量表只允许在末尾追加，不得调整已有顺序。
+ */
+public final class BinaryMsgProtocol {
+
+    public static final String SUBPROTOCOL = "chat.binary.v1";
+    public static final byte VERSION = 1;
+
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_STRING = 2;
+    static final int WIRE_INTERNED = 3;
+
+    // 常量表（下标即编码值，只能追加）
+    private static final String[] INTERNED = {
+            "TEXT", "ATTACHMENT", "NEW_APPLICATION_REMIND", "PAY_REMIND", "SYSTEM_TIP",
+            "USER", "CS", "SYSTEM",
+            "SYSTEM_NEW_REFUND_APPLY", "SYSTEM_REFUND_AUDIT_RESULT"
+    };
+    private static final Map<String, Integer> INTERNED_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < INTERNED.length; i++) {
+            INTERNED_INDEX.put(INTERNED[i], i);
+        }
+    }
+
+    private BinaryMsgProtocol() {
+    }
+
+    static void writeVarint(ByteBuf buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+
+    static long readVarint(ByteBuf buf) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("varint过长");
+    }
+
+    static void writeTag(ByteBuf buf, int field, int wireType) {
+        writeVarint(buf, (field << 3) | wireType);
+    }
+
+    /**
+     * 写入字符串字段：命中常量表写下标，否则写长度前缀UTF-8（直接编码进ByteBuf，不生成中间byte[]）
+     */
+    static void writeString(ByteBuf buf, int field, String value) {
+        if (value == null) {
+            return;
+        }
+        Integer index = INTERNED_INDEX.get(value);
+        if (index != null) {
+            writeTag(buf, field, WIRE_INTERNED);
+            writeVarint(buf, index);
+            return;
+        }
+        writeTag(buf, field, WIRE_STRING);
+        writeVarint(buf, ByteBufUtil.utf8Bytes(value));
+        ByteBufUtil.writeUtf8(buf, value);
+    }
+
+    static void writeLong(ByteBuf buf, int field, Long value) {
+        if (value != null) {
+            writeTag(buf, field, WIRE_VARINT);
+            writeVarint(buf, value);
+        }
+    }
+
+    /**
+     * 读取字符串值（常量表取值直接返回常量实例，普通字符串从ByteBuf原位解码）
+     */
+    static String readString(ByteBuf buf, int wireType) {
+        if (wireType == WIRE_INTERNED) {
+            int index = (int) readVarint(buf);
+            if (index < 0 || index >= INTERNED.length) {
+                throw new CorruptedFrameException("未知常量下标：" + index);
+            }
+            return INTERNED[index];
+        }
+        if (wireType != WIRE_STRING) {
+            throw new CorruptedFrameException("字符串字段值类型错误：" + wireType);
+        }
+        int length = checkedLength(buf);
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+
+    static long readLong(ByteBuf buf, int wireType) {
+        if (wireType != WIRE_VARINT) {
+            throw new CorruptedFrameException("整数字段值类型错误：" + wireType);
+        }
+        return readVarint(buf);
+    }
+
+    static void skip(ByteBuf buf, int wireType) {
+        if (wireType == WIRE_VARINT || wireType == WIRE_INTERNED) {
+            readVarint(buf);
+        } else if (wireType == WIRE_STRING) {
+            buf.skipBytes(checkedLength(buf));
+        } else {
+            throw new CorruptedFrameException("未知值类型：" + wireType);
+        }
+    }
+
+    static void checkVersion(ByteBuf buf) {
+        byte version = buf.readByte();
+        if (version != VERSION) {
+            throw new CorruptedFrameException("不支持的二进制协议版本：" + version);
+        }
+    }
+
+    private static int checkedLength(ByteBuf buf) {
+        long length = readVarint(buf);
+        if (length < 0 || length > buf.readableBytes()) {
+            throw new CorruptedFrameException("字符串长度越界：" + length);
+        }
+        return (int) length;
+    }
+}
@@ -0,0 +1,72 @@
+package com.yqrb.netty.codec;
+
+import com.yqrb.pojo.vo.PreSaleChatMessageVO;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * 一次序列化、多通道共享的出站消息
+ * 每种格式（JSON/chat.binary.v1）最多序列化一次到池化ByteBuf，每个接收通道拿到的是retainedDuplicate()，
+ * 共享同一块内存、各自独立的读写索引，由各通道写出后释放；调用方用完后调用release()释放自身持有的引用。
+ * 用法：
+ *   EncodedMessage encoded = EncodedMessage.of(msg);
+ *   try { 对每个接收通道 deliver(channel, encoded.frameFor(channel), ...) } finally { encoded.release(); }
+ */
+public final class EncodedMessage {
+
+    private final Object msg;
+    private ByteBuf json;
+    private ByteBuf binary;
+    private boolean released;
+
+    private EncodedMessage(Object msg) {
+        this.msg = msg;
+    }
+
+    public static EncodedMessage of(WebSocketMsgVO msg) {
+        return new EncodedMessage(msg);
+    }
+
+    public static EncodedMessage of(PreSaleChatMessageVO msg) {
+        return new EncodedMessage(msg);
+    }
+
+    /**
+     * 按通道协商的子协议取对应格式的帧（首次使用时序列化）
+     */
+    public synchronized WebSocketFrame frameFor(Channel channel) {
+        if (released) {
+            throw new IllegalStateException("EncodedMessage已释放");
+        }
+        if (BinaryMsgCodec.isBinaryClient(channel)) {
+            if (binary == null) {
+                binary = msg instanceof WebSocketMsgVO
+                        ? BinaryMsgCodec.encode(ByteBufAllocator.DEFAULT, (WebSocketMsgVO) msg)
+                        : BinaryMsgCodec.encode(ByteBufAllocator.DEFAULT, (PreSaleChatMessageVO) msg);
+            }
+            return new BinaryWebSocketFrame(binary.retainedDuplicate());
+        }
+        if (json == null) {
+            json = JsonByteBufs.write(ByteBufAllocator.DEFAULT, msg);
+        }
+        return new TextWebSocketFrame(json.retainedDuplicate());
+    }
+
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (json != null) {
+            json.release();
+        }
+        if (binary != null) {
+            binary.release();
+        }
+    }
+}
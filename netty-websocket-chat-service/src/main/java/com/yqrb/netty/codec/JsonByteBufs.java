@@ -0,0 +1,50 @@
+package com.yqrb.netty.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON与ByteBuf直接互转（不经过中间String）
+ * 序列化：fastjson直接输出UTF-8字节到池化ByteBuf；反序列化：从帧内容ByteBuf直接解析，不先转成frame.text()
+ */
+public final class JsonByteBufs {
+
+    private JsonByteBufs() {
+    }
+
+    /**
+     * 序列化为池化ByteBuf（调用方负责释放，或交给帧写出后由Netty释放）
+     */
+    public static ByteBuf write(ByteBufAllocator alloc, Object obj) {
+        ByteBuf buf = alloc.buffer();
+        try {
+            JSON.writeJSONString(new ByteBufOutputStream(buf), obj);
+            return buf;
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            throw new JSONException("JSON序列化失败：" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从ByteBuf解析（不移动原ByteBuf的readerIndex，解析失败抛JSONException，调用方可再按纯文本处理）
+     */
+    public static <T> T parse(ByteBuf content, Class<T> clazz) {
+        if (content.hasArray()) {
+            return JSON.parseObject(content.array(), content.arrayOffset() + content.readerIndex(),
+                    content.readableBytes(), StandardCharsets.UTF_8, clazz);
+        }
+        try {
+            return JSON.parseObject(new ByteBufInputStream(content.duplicate()), StandardCharsets.UTF_8, clazz);
+        } catch (IOException e) {
+            throw new JSONException("JSON解析失败：" + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.yqrb.netty.compression;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+
+/**
+ * 压缩耗时/压缩率探针（每个通道一对实例，夹在WebSocketServerExtensionHandler两侧）
+ * 握手成功后压缩编码器插入在扩展处理器之后，出站数据帧依次经过：上游探针(未压缩) -> 压缩编码器 -> 下游探针(已压缩)。
+ * 同一EventLoop内write是同步传递的，两次探测之间的耗时即为本帧压缩耗时。
+ */
+class CompressionProbeHandler extends ChannelOutboundHandlerAdapter {
+
+    private final DeflateMetrics metrics;
+    private final Probe probe;
+    // true=压缩编码器之前（看到原始帧）；false=压缩编码器之后（看到压缩帧）
+    private final boolean upstream;
+
+    private CompressionProbeHandler(DeflateMetrics metrics, Probe probe, boolean upstream) {
+        this.metrics = metrics;
+        this.probe = probe;
+        this.upstream = upstream;
+    }
+
+    static CompressionProbeHandler[] newPair(DeflateMetrics metrics) {
+        Probe probe = new Probe();
+        return new CompressionProbeHandler[]{
+                new CompressionProbeHandler(metrics, probe, true),
+                new CompressionProbeHandler(metrics, probe, false)
+        };
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!isDataFrame(msg)) {
+            ctx.write(msg, promise);
+            return;
+        }
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        if (upstream) {
+            probe.rawBytes = frame.content().readableBytes();
+            probe.startNanos = System.nanoTime();
+            probe.pending = true;
+            try {
+                ctx.write(msg, promise);
+            } finally {
+                probe.pending = false;
+            }
+            return;
+        }
+        if (probe.pending && (frame.rsv() & WebSocketExtension.RSV1) != 0) {
+            probe.pending = false;
+            metrics.onCompressed(probe.rawBytes, frame.content().readableBytes(), System.nanoTime() - probe.startNanos);
+        }
+        ctx.write(msg, promise);
+    }
+
+    private static boolean isDataFrame(Object msg) {
+        return msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame
+                || msg instanceof ContinuationWebSocketFrame;
+    }
+
+    private static final class Probe {
+        private int rawBytes;
+        private long startNanos;
+        private boolean pending;
+    }
+}
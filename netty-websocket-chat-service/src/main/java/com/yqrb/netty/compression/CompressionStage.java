@@ -0,0 +1,103 @@
+package com.yqrb.netty.compression;
+
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+
+/**
+ * WebSocket permessage-deflate压缩（售前/售后共用）
+ * 1. 客户端在握手时声明Sec-WebSocket-Extensions: permessage-deflate才启用，未声明的客户端不受影响
+ * 2. 小于阈值的帧（普通聊天短消息）不压缩，避免CPU开销大于带宽收益；长系统通知、批量补偿数组帧压缩后再发
+ * 3. Netty的压缩编码器内存级别固定为8，单连接压缩内存主要由窗口大小与上下文接管决定，通过下方配置控制
+ */
+@Component
+public class CompressionStage {
+    private static final Logger log = LoggerFactory.getLogger(CompressionStage.class);
+
+    @Value("${custom.netty.compression.enabled:true}")
+    private boolean enabled;
+    // 小于该字节数的帧不压缩
+    @Value("${custom.netty.compression.min-payload-bytes:1024}")
+    private int minPayloadBytes;
+    // 压缩级别0-9，6为zlib默认，兼顾速度与压缩率
+    @Value("${custom.netty.compression.level:6}")
+    private int compressionLevel;
+    // 是否接受客户端请求的server_max_window_bits（更小窗口=更少内存）
+    @Value("${custom.netty.compression.allow-server-window-size:true}")
+    private boolean allowServerWindowSize;
+    // 建议客户端使用的client_max_window_bits（8-15）
+    @Value("${custom.netty.compression.preferred-client-window-bits:15}")
+    private int preferredClientWindowBits;
+    // 是否接受客户端请求的server_no_context_takeover（每条消息后释放压缩上下文，省内存但压缩率略降）
+    @Value("${custom.netty.compression.allow-server-no-context:true}")
+    private boolean allowServerNoContext;
+    // 是否要求客户端client_no_context_takeover
+    @Value("${custom.netty.compression.preferred-client-no-context:false}")
+    private boolean preferredClientNoContext;
+
+    private final DeflateMetrics metrics = new DeflateMetrics();
+
+    private PerMessageDeflateServerExtensionHandshaker handshaker;
+
+    @PostConstruct
+    public void init() {
+        WebSocketExtensionFilter encoderFilter = new WebSocketExtensionFilter() {
+            @Override
+            public boolean mustSkip(WebSocketFrame frame) {
+                if (frame.content().readableBytes() < minPayloadBytes) {
+                    metrics.onSkipped();
+                    return true;
+                }
+                return false;
+            }
+        };
+        WebSocketExtensionFilterProvider filterProvider = new WebSocketExtensionFilterProvider() {
+            @Override
+            public WebSocketExtensionFilter encoderFilter() {
+                // 每个协商成功的通道创建一次编码器
+                metrics.onNegotiated();
+                return encoderFilter;
+            }
+
+            @Override
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+        handshaker = new PerMessageDeflateServerExtensionHandshaker(compressionLevel, allowServerWindowSize,
+                preferredClientWindowBits, allowServerNoContext, preferredClientNoContext, filterProvider);
+        log.info("【WebSocket压缩】permessage-deflate：{}，阈值：{}字节，压缩级别：{}，客户端窗口：{}位",
+                enabled ? "开启" : "关闭", minPayloadBytes, compressionLevel, preferredClientWindowBits);
+    }
+
+    /**
+     * 安装压缩扩展处理器（需位于WebSocketServerProtocolHandler之前）
+     */
+    public void install(ChannelPipeline pipeline) {
+        if (!enabled) {
+            return;
+        }
+        CompressionProbeHandler[] probes = CompressionProbeHandler.newPair(metrics);
+        pipeline.addLast("deflateProbeCompressed", probes[1]);
+        pipeline.addLast("webSocketCompression", new WebSocketServerExtensionHandler(handshaker));
+        pipeline.addLast("deflateProbeRaw", probes[0]);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = metrics.snapshot();
+        snapshot.put("enabled", enabled);
+        snapshot.put("minPayloadBytes", minPayloadBytes);
+        snapshot.put("level", compressionLevel);
+        return snapshot;
+    }
+}
@@ -0,0 +1,52 @@
+package com.yqrb.netty.compression;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * permessage-deflate压缩指标（售前/售后共用，由CompressionStage持有）
+ */
+public class DeflateMetrics {
+
+    private final LongAdder negotiated = new LongAdder();
+    private final LongAdder skippedBelowThreshold = new LongAdder();
+    private final LongAdder compressedFrames = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+
+    void onNegotiated() {
+        negotiated.increment();
+    }
+
+    void onSkipped() {
+        skippedBelowThreshold.increment();
+    }
+
+    void onCompressed(int raw, int compressed, long costNanos) {
+        compressedFrames.increment();
+        rawBytes.add(raw);
+        compressedBytes.add(compressed);
+        compressNanos.add(costNanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        long frames = compressedFrames.sum();
+        long raw = rawBytes.sum();
+        long compressed = compressedBytes.sum();
+        long nanos = compressNanos.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("negotiatedChannels", negotiated.sum());
+        metrics.put("skippedBelowThreshold", skippedBelowThreshold.sum());
+        metrics.put("compressedFrames", frames);
+        metrics.put("rawBytes", raw);
+        metrics.put("compressedBytes", compressed);
+        // 压缩率 = 压缩后/压缩前，越小越好
+        metrics.put("compressionRatio", raw == 0 ? 0 : Math.round(compressed * 1000.0 / raw) / 1000.0);
+        metrics.put("totalCpuMillis", TimeUnit.NANOSECONDS.toMillis(nanos));
+        metrics.put("avgCpuMicros", frames == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos / frames));
+        return metrics;
+    }
+}
@@ -0,0 +1,132 @@
+package com.yqrb.netty.context;
+
+import com.yqrb.netty.relay.RelayScope;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * 连接上下文（每个通道一个，握手完成时创建，之后只读）
+ * 1. 替代原先分散的SENDER_TYPE/USER_ID/SUBPROTOCOL等通道属性：一次attr查找取到全部连接信息
+ * 2. receiverId/sessionId在创建时intern，同一账号的多个连接共享同一字符串实例
+ * 3. 权限校验用的ReceiverId（R_FIXED_0000_前缀）在创建时拼好，入站消息不再逐条拼接
+ * 4. 计数器只在通道EventLoop上写（单写者），其他线程读取为近似值
+ * 注：注册表维护的RECEIVER_ID/SESSION_ID属性仍是索引与会话切换（bindSession）的依据，
+ *    这里的sessionId是握手时的会话，当前会话以注册表属性为准。
+ */
+public final class ConnectionContext {
+
+    public static final AttributeKey<ConnectionContext> KEY = AttributeKey.valueOf("CONNECTION_CONTEXT");
+
+    // 业务层ReceiverId校验要求的前缀
+    public static final String AUTH_PREFIX = "R_FIXED_0000_";
+
+    private final RelayScope scope;
+    private final String receiverId;
+    private final String sessionId;
+    private final SenderType senderType;
+    private final String authReceiverId;
+    private final String subprotocol;
+    private final long connectedAt;
+
+    private long messagesIn;
+    private long bytesIn;
+    private long rejected;
+
+    private ConnectionContext(RelayScope scope, String receiverId, String sessionId, SenderType senderType,
+                              String subprotocol) {
+        this.scope = scope;
+        this.receiverId = receiverId.intern();
+        this.sessionId = sessionId == null ? null : sessionId.intern();
+        this.senderType = senderType;
+        this.authReceiverId = AUTH_PREFIX + receiverId;
+        this.subprotocol = subprotocol;
+        this.connectedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 握手完成时创建并绑定到通道（发送者类型按ID前缀区分）
+     */
+    public static ConnectionContext bind(Channel channel, RelayScope scope, String receiverId, String sessionId,
+                                         String subprotocol) {
+        ConnectionContext context = new ConnectionContext(scope, receiverId, sessionId,
+                SenderType.fromReceiverId(receiverId), subprotocol);
+        channel.attr(KEY).set(context);
+        return context;
+    }
+
+    /**
+     * @return 未完成握手的通道为null
+     */
+    public static ConnectionContext of(Channel channel) {
+        return channel.attr(KEY).get();
+    }
+
+    /**
+     * 通道的receiverId（未完成握手为null），用于日志等只需要ID的场景
+     */
+    public static String receiverIdOf(Channel channel) {
+        ConnectionContext context = of(channel);
+        return context == null ? null : context.receiverId;
+    }
+
+    public RelayScope getScope() {
+        return scope;
+    }
+
+    public String getReceiverId() {
+        return receiverId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public SenderType getSenderType() {
+        return senderType;
+    }
+
+    public String getAuthReceiverId() {
+        return authReceiverId;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    /**
+     * 记录一条入站业务消息（EventLoop线程调用）
+     */
+    public void recordInbound(int bytes) {
+        messagesIn++;
+        bytesIn += bytes;
+    }
+
+    /**
+     * 记录一条被准入控制拒绝的消息（EventLoop线程调用）
+     */
+    public void recordRejected() {
+        rejected++;
+    }
+
+    public long getMessagesIn() {
+        return messagesIn;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionContext{" + scope + "," + receiverId + "," + senderType + ",session=" + sessionId
+                + ",subprotocol=" + subprotocol + ",in=" + messagesIn + ",rejected=" + rejected + "}";
+    }
+}
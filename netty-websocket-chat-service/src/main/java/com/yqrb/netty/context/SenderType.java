@@ -0,0 +1,27 @@
+package com.yqrb.netty.context;
+
+/**
+ * 连接方类型（售前/售后共用，code与各VO的SENDER_TYPE_*常量取值一致）
+ */
+public enum SenderType {
+    USER("USER"),
+    CS("CS"),
+    SYSTEM("SYSTEM");
+
+    private final String code;
+
+    SenderType(String code) {
+        this.code = code;
+    }
+
+    public String code() {
+        return code;
+    }
+
+    /**
+     * 按ID前缀区分：LYQY_CS_开头为客服，其余（LYQY_USER_及未识别前缀）按用户处理
+     */
+    public static SenderType fromReceiverId(String receiverId) {
+        return receiverId != null && receiverId.startsWith("LYQY_CS_") ? CS : USER;
+    }
+}
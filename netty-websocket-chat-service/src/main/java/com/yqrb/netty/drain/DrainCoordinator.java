@@ -0,0 +1,273 @@
+package com.yqrb.netty.drain;
+
+import com.yqrb.netty.NettyWebSocketServerHandler;
+import com.yqrb.netty.admission.AdmissionControl;
+import com.yqrb.netty.codec.EncodedMessage;
+import com.yqrb.netty.executor.NettyBusinessExecutor;
+import com.yqrb.netty.executor.SessionLaneExecutor;
+import com.yqrb.netty.outbound.OutboundQueueHandler;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.placement.SessionPlacement;
+import com.yqrb.netty.pre.PreSaleNettyWebSocketServerHandler;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.pojo.vo.PreSaleChatMessageVO;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 优雅摘流（零停机重启）：售前/售后/网关共用，整个进程只执行一次
+ * 1. 停止接入：关闭全部监听通道（已建立的连接不受影响），退出会话放置哈希环，新连接落到其他节点
+ * 2. 分散重连：给每个在线连接推送SYSTEM_RECONNECT_LATER（msgContent为建议重连等待毫秒数，在[min,max]内随机），
+ *    并在该时间点关闭该连接（关闭码4503），避免全部客户端同时重连到存活节点触发未读/离线补偿风暴；
+ *    关闭前等待该通道出站队列排空，未排空的消息在关闭时仍按原逻辑转离线存储
+ * 3. 收尾：全部连接关闭、业务线程池（补偿推送）与会话车道（消息持久化/转发）空闲、准入并发计数归零，或到达截止时间，即为摘流完成
+ * 触发方式：POST /netty/drain/start（运维接口，需运维令牌或本机访问）、Spring容器关闭（SIGTERM，服务stop()前先摘流并等待）
+ */
+@Component
+public class DrainCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(DrainCoordinator.class);
+
+    public static final int DRAIN_CLOSE_CODE = 4503;
+    private static final long CLOSE_RETRY_MILLIS = 100;
+    // 通道已纳入分散重连（摘流遍历与握手注册可能同时覆盖同一通道）
+    private static final AttributeKey<Boolean> DRAIN_SCHEDULED_KEY = AttributeKey.valueOf("DRAIN_SCHEDULED");
+
+    public enum State { RUNNING, DRAINING, DRAINED }
+
+    @Value("${custom.netty.drain.deadline-seconds:30}")
+    private long deadlineSeconds;
+    @Value("${custom.netty.drain.reconnect-min-millis:1000}")
+    private long reconnectMinMillis;
+    @Value("${custom.netty.drain.reconnect-max-millis:20000}")
+    private long reconnectMaxMillis;
+    // Spring容器关闭时（SIGTERM）先摘流再关闭EventLoopGroup
+    @Value("${custom.netty.drain.on-shutdown:true}")
+    private boolean onShutdown;
+
+    @Autowired
+    private OutboundQueueManager outboundQueueManager;
+    @Autowired
+    private NettyBusinessExecutor nettyBusinessExecutor;
+    @Autowired
+    private SessionLaneExecutor sessionLaneExecutor;
+    @Autowired
+    private AdmissionControl admissionControl;
+    @Autowired
+    private SessionPlacement sessionPlacement;
+
+    private final List<Channel> acceptors = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+    private final AtomicInteger channelsTotal = new AtomicInteger();
+    private final AtomicInteger channelsClosed = new AtomicInteger();
+    private final LongAdder notified = new LongAdder();
+    private final LongAdder forcedClosed = new LongAdder();
+
+    private volatile State state = State.RUNNING;
+    private volatile String trigger;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile long deadlineNanos;
+
+    /**
+     * 登记监听通道（独立端口/网关绑定成功后调用），摘流开始时统一关闭
+     */
+    public void registerAcceptors(List<Channel> serverChannels) {
+        acceptors.addAll(serverChannels);
+        if (state != State.RUNNING) {
+            closeAcceptors();
+        }
+    }
+
+    public boolean isDraining() {
+        return state != State.RUNNING;
+    }
+
+    /**
+     * 开始摘流（幂等，异步执行，进度见snapshot()）
+     * @return false=已在摘流中或已完成
+     */
+    public boolean start(String source) {
+        synchronized (this) {
+            if (state != State.RUNNING) {
+                return false;
+            }
+            trigger = source;
+            startedAt = System.currentTimeMillis();
+            deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(deadlineSeconds);
+            state = State.DRAINING;
+        }
+        log.info("【优雅摘流】开始，触发方式：{}，截止时间：{}s", source, deadlineSeconds);
+        Thread monitor = new Thread(this::run, "netty-drain");
+        monitor.setDaemon(true);
+        monitor.start();
+        return true;
+    }
+
+    /**
+     * 服务stop()调用：按配置先摘流并等待完成（截止时间内），随后由调用方关闭EventLoopGroup
+     */
+    public void drainOnShutdown() {
+        if (!onShutdown) {
+            return;
+        }
+        start("SHUTDOWN");
+        try {
+            drained.get(deadlineSeconds + 5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            log.warn("【优雅摘流】等待超时，继续关闭");
+        } catch (Exception e) {
+            log.error("【优雅摘流】等待异常：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 摘流开始后才完成握手的连接：注册后立即纳入分散重连
+     */
+    public void onRegistered(Channel channel, RelayScope scope, String receiverId) {
+        if (state == State.DRAINING) {
+            schedule(channel, scope, receiverId);
+        }
+    }
+
+    private void run() {
+        try {
+            closeAcceptors();
+            sessionPlacement.withdraw();
+            NettyWebSocketServerHandler.RECEIVER_REGISTRY.forEachChannel(
+                    (receiverId, channel) -> schedule(channel, RelayScope.AFTER_SALE, receiverId));
+            PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.forEachChannel(
+                    (receiverId, channel) -> schedule(channel, RelayScope.PRE_SALE, receiverId));
+            log.info("【优雅摘流】已停止接入并通知分散重连，连接数：{}", channelsTotal.get());
+
+            while (System.nanoTime() - deadlineNanos < 0) {
+                if (channelsClosed.get() >= channelsTotal.get() && nettyBusinessExecutor.isIdle()
+                        && sessionLaneExecutor.isIdle() && admissionControl.inFlight() == 0) {
+                    break;
+                }
+                Thread.sleep(CLOSE_RETRY_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("【优雅摘流】执行异常：{}", e.getMessage(), e);
+        } finally {
+            state = State.DRAINED;
+            finishedAt = System.currentTimeMillis();
+            drained.complete(null);
+            log.info("【优雅摘流】完成，耗时：{}ms，进度：{}", finishedAt - startedAt, snapshot());
+        }
+    }
+
+    private void closeAcceptors() {
+        for (Channel acceptor : acceptors) {
+            if (acceptor.isOpen()) {
+                acceptor.close();
+            }
+        }
+    }
+
+    private void schedule(Channel channel, RelayScope scope, String receiverId) {
+        if (!channel.isActive() || channel.attr(DRAIN_SCHEDULED_KEY).setIfAbsent(Boolean.TRUE) != null) {
+            return;
+        }
+        channelsTotal.incrementAndGet();
+        channel.closeFuture().addListener(future -> channelsClosed.incrementAndGet());
+        // 建议重连时间不超过截止时间，留出关闭前排空出站队列的余量
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        long max = Math.max(reconnectMinMillis, Math.min(reconnectMaxMillis, remainingMillis * 4 / 5));
+        long delayMillis = reconnectMinMillis + ThreadLocalRandom.current().nextLong(max - reconnectMinMillis + 1);
+        sendReconnectLater(channel, scope, receiverId, delayMillis);
+        notified.increment();
+        channel.eventLoop().schedule(() -> closeWhenFlushed(channel), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeWhenFlushed(Channel channel) {
+        if (!channel.isActive()) {
+            return;
+        }
+        OutboundQueueHandler queue = channel.attr(OutboundQueueHandler.OUTBOUND_QUEUE_KEY).get();
+        boolean pending = queue != null && queue.queuedMessages() > 0;
+        if (pending && System.nanoTime() - deadlineNanos < 0) {
+            channel.eventLoop().schedule(() -> closeWhenFlushed(channel), CLOSE_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (pending) {
+            forcedClosed.increment();
+        }
+        channel.writeAndFlush(new CloseWebSocketFrame(DRAIN_CLOSE_CODE, "RECONNECT_LATER"))
+                .addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private void sendReconnectLater(Channel channel, RelayScope scope, String receiverId, long delayMillis) {
+        EncodedMessage encoded;
+        if (scope == RelayScope.PRE_SALE) {
+            PreSaleChatMessageVO hint = new PreSaleChatMessageVO();
+            hint.setSenderId("SYSTEM");
+            hint.setSenderType(PreSaleChatMessageVO.SENDER_TYPE_SYSTEM);
+            hint.setReceiverId(receiverId);
+            hint.setMsgType(PreSaleChatMessageVO.MSG_TYPE_RECONNECT_LATER);
+            hint.setContent(String.valueOf(delayMillis));
+            hint.setSendTime(new Date());
+            encoded = EncodedMessage.of(hint);
+        } else {
+            WebSocketMsgVO hint = new WebSocketMsgVO();
+            hint.setUserId("SYSTEM");
+            hint.setSenderType(WebSocketMsgVO.SENDER_TYPE_SYSTEM);
+            hint.setReceiverId(receiverId);
+            hint.setMsgType(WebSocketMsgVO.MSG_TYPE_RECONNECT_LATER);
+            hint.setMsgContent(String.valueOf(delayMillis));
+            hint.setSendTime(new Date());
+            encoded = EncodedMessage.of(hint);
+        }
+        try {
+            outboundQueueManager.deliver(channel, encoded.frameFor(channel), null);
+        } finally {
+            encoded.release();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        State current = state;
+        metrics.put("state", current.name());
+        if (current == State.RUNNING) {
+            return metrics;
+        }
+        long end = current == State.DRAINED ? finishedAt : System.currentTimeMillis();
+        metrics.put("trigger", trigger);
+        metrics.put("startedAt", new Date(startedAt));
+        metrics.put("elapsedMillis", end - startedAt);
+        metrics.put("deadlineSeconds", deadlineSeconds);
+        metrics.put("channelsTotal", channelsTotal.get());
+        metrics.put("notified", notified.sum());
+        metrics.put("channelsClosed", channelsClosed.get());
+        metrics.put("channelsRemaining", Math.max(0, channelsTotal.get() - channelsClosed.get()));
+        metrics.put("forcedClosed", forcedClosed.sum());
+        metrics.put("businessQueueDepth", nettyBusinessExecutor.queueDepth());
+        metrics.put("sessionQueueDepth", sessionLaneExecutor.queueDepth());
+        metrics.put("inFlight", admissionControl.inFlight());
+        return metrics;
+    }
+}
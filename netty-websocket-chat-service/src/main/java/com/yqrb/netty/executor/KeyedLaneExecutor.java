@@ -0,0 +1,217 @@
+package com.yqrb.netty.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按Key分道的有界执行器
+ * 同一个Key永远落到同一条单线程车道上，保证同Key任务严格有序；不同车道之间并行执行。
+ * 每条车道的队列有界，队列满时拒绝任务（由调用方决定降级策略），绝不回退到调用线程执行，
+ * 避免阻塞型任务反过来占用Netty I/O线程。
+ * 每条车道累计忙碌时间，监控快照按两次查询之间的间隔计算车道利用率。
+ */
+public class KeyedLaneExecutor {
+    private static final Logger log = LoggerFactory.getLogger(KeyedLaneExecutor.class);
+
+    private final String name;
+    private final int laneQueueCapacity;
+    private final ThreadPoolExecutor[] lanes;
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    // 车道累计忙碌时间（已完成任务）与当前任务开始时间（0=空闲），用于计算利用率
+    private final AtomicLongArray laneBusyNanos;
+    private final AtomicLongArray laneRunningSince;
+    // 上次快照的采样点（快照方法内加锁读写）
+    private long lastSampleNanos;
+    private final long[] lastSampleBusyNanos;
+
+    /**
+     * @param name              执行器名称（线程名前缀、日志标识）
+     * @param laneCount         车道数（单车道单线程）
+     * @param laneQueueCapacity 每条车道的最大排队任务数
+     */
+    public KeyedLaneExecutor(String name, int laneCount, int laneQueueCapacity) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("laneCount必须大于0：" + laneCount);
+        }
+        if (laneQueueCapacity <= 0) {
+            throw new IllegalArgumentException("laneQueueCapacity必须大于0：" + laneQueueCapacity);
+        }
+        this.name = name;
+        this.laneQueueCapacity = laneQueueCapacity;
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        this.laneBusyNanos = new AtomicLongArray(laneCount);
+        this.laneRunningSince = new AtomicLongArray(laneCount);
+        this.lastSampleBusyNanos = new long[laneCount];
+        this.lastSampleNanos = System.nanoTime();
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(laneQueueCapacity),
+                    new LaneThreadFactory(name + "-lane-" + i),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * 提交任务到Key对应的车道
+     * @return true=已入队；false=车道队列已满或执行器已关闭，任务未执行
+     */
+    public boolean execute(Object key, Runnable task) {
+        int index = laneIndex(key);
+        ThreadPoolExecutor lane = lanes[index];
+        submittedCount.incrementAndGet();
+        try {
+            lane.execute(() -> {
+                long start = System.nanoTime();
+                laneRunningSince.set(index, start);
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.error("【{}】车道任务执行异常：{}", name, t.getMessage(), t);
+                } finally {
+                    laneBusyNanos.addAndGet(index, System.nanoTime() - start);
+                    laneRunningSince.set(index, 0);
+                    completedCount.incrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    public int laneIndex(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        // 扰动高位，避免hashCode低位分布不均导致车道倾斜
+        h ^= (h >>> 16);
+        return (h & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * 当前所有车道排队中的任务总数（不含正在执行的任务）
+     */
+    public int queueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * 当前正在执行任务的车道数
+     */
+    public int activeCount() {
+        int active = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            active += lane.getActiveCount();
+        }
+        return active;
+    }
+
+    public boolean isIdle() {
+        return queueDepth() == 0 && activeCount() == 0;
+    }
+
+    /**
+     * 指标快照（供监控接口输出）
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        List<Integer> laneDepths = new ArrayList<>(lanes.length);
+        for (ThreadPoolExecutor lane : lanes) {
+            laneDepths.add(lane.getQueue().size());
+        }
+        metrics.put("laneCount", lanes.length);
+        metrics.put("laneQueueCapacity", laneQueueCapacity);
+        metrics.put("queueDepth", queueDepth());
+        metrics.put("laneQueueDepths", laneDepths);
+        metrics.put("laneUtilization", laneUtilization());
+        metrics.put("activeLanes", activeCount());
+        metrics.put("submitted", submittedCount.get());
+        metrics.put("completed", completedCount.get());
+        metrics.put("rejected", rejectedCount.get());
+        return metrics;
+    }
+
+    /**
+     * 各车道利用率（%）：距上次查询期间车道线程执行任务的时间占比，正在执行的任务按已执行时长计入
+     */
+    private synchronized List<Double> laneUtilization() {
+        long now = System.nanoTime();
+        long window = Math.max(1, now - lastSampleNanos);
+        List<Double> utilization = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            long runningSince = laneRunningSince.get(i);
+            long busy = laneBusyNanos.get(i) + (runningSince == 0 ? 0 : now - runningSince);
+            long delta = Math.min(window, Math.max(0, busy - lastSampleBusyNanos[i]));
+            utilization.add(Math.round(delta * 1000.0 / window) / 10.0);
+            // 采样值含正在执行任务的已执行部分，任务完成后下次查询只计入剩余部分
+            lastSampleBusyNanos[i] = busy;
+        }
+        lastSampleNanos = now;
+        return utilization;
+    }
+
+    /**
+     * 停止接收新任务，并在超时时间内等待已入队任务执行完毕
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.shutdownNow();
+            }
+        }
+        log.info("【{}】执行器已关闭，累计提交：{}，完成：{}，拒绝：{}",
+                name, submittedCount.get(), completedCount.get(), rejectedCount.get());
+    }
+
+    private static final class LaneThreadFactory implements ThreadFactory {
+        private final String threadName;
+        private final AtomicInteger seq = new AtomicInteger();
+
+        LaneThreadFactory(String threadName) {
+            this.threadName = threadName;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            // 车道线程异常退出后会被线程池重建，追加序号便于排查
+            int n = seq.getAndIncrement();
+            Thread thread = new Thread(r, n == 0 ? threadName : threadName + "-" + n);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
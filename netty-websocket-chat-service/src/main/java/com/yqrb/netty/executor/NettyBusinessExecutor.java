@@ -0,0 +1,72 @@
+package com.yqrb.netty.executor;
+
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Netty业务线程池（售前/售后共用）
+ * 握手后的未读消息、离线消息补偿推送等阻塞型任务（MariaDB/Redis查询）统一提交到这里执行，
+ * 不再占用Worker EventLoop；按通道ID分道，保证同一通道的补偿任务严格有序，
+ * 查询结果再切回通道自身的EventLoop写出（见ReplayBatchWriter）。
+ */
+@Component
+public class NettyBusinessExecutor {
+    private static final Logger log = LoggerFactory.getLogger(NettyBusinessExecutor.class);
+
+    // 默认车道数与Hikari连接池（5）对齐，避免业务线程远多于可用连接而空等
+    @Value("${custom.netty.business-executor.lane-count:4}")
+    private int laneCount;
+    @Value("${custom.netty.business-executor.lane-queue-capacity:1024}")
+    private int laneQueueCapacity;
+    @Value("${custom.netty.business-executor.shutdown-timeout-seconds:10}")
+    private int shutdownTimeoutSeconds;
+
+    private KeyedLaneExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        executor = new KeyedLaneExecutor("netty-biz", laneCount, laneQueueCapacity);
+        log.info("【Netty业务线程池】初始化完成，车道数：{}，单车道队列上限：{}", laneCount, laneQueueCapacity);
+    }
+
+    /**
+     * 提交与通道相关的阻塞任务（同一通道的任务按提交顺序执行）
+     * @return false=队列已满被拒绝，调用方需自行降级
+     */
+    public boolean submit(Channel channel, Runnable task) {
+        return executor.execute(channel.id().asLongText(), task);
+    }
+
+    /**
+     * 按业务Key提交阻塞任务（无通道可用时使用，如目标通道已不存在的离线存储）
+     * @return false=队列已满被拒绝
+     */
+    public boolean submit(String key, Runnable task) {
+        return executor.execute(key, task);
+    }
+
+    public int queueDepth() {
+        return executor.queueDepth();
+    }
+
+    public boolean isIdle() {
+        return executor.isIdle();
+    }
+
+    public Map<String, Object> snapshot() {
+        return executor.snapshot();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown(shutdownTimeoutSeconds, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,64 @@
+package com.yqrb.netty.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话车道执行器（售前/售后聊天消息的持久化与转发）
+ * 同一会话的用户端与客服端连接通常落在不同的EventLoop上，各自直接调用持久化会导致同一会话的消息
+ * 并发写入、顺序只能依赖send_time；这里按sessionId固定分配到一条单线程车道，
+ * 同一会话的持久化与转发严格按到达车道的顺序执行（send_time也在车道上生成），不同会话的车道并行。
+ */
+@Component
+public class SessionLaneExecutor {
+    private static final Logger log = LoggerFactory.getLogger(SessionLaneExecutor.class);
+
+    // 0=按CPU核数
+    @Value("${custom.netty.session-executor.lane-count:0}")
+    private int laneCount;
+    @Value("${custom.netty.session-executor.lane-queue-capacity:4096}")
+    private int laneQueueCapacity;
+    @Value("${custom.netty.session-executor.shutdown-timeout-seconds:10}")
+    private int shutdownTimeoutSeconds;
+
+    private KeyedLaneExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int lanes = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        executor = new KeyedLaneExecutor("chat-session", lanes, laneQueueCapacity);
+        log.info("【会话车道】初始化完成，车道数：{}，单车道队列上限：{}", lanes, laneQueueCapacity);
+    }
+
+    /**
+     * 提交会话消息处理任务（同一sessionId的任务按提交顺序执行）
+     * @return false=车道队列已满被拒绝，调用方需自行降级
+     */
+    public boolean submit(String sessionId, Runnable task) {
+        return executor.execute(sessionId, task);
+    }
+
+    public int queueDepth() {
+        return executor.queueDepth();
+    }
+
+    public boolean isIdle() {
+        return executor.isIdle();
+    }
+
+    public Map<String, Object> snapshot() {
+        return executor.snapshot();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown(shutdownTimeoutSeconds, TimeUnit.SECONDS);
+    }
+}
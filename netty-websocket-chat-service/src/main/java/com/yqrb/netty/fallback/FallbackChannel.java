@@ -0,0 +1,306 @@
+package com.yqrb.netty.fallback;
+
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.channel.WriteBufferWaterMark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 降级传输通道（SSE/长轮询客户端在Netty侧的代表，每个降级连接一个）
+ * 1. 与WebSocket通道一样注册到售前/售后连接注册表，消息转发、系统推送、广播、摘流都经OutboundQueueManager照常投递，不区分传输方式
+ * 2. 写出的帧不经网络，按序留在ChannelOutboundBuffer中等待接收者取走：SSE推送成功后移除，长轮询在下一次轮询确认后移除；
+ *    积压计入写缓冲水位，超过高水位后由出站队列暂存、溢出时转离线存储，与WebSocket慢客户端的背压处理一致
+ * 3. 绑定在降级传输专用的DefaultEventLoopGroup上，接收者、序号等状态只在通道EventLoop中读写
+ */
+public final class FallbackChannel extends AbstractChannel {
+    private static final Logger log = LoggerFactory.getLogger(FallbackChannel.class);
+
+    // 存活标记：长轮询请求到达、SSE推送成功时沿处理链传递（刷新IdleTracker读时间，相当于WebSocket的Pong）
+    static final Object ALIVE = new Object();
+
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+    // 业务线程池已满时的重试间隔
+    private static final long RETRY_MILLIS = 200;
+
+    private final FallbackTransport transport;
+    private final ChannelConfig config;
+    private final SocketAddress remoteAddress;
+    private final int maxBatch;
+    private final boolean streaming;
+    private volatile boolean open = true;
+
+    private FallbackSink sink;
+    private boolean sending;
+    private boolean announced;
+    // 已移除（SSE已推送/长轮询已确认）的条目数，下一个条目的序号为removed + 1
+    private long removed;
+
+    FallbackChannel(FallbackTransport transport, SocketAddress remoteAddress, FallbackSink sink, int maxBatch,
+                    WriteBufferWaterMark waterMark) {
+        super(null);
+        this.transport = transport;
+        this.remoteAddress = remoteAddress;
+        this.sink = sink;
+        this.streaming = sink.streaming();
+        this.maxBatch = maxBatch;
+        this.config = new DefaultChannelConfig(this);
+        this.config.setWriteBufferWaterMark(waterMark);
+    }
+
+    /**
+     * 连接标识（长轮询请求携带），取完整通道ID，不易猜测
+     */
+    public String connectionId() {
+        return id().asLongText();
+    }
+
+    /**
+     * true=SSE，false=长轮询
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * 长轮询到达（EventLoop内调用）：先移除客户端已确认的条目，再挂上新的接收者，原先挂起的轮询以空结果结束
+     */
+    void poll(long ack, FallbackSink next) {
+        if (!isActive()) {
+            next.close();
+            return;
+        }
+        // 先解除原接收者再确认：确认触发的出站队列排空会重入pump，不能把条目交给即将被替换的轮询
+        FallbackSink previous = sink;
+        sink = null;
+        if (previous != null) {
+            previous.close();
+        }
+        acknowledge(ack);
+        pipeline().fireChannelRead(ALIVE);
+        sink = next;
+        pump();
+    }
+
+    /**
+     * 长轮询挂起超时（EventLoop内调用）：仍是当前接收者时解除
+     */
+    void detach(FallbackSink expired) {
+        if (sink == expired) {
+            sink = null;
+        }
+    }
+
+    /**
+     * 把写缓冲中已flush的条目交给接收者（EventLoop内调用，写入/轮询/推送完成后触发）
+     */
+    void pump() {
+        FallbackSink current = sink;
+        if (current == null || sending || !isActive()) {
+            return;
+        }
+        ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+        List<FallbackEvent> events = collect(buffer);
+        if (events.isEmpty()) {
+            return;
+        }
+        announced = true;
+        if (current.streaming()) {
+            sending = true;
+            boolean accepted = transport.submitSend(this, () -> {
+                Throwable failure = null;
+                try {
+                    current.send(events);
+                } catch (Throwable e) {
+                    failure = e;
+                }
+                Throwable cause = failure;
+                eventLoop().execute(() -> sent(current, events, cause));
+            });
+            if (!accepted) {
+                sending = false;
+                eventLoop().schedule(this::pump, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        // 一次性接收者：取走即解除，条目等下一次轮询确认（响应丢失时下一次轮询重发）
+        sink = null;
+        try {
+            current.send(events);
+        } catch (Exception e) {
+            log.warn("【降级传输】长轮询响应失败，通道ID：{}，原因：{}", id().asShortText(), e.getMessage());
+        }
+        if (closing(events)) {
+            // 关闭事件已交给客户端，客户端不会再来确认：视为已送达，避免关闭时重复转入离线存储
+            remove(countEntries(events));
+            close();
+        }
+    }
+
+    private List<FallbackEvent> collect(ChannelOutboundBuffer buffer) {
+        if (buffer == null || (buffer.isEmpty() && announced)) {
+            return Collections.emptyList();
+        }
+        List<FallbackEvent> events = new ArrayList<>();
+        if (!announced) {
+            events.add(FallbackEvent.open(connectionId()));
+        }
+        try {
+            buffer.forEachFlushedMessage(msg -> {
+                FallbackEvent event = FallbackEvent.of(msg, removed + countEntries(events) + 1);
+                events.add(event);
+                return countEntries(events) < maxBatch && event.getType() != FallbackEvent.Type.CLOSE;
+            });
+        } catch (Exception e) {
+            log.error("【降级传输】读取写缓冲异常，通道ID：{}，原因：{}", id().asShortText(), e.getMessage(), e);
+        }
+        return events;
+    }
+
+    /**
+     * SSE推送完成（EventLoop内）：成功则移除已推送条目并继续推送下一批，失败关闭通道（剩余条目按写失败转离线存储）
+     */
+    private void sent(FallbackSink current, List<FallbackEvent> events, Throwable cause) {
+        if (cause != null) {
+            sending = false;
+            log.info("【降级传输】SSE推送失败，关闭通道，通道ID：{}，原因：{}", id().asShortText(), cause.getMessage());
+            close();
+            return;
+        }
+        // 移除期间保持sending：水位回落触发的出站队列排空会重入pump，待本批移除完毕再推送下一批
+        remove(countEntries(events));
+        sending = false;
+        pipeline().fireChannelRead(ALIVE);
+        if (closing(events)) {
+            close();
+            return;
+        }
+        if (sink == current) {
+            pump();
+        }
+    }
+
+    private void acknowledge(long ack) {
+        if (ack > removed) {
+            remove((int) Math.min(ack - removed, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * 从写缓冲头部移除n个条目：对应写操作的promise成功完成，写缓冲水位随之回落
+     * （水位回落可能同步触发出站队列排空并追加新条目，序号逐条推进，保证重入时序号仍然正确）
+     */
+    private void remove(int count) {
+        ChannelOutboundBuffer buffer = unsafe().outboundBuffer();
+        if (buffer == null) {
+            return;
+        }
+        int n = Math.min(count, buffer.size());
+        for (int i = 0; i < n; i++) {
+            removed++;
+            buffer.remove();
+        }
+    }
+
+    private static int countEntries(List<FallbackEvent> events) {
+        int count = events.size();
+        return !events.isEmpty() && events.get(0).getType() == FallbackEvent.Type.OPEN ? count - 1 : count;
+    }
+
+    private static boolean closing(List<FallbackEvent> events) {
+        return events.get(events.size() - 1).getType() == FallbackEvent.Type.CLOSE;
+    }
+
+    // ===== Channel实现：不绑定端口、不读网络，写出只触发pump =====
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new FallbackUnsafe();
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof DefaultEventLoop;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return null;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return remoteAddress;
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+        throw new UnsupportedOperationException("降级传输通道不支持bind");
+    }
+
+    @Override
+    protected void doDisconnect() {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() {
+        open = false;
+        sending = false;
+        FallbackSink current = sink;
+        sink = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    @Override
+    protected void doBeginRead() {
+        // 入站只有ALIVE标记，由轮询/推送主动触发
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) {
+        // 条目留在写缓冲中等待接收者取走
+        pump();
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return open;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    private final class FallbackUnsafe extends AbstractUnsafe {
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            safeSetFailure(promise, new UnsupportedOperationException("降级传输通道不支持connect"));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.yqrb.netty.fallback;
+
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * 降级传输事件（由降级通道写缓冲中的帧转换而来，交给SSE/长轮询接收者输出）
+ */
+public final class FallbackEvent {
+
+    public enum Type {
+        // 连接建立（携带connectionId，每个连接只发一次）
+        OPEN,
+        // 业务消息（文本帧JSON原文）
+        MESSAGE,
+        // 服务端心跳（SSE输出注释行，长轮询忽略）
+        PING,
+        // 服务端关闭（重定向/摘流/超时），data为"关闭码 原因"
+        CLOSE,
+        // 降级传输无法表达的帧（二进制/Pong等），只占序号不输出
+        IGNORED
+    }
+
+    private final Type type;
+    private final long seq;
+    private final String data;
+
+    private FallbackEvent(Type type, long seq, String data) {
+        this.type = type;
+        this.seq = seq;
+        this.data = data;
+    }
+
+    static FallbackEvent open(String connectionId) {
+        return new FallbackEvent(Type.OPEN, 0, connectionId);
+    }
+
+    /**
+     * 按写入顺序转换写缓冲中的一个条目（不改变条目本身，条目由通道确认后移除）
+     */
+    static FallbackEvent of(Object msg, long seq) {
+        if (msg instanceof TextWebSocketFrame) {
+            return new FallbackEvent(Type.MESSAGE, seq, ((TextWebSocketFrame) msg).text());
+        }
+        if (msg instanceof PingWebSocketFrame) {
+            return new FallbackEvent(Type.PING, seq, null);
+        }
+        if (msg instanceof CloseWebSocketFrame) {
+            CloseWebSocketFrame close = (CloseWebSocketFrame) msg;
+            return new FallbackEvent(Type.CLOSE, seq, close.statusCode() + " " + close.reasonText());
+        }
+        return new FallbackEvent(Type.IGNORED, seq, msg.getClass().getSimpleName());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 条目序号（连接内从1递增，长轮询以此确认；OPEN为0）
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getData() {
+        return data;
+    }
+}
@@ -0,0 +1,57 @@
+package com.yqrb.netty.fallback;
+
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.relay.RelayScope;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 降级通道业务处理器（每个通道一个实例，位于处理链末端）
+ * 相当于WebSocket处理链中的业务处理器：消费存活标记、空闲超时关闭、通道关闭时从注册表注销
+ */
+class FallbackHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger log = LoggerFactory.getLogger(FallbackHandler.class);
+
+    private final FallbackTransport transport;
+    private final RelayScope scope;
+
+    FallbackHandler(FallbackTransport transport, RelayScope scope) {
+        this.transport = transport;
+        this.scope = scope;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        // 只有存活标记（已由IdleTracker记录读时间），降级客户端的上行消息走HTTP发送接口
+        ReferenceCountUtil.release(msg);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+            log.info("【降级传输-超时】通道ID：{}，ID：{}，服务：{}", ctx.channel().id().asShortText(),
+                    ConnectionContext.receiverIdOf(ctx.channel()), scope);
+            ctx.close();
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        transport.unregister((FallbackChannel) ctx.channel(), scope);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.error("【降级传输-通道异常】通道ID：{}，ID：{}，异常原因：{}", ctx.channel().id().asShortText(),
+                ConnectionContext.receiverIdOf(ctx.channel()), cause.getMessage(), cause);
+        ctx.close();
+    }
+}
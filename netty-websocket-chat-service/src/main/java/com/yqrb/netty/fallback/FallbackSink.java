@@ -0,0 +1,23 @@
+package com.yqrb.netty.fallback;
+
+import java.util.List;
+
+/**
+ * 降级传输接收者（一个挂起的HTTP响应）
+ * 1. 流式（SSE）：连接期间一直挂着，每批事件推送成功后通道移除对应条目，推送在业务线程池执行（可阻塞）
+ * 2. 一次性（长轮询）：取走一批后即解除，条目保留到下一次轮询确认；send在通道EventLoop调用，不可阻塞
+ */
+public interface FallbackSink {
+
+    boolean streaming();
+
+    /**
+     * 推送一批事件（按序号递增），失败抛出异常，通道随即关闭
+     */
+    void send(List<FallbackEvent> events) throws Exception;
+
+    /**
+     * 被新的轮询替换、或通道关闭时调用：结束挂起的HTTP响应
+     */
+    void close();
+}
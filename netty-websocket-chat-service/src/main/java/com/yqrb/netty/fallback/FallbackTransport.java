@@ -0,0 +1,282 @@
+package com.yqrb.netty.fallback;
+
+import com.yqrb.netty.NettyWebSocketServerHandler;
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.drain.DrainCoordinator;
+import com.yqrb.netty.executor.KeyedLaneExecutor;
+import com.yqrb.netty.idle.IdleSweeper;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.pre.PreSaleNettyWebSocketServerHandler;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.registry.ConnectionRegistry;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.netty.watchdog.EventLoopWatchdog;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket降级传输（SSE/长轮询，售前/售后共用）
+ * 代理服务器不放行WebSocket的客户端改用Spring侧HTTP接口接收消息：每个降级连接对应一个FallbackChannel，
+ * 处理链为 空闲检测 -> 有界出站队列 -> 降级业务处理器，与WebSocket通道一样注册到连接注册表、在线状态与节点目录，
+ * forwardMessage、系统推送、广播、摘流无需感知传输方式。
+ * HTTP请求用Servlet异步支持挂起（SseEmitter/DeferredResult），不占用容器线程；SSE推送在独立的发送车道执行。
+ * 说明：降级连接不做会话放置重定向（HTTP接口与WebSocket节点地址不同），跨节点消息由中继照常转发。
+ */
+@Component
+public class FallbackTransport {
+    private static final Logger log = LoggerFactory.getLogger(FallbackTransport.class);
+
+    @Value("${custom.netty.fallback.enabled:false}")
+    private boolean enabled;
+    @Value("${custom.netty.fallback.event-loop-threads:2}")
+    private int eventLoopThreads;
+    // 长轮询挂起时长（需小于代理服务器的空闲超时）
+    @Value("${custom.netty.fallback.poll-timeout-seconds:25}")
+    private int pollTimeoutSeconds;
+    // SSE连接最长保持时长，到期后客户端EventSource自动重连
+    @Value("${custom.netty.fallback.sse-timeout-seconds:300}")
+    private int sseTimeoutSeconds;
+    // 超过该时长没有轮询/SSE推送成功即关闭（需大于poll-timeout-seconds加客户端重新发起轮询的间隔）
+    @Value("${custom.netty.fallback.idle-timeout-seconds:60}")
+    private int idleTimeoutSeconds;
+    @Value("${custom.netty.fallback.max-batch-messages:100}")
+    private int maxBatchMessages;
+    @Value("${custom.netty.fallback.send-lane-count:2}")
+    private int sendLaneCount;
+    @Value("${custom.netty.fallback.send-lane-queue-capacity:1024}")
+    private int sendLaneQueueCapacity;
+    // 未取走条目的写缓冲水位（超过高水位后由出站队列暂存）
+    @Value("${custom.netty.fallback.write-buffer-low-water-mark:32768}")
+    private int writeBufferLowWaterMark;
+    @Value("${custom.netty.fallback.write-buffer-high-water-mark:65536}")
+    private int writeBufferHighWaterMark;
+
+    @Autowired
+    private OutboundQueueManager outboundQueueManager;
+
+    @Autowired
+    private IdleSweeper idleSweeper;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private MessageRelay messageRelay;
+
+    @Autowired
+    private DrainCoordinator drainCoordinator;
+
+    @Autowired
+    private EventLoopWatchdog eventLoopWatchdog;
+
+    private EventLoopGroup group;
+    private KeyedLaneExecutor sendExecutor;
+    private WriteBufferWaterMark waterMark;
+    private final Map<String, FallbackChannel> channels = new ConcurrentHashMap<>();
+
+    private final LongAdder sseOpened = new LongAdder();
+    private final LongAdder pollOpened = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder sendRetries = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("【降级传输】未开启");
+            return;
+        }
+        group = new DefaultEventLoopGroup(Math.max(1, eventLoopThreads), new DefaultThreadFactory("netty-fallback", true));
+        eventLoopWatchdog.watch("netty-fallback", group);
+        sendExecutor = new KeyedLaneExecutor("netty-fallback-send", Math.max(1, sendLaneCount), sendLaneQueueCapacity);
+        waterMark = new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark);
+        log.info("【降级传输】已开启，EventLoop数：{}，长轮询挂起：{}s，SSE最长保持：{}s，空闲超时：{}s",
+                eventLoopThreads, pollTimeoutSeconds, sseTimeoutSeconds, idleTimeoutSeconds);
+    }
+
+    /**
+     * 建立降级连接（与WebSocket握手完成后的注册流程一致，任意线程调用）
+     * @param sink 首个接收者：SSE为整条连接的推送流，长轮询为首次轮询（立即返回connectionId）
+     * @throws IllegalArgumentException receiverId/会话ID格式错误
+     * @throws IllegalStateException 未开启或节点摘流中
+     */
+    public FallbackChannel open(RelayScope scope, String receiverId, String sessionId, SocketAddress remoteAddress,
+                                FallbackSink sink) {
+        if (!enabled) {
+            throw new IllegalStateException("降级传输未开启");
+        }
+        if (drainCoordinator.isDraining()) {
+            rejected.increment();
+            throw new IllegalStateException("节点摘流中，请稍后重连");
+        }
+        if (receiverId == null || (!receiverId.startsWith("LYQY_USER_") && !receiverId.startsWith("LYQY_CS_"))) {
+            rejected.increment();
+            throw new IllegalArgumentException("receiverId格式错误，必须以LYQY_USER_/LYQY_CS_开头");
+        }
+        if (sessionId == null || sessionId.trim().isEmpty()
+                || (scope == RelayScope.PRE_SALE && !sessionId.startsWith("PRE_SESSION_"))) {
+            rejected.increment();
+            throw new IllegalArgumentException(scope == RelayScope.PRE_SALE ? "未传入合法售前会话ID" : "未传入sessionId");
+        }
+
+        FallbackChannel channel = new FallbackChannel(this, remoteAddress, sink, maxBatchMessages, waterMark);
+        ConnectionContext context = ConnectionContext.bind(channel, scope, receiverId, sessionId, null);
+        ChannelPipeline pipeline = channel.pipeline();
+        pipeline.addLast(idleSweeper.newTracker(idleTimeoutSeconds));
+        pipeline.addLast("outboundQueue", outboundQueueManager.newHandler());
+        pipeline.addLast(new FallbackHandler(this, scope));
+        (sink.streaming() ? sseOpened : pollOpened).increment();
+
+        // 同步完成EventLoop绑定（DefaultEventLoop上只执行一个登记任务），之后客户端断开触发的关闭总在注册任务之后执行
+        group.register(channel).syncUninterruptibly();
+        channel.eventLoop().execute(() -> {
+            channels.put(channel.connectionId(), channel);
+            int connections = registry(scope).register(receiverId, sessionId, channel);
+            if (connections > 0) {
+                presenceService.connected(scope, receiverId);
+                messageRelay.online(scope, receiverId);
+            }
+            drainCoordinator.onRegistered(channel, scope, receiverId);
+            idleSweeper.track(channel);
+            log.info("【降级传输-会话注册成功】通道ID：{}，ID：{}，连接类型：{}，会话ID：{}，传输：{}，该ID连接数：{}",
+                    channel.id().asShortText(), receiverId, context.getSenderType().code(), sessionId,
+                    sink.streaming() ? "SSE" : "长轮询", connections);
+            // 推送OPEN事件（携带connectionId）
+            channel.pump();
+        });
+        return channel;
+    }
+
+    /**
+     * 长轮询（任意线程调用）：确认上一批条目并挂起新的接收者
+     * @param ack 客户端已收到的最大序号（首次为0）
+     * @return false=连接不存在、已关闭或不属于该服务/receiverId，客户端需重新建立连接
+     */
+    public boolean poll(RelayScope scope, String connectionId, String receiverId, long ack, FallbackSink sink) {
+        FallbackChannel channel = connectionId == null ? null : channels.get(connectionId);
+        ConnectionContext context = channel == null ? null : ConnectionContext.of(channel);
+        if (context == null || channel.isStreaming() || !channel.isActive()
+                || context.getScope() != scope || !context.getReceiverId().equals(receiverId)) {
+            return false;
+        }
+        polls.increment();
+        channel.eventLoop().execute(() -> channel.poll(ack, sink));
+        return true;
+    }
+
+    /**
+     * 长轮询挂起超时：解除接收者（条目保留到下一次轮询）
+     */
+    public void detach(String connectionId, FallbackSink sink) {
+        FallbackChannel channel = connectionId == null ? null : channels.get(connectionId);
+        if (channel != null) {
+            channel.eventLoop().execute(() -> channel.detach(sink));
+        }
+    }
+
+    /**
+     * 客户端断开（SSE连接结束/出错）：关闭对应通道，未送达条目按写失败转离线存储
+     */
+    public void close(FallbackChannel channel) {
+        if (channel.isActive()) {
+            channel.close();
+        }
+    }
+
+    public boolean isOpen(String connectionId) {
+        FallbackChannel channel = connectionId == null ? null : channels.get(connectionId);
+        return channel != null && channel.isActive();
+    }
+
+    public int getPollTimeoutSeconds() {
+        return pollTimeoutSeconds;
+    }
+
+    public int getSseTimeoutSeconds() {
+        return sseTimeoutSeconds;
+    }
+
+    /**
+     * SSE推送提交到发送车道（同一通道串行）
+     */
+    boolean submitSend(FallbackChannel channel, Runnable task) {
+        boolean accepted = sendExecutor.execute(channel.connectionId(), task);
+        if (!accepted) {
+            sendRetries.increment();
+        }
+        return accepted;
+    }
+
+    /**
+     * 通道关闭注销（通道EventLoop内，与WebSocket业务处理器的channelInactive一致）
+     */
+    void unregister(FallbackChannel channel, RelayScope scope) {
+        channels.remove(channel.connectionId(), channel);
+        closed.increment();
+        String removedReceiverId = registry(scope).unregister(channel);
+        if (removedReceiverId != null) {
+            presenceService.disconnected(scope, removedReceiverId);
+            messageRelay.offline(scope, removedReceiverId);
+        }
+        log.info("【降级传输-客户端断开】通道ID：{}，ID：{}，传输：{}，降级连接数：{}", channel.id().asShortText(),
+                removedReceiverId == null ? "未知" : removedReceiverId, channel.isStreaming() ? "SSE" : "长轮询", channels.size());
+    }
+
+    private static ConnectionRegistry registry(RelayScope scope) {
+        return scope == RelayScope.PRE_SALE
+                ? PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY
+                : NettyWebSocketServerHandler.RECEIVER_REGISTRY;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (group != null) {
+            group.shutdownGracefully();
+        }
+        if (sendExecutor != null) {
+            sendExecutor.shutdown(5, TimeUnit.SECONDS);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        int sse = 0;
+        for (FallbackChannel channel : channels.values()) {
+            if (channel.isStreaming()) {
+                sse++;
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("sseConnections", sse);
+        metrics.put("pollConnections", channels.size() - sse);
+        metrics.put("sseOpened", sseOpened.sum());
+        metrics.put("pollOpened", pollOpened.sum());
+        metrics.put("closed", closed.sum());
+        metrics.put("polls", polls.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("sendRetries", sendRetries.sum());
+        if (sendExecutor != null) {
+            metrics.put("sendQueueDepth", sendExecutor.queueDepth());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,97 @@
+package com.yqrb.netty.fallback;
+
+import com.alibaba.fastjson.JSON;
+import com.yqrb.pojo.vo.Result;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 长轮询接收者：一次轮询一个，有条目立即返回，没有则挂起到超时返回空结果
+ * 返回：connectionId、ack（本批最大序号，下一次轮询原样带回以确认）、messages（与WebSocket文本帧相同的消息对象）、
+ * closed（连接已被服务端关闭，需重新建立）、closeReason
+ */
+public class PollFallbackSink implements FallbackSink {
+
+    private final DeferredResult<Result<Map<String, Object>>> result;
+    private final long ack;
+    private volatile String connectionId;
+    private volatile FallbackTransport transport;
+
+    public PollFallbackSink(long timeoutMillis, String connectionId, long ack) {
+        this.result = new DeferredResult<>(timeoutMillis);
+        this.connectionId = connectionId;
+        this.ack = ack;
+    }
+
+    /**
+     * 轮询已交给通道后绑定：挂起超时时解除接收者并返回空结果（条目保留到下一次轮询）
+     */
+    public void bind(FallbackTransport transport, String connectionId) {
+        this.transport = transport;
+        this.connectionId = connectionId;
+        result.onTimeout(() -> {
+            transport.detach(connectionId, this);
+            result.setResult(Result.success(body(connectionId, ack, Collections.emptyList(), !transport.isOpen(connectionId), null)));
+        });
+    }
+
+    public DeferredResult<Result<Map<String, Object>>> getResult() {
+        return result;
+    }
+
+    @Override
+    public boolean streaming() {
+        return false;
+    }
+
+    @Override
+    public void send(List<FallbackEvent> events) {
+        String id = connectionId;
+        long last = ack;
+        List<Object> messages = new ArrayList<>(events.size());
+        boolean closed = false;
+        String closeReason = null;
+        for (FallbackEvent event : events) {
+            switch (event.getType()) {
+                case OPEN:
+                    id = event.getData();
+                    continue;
+                case MESSAGE:
+                    messages.add(JSON.parse(event.getData()));
+                    break;
+                case CLOSE:
+                    closed = true;
+                    closeReason = event.getData();
+                    break;
+                default:
+                    break;
+            }
+            last = event.getSeq();
+        }
+        result.setResult(Result.success(body(id, last, messages, closed, closeReason)));
+    }
+
+    @Override
+    public void close() {
+        // 被新的轮询替换（连接仍在）或通道已关闭
+        FallbackTransport current = transport;
+        boolean closed = current == null || !current.isOpen(connectionId);
+        result.setResult(Result.success(body(connectionId, ack, Collections.emptyList(), closed, null)));
+    }
+
+    private static Map<String, Object> body(String connectionId, long ack, List<Object> messages, boolean closed,
+                                            String closeReason) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("connectionId", connectionId);
+        body.put("ack", ack);
+        body.put("messages", messages);
+        body.put("closed", closed);
+        body.put("closeReason", closeReason);
+        return body;
+    }
+}
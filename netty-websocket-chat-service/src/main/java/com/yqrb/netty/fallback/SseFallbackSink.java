@@ -0,0 +1,64 @@
+package com.yqrb.netty.fallback;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+/**
+ * SSE接收者：整条降级连接一个，事件按序推送
+ * 事件：open（data=connectionId）、message（id=序号，data=与WebSocket文本帧相同的JSON）、close（data=关闭码 原因），心跳为注释行
+ */
+public class SseFallbackSink implements FallbackSink {
+
+    private final SseEmitter emitter;
+
+    public SseFallbackSink(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    /**
+     * 连接建立后绑定：客户端断开、SSE超时或出错时关闭降级通道
+     */
+    public void bind(FallbackTransport transport, FallbackChannel channel) {
+        Runnable disconnect = () -> transport.close(channel);
+        emitter.onCompletion(disconnect);
+        emitter.onTimeout(disconnect);
+        emitter.onError(e -> disconnect.run());
+    }
+
+    @Override
+    public boolean streaming() {
+        return true;
+    }
+
+    @Override
+    public void send(List<FallbackEvent> events) throws Exception {
+        for (FallbackEvent event : events) {
+            switch (event.getType()) {
+                case OPEN:
+                    emitter.send(SseEmitter.event().name("open").data(event.getData()));
+                    break;
+                case MESSAGE:
+                    emitter.send(SseEmitter.event().id(String.valueOf(event.getSeq())).name("message").data(event.getData()));
+                    break;
+                case PING:
+                    emitter.send(SseEmitter.event().comment("ping"));
+                    break;
+                case CLOSE:
+                    emitter.send(SseEmitter.event().name("close").data(event.getData()));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            emitter.complete();
+        } catch (IllegalStateException ignored) {
+            // 响应已结束
+        }
+    }
+}
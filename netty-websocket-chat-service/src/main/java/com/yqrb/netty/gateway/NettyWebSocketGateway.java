@@ -0,0 +1,223 @@
+package com.yqrb.netty.gateway;
+
+import com.yqrb.netty.NettyWebSocketServer;
+import com.yqrb.netty.drain.DrainCoordinator;
+import com.yqrb.netty.pre.PreSaleNettyWebSocketServer;
+import com.yqrb.netty.transport.NettyTransportFactory;
+import com.yqrb.netty.transport.NettyTransportOptions;
+import com.yqrb.netty.watchdog.EventLoopWatchdog;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 统一WebSocket网关（custom.netty.gateway.enabled=true 时启用）
+ * 售前/售后共用一套boss/worker事件循环组和一个ServerBootstrap，按握手请求路径前缀路由：
+ * /newspaper/websocket/... → 售后处理链；/pre-sale/websocket/... → 售前处理链；其他路径返回404。
+ * 可同时监听多个端口（默认8081、8089），老客户端无需修改连接地址。
+ * 未启用时保持原有双端口、双事件循环组的独立部署模式。
+ */
+@Component
+public class NettyWebSocketGateway {
+    private static final Logger log = LoggerFactory.getLogger(NettyWebSocketGateway.class);
+
+    @Value("${custom.netty.gateway.enabled:false}")
+    private boolean enabled;
+    // 监听端口列表（逗号分隔），每个端口都可访问售前/售后两条路径
+    @Value("${custom.netty.gateway.ports:8081,8089}")
+    private String ports;
+    @Value("${custom.netty.gateway.boss-thread-count:1}")
+    private int bossThreadCount;
+    @Value("${custom.netty.gateway.worker-thread-count:0}")
+    private int workerThreadCount;
+    @Value("${custom.netty.gateway.acceptor-count:1}")
+    private int acceptorCount;
+    @Value("${custom.netty.gateway.so-backlog:1024}")
+    private int soBacklog;
+    @Value("${custom.netty.gateway.so-keepalive:true}")
+    private boolean soKeepalive;
+    @Value("${custom.netty.gateway.tcp-nodelay:true}")
+    private boolean tcpNodelay;
+    @Value("${custom.netty.gateway.write-buffer-low-water-mark:32768}")
+    private int writeBufferLowWaterMark;
+    @Value("${custom.netty.gateway.write-buffer-high-water-mark:65536}")
+    private int writeBufferHighWaterMark;
+    @Value("${custom.netty.gateway.pooled-allocator:true}")
+    private boolean pooledAllocator;
+
+    @Autowired
+    private NettyTransportFactory nettyTransportFactory;
+    @Autowired
+    private NettyWebSocketServer nettyWebSocketServer;
+    @Autowired
+    private PreSaleNettyWebSocketServer preSaleNettyWebSocketServer;
+    @Autowired
+    private DrainCoordinator drainCoordinator;
+    @Autowired
+    private EventLoopWatchdog eventLoopWatchdog;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private volatile List<Channel> serverChannels = Collections.emptyList();
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("【WebSocket网关】未启用，售前/售后按独立端口模式运行");
+            return;
+        }
+        new Thread(() -> {
+            bossGroup = nettyTransportFactory.newEventLoopGroup(bossThreadCount, "netty-gw-boss");
+            workerGroup = nettyTransportFactory.newEventLoopGroup(workerThreadCount, "netty-gw-worker");
+            eventLoopWatchdog.watch("netty-gw-worker", workerGroup);
+            List<Channel> boundChannels = new ArrayList<>();
+            try {
+                for (int port : parsePorts()) {
+                    NettyTransportOptions transportOptions = buildTransportOptions(port);
+                    ServerBootstrap bootstrap = new ServerBootstrap();
+                    nettyTransportFactory.configure(bootstrap.group(bossGroup, workerGroup), transportOptions)
+                            .childHandler(new ChannelInitializer<SocketChannel>() {
+                                @Override
+                                protected void initChannel(SocketChannel ch) throws Exception {
+                                    ch.pipeline().addLast(eventLoopWatchdog.marker());
+                                    ch.pipeline().addLast(new HttpServerCodec());
+                                    ch.pipeline().addLast("gatewayPathRouter", new PathRouterHandler());
+                                }
+                            });
+                    boundChannels.addAll(nettyTransportFactory.bind(bootstrap, transportOptions));
+                }
+                serverChannels = boundChannels;
+                drainCoordinator.registerAcceptors(boundChannels);
+                log.info("=====================================");
+                log.info("Netty WebSocket统一网关启动成功");
+                log.info("端口：{}，传输层：{}，Acceptor总数：{}", ports, nettyTransportFactory.transportName(), boundChannels.size());
+                log.info("WebSocket路径：{}（售后），{}（售前）",
+                        NettyWebSocketServer.WS_BASE_PATH, PreSaleNettyWebSocketServer.PRE_SALE_WS_BASE_PATH);
+                log.info("=====================================");
+                for (Channel serverChannel : boundChannels) {
+                    serverChannel.closeFuture().sync();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Netty WebSocket网关启动失败：{}", e.getMessage(), e);
+            } finally {
+                bossGroup.shutdownGracefully();
+                workerGroup.shutdownGracefully();
+                log.info("Netty WebSocket网关 EventLoopGroup 已优雅关闭");
+            }
+        }, "Netty-WebSocket-Gateway-Thread").start();
+    }
+
+    /**
+     * 首个HTTP请求到达时按路径装配对应的处理链，装配完成后移除自身
+     */
+    private class PathRouterHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (!(msg instanceof HttpRequest)) {
+                // 握手前的非请求数据（如上一个被拒绝请求的剩余内容），直接丢弃
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+            String uri = ((HttpRequest) msg).uri();
+            Channel channel = ctx.channel();
+            if (matches(uri, NettyWebSocketServer.WS_BASE_PATH)) {
+                nettyWebSocketServer.initWebSocketPipeline(channel);
+            } else if (matches(uri, PreSaleNettyWebSocketServer.PRE_SALE_WS_BASE_PATH)) {
+                preSaleNettyWebSocketServer.initWebSocketPipeline(channel);
+            } else {
+                log.warn("【WebSocket网关】未知路径，返回404，通道ID：{}，URI：{}", channel.id().asShortText(), uri);
+                ReferenceCountUtil.release(msg);
+                DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND);
+                response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+            // 新装配的处理器错过了channelActive（如在线通道登记、心跳计时），补发一次
+            ctx.fireChannelActive();
+            ctx.fireChannelRead(msg);
+            ctx.pipeline().remove(this);
+        }
+
+        private boolean matches(String uri, String basePath) {
+            return uri != null && uri.startsWith(basePath)
+                    && (uri.length() == basePath.length() || uri.charAt(basePath.length()) == '/'
+                    || uri.charAt(basePath.length()) == '?');
+        }
+    }
+
+    private List<Integer> parsePorts() {
+        List<Integer> result = new ArrayList<>();
+        for (String port : ports.split(",")) {
+            if (!port.trim().isEmpty()) {
+                result.add(Integer.parseInt(port.trim()));
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("custom.netty.gateway.ports未配置监听端口");
+        }
+        return result;
+    }
+
+    private NettyTransportOptions buildTransportOptions(int port) {
+        NettyTransportOptions options = new NettyTransportOptions();
+        options.setServerName("WebSocket网关");
+        options.setPort(port);
+        options.setBossThreadCount(bossThreadCount);
+        options.setWorkerThreadCount(workerThreadCount);
+        options.setAcceptorCount(acceptorCount);
+        options.setSoBacklog(soBacklog);
+        options.setSoKeepalive(soKeepalive);
+        options.setTcpNodelay(tcpNodelay);
+        options.setWriteBufferLowWaterMark(writeBufferLowWaterMark);
+        options.setWriteBufferHighWaterMark(writeBufferHighWaterMark);
+        options.setPooledAllocator(pooledAllocator);
+        return options;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (enabled) {
+            drainCoordinator.drainOnShutdown();
+        }
+        for (Channel serverChannel : serverChannels) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+        }
+        if (enabled) {
+            log.info("Netty WebSocket网关已关闭");
+        }
+    }
+}
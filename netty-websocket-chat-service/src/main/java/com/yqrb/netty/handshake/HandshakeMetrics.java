@@ -0,0 +1,59 @@
+package com.yqrb.netty.handshake;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 握手阶段指标（售前/售后共用，由HandshakeStage持有）
+ */
+public class HandshakeMetrics {
+
+    // 改造前每个连接的聚合上限（64MB），用于对比
+    public static final long LEGACY_AGGREGATOR_LIMIT_BYTES = 64L * 1024 * 1024;
+
+    private final int maxContentLength;
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong maxBytes = new AtomicLong();
+
+    public HandshakeMetrics(int maxContentLength) {
+        this.maxContentLength = maxContentLength;
+    }
+
+    public void recordSuccess(long costNanos, long requestBytes) {
+        successCount.increment();
+        totalNanos.add(costNanos);
+        totalBytes.add(requestBytes);
+        maxNanos.accumulateAndGet(costNanos, Math::max);
+        maxBytes.accumulateAndGet(requestBytes, Math::max);
+    }
+
+    /**
+     * 握手完成前断开（超时、请求过大被拒、路径/参数错误等）
+     */
+    public void recordFailure(long costNanos, long requestBytes) {
+        failureCount.increment();
+        maxBytes.accumulateAndGet(requestBytes, Math::max);
+    }
+
+    public Map<String, Object> snapshot() {
+        long success = successCount.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("success", success);
+        metrics.put("failure", failureCount.sum());
+        metrics.put("avgMillis", success == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / success));
+        metrics.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+        metrics.put("avgRequestBytes", success == 0 ? 0 : totalBytes.sum() / success);
+        metrics.put("maxRequestBytes", maxBytes.get());
+        // 单连接握手阶段可聚合的请求体上限：当前值 vs 改造前
+        metrics.put("aggregatorLimitBytes", maxContentLength);
+        metrics.put("legacyAggregatorLimitBytes", LEGACY_AGGREGATOR_LIMIT_BYTES);
+        return metrics;
+    }
+}
@@ -0,0 +1,75 @@
+package com.yqrb.netty.handshake;
+
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolConfig;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+
+/**
+ * WebSocket握手阶段处理器工厂（售前/售后共用）
+ * 1. 握手请求是不带请求体的GET，聚合上限默认8KB（原64MB），异常/恶意客户端无法在升级前占用大块内存
+ * 2. 不再安装ChunkedWriteHandler（握手与聊天消息均无分块写出）
+ * 3. 握手超时由WebSocketServerProtocolHandler负责，超时未完成握手直接关闭
+ * 4. HttpObjectAggregator/HttpServerCodec在握手成功时由Netty握手器自动移除，无需再按类查找移除
+ */
+@Component
+public class HandshakeStage {
+    private static final Logger log = LoggerFactory.getLogger(HandshakeStage.class);
+
+    @Value("${custom.netty.handshake.max-content-length:8192}")
+    private int maxContentLength;
+    @Value("${custom.netty.handshake.timeout-millis:10000}")
+    private long handshakeTimeoutMillis;
+    @Value("${custom.netty.handshake.max-frame-payload-length:1048576}")
+    private int maxFramePayloadLength;
+    // 服务端支持的子协议（逗号分隔），客户端通过Sec-WebSocket-Protocol声明；未声明的客户端不受影响
+    @Value("${custom.netty.handshake.subprotocols:chat.batch.v1,chat.binary.v1}")
+    private String subprotocols;
+
+    private HandshakeMetrics metrics;
+
+    @PostConstruct
+    public void init() {
+        metrics = new HandshakeMetrics(maxContentLength);
+        log.info("【握手阶段】聚合上限：{}字节（原{}字节），握手超时：{}ms，最大帧：{}字节",
+                maxContentLength, HandshakeMetrics.LEGACY_AGGREGATOR_LIMIT_BYTES, handshakeTimeoutMillis, maxFramePayloadLength);
+    }
+
+    public HandshakeStatsHandler newStatsHandler() {
+        return new HandshakeStatsHandler(metrics);
+    }
+
+    public HttpObjectAggregator newAggregator() {
+        return new HttpObjectAggregator(maxContentLength);
+    }
+
+    /**
+     * @param websocketPath 路径前缀（忽略后续的receiverId与查询参数）
+     */
+    public WebSocketServerProtocolHandler newProtocolHandler(String websocketPath) {
+        WebSocketServerProtocolConfig config = WebSocketServerProtocolConfig.newBuilder()
+                .websocketPath(websocketPath)
+                .subprotocols(subprotocols == null || subprotocols.trim().isEmpty() ? null : subprotocols.trim())
+                .checkStartsWith(true)
+                .allowExtensions(true)
+                .maxFramePayloadLength(maxFramePayloadLength)
+                .allowMaskMismatch(false)
+                .handshakeTimeoutMillis(handshakeTimeoutMillis)
+                .build();
+        return new WebSocketServerProtocolHandler(config);
+    }
+
+    public HandshakeMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Map<String, Object> snapshot() {
+        return metrics.snapshot();
+    }
+}
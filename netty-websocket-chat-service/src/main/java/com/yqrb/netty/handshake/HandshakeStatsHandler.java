@@ -0,0 +1,72 @@
+package com.yqrb.netty.handshake;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 握手阶段统计处理器（每个通道一个实例，位于HttpServerCodec之后）
+ * 统计从通道初始化到握手完成的耗时，以及握手期间被解码/聚合的请求字节数（请求行+请求头+请求体），
+ * 握手完成后由握手监听器调用complete()并移除；握手前断开则记为失败。
+ */
+public class HandshakeStatsHandler extends ChannelInboundHandlerAdapter {
+
+    private final HandshakeMetrics metrics;
+    private final long startNanos = System.nanoTime();
+    private long requestBytes;
+    private boolean finished;
+
+    public HandshakeStatsHandler(HandshakeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest) {
+            HttpRequest request = (HttpRequest) msg;
+            // 请求行：METHOD SP URI SP VERSION CRLF
+            requestBytes += request.method().name().length() + request.uri().length()
+                    + request.protocolVersion().text().length() + 4;
+            Iterator<Map.Entry<CharSequence, CharSequence>> it = request.headers().iteratorCharSequence();
+            while (it.hasNext()) {
+                Map.Entry<CharSequence, CharSequence> header = it.next();
+                // name: value CRLF
+                requestBytes += header.getKey().length() + header.getValue().length() + 4;
+            }
+        }
+        if (msg instanceof HttpContent) {
+            requestBytes += ((HttpContent) msg).content().readableBytes();
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    /**
+     * 握手完成：记录耗时与字节数
+     * @return 本次握手耗时（纳秒）
+     */
+    public long complete() {
+        long costNanos = System.nanoTime() - startNanos;
+        if (!finished) {
+            finished = true;
+            metrics.recordSuccess(costNanos, requestBytes);
+        }
+        return costNanos;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (!finished) {
+            finished = true;
+            metrics.recordFailure(System.nanoTime() - startNanos, requestBytes);
+        }
+        super.channelInactive(ctx);
+    }
+}
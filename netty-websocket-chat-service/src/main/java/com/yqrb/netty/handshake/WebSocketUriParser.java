@@ -0,0 +1,87 @@
+package com.yqrb.netty.handshake;
+
+/**
+ * WebSocket握手URI解析器（售前/售后共用，线程安全，按路径前缀创建一次后复用）
+ * 解析形如 /newspaper/websocket/{receiverId}?sessionId=xxx&... 的URI：
+ * 仅用indexOf/regionMatches定位，不使用split/正则，除最终返回的两个子串外不产生临时对象。
+ */
+public final class WebSocketUriParser {
+
+    // basePath + "/"
+    private final String pathPrefix;
+    // 会话参数名，如 "sessionId"
+    private final String sessionParamName;
+
+    public WebSocketUriParser(String basePath, String sessionParamName) {
+        this.pathPrefix = basePath.endsWith("/") ? basePath : basePath + "/";
+        this.sessionParamName = sessionParamName;
+    }
+
+    /**
+     * 解析路径中的receiverId（去除查询参数/片段），路径前缀不匹配或为空时返回null
+     */
+    public String parseReceiverId(String uri) {
+        if (uri == null || !uri.startsWith(pathPrefix)) {
+            return null;
+        }
+        int start = pathPrefix.length();
+        int end = indexOfAny(uri, start, '?', '#');
+        return end > start ? uri.substring(start, end) : null;
+    }
+
+    /**
+     * 解析查询参数中的会话ID（任意位置均可），不存在或为空时返回null
+     */
+    public String parseSessionId(String uri) {
+        return parseQueryParam(uri, sessionParamName);
+    }
+
+    /**
+     * 解析任意查询参数（如重定向重连标记placed），匹配规则与会话ID相同，不存在或为空时返回null
+     */
+    public String parseQueryParam(String uri, String name) {
+        if (uri == null) {
+            return null;
+        }
+        int query = uri.indexOf('?');
+        if (query < 0) {
+            return null;
+        }
+        int queryEnd = uri.indexOf('#', query);
+        if (queryEnd < 0) {
+            queryEnd = uri.length();
+        }
+        int pos = query + 1;
+        while (pos < queryEnd) {
+            int pairEnd = uri.indexOf('&', pos);
+            if (pairEnd < 0 || pairEnd > queryEnd) {
+                pairEnd = queryEnd;
+            }
+            int nameEnd = pos + name.length();
+            if (nameEnd < pairEnd && uri.charAt(nameEnd) == '=' && uri.regionMatches(pos, name, 0, name.length())) {
+                int valueStart = nameEnd + 1;
+                // 去除首尾空白（兼容原解析逻辑的trim）
+                while (valueStart < pairEnd && uri.charAt(valueStart) <= ' ') {
+                    valueStart++;
+                }
+                int valueEnd = pairEnd;
+                while (valueEnd > valueStart && uri.charAt(valueEnd - 1) <= ' ') {
+                    valueEnd--;
+                }
+                return valueEnd > valueStart ? uri.substring(valueStart, valueEnd) : null;
+            }
+            pos = pairEnd + 1;
+        }
+        return null;
+    }
+
+    private static int indexOfAny(String s, int from, char a, char b) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == a || c == b) {
+                return i;
+            }
+        }
+        return s.length();
+    }
+}
@@ -0,0 +1,171 @@
+package com.yqrb.netty.idle;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 共享时间轮空闲检测 + 服务端心跳（售前/售后共用）
+ * 1. 每个通道只有一个IdleTracker记录最后读时间，不再各自在EventLoop上调度IdleStateHandler定时任务
+ * 2. 握手完成的通道轮流登记到时间轮的各个槽位；后台线程每个tick检查一个槽位，转一圈为一个心跳周期，
+ *    每个通道每个周期只被检查一次，单次tick的工作量约为 连接数/槽位数
+ * 3. 上个周期以来没有任何入站数据、或下个周期再检查时将超时：服务端发送Ping（客户端浏览器自动回Pong，Pong即刷新读时间）
+ * 4. 超过各服务的空闲超时：同一tick内的超时通道按EventLoop分组，每个EventLoop一个任务批量触发READER_IDLE事件，
+ *    由业务处理器原有的超时逻辑记录日志并关闭
+ */
+@Component
+public class IdleSweeper {
+    private static final Logger log = LoggerFactory.getLogger(IdleSweeper.class);
+
+    @Value("${custom.netty.idle.ping-interval-seconds:25}")
+    private int pingIntervalSeconds;
+    @Value("${custom.netty.idle.wheel-slots:64}")
+    private int wheelSlots;
+    @Value("${custom.netty.idle.server-ping:true}")
+    private boolean serverPing;
+
+    private Set<IdleTracker>[] wheel;
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private ScheduledExecutorService ticker;
+    private int cursor;
+    private long tickNanos;
+
+    private final LongAdder pingsSent = new LongAdder();
+    private final LongAdder idleClosed = new LongAdder();
+    private final LongAdder ticks = new LongAdder();
+    private volatile long lastTickMicros;
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void init() {
+        wheel = new Set[Math.max(1, wheelSlots)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        long tickMillis = Math.max(10L, TimeUnit.SECONDS.toMillis(pingIntervalSeconds) / wheel.length);
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "netty-idle-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        log.info("【空闲检测】时间轮槽位：{}，tick：{}ms，心跳周期：{}s，服务端Ping：{}",
+                wheel.length, tickMillis, pingIntervalSeconds, serverPing);
+    }
+
+    /**
+     * 读时间戳记录器（替代IdleStateHandler，位于WebSocket协议处理器之前）
+     * @param idleTimeoutSeconds 该服务的空闲超时（售后/售前分别配置）
+     */
+    public IdleTracker newTracker(int idleTimeoutSeconds) {
+        return new IdleTracker(TimeUnit.SECONDS.toNanos(idleTimeoutSeconds));
+    }
+
+    /**
+     * 握手完成后登记到时间轮（握手前的空闲由握手超时负责，不发送Ping）
+     */
+    public void track(Channel channel) {
+        IdleTracker tracker = channel.pipeline().get(IdleTracker.class);
+        if (tracker != null) {
+            tracker.join(wheel[(nextSlot.getAndIncrement() & Integer.MAX_VALUE) % wheel.length]);
+        }
+    }
+
+    private void tick() {
+        try {
+            long start = System.nanoTime();
+            Set<IdleTracker> slot = wheel[cursor];
+            cursor = (cursor + 1) % wheel.length;
+            // 上次检查该槽位距今一个周期，减去一个tick的调度误差
+            long periodNanos = tickNanos * wheel.length;
+            long pingAfterNanos = periodNanos - tickNanos;
+            Map<EventLoop, List<Channel>> pings = new HashMap<>();
+            Map<EventLoop, List<Channel>> expired = new HashMap<>();
+            for (IdleTracker tracker : slot) {
+                Channel channel = tracker.channel();
+                if (!channel.isActive()) {
+                    slot.remove(tracker);
+                    continue;
+                }
+                long idleNanos = start - tracker.lastReadNanos();
+                if (idleNanos >= tracker.idleTimeoutNanos()) {
+                    slot.remove(tracker);
+                    expired.computeIfAbsent(channel.eventLoop(), k -> new ArrayList<>()).add(channel);
+                } else if (serverPing && (idleNanos >= pingAfterNanos || idleNanos + periodNanos >= tracker.idleTimeoutNanos())
+                        && channel.isWritable()) {
+                    // 周期内无入站数据，或等到下个周期再检查就会超时（空闲超时接近心跳周期时）
+                    pings.computeIfAbsent(channel.eventLoop(), k -> new ArrayList<>()).add(channel);
+                }
+            }
+            pings.forEach((eventLoop, channels) -> eventLoop.execute(() -> {
+                for (Channel channel : channels) {
+                    if (channel.isActive()) {
+                        channel.writeAndFlush(new PingWebSocketFrame());
+                    }
+                }
+            }));
+            expired.forEach((eventLoop, channels) -> eventLoop.execute(() -> {
+                for (Channel channel : channels) {
+                    if (channel.isActive()) {
+                        channel.pipeline().fireUserEventTriggered(IdleStateEvent.READER_IDLE_STATE_EVENT);
+                    }
+                }
+            }));
+            for (List<Channel> channels : pings.values()) {
+                pingsSent.add(channels.size());
+            }
+            for (List<Channel> channels : expired.values()) {
+                idleClosed.add(channels.size());
+            }
+            ticks.increment();
+            lastTickMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        } catch (Exception e) {
+            log.error("【空闲检测】扫描异常：{}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        int tracked = 0;
+        for (Set<IdleTracker> slot : wheel) {
+            tracked += slot.size();
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("tracked", tracked);
+        metrics.put("wheelSlots", wheel.length);
+        metrics.put("tickMillis", TimeUnit.NANOSECONDS.toMillis(tickNanos));
+        metrics.put("pingIntervalSeconds", pingIntervalSeconds);
+        metrics.put("pingsSent", pingsSent.sum());
+        metrics.put("idleClosed", idleClosed.sum());
+        metrics.put("ticks", ticks.sum());
+        metrics.put("lastTickMicros", lastTickMicros);
+        return metrics;
+    }
+}
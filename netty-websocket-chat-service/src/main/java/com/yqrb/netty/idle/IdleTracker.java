@@ -0,0 +1,70 @@
+package com.yqrb.netty.idle;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.util.Set;
+
+/**
+ * 通道读时间戳记录器（每个通道一个实例，替代IdleStateHandler，位于WebSocket协议处理器之前）
+ * 只在读到数据时写一次时间戳，不在EventLoop上注册任何定时任务；是否空闲由IdleSweeper统一判断。
+ */
+public class IdleTracker extends ChannelInboundHandlerAdapter {
+
+    private final long idleTimeoutNanos;
+    private volatile long lastReadNanos = System.nanoTime();
+    private volatile Channel channel;
+    // 所在时间轮槽位（握手完成后登记，通道关闭时移除）
+    private volatile Set<IdleTracker> slot;
+
+    IdleTracker(long idleTimeoutNanos) {
+        this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        channel = ctx.channel();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // 任意入站字节（业务消息/Ping/Pong）都视为对端存活
+        lastReadNanos = System.nanoTime();
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        leave();
+        super.channelInactive(ctx);
+    }
+
+    Channel channel() {
+        return channel;
+    }
+
+    long lastReadNanos() {
+        return lastReadNanos;
+    }
+
+    long idleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    void join(Set<IdleTracker> target) {
+        slot = target;
+        target.add(this);
+        // 登记与关闭并发：关闭已先执行时撤销登记
+        if (!channel.isActive()) {
+            leave();
+        }
+    }
+
+    void leave() {
+        Set<IdleTracker> current = slot;
+        if (current != null) {
+            current.remove(this);
+        }
+    }
+}
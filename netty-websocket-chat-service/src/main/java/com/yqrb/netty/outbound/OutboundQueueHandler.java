@@ -0,0 +1,175 @@
+package com.yqrb.netty.outbound;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * 通道级有界出站队列（每个通道一个实例，所有方法仅在通道EventLoop中执行）
+ * 1. 通道可写且无积压：直接写出
+ * 2. 通道不可写（写缓冲超过高水位）或已有积压：进入队列，channelWritabilityChanged回到可写后按序排空
+ * 3. 队列超过条数/字节上限，或通道关闭时仍有积压：执行消息自带的降级回调（写入离线存储），不再静默丢弃
+ */
+public class OutboundQueueHandler extends ChannelInboundHandlerAdapter {
+
+    public static final AttributeKey<OutboundQueueHandler> OUTBOUND_QUEUE_KEY = AttributeKey.valueOf("OUTBOUND_QUEUE");
+
+    private final OutboundQueueManager manager;
+    private final int maxQueuedMessages;
+    private final long maxQueuedBytes;
+    private final ArrayDeque<PendingFrame> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private ChannelHandlerContext ctx;
+
+    OutboundQueueHandler(OutboundQueueManager manager, int maxQueuedMessages, long maxQueuedBytes) {
+        this.manager = manager;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        ctx.channel().attr(OUTBOUND_QUEUE_KEY).set(this);
+    }
+
+    /**
+     * 出站消息入口（EventLoop内调用）
+     * @param spill 降级回调（队列溢出/通道关闭时在业务线程池执行），可为null
+     */
+    void offer(WebSocketFrame frame, Runnable spill) {
+        offer(frame, spill, true);
+    }
+
+    /**
+     * 批量出站入口（EventLoop内调用）：逐条按同样规则写出或入队但不flush，全部offer后调用方统一flush一次
+     */
+    void offerAll(List<WebSocketFrame> frames, List<Runnable> spills) {
+        for (int i = 0; i < frames.size(); i++) {
+            offer(frames.get(i), spills.get(i), false);
+        }
+        ctx.flush();
+    }
+
+    private void offer(WebSocketFrame frame, Runnable spill, boolean flush) {
+        Channel channel = ctx.channel();
+        if (!channel.isActive()) {
+            ReferenceCountUtil.release(frame);
+            manager.spill(channel, spill, OutboundQueueManager.SpillReason.CLOSED);
+            return;
+        }
+        if (queue.isEmpty() && channel.isWritable()) {
+            write(frame, spill, flush);
+            manager.onDirectWrite();
+            return;
+        }
+        int bytes = frame.content().readableBytes();
+        if (queue.size() >= maxQueuedMessages || queuedBytes + bytes > maxQueuedBytes) {
+            ReferenceCountUtil.release(frame);
+            manager.spill(channel, spill, OutboundQueueManager.SpillReason.OVERFLOW);
+            return;
+        }
+        queue.addLast(new PendingFrame(frame, spill, bytes));
+        queuedBytes += bytes;
+        manager.onEnqueued(bytes, queue.size());
+        // 入队时通道可能已恢复可写（积压未排空），顺带尝试排空
+        if (channel.isWritable()) {
+            drain();
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            drain();
+        } else {
+            manager.onUnwritable();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        spillAll();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        spillAll();
+        ctx.channel().attr(OUTBOUND_QUEUE_KEY).set(null);
+    }
+
+    public int queuedMessages() {
+        return queue.size();
+    }
+
+    public long queuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * 可写期间按序写出积压消息，最后统一flush一次
+     */
+    private void drain() {
+        Channel channel = ctx.channel();
+        boolean written = false;
+        while (!queue.isEmpty() && channel.isWritable()) {
+            PendingFrame pending = queue.pollFirst();
+            queuedBytes -= pending.bytes;
+            manager.onDequeued(pending.bytes);
+            write(pending.frame, pending.spill, false);
+            written = true;
+        }
+        if (written) {
+            ctx.flush();
+        }
+    }
+
+    private void write(WebSocketFrame frame, Runnable spill, boolean flush) {
+        Channel channel = ctx.channel();
+        ChannelFutureListener listener = future -> {
+            if (!future.isSuccess()) {
+                manager.spill(channel, spill, OutboundQueueManager.SpillReason.WRITE_FAILED);
+            }
+        };
+        if (flush) {
+            ctx.writeAndFlush(frame).addListener(listener);
+        } else {
+            ctx.write(frame).addListener(listener);
+        }
+    }
+
+    private void spillAll() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        Channel channel = ctx.channel();
+        PendingFrame pending;
+        while ((pending = queue.pollFirst()) != null) {
+            manager.onDequeued(pending.bytes);
+            ReferenceCountUtil.release(pending.frame);
+            manager.spill(channel, pending.spill, OutboundQueueManager.SpillReason.CLOSED);
+        }
+        queuedBytes = 0;
+    }
+
+    private static final class PendingFrame {
+        final WebSocketFrame frame;
+        final Runnable spill;
+        final int bytes;
+
+        PendingFrame(WebSocketFrame frame, Runnable spill, int bytes) {
+            this.frame = frame;
+            this.spill = spill;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.yqrb.netty.outbound;
+
+import com.yqrb.netty.codec.EncodedMessage;
+import com.yqrb.netty.executor.NettyBusinessExecutor;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 出站队列管理（售前/售后共用）
+ * 统一的消息投递入口：任意线程调用deliver，消息切到目标通道EventLoop后进入该通道的OutboundQueueHandler；
+ * 降级回调（写离线存储，含Redis/DB阻塞调用）统一提交到业务线程池执行，不占用EventLoop。
+ * 写缓冲高/低水位沿用 custom.netty.*.websocket.write-buffer-*-water-mark。
+ */
+@Component
+public class OutboundQueueManager {
+    private static final Logger log = LoggerFactory.getLogger(OutboundQueueManager.class);
+
+    public enum SpillReason {
+        // 队列超过条数/字节上限
+        OVERFLOW,
+        // 通道关闭（含投递时已关闭、关闭时仍有积压）
+        CLOSED,
+        // 写出失败
+        WRITE_FAILED
+    }
+
+    @Value("${custom.netty.outbound.max-queued-messages:1024}")
+    private int maxQueuedMessages;
+    @Value("${custom.netty.outbound.max-queued-bytes:4194304}")
+    private long maxQueuedBytes;
+    // flush合并：读循环内的多次flush合并到读完成时执行；读循环外最多合并N次flush（调度到下一轮EventLoop执行）
+    @Value("${custom.netty.outbound.flush-consolidation.enabled:true}")
+    private boolean flushConsolidationEnabled;
+    @Value("${custom.netty.outbound.flush-consolidation.explicit-flush-after-flushes:256}")
+    private int explicitFlushAfterFlushes;
+
+    @Autowired
+    private NettyBusinessExecutor nettyBusinessExecutor;
+
+    private final LongAdder queuedMessages = new LongAdder();
+    private final LongAdder queuedBytes = new LongAdder();
+    private final AtomicLong peakChannelDepth = new AtomicLong();
+    private final LongAdder directWrites = new LongAdder();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder unwritableEvents = new LongAdder();
+    private final LongAdder spillOverflow = new LongAdder();
+    private final LongAdder spillClosed = new LongAdder();
+    private final LongAdder spillWriteFailed = new LongAdder();
+
+    public OutboundQueueHandler newHandler() {
+        return new OutboundQueueHandler(this, maxQueuedMessages, maxQueuedBytes);
+    }
+
+    /**
+     * 在链路最前端安装flush合并处理器（普通聊天消息与补偿推送都会经过）
+     */
+    public void installFlushConsolidation(ChannelPipeline pipeline) {
+        if (flushConsolidationEnabled) {
+            pipeline.addFirst("flushConsolidation", new FlushConsolidationHandler(explicitFlushAfterFlushes, true));
+        }
+    }
+
+    /**
+     * 投递消息到目标通道（线程安全，不阻塞调用方）
+     * @param spill 无法投递时的降级回调（如写入离线消息表/Redis），可为null
+     * @return false=通道为空或未安装出站队列，消息已立即走降级
+     */
+    public boolean deliver(Channel channel, WebSocketFrame frame, Runnable spill) {
+        OutboundQueueHandler handler = channel == null ? null : channel.attr(OutboundQueueHandler.OUTBOUND_QUEUE_KEY).get();
+        if (handler == null) {
+            ReferenceCountUtil.release(frame);
+            spill(channel, spill, SpillReason.CLOSED);
+            return false;
+        }
+        if (channel.eventLoop().inEventLoop()) {
+            handler.offer(frame, spill);
+        } else {
+            channel.eventLoop().execute(() -> handler.offer(frame, spill));
+        }
+        return true;
+    }
+
+    /**
+     * 批量投递到同一通道（线程安全，不阻塞调用方）：与deliver一样经过出站队列、受水位与队列上限约束，
+     * 逐条offer不flush，全部offer后只flush一次
+     * @param spills 与frames一一对应的降级回调，元素可为null
+     * @return false=通道为空或未安装出站队列，全部消息已立即走降级
+     */
+    public boolean deliverBatch(Channel channel, List<WebSocketFrame> frames, List<Runnable> spills) {
+        OutboundQueueHandler handler = channel == null ? null : channel.attr(OutboundQueueHandler.OUTBOUND_QUEUE_KEY).get();
+        if (handler == null) {
+            for (int i = 0; i < frames.size(); i++) {
+                ReferenceCountUtil.release(frames.get(i));
+                spill(channel, spills.get(i), SpillReason.CLOSED);
+            }
+            return false;
+        }
+        if (channel.eventLoop().inEventLoop()) {
+            handler.offerAll(frames, spills);
+        } else {
+            channel.eventLoop().execute(() -> handler.offerAll(frames, spills));
+        }
+        return true;
+    }
+
+    /**
+     * 扇出投递：同一条已编码消息写到接收者的多个通道（多标签页/多设备），各通道共享编码结果
+     * 降级回调仅在全部通道都无法投递时执行一次，避免同一条消息重复写入离线存储
+     * @return 投递到的通道数（0=无可用通道，已立即走降级）
+     */
+    public int deliverAll(Collection<Channel> channels, EncodedMessage encoded, Runnable spill) {
+        if (channels == null || channels.isEmpty()) {
+            spill(null, spill, SpillReason.CLOSED);
+            return 0;
+        }
+        AtomicInteger remaining = new AtomicInteger(channels.size());
+        Runnable lastSpill = spill == null ? null : () -> {
+            if (remaining.decrementAndGet() == 0) {
+                spill.run();
+            }
+        };
+        int delivered = 0;
+        for (Channel channel : channels) {
+            if (deliver(channel, encoded.frameFor(channel), lastSpill)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    void spill(Channel channel, Runnable spill, SpillReason reason) {
+        switch (reason) {
+            case OVERFLOW:
+                spillOverflow.increment();
+                break;
+            case WRITE_FAILED:
+                spillWriteFailed.increment();
+                break;
+            default:
+                spillClosed.increment();
+        }
+        String channelId = channel == null ? "无" : channel.id().asShortText();
+        if (spill == null) {
+            log.warn("【出站队列】消息无法投递且无降级回调，已丢弃，通道ID：{}，原因：{}", channelId, reason);
+            return;
+        }
+        log.info("【出站队列】消息无法投递，转入离线存储，通道ID：{}，原因：{}", channelId, reason);
+        boolean accepted = channel == null
+                ? nettyBusinessExecutor.submit(channelId, spill)
+                : nettyBusinessExecutor.submit(channel, spill);
+        if (!accepted) {
+            log.error("【出站队列】业务线程池已满，离线存储任务被拒绝，通道ID：{}，原因：{}", channelId, reason);
+        }
+    }
+
+    void onDirectWrite() {
+        directWrites.increment();
+    }
+
+    void onEnqueued(int bytes, int channelDepth) {
+        enqueued.increment();
+        queuedMessages.increment();
+        queuedBytes.add(bytes);
+        peakChannelDepth.accumulateAndGet(channelDepth, Math::max);
+    }
+
+    void onDequeued(int bytes) {
+        queuedMessages.decrement();
+        queuedBytes.add(-bytes);
+    }
+
+    void onUnwritable() {
+        unwritableEvents.increment();
+    }
+
+    public long queuedMessages() {
+        return queuedMessages.sum();
+    }
+
+    public long queuedBytes() {
+        return queuedBytes.sum();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("maxQueuedMessagesPerChannel", maxQueuedMessages);
+        metrics.put("maxQueuedBytesPerChannel", maxQueuedBytes);
+        metrics.put("flushConsolidation", flushConsolidationEnabled ? explicitFlushAfterFlushes : 0);
+        metrics.put("queuedMessages", queuedMessages.sum());
+        metrics.put("queuedBytes", queuedBytes.sum());
+        metrics.put("peakChannelDepth", peakChannelDepth.get());
+        metrics.put("directWrites", directWrites.sum());
+        metrics.put("enqueued", enqueued.sum());
+        metrics.put("unwritableEvents", unwritableEvents.sum());
+        metrics.put("spillOverflow", spillOverflow.sum());
+        metrics.put("spillClosed", spillClosed.sum());
+        metrics.put("spillWriteFailed", spillWriteFailed.sum());
+        return metrics;
+    }
+}
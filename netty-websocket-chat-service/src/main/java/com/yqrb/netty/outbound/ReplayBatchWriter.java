@@ -0,0 +1,155 @@
+package com.yqrb.netty.outbound;
+
+import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.codec.BinaryMsgCodec;
+import com.yqrb.netty.codec.JsonByteBufs;
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.pojo.vo.PreSaleChatMessageVO;
+import com.yqrb.pojo.vo.PreSaleWebSocketMsgVO;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批量补偿推送（未读/离线消息，售前/售后共用）
+ * 1. 默认：每条消息一个帧（按通道协商的子协议编码，chat.binary.v1客户端为二进制帧，与实时推送一致），全部offer后只flush一次
+ * 2. 客户端握手时声明子协议 chat.batch.v1：多条消息合并为一个JSON数组帧 [msg1,msg2,...]，
+ *    按条数/长度上限分片（长度按字符数估算），避免超过最大帧限制
+ * 3. 帧经OutboundQueueManager进入通道出站队列：受写缓冲水位与队列上限约束，与已排队的实时消息保持顺序，
+ *    溢出/通道关闭/写出失败时对每条消息执行调用方的降级回调
+ */
+@Component
+public class ReplayBatchWriter {
+    private static final Logger log = LoggerFactory.getLogger(ReplayBatchWriter.class);
+
+    // 批量数组帧子协议
+    public static final String BATCH_SUBPROTOCOL = "chat.batch.v1";
+
+    @Value("${custom.netty.replay.batch-max-messages:100}")
+    private int batchMaxMessages;
+    @Value("${custom.netty.replay.batch-max-bytes:262144}")
+    private int batchMaxBytes;
+
+    @Autowired
+    private OutboundQueueManager outboundQueueManager;
+
+    private final LongAdder replayCount = new LongAdder();
+    private final LongAdder replayMessages = new LongAdder();
+    private final LongAdder replayFrames = new LongAdder();
+    private final LongAdder batchFrames = new LongAdder();
+
+    /**
+     * 切回通道EventLoop批量写出（任意线程可调用）
+     * @param messages 消息VO（WebSocketMsgVO/PreSaleWebSocketMsgVO/PreSaleChatMessageVO），按推送顺序排列
+     * @param spill 单条消息无法投递时的降级回调（业务线程池执行），可为null
+     */
+    public <T> void replay(Channel channel, List<T> messages, Consumer<T> spill) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        if (channel.eventLoop().inEventLoop()) {
+            write(channel, messages, spill);
+        } else {
+            channel.eventLoop().execute(() -> write(channel, messages, spill));
+        }
+    }
+
+    public static boolean isBatchClient(Channel channel) {
+        ConnectionContext context = ConnectionContext.of(channel);
+        return context != null && BATCH_SUBPROTOCOL.equals(context.getSubprotocol());
+    }
+
+    private <T> void write(Channel channel, List<T> messages, Consumer<T> spill) {
+        List<WebSocketFrame> frames = new ArrayList<>();
+        List<Runnable> spills = new ArrayList<>();
+        boolean batch = isBatchClient(channel);
+        if (batch) {
+            writeArrayFrames(channel, messages, spill, frames, spills);
+        } else {
+            for (T msg : messages) {
+                frames.add(frameFor(channel, msg));
+                spills.add(spillOf(spill, msg));
+            }
+        }
+        if (!outboundQueueManager.deliverBatch(channel, frames, spills)) {
+            log.warn("【批量补偿推送】通道已关闭，{}条消息走降级，通道ID：{}", messages.size(), channel.id().asShortText());
+            return;
+        }
+        replayCount.increment();
+        replayMessages.add(messages.size());
+        replayFrames.add(frames.size());
+        if (batch) {
+            batchFrames.add(frames.size());
+        }
+        log.info("【批量补偿推送】通道ID：{}，消息数：{}，帧数：{}，flush次数：1",
+                channel.id().asShortText(), messages.size(), frames.size());
+    }
+
+    private <T> void writeArrayFrames(Channel channel, List<T> messages, Consumer<T> spill,
+                                      List<WebSocketFrame> frames, List<Runnable> spills) {
+        StringBuilder batch = new StringBuilder(Math.min(batchMaxBytes, 16 * 1024));
+        List<T> chunk = new ArrayList<>();
+        for (T msg : messages) {
+            String json = JSON.toJSONString(msg);
+            // 当前分片已满（条数或字节），先写出
+            if (!chunk.isEmpty() && (chunk.size() >= batchMaxMessages || batch.length() + json.length() + 2 > batchMaxBytes)) {
+                frames.add(new TextWebSocketFrame(ByteBufUtil.writeUtf8(channel.alloc(), batch.append(']'))));
+                spills.add(spillAll(spill, new ArrayList<>(chunk)));
+                batch.setLength(0);
+                chunk.clear();
+            }
+            batch.append(chunk.isEmpty() ? '[' : ',').append(json);
+            chunk.add(msg);
+        }
+        if (!chunk.isEmpty()) {
+            frames.add(new TextWebSocketFrame(ByteBufUtil.writeUtf8(channel.alloc(), batch.append(']'))));
+            spills.add(spillAll(spill, chunk));
+        }
+    }
+
+    private static WebSocketFrame frameFor(Channel channel, Object msg) {
+        if (msg instanceof WebSocketMsgVO) {
+            return BinaryMsgCodec.toFrame(channel, (WebSocketMsgVO) msg);
+        }
+        if (msg instanceof PreSaleChatMessageVO) {
+            return BinaryMsgCodec.toFrame(channel, (PreSaleChatMessageVO) msg);
+        }
+        if (msg instanceof PreSaleWebSocketMsgVO) {
+            return BinaryMsgCodec.toFrame(channel, (PreSaleWebSocketMsgVO) msg);
+        }
+        return new TextWebSocketFrame(JsonByteBufs.write(channel.alloc(), msg));
+    }
+
+    private static <T> Runnable spillOf(Consumer<T> spill, T msg) {
+        return spill == null ? null : () -> spill.accept(msg);
+    }
+
+    private static <T> Runnable spillAll(Consumer<T> spill, List<T> chunk) {
+        return spill == null ? null : () -> chunk.forEach(spill);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("batchMaxMessages", batchMaxMessages);
+        metrics.put("batchMaxBytes", batchMaxBytes);
+        metrics.put("replays", replayCount.sum());
+        metrics.put("messages", replayMessages.sum());
+        metrics.put("frames", replayFrames.sum());
+        metrics.put("arrayFrames", batchFrames.sum());
+        return metrics;
+    }
+}
@@ -0,0 +1,82 @@
+package com.yqrb.netty.placement;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 一致性哈希环（不可变，成员变化时整体重建后替换，读取无锁）
+ * 每个节点按 nodeId#序号 取MD5生成虚拟节点（每次摘要切出4个32位哈希），key顺时针归属第一个虚拟节点；
+ * 节点加入/退出时只有落在其虚拟节点区间内的key（约1/N）改变归属，其余key保持不动。
+ */
+public final class ConsistentHashRing {
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final TreeSet<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = new TreeSet<>(nodes);
+        int replicas = Math.max(4, virtualNodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < replicas / 4; i++) {
+                byte[] digest = md5(node + "#" + i);
+                for (int part = 0; part < 4; part++) {
+                    // 同哈希冲突时按节点ID排序结果确定，保证各节点算出的环一致
+                    ring.putIfAbsent(hash(digest, part), node);
+                }
+            }
+        }
+    }
+
+    /**
+     * key归属的节点，环为空时返回null
+     */
+    public String owner(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        SortedMap<Long, String> tail = ring.tailMap(hash(md5(key), 0));
+        return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    public Collection<String> nodes() {
+        return Collections.unmodifiableSet(nodes);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 成员集合相同的两个环归属完全一致，可据此跳过重建
+     */
+    public boolean sameNodes(Map<String, ?> members) {
+        return nodes.size() == members.size() && nodes.containsAll(members.keySet());
+    }
+
+    private static long hash(byte[] digest, int part) {
+        int offset = part * 4;
+        return ((long) (digest[offset + 3] & 0xFF) << 24)
+                | ((long) (digest[offset + 2] & 0xFF) << 16)
+                | ((long) (digest[offset + 1] & 0xFF) << 8)
+                | (digest[offset] & 0xFF);
+    }
+
+    private static byte[] md5(String value) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.yqrb.netty.placement;
+
+import com.yqrb.netty.NettyWebSocketServer;
+import com.yqrb.netty.NettyWebSocketServerHandler;
+import com.yqrb.netty.codec.EncodedMessage;
+import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.fallback.FallbackChannel;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayBroker;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 售后会话放置：按sessionId在节点一致性哈希环上选定归属节点，同一会话的用户与客服连到同一节点，消息在本节点直接转发，
+ * 不再每条都经跨节点中继。
+ * 1. 成员：各节点定期在中继broker登记自己（节点ID + 对外地址，带租约），环由全部有效成员构成，各节点独立计算结果一致
+ * 2. 握手：会话归属其他节点时，推送重定向提示（SYSTEM_REDIRECT，msgContent为归属节点的完整重连URL）后以4302关闭，
+ *    客户端按提示重连；重连URL带placed=1，归属节点即使成员视图暂时不一致也直接接受，避免来回重定向
+ * 3. 重平衡：成员变化（节点加入/退出）时只有约1/N的会话改变归属，仅这些会话的本地WebSocket连接收到重定向提示（降级连接不迁移）
+ * 依赖中继（custom.netty.relay.enabled=true）；未启用时所有会话都在本节点接受。
+ */
+@Component
+public class SessionPlacement {
+    private static final Logger log = LoggerFactory.getLogger(SessionPlacement.class);
+
+    // WebSocket私有关闭码（4000-4999），含义：会话归属其他节点，请按提示重连
+    public static final int REDIRECT_CLOSE_CODE = 4302;
+
+    @Value("${custom.netty.placement.enabled:false}")
+    private boolean enabled;
+    // 本节点对外WebSocket地址（客户端可直连，如 ws://10.0.0.5:8088），重定向URL = 地址 + 路径 + 查询参数
+    @Value("${custom.netty.placement.advertise-address:}")
+    private String advertiseAddress;
+    @Value("${custom.netty.placement.virtual-nodes:160}")
+    private int virtualNodes;
+    @Value("${custom.netty.placement.refresh-seconds:5}")
+    private int refreshSeconds;
+    // 成员变化时是否将改变归属的本地会话重定向到新节点
+    @Value("${custom.netty.placement.rebalance:true}")
+    private boolean rebalance;
+
+    @Autowired
+    private MessageRelay messageRelay;
+
+    private volatile ConsistentHashRing ring;
+    private volatile Map<String, String> addresses = Collections.emptyMap();
+    private String nodeId;
+    private RelayBroker broker;
+    private ScheduledExecutorService scheduler;
+    private final AtomicBoolean withdrawn = new AtomicBoolean();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder redirected = new LongAdder();
+    private final LongAdder pinned = new LongAdder();
+    private final LongAdder rebalanced = new LongAdder();
+    private final LongAdder membershipChanges = new LongAdder();
+    private final LongAdder refreshErrors = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (!messageRelay.isEnabled() || messageRelay.getBroker() == null) {
+            log.error("【会话放置】依赖节点中继（custom.netty.relay.enabled），中继未启用，会话放置未启用");
+            enabled = false;
+            return;
+        }
+        if (advertiseAddress == null || advertiseAddress.trim().isEmpty()) {
+            log.error("【会话放置】未配置本节点对外地址（custom.netty.placement.advertise-address），会话放置未启用");
+            enabled = false;
+            return;
+        }
+        advertiseAddress = advertiseAddress.endsWith("/")
+                ? advertiseAddress.substring(0, advertiseAddress.length() - 1) : advertiseAddress;
+        nodeId = messageRelay.getNodeId();
+        broker = messageRelay.getBroker();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "netty-placement");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresh();
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        log.info("【会话放置】已启用，节点ID：{}，对外地址：{}，虚拟节点数：{}，成员刷新间隔：{}s",
+                nodeId, advertiseAddress, virtualNodes, refreshSeconds);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 握手时判断会话归属（无阻塞，只读本地环）
+     * @param placed 客户端是否已按重定向提示重连（是则直接接受）
+     * @return 归属其他节点时返回其对外地址，本节点接受时返回null
+     */
+    public String redirectTarget(String sessionId, boolean placed) {
+        ConsistentHashRing current = ring;
+        if (!enabled || current == null || sessionId == null) {
+            return null;
+        }
+        String owner = current.owner(sessionId);
+        String address = owner == null || owner.equals(nodeId) ? null : addresses.get(owner);
+        if (address == null) {
+            accepted.increment();
+            return null;
+        }
+        if (placed) {
+            // 成员视图暂时不一致（刚有节点加入/退出）：接受，等下一次重平衡再迁移
+            pinned.increment();
+            return null;
+        }
+        redirected.increment();
+        return address;
+    }
+
+    /**
+     * 推送重定向提示并关闭连接（任意线程可调用）
+     */
+    public void redirect(Channel channel, String receiverId, String sessionId, String address) {
+        String url = address + NettyWebSocketServer.WS_BASE_PATH + "/" + urlEncode(receiverId)
+                + "?sessionId=" + urlEncode(sessionId) + "&placed=1";
+        WebSocketMsgVO hint = new WebSocketMsgVO();
+        hint.setReceiverId(receiverId);
+        hint.setUserId("SYSTEM");
+        hint.setSenderType(WebSocketMsgVO.SENDER_TYPE_SYSTEM);
+        hint.setMsgType(WebSocketMsgVO.MSG_TYPE_REDIRECT);
+        hint.setMsgContent(url);
+        hint.setSessionId(sessionId);
+        hint.setSendTime(new Date());
+        EncodedMessage encoded = EncodedMessage.of(hint);
+        try {
+            channel.write(encoded.frameFor(channel));
+        } finally {
+            encoded.release();
+        }
+        channel.writeAndFlush(new CloseWebSocketFrame(REDIRECT_CLOSE_CODE, "REDIRECT"))
+                .addListener(ChannelFutureListener.CLOSE);
+        log.info("【会话放置】会话归属其他节点，已重定向，通道ID：{}，接收者：{}，会话ID：{}，目标：{}",
+                channel.id().asShortText(), receiverId, sessionId, address);
+    }
+
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void refresh() {
+        try {
+            broker.announce(nodeId, advertiseAddress, refreshSeconds * 3000L);
+            Map<String, String> members = broker.members();
+            members.put(nodeId, advertiseAddress);
+            ConsistentHashRing previous = ring;
+            if (previous != null && previous.sameNodes(members)) {
+                addresses = members;
+                return;
+            }
+            ConsistentHashRing next = new ConsistentHashRing(members.keySet(), virtualNodes);
+            addresses = members;
+            ring = next;
+            if (previous != null) {
+                membershipChanges.increment();
+                log.info("【会话放置】节点成员变化：{} -> {}", previous.nodes(), next.nodes());
+                if (rebalance) {
+                    rebalance(next);
+                }
+            }
+        } catch (Exception e) {
+            refreshErrors.increment();
+            log.error("【会话放置】成员刷新失败，沿用当前哈希环，原因：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 只迁移改变归属的会话：连接当前会话（sessionId属性）归属其他节点时推送重定向提示
+     */
+    private void rebalance(ConsistentHashRing next) {
+        int moved = 0;
+        for (String sessionId : NettyWebSocketServerHandler.RECEIVER_REGISTRY.sessionIds()) {
+            String owner = next.owner(sessionId);
+            String address = owner == null || owner.equals(nodeId) ? null : addresses.get(owner);
+            if (address == null) {
+                continue;
+            }
+            for (Channel channel : NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannelsBySessionId(sessionId)) {
+                // 降级连接（SSE/长轮询）无法使用WebSocket重定向地址，留在本节点，跨节点消息由中继转发
+                if (channel instanceof FallbackChannel) {
+                    continue;
+                }
+                if (channel.isActive() && sessionId.equals(channel.attr(NettyConstant.SESSION_ID_KEY).get())) {
+                    redirect(channel, channel.attr(NettyConstant.RECEIVER_ID_KEY).get(), sessionId, address);
+                    moved++;
+                }
+            }
+        }
+        rebalanced.add(moved);
+        log.info("【会话放置】重平衡完成，重定向连接数：{}", moved);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        if (!enabled) {
+            return metrics;
+        }
+        ConsistentHashRing current = ring;
+        metrics.put("nodeId", nodeId);
+        metrics.put("members", current == null ? Collections.emptyList() : current.nodes());
+        metrics.put("accepted", accepted.sum());
+        metrics.put("redirected", redirected.sum());
+        metrics.put("pinned", pinned.sum());
+        metrics.put("rebalanced", rebalanced.sum());
+        metrics.put("membershipChanges", membershipChanges.sum());
+        metrics.put("refreshErrors", refreshErrors.sum());
+        return metrics;
+    }
+
+    /**
+     * 退出哈希环（幂等）：摘流开始时调用，容器关闭时再次调用不重复执行
+     */
+    public void withdraw() {
+        if (!enabled || !withdrawn.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            // 主动退出成员，其他节点下次刷新即重建环，不必等待租约过期
+            broker.withdraw(nodeId);
+        } catch (Exception e) {
+            log.warn("【会话放置】退出成员失败，等待租约过期，原因：{}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        withdraw();
+    }
+}
@@ -1,7 +1,26 @@
 package com.yqrb.netty.pre;
 
 import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.admission.AdmissionControl;
+import com.yqrb.netty.audit.AuditLog;
+import com.yqrb.netty.capture.TrafficCapture;
+import com.yqrb.netty.compression.CompressionStage;
+import com.yqrb.netty.drain.DrainCoordinator;
 import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.executor.NettyBusinessExecutor;
+import com.yqrb.netty.handshake.HandshakeStage;
+import com.yqrb.netty.handshake.HandshakeStatsHandler;
+import com.yqrb.netty.handshake.WebSocketUriParser;
+import com.yqrb.netty.idle.IdleSweeper;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.outbound.ReplayBatchWriter;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.netty.transport.NettyTransportFactory;
+import com.yqrb.netty.transport.NettyTransportOptions;
+import com.yqrb.netty.watchdog.EventLoopWatchdog;
 import com.yqrb.pojo.po.PreSaleChatMessagePO;
 import com.yqrb.pojo.vo.PreSaleChatMessageVO;
 import com.yqrb.pojo.vo.PreSaleWebSocketMsgVO;
@@ -11,24 +30,21 @@ import com.yqrb.service.ReceiverIdService;
 import com.yqrb.util.SpringContextUtil;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
-import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -43,183 +59,126 @@ public class PreSaleNettyWebSocketServer {
     private int bossThreadCount;
     @Value("${custom.netty.pre-sale.websocket.worker-thread-count:8}")
     private int workerThreadCount;
+    @Value("${custom.netty.pre-sale.websocket.acceptor-count:1}")
+    private int acceptorCount;
+    @Value("${custom.netty.pre-sale.websocket.so-backlog:1024}")
+    private int soBacklog;
+    @Value("${custom.netty.pre-sale.websocket.so-keepalive:true}")
+    private boolean soKeepalive;
+    @Value("${custom.netty.pre-sale.websocket.tcp-nodelay:true}")
+    private boolean tcpNodelay;
+    @Value("${custom.netty.pre-sale.websocket.write-buffer-low-water-mark:32768}")
+    private int writeBufferLowWaterMark;
+    @Value("${custom.netty.pre-sale.websocket.write-buffer-high-water-mark:65536}")
+    private int writeBufferHighWaterMark;
+    @Value("${custom.netty.pre-sale.websocket.pooled-allocator:true}")
+    private boolean pooledAllocator;
     @Value("${custom.netty.pre-sale.websocket.idle-timeout:300}")
     private int idleTimeout;
+    // 统一网关模式下不再单独监听端口，由NettyWebSocketGateway按路径路由到本类的处理链
+    @Value("${custom.netty.gateway.enabled:false}")
+    private boolean gatewayEnabled;
 
-    private static final String PRE_SALE_WS_BASE_PATH = "/pre-sale/websocket";
-    public static final AttributeKey<String> CLIENT_WEBSOCKET_URI = AttributeKey.valueOf("PRE_SALE_CLIENT_WEBSOCKET_URI");
+    // 业务线程池：握手后的阻塞型补偿推送在此执行（与售后共用）
+    @Autowired
+    private NettyBusinessExecutor nettyBusinessExecutor;
+
+    // 传输层工厂（与售后共用）
+    @Autowired
+    private NettyTransportFactory nettyTransportFactory;
+
+    // 握手阶段处理器工厂（与售后共用）
+    @Autowired
+    private HandshakeStage handshakeStage;
+
+    // 出站队列（与售后共用）
+    @Autowired
+    private OutboundQueueManager outboundQueueManager;
+
+    // 批量补偿推送（与售后共用）
+    @Autowired
+    private ReplayBatchWriter replayBatchWriter;
+
+    // permessage-deflate压缩（与售后共用）
+    @Autowired
+    private CompressionStage compressionStage;
+
+    // 消息审计日志（与售后共用）
+    @Autowired
+    private AuditLog auditLog;
+
+    // 跨节点消息中继（与售后共用）
+    @Autowired
+    private MessageRelay messageRelay;
+
+    // 在线状态（内存为准，批量落Redis）
+    @Autowired
+    private PresenceService presenceService;
+
+    // 准入控制：握手按IP限速，入站消息按连接/receiverId限速 + 全局并发上限
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    // 优雅摘流：停止接入、分散重连，stop()时先摘流再关闭EventLoopGroup
+    @Autowired
+    private DrainCoordinator drainCoordinator;
+
+    // 共享时间轮空闲检测：替代每通道IdleStateHandler，握手后服务端定时Ping
+    @Autowired
+    private IdleSweeper idleSweeper;
+
+    // EventLoop阻塞监控：探针测量排队延迟，超过阈值抓取Worker线程堆栈
+    @Autowired
+    private EventLoopWatchdog eventLoopWatchdog;
+
+    // 入站流量抓包（默认关闭）：供压测回放
+    @Autowired
+    private TrafficCapture trafficCapture;
+
+    public static final String PRE_SALE_WS_BASE_PATH = "/pre-sale/websocket";
+    // 握手URI解析器（receiverId + preSaleSessionId）
+    private static final WebSocketUriParser URI_PARSER = new WebSocketUriParser(PRE_SALE_WS_BASE_PATH, "preSaleSessionId");
 
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private ChannelFuture serverFuture;
+    private List<Channel> serverChannels = Collections.emptyList();
 
     @PostConstruct
     public void start() {
+        messageRelay.registerEndpoint(RelayScope.PRE_SALE, new PreSaleRelayEndpoint(auditLog));
+        if (gatewayEnabled) {
+            log.info("【售前WebSocket】已启用统一网关模式，不单独监听端口{}，路径{}由网关路由", port, PRE_SALE_WS_BASE_PATH);
+            return;
+        }
         new Thread(() -> {
-            bossGroup = new NioEventLoopGroup(bossThreadCount);
-            workerGroup = workerThreadCount > 0 ? new NioEventLoopGroup(workerThreadCount) : new NioEventLoopGroup();
+            NettyTransportOptions transportOptions = buildTransportOptions();
+            bossGroup = nettyTransportFactory.newEventLoopGroup(bossThreadCount, "pre-sale-ws-boss");
+            workerGroup = nettyTransportFactory.newEventLoopGroup(workerThreadCount, "pre-sale-ws-worker");
+            eventLoopWatchdog.watch("pre-sale-ws-worker", workerGroup);
 
             try {
                 ServerBootstrap bootstrap = new ServerBootstrap();
-                bootstrap.group(bossGroup, workerGroup)
-                        .channel(NioServerSocketChannel.class)
-                        .option(ChannelOption.SO_BACKLOG, 1024)
-                        .childOption(ChannelOption.SO_KEEPALIVE, true)
+                nettyTransportFactory.configure(bootstrap.group(bossGroup, workerGroup), transportOptions)
                         .childHandler(new ChannelInitializer<SocketChannel>() {
                             @Override
                             protected void initChannel(SocketChannel ch) throws Exception {
-                                ChannelPipeline pipeline = ch.pipeline();
-                                String channelId = ch.id().asShortText();
-                                log.info("【售前-通道初始化】通道ID：{}", channelId);
-
-                                // 1. HTTP基础处理器
-                                pipeline.addLast(new HttpServerCodec());
-                                pipeline.addLast(new ChunkedWriteHandler());
-                                pipeline.addLast(new HttpObjectAggregator(64 * 1024 * 1024));
-
-                                // 2. 捕获前端WebSocket URI
-                                pipeline.addLast(new ChannelInboundHandlerAdapter() {
-                                    @Override
-                                    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-                                        if (msg instanceof io.netty.handler.codec.http.HttpRequest) {
-                                            io.netty.handler.codec.http.HttpRequest request = (io.netty.handler.codec.http.HttpRequest) msg;
-                                            if (request.method().equals(io.netty.handler.codec.http.HttpMethod.GET)) {
-                                                String uri = request.uri();
-                                                ctx.channel().attr(CLIENT_WEBSOCKET_URI).set(uri);
-                                                log.info("【售前-URI捕获】通道ID：{}，URI：{}", channelId, uri);
-                                                super.channelRead(ctx, msg);
-                                                ctx.pipeline().remove(this);
-                                                return;
-                                            }
-                                        }
-                                        super.channelRead(ctx, msg);
-                                    }
-                                });
-
-                                // 3. 心跳检测
-                                pipeline.addLast(new IdleStateHandler(idleTimeout, 0, 0, TimeUnit.SECONDS));
-
-                                // 4. WebSocket协议升级
-                                WebSocketServerProtocolHandler wsProtocolHandler = new WebSocketServerProtocolHandler(
-                                        PRE_SALE_WS_BASE_PATH,
-                                        null,
-                                        true,
-                                        1024 * 1024,
-                                        false,
-                                        true
-                                );
-                                pipeline.addLast("preSaleWebSocketProtocolHandler", wsProtocolHandler);
-
-                                // 5. 握手完成事件监听（仅保留未读消息推送）
-                                pipeline.addLast(new ChannelInboundHandlerAdapter() {
-                                    @Override
-                                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-                                        if (evt == WebSocketServerProtocolHandler.ServerHandshakeStateEvent.HANDSHAKE_COMPLETE) {
-                                            log.info("【售前-协议升级】通道ID：{}，WebSocket握手成功", channelId);
-                                            Channel channel = ctx.channel();
-                                            String uri = channel.attr(CLIENT_WEBSOCKET_URI).get();
-
-                                            if (uri != null && uri.startsWith(PRE_SALE_WS_BASE_PATH + "/")) {
-                                                String receiverId = uri.substring((PRE_SALE_WS_BASE_PATH + "/").length());
-                                                receiverId = receiverId.contains("?") ? receiverId.split("\\?")[0] : receiverId;
-
-                                                // 校验ReceiverId格式（LYQY_USER_/LYQY_CS_）
-                                                if (!receiverId.startsWith("LYQY_USER_") && !receiverId.startsWith("LYQY_CS_")) {
-                                                    log.error("【售前-会话注册失败】通道ID：{}，ReceiverId格式错误：{}", channelId, receiverId);
-                                                    ctx.channel().close();
-                                                    return;
-                                                }
-
-                                                // 解析售前会话ID（preSaleSessionId）
-                                                String preSaleSessionId = parsePreSaleSessionIdFromUri(uri);
-                                                if (preSaleSessionId == null || !preSaleSessionId.startsWith("PRE_SESSION_")) {
-                                                    log.error("【售前-会话注册失败】通道ID：{}，未传入合法售前会话ID", channelId);
-                                                    ctx.channel().close();
-                                                    return;
-                                                }
-
-                                                // 区分发送者类型（USER/CS）
-                                                String senderType = receiverId.startsWith("LYQY_USER_")
-                                                        ? PreSaleChatMessageVO.SENDER_TYPE_USER
-                                                        : PreSaleChatMessageVO.SENDER_TYPE_CS;
-
-                                                // 绑定通道属性（核心：会话ID、接收者ID、发送者类型）
-                                                channel.attr(NettyConstant.PRE_SALE_RECEIVER_ID_KEY).set(receiverId);
-                                                channel.attr(NettyConstant.PRE_SALE_SESSION_ID_KEY).set(preSaleSessionId);
-                                                channel.attr(NettyConstant.PRE_SALE_SENDER_TYPE_KEY).set(senderType);
-                                                PreSaleNettyWebSocketServerHandler.PRE_SALE_RECEIVER_CHANNEL_MAP.put(receiverId, channel);
-
-                                                log.info("【售前-会话注册成功】通道ID：{}，ReceiverId：{}，类型：{}，会话ID：{}",
-                                                        channelId, receiverId, senderType, preSaleSessionId);
-
-                                                // ====================== 仅保留：推送pre_sale_chat_message未读消息 ======================
-                                                try {
-                                                    PreSaleChatMessageService preSaleChatMessageService = SpringContextUtil.getBean(PreSaleChatMessageService.class);
-                                                    ReceiverIdService receiverIdService = SpringContextUtil.getBean(ReceiverIdService.class);
-
-                                                    // 处理ReceiverId前缀（R_FIXED_0000_）
-                                                    String authReceiverId = "R_FIXED_0000_" + receiverId;
-                                                    // 校验ReceiverId有效性
-                                                    if (!receiverIdService.validateReceiverId(authReceiverId)) {
-                                                        log.warn("【售前-未读消息推送】ReceiverId无效：{}", authReceiverId);
-                                                    }
-
-                                                    // 调用服务查询未读消息
-                                                    Result<List<PreSaleChatMessagePO>> unreadResult = preSaleChatMessageService.listUnreadBySessionAndReceiver(preSaleSessionId, authReceiverId);
-                                                    if (unreadResult != null && unreadResult.isSuccess() && !CollectionUtils.isEmpty(unreadResult.getData())) {
-                                                        List<PreSaleChatMessagePO> unreadList = unreadResult.getData();
-                                                        log.info("【售前-未读消息推送】ReceiverId：{}，找到{}条未读消息", receiverId, unreadList.size());
-
-                                                        // 封装为WebSocket消息推送（携带preSaleSessionId）
-                                                        for (PreSaleChatMessagePO msg : unreadList) {
-                                                            PreSaleWebSocketMsgVO wsMsg = new PreSaleWebSocketMsgVO();
-                                                            wsMsg.setSessionId(msg.getPreSaleSessionId()); // 关键：传递会话ID
-                                                            wsMsg.setReceiverId(msg.getReceiverId());
-                                                            wsMsg.setUserId(msg.getSenderId());
-                                                            wsMsg.setMsgContent(msg.getContent());
-                                                            wsMsg.setMsgType(msg.getMsgType());
-                                                            wsMsg.setSendTime(msg.getSendTime());
-                                                            wsMsg.setSenderType(msg.getSenderType());
-
-                                                            channel.writeAndFlush(new TextWebSocketFrame(JSON.toJSONString(wsMsg)));
-                                                        }
-                                                        log.info("【售前-未读消息推送完成】ReceiverId：{}，推送{}条", receiverId, unreadList.size());
-                                                    } else {
-                                                        log.info("【售前-未读消息查询】ReceiverId：{}，无未读消息", receiverId);
-                                                    }
-                                                } catch (Exception e) {
-                                                    log.error("【售前-未读消息推送异常】ReceiverId：{}，异常：{}", receiverId, e.getMessage(), e);
-                                                }
-
-                                                // 清理HTTP处理器
-                                                cleanHttpHandlers(ctx, channelId);
-                                            } else {
-                                                log.error("【售前-会话注册失败】通道ID：{}，URI格式错误：{}", channelId, uri);
-                                            }
-                                            ctx.pipeline().remove(this);
-                                            return;
-                                        }
-                                        super.userEventTriggered(ctx, evt);
-                                    }
-                                });
-
-                                // 6. 售前专属编解码器
-                                pipeline.addLast(new PreSaleWebSocketMsgCodec());
-
-                                // 7. 售前专属业务处理器
-                                pipeline.addLast(new PreSaleNettyWebSocketServerHandler());
-
-                                log.info("【售前-通道初始化完成】通道ID：{}，处理器链路：{}", channelId, pipeline.names());
+                                // 阻塞监控标记（只记录正在处理的通道），HTTP编解码紧随其后，其后为售前WebSocket处理链
+                                ch.pipeline().addLast(eventLoopWatchdog.marker());
+                                ch.pipeline().addLast(new HttpServerCodec());
+                                initWebSocketPipeline(ch);
                             }
                         });
 
-                serverFuture = bootstrap.bind(port).sync();
+                serverChannels = nettyTransportFactory.bind(bootstrap, transportOptions);
+                drainCoordinator.registerAcceptors(serverChannels);
                 log.info("=====================================");
                 log.info("售前Netty WebSocket服务启动成功");
-                log.info("端口：{}", port);
+                log.info("端口：{}，传输层：{}，Acceptor数：{}", port, nettyTransportFactory.transportName(), serverChannels.size());
                 log.info("WebSocket路径：{}", PRE_SALE_WS_BASE_PATH);
                 log.info("=====================================");
-                serverFuture.channel().closeFuture().sync();
+                for (Channel serverChannel : serverChannels) {
+                    serverChannel.closeFuture().sync();
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 log.error("售前Netty服务启动失败：{}", e.getMessage(), e);
@@ -231,19 +190,174 @@ public class PreSaleNettyWebSocketServer {
         }, "PreSale-Netty-WebSocket-Server-Thread").start();
     }
 
-    // 解析URI中的preSaleSessionId参数（复用售后的解析逻辑）
-    private String parsePreSaleSessionIdFromUri(String uri) {
-        if (uri == null || !uri.contains("?preSaleSessionId=")) {
-            return null;
+    /**
+     * 售前WebSocket处理链（HttpServerCodec之后的全部处理器）
+     * 独立端口模式由本类的ServerBootstrap调用；统一网关模式由NettyWebSocketGateway按路径路由后调用
+     */
+    public void initWebSocketPipeline(Channel ch) {
+        ChannelPipeline pipeline = ch.pipeline();
+        String channelId = ch.id().asShortText();
+        log.info("【售前-通道初始化】通道ID：{}", channelId);
+
+        // 0. flush合并（链路最前端）
+        outboundQueueManager.installFlushConsolidation(pipeline);
+
+        // 0.1 握手准入：按客户端IP限速，超限返回429
+        pipeline.addLast(admissionControl.newHandshakeGuard());
+
+        // 1. 握手阶段（精简）：统计耗时/字节 + 小上限聚合
+        HandshakeStatsHandler handshakeStats = handshakeStage.newStatsHandler();
+        pipeline.addLast(handshakeStats);
+        pipeline.addLast(handshakeStage.newAggregator());
+
+        // 2. 心跳检测：只记录最后读时间，由共享时间轮判定超时
+        pipeline.addLast(idleSweeper.newTracker(idleTimeout));
+
+        // 2.1 permessage-deflate压缩协商（需位于协议处理器之前）
+        compressionStage.install(pipeline);
+
+        // 2.2 心跳/关闭帧审计（需位于协议处理器之前）
+        auditLog.installControlFrameRecorder(pipeline);
+
+        // 3. WebSocket协议升级（前缀匹配路径，含握手超时）
+        pipeline.addLast("preSaleWebSocketProtocolHandler", handshakeStage.newProtocolHandler(PRE_SALE_WS_BASE_PATH));
+
+        // 3.1 流量抓包（开启时安装）
+        trafficCapture.install(pipeline, RelayScope.PRE_SALE);
+
+        // 4. 握手完成事件监听（URI取自HandshakeComplete事件）
+        pipeline.addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+                if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+                    long costNanos = handshakeStats.complete();
+                    idleSweeper.track(ctx.channel());
+                    log.info("【售前-协议升级】通道ID：{}，WebSocket握手成功，耗时：{}μs，请求字节数：{}",
+                            channelId, TimeUnit.NANOSECONDS.toMicros(costNanos), handshakeStats.getRequestBytes());
+                    Channel channel = ctx.channel();
+                    String uri = ((WebSocketServerProtocolHandler.HandshakeComplete) evt).requestUri();
+                    String receiverId = URI_PARSER.parseReceiverId(uri);
+
+                    if (receiverId != null) {
+                        // 校验ReceiverId格式（LYQY_USER_/LYQY_CS_）
+                        if (!receiverId.startsWith("LYQY_USER_") && !receiverId.startsWith("LYQY_CS_")) {
+                            log.error("【售前-会话注册失败】通道ID：{}，ReceiverId格式错误：{}", channelId, receiverId);
+                            ctx.channel().close();
+                            return;
+                        }
+
+                        // 解析售前会话ID（preSaleSessionId）
+                        String preSaleSessionId = URI_PARSER.parseSessionId(uri);
+                        if (preSaleSessionId == null || !preSaleSessionId.startsWith("PRE_SESSION_")) {
+                            log.error("【售前-会话注册失败】通道ID：{}，未传入合法售前会话ID", channelId);
+                            ctx.channel().close();
+                            return;
+                        }
+
+                        // 连接上下文：receiverId、发送者类型（USER/CS按ID前缀区分）、权限校验ID、子协议一次性绑定
+                        ConnectionContext context = ConnectionContext.bind(channel, RelayScope.PRE_SALE, receiverId, preSaleSessionId,
+                                ((WebSocketServerProtocolHandler.HandshakeComplete) evt).selectedSubprotocol());
+                        String senderType = context.getSenderType().code();
+                        // 注册表统一绑定ReceiverId/会话ID属性并维护两级索引
+                        // 同一ReceiverId的已有连接（其他标签页/设备）保留，不再被新连接替换
+                        int connections = PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.register(receiverId, preSaleSessionId, channel);
+                        if (connections > 0) {
+                            presenceService.connected(RelayScope.PRE_SALE, receiverId);
+                            // 节点目录登记：其他节点发给该ReceiverId的消息转发到本节点
+                            messageRelay.online(RelayScope.PRE_SALE, receiverId);
+                        }
+                        // 摘流期间完成握手的连接同样分散重连到其他节点
+                        drainCoordinator.onRegistered(channel, RelayScope.PRE_SALE, receiverId);
+
+                        log.info("【售前-会话注册成功】通道ID：{}，ReceiverId：{}，类型：{}，会话ID：{}，该ReceiverId连接数：{}",
+                                channelId, receiverId, senderType, preSaleSessionId, connections);
+
+                        // ====================== 未读消息 + Redis离线消息补偿推送（业务线程池执行，不阻塞EventLoop） ======================
+                        final String replayReceiverId = receiverId;
+                        boolean accepted = nettyBusinessExecutor.submit(channel, () -> {
+                            replayUnreadPreSaleMessages(channel, replayReceiverId, preSaleSessionId);
+                            PreSaleNettyWebSocketServerHandler.pushOfflineMessage(channel, replayReceiverId, replayBatchWriter);
+                        });
+                        if (!accepted) {
+                            // 队列已满：消息仍保留在未读/离线存储中，下次握手或重连接口会再次补偿
+                            log.warn("【售前-补偿推送拒绝】业务线程池队列已满，ReceiverId：{}，会话ID：{}，当前排队任务数：{}",
+                                    receiverId, preSaleSessionId, nettyBusinessExecutor.queueDepth());
+                        }
+                    } else {
+                        log.error("【售前-会话注册失败】通道ID：{}，URI格式错误：{}", channelId, uri);
+                    }
+                    // HttpServerCodec/HttpObjectAggregator已由Netty握手器移除，这里只需摘除握手统计处理器
+                    ctx.pipeline().remove(handshakeStats);
+                    ctx.pipeline().remove(this);
+                    return;
+                }
+                super.userEventTriggered(ctx, evt);
+            }
+        });
+
+        // 5. 有界出站队列（背压感知，溢出/关闭时转离线存储）
+        pipeline.addLast("outboundQueue", outboundQueueManager.newHandler());
+
+        // 6. 售前专属编解码器
+        pipeline.addLast(new PreSaleWebSocketMsgCodec());
+
+        // 6.1 消息准入：按连接/receiverId限速 + 全局并发上限，超限回送SYSTEM_RATE_LIMITED错误帧
+        pipeline.addLast(admissionControl.newMessageGuard(RelayScope.PRE_SALE));
+
+        // 7. 售前专属业务处理器
+        pipeline.addLast(new PreSaleNettyWebSocketServerHandler(auditLog));
+
+        log.info("【售前-通道初始化完成】通道ID：{}，处理器链路：{}", channelId, pipeline.names());
+    }
+
+    /**
+     * 握手成功后推送pre_sale_chat_message未读消息（运行在业务线程池，结果切回通道EventLoop写出）
+     */
+    private void replayUnreadPreSaleMessages(Channel channel, String receiverId, String preSaleSessionId) {
+        if (!channel.isActive()) {
+            log.info("【售前-补偿推送跳过】通道已关闭，ReceiverId：{}", receiverId);
+            return;
         }
-        String paramPart = uri.substring(uri.indexOf("?") + 1);
-        String[] paramPairs = paramPart.split("&");
-        for (String pair : paramPairs) {
-            if (pair.startsWith("preSaleSessionId=")) {
-                return pair.substring("preSaleSessionId=".length()).trim();
+        try {
+            PreSaleChatMessageService preSaleChatMessageService = SpringContextUtil.getBean(PreSaleChatMessageService.class);
+            ReceiverIdService receiverIdService = SpringContextUtil.getBean(ReceiverIdService.class);
+
+            // 处理ReceiverId前缀（R_FIXED_0000_）
+            String authReceiverId = ConnectionContext.AUTH_PREFIX + receiverId;
+            // 校验ReceiverId有效性
+            if (!receiverIdService.validateReceiverId(authReceiverId)) {
+                log.warn("【售前-未读消息推送】ReceiverId无效：{}", authReceiverId);
+            }
+
+            // 调用服务查询未读消息
+            Result<List<PreSaleChatMessagePO>> unreadResult = preSaleChatMessageService.listUnreadBySessionAndReceiver(preSaleSessionId, authReceiverId);
+            if (unreadResult != null && unreadResult.isSuccess() && !CollectionUtils.isEmpty(unreadResult.getData())) {
+                List<PreSaleChatMessagePO> unreadList = unreadResult.getData();
+                log.info("【售前-未读消息推送】ReceiverId：{}，找到{}条未读消息", receiverId, unreadList.size());
+
+                // 封装为WebSocket消息批量推送（携带preSaleSessionId，只flush一次）
+                List<PreSaleWebSocketMsgVO> messages = new ArrayList<>(unreadList.size());
+                for (PreSaleChatMessagePO msg : unreadList) {
+                    PreSaleWebSocketMsgVO wsMsg = new PreSaleWebSocketMsgVO();
+                    wsMsg.setSessionId(msg.getPreSaleSessionId()); // 关键：传递会话ID
+                    wsMsg.setReceiverId(msg.getReceiverId());
+                    wsMsg.setUserId(msg.getSenderId());
+                    wsMsg.setMsgContent(msg.getContent());
+                    wsMsg.setMsgType(msg.getMsgType());
+                    wsMsg.setSendTime(msg.getSendTime());
+                    wsMsg.setSenderType(msg.getSenderType());
+                    messages.add(wsMsg);
+                }
+                // 降级：消息仍为未读，下次重连握手或调用重连接口时补偿推送
+                replayBatchWriter.replay(channel, messages, wsMsg -> log.info(
+                        "【售前-未读消息推送降级】ReceiverId：{}，会话ID：{}，消息保留为未读", receiverId, wsMsg.getSessionId()));
+                log.info("【售前-未读消息推送完成】ReceiverId：{}，推送{}条", receiverId, unreadList.size());
+            } else {
+                log.info("【售前-未读消息查询】ReceiverId：{}，无未读消息", receiverId);
             }
+        } catch (Exception e) {
+            log.error("【售前-未读消息推送异常】ReceiverId：{}，异常：{}", receiverId, e.getMessage(), e);
         }
-        return null;
     }
 
     // 推送未读消息（原有方法，已整合到握手逻辑中）
@@ -271,20 +385,27 @@ public class PreSaleNettyWebSocketServer {
         }
     }
 
-    private void cleanHttpHandlers(ChannelHandlerContext ctx, String channelId) {
-        try {
-            if (ctx.pipeline().get(HttpServerCodec.class) != null) ctx.pipeline().remove(HttpServerCodec.class);
-            if (ctx.pipeline().get(HttpObjectAggregator.class) != null) ctx.pipeline().remove(HttpObjectAggregator.class);
-            if (ctx.pipeline().get(ChunkedWriteHandler.class) != null) ctx.pipeline().remove(ChunkedWriteHandler.class);
-        } catch (Exception e) {
-            log.warn("【售前-处理器清理异常】通道ID：{}，异常：{}", channelId, e.getMessage());
-        }
+    private NettyTransportOptions buildTransportOptions() {
+        NettyTransportOptions options = new NettyTransportOptions();
+        options.setServerName("售前WebSocket");
+        options.setPort(port);
+        options.setBossThreadCount(bossThreadCount);
+        options.setWorkerThreadCount(workerThreadCount);
+        options.setAcceptorCount(acceptorCount);
+        options.setSoBacklog(soBacklog);
+        options.setSoKeepalive(soKeepalive);
+        options.setTcpNodelay(tcpNodelay);
+        options.setWriteBufferLowWaterMark(writeBufferLowWaterMark);
+        options.setWriteBufferHighWaterMark(writeBufferHighWaterMark);
+        options.setPooledAllocator(pooledAllocator);
+        return options;
     }
 
     @PreDestroy
     public void stop() {
-        if (serverFuture != null) {
-            serverFuture.channel().close().syncUninterruptibly();
+        drainCoordinator.drainOnShutdown();
+        for (Channel serverChannel : serverChannels) {
+            serverChannel.close().syncUninterruptibly();
         }
         if (bossGroup != null) bossGroup.shutdownGracefully();
         if (workerGroup != null) workerGroup.shutdownGracefully();
@@ -1,7 +1,19 @@
 package com.yqrb.netty.pre;
 
 import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.admission.AdmissionControl;
+import com.yqrb.netty.audit.AuditEventType;
+import com.yqrb.netty.audit.AuditLog;
+import com.yqrb.netty.codec.EncodedMessage;
 import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.executor.SessionLaneExecutor;
+import com.yqrb.netty.outbound.OutboundQueueManager;
+import com.yqrb.netty.outbound.ReplayBatchWriter;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.registry.ConnectionRegistry;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayScope;
 import com.yqrb.pojo.vo.PreSaleChatMessageVO;
 import com.yqrb.pojo.vo.Result;
 import com.yqrb.service.PreSaleChatMessageService;
@@ -9,11 +21,9 @@ import com.yqrb.util.RedisUtil;
 import com.yqrb.util.SpringContextUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.concurrent.GlobalEventExecutor;
@@ -21,14 +31,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 
 public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHandler<PreSaleChatMessageVO> {
     private static final Logger logger = LoggerFactory.getLogger(PreSaleNettyWebSocketServerHandler.class);
     private static final ChannelGroup ONLINE_CHANNELS = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
-    public static final Map<String, Channel> PRE_SALE_RECEIVER_CHANNEL_MAP = new ConcurrentHashMap<>();
+    // 售前在线连接注册表：receiverId -> 通道集合（多标签页/多设备），售前会话ID -> 通道集合
+    public static final ConnectionRegistry PRE_SALE_REGISTRY =
+            new ConnectionRegistry(NettyConstant.PRE_SALE_RECEIVER_ID_KEY, NettyConstant.PRE_SALE_SESSION_ID_KEY);
+
+    // 审计日志（与售后共用）：逐条消息的接收/转发只入队异步落盘
+    private final AuditLog auditLog;
+
+    public PreSaleNettyWebSocketServerHandler(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
 
     // 离线消息Redis前缀（从配置读取）
     private static String OFFLINE_MSG_PREFIX;
@@ -51,29 +70,27 @@ public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHand
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         Channel channel = ctx.channel();
         ONLINE_CHANNELS.add(channel);
-        String receiverId = channel.attr(NettyConstant.PRE_SALE_RECEIVER_ID_KEY).get();
-        logger.info("【售前-客户端上线】通道ID：{}，ReceiverId：{}，在线人数：{}",
-                channel.id().asShortText(), receiverId, ONLINE_CHANNELS.size());
-
-        // 上线后推送离线消息
-        if (receiverId != null) {
-            pushOfflineMessage(channel, receiverId);
-        }
+        logger.info("【售前-客户端上线】通道ID：{}，在线人数：{}",
+                channel.id().asShortText(), ONLINE_CHANNELS.size());
+        // 离线消息推送已移至握手完成后（此时才有ReceiverId），由PreSaleNettyWebSocketServer提交到业务线程池执行
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         Channel channel = ctx.channel();
         ONLINE_CHANNELS.remove(channel);
-        String receiverId = channel.attr(NettyConstant.PRE_SALE_RECEIVER_ID_KEY).get();
+        String receiverId = ConnectionContext.receiverIdOf(channel);
 
-        // 修复：清理通道映射（更高效）
-        if (receiverId != null) {
-            PRE_SALE_RECEIVER_CHANNEL_MAP.remove(receiverId);
+        // 注销：只移除本通道（同一ReceiverId的其他连接保留），同时移除会话索引
+        if (PRE_SALE_REGISTRY.unregister(channel) != null) {
+            SpringContextUtil.getBean(PresenceService.class).disconnected(RelayScope.PRE_SALE, receiverId);
+            // 多节点：该ReceiverId在本节点已无连接时释放节点目录租约
+            SpringContextUtil.getBean(MessageRelay.class).offline(RelayScope.PRE_SALE, receiverId);
         }
 
-        logger.info("【售前-客户端离线】通道ID：{}，ReceiverId：{}，在线人数：{}，剩余通道映射数：{}",
-                channel.id().asShortText(), receiverId, ONLINE_CHANNELS.size(), PRE_SALE_RECEIVER_CHANNEL_MAP.size());
+        logger.info("【售前-客户端离线】通道ID：{}，ReceiverId：{}，在线人数：{}，剩余通道映射数：{}，该ReceiverId剩余连接：{}",
+                channel.id().asShortText(), receiverId, ONLINE_CHANNELS.size(), PRE_SALE_REGISTRY.channelCount(),
+                PRE_SALE_REGISTRY.getChannelsByReceiverId(receiverId).size());
     }
 
     @Override
@@ -82,7 +99,7 @@ public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHand
             IdleStateEvent idleEvent = (IdleStateEvent) evt;
             if (idleEvent.state() == IdleState.READER_IDLE) {
                 Channel channel = ctx.channel();
-                String receiverId = channel.attr(NettyConstant.PRE_SALE_RECEIVER_ID_KEY).get();
+                String receiverId = ConnectionContext.receiverIdOf(channel);
                 logger.info("【售前-客户端超时】通道ID：{}，ReceiverId：{}，关闭通道", channel.id().asShortText(), receiverId);
                 channel.close();
                 return;
@@ -96,13 +113,13 @@ public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHand
         Channel currentChannel = ctx.channel();
         String channelId = currentChannel.id().asShortText();
 
-        // 获取通道属性
-        String senderReceiverId = currentChannel.attr(NettyConstant.PRE_SALE_RECEIVER_ID_KEY).get();
+        // 连接上下文（握手时创建）+ 当前会话ID（注册表维护）
+        ConnectionContext context = ConnectionContext.of(currentChannel);
+        String senderReceiverId = context == null ? null : context.getReceiverId();
         String preSaleSessionId = currentChannel.attr(NettyConstant.PRE_SALE_SESSION_ID_KEY).get();
-        String senderType = currentChannel.attr(NettyConstant.PRE_SALE_SENDER_TYPE_KEY).get();
 
         // 基础校验
-        if (senderReceiverId == null || preSaleSessionId == null) {
+        if (context == null || preSaleSessionId == null) {
             logger.error("【售前-消息处理失败】通道未绑定核心属性，通道ID：{}，senderReceiverId：{}，sessionId：{}",
                     channelId, senderReceiverId, preSaleSessionId);
             return;
@@ -112,42 +129,60 @@ public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHand
             return;
         }
 
-        // 补全消息默认值
+        context.recordInbound(msg.getContent() == null ? 0 : msg.getContent().length());
+
+        // 补全消息默认值（sendTime在会话车道上生成）
         msg.setPreSaleSessionId(preSaleSessionId);
         if (msg.getSenderId() == null) msg.setSenderId(senderReceiverId);
-        if (msg.getSenderType() == null) msg.setSenderType(senderType);
-        if (msg.getSendTime() == null) msg.setSendTime(new Date());
+        if (msg.getSenderType() == null) msg.setSenderType(context.getSenderType().code());
         if (msg.getMsgType() == null) msg.setMsgType(PreSaleChatMessageVO.MSG_TYPE_TEXT);
         if (msg.getIsRead() == null) msg.setIsRead(PreSaleChatMessageVO.IS_READ_NO);
 
-        logger.info("【售前-消息接收】通道ID：{}，会话ID：{}，发送者：{}，接收者：{}，内容：{}",
+        auditLog.record(AuditEventType.MESSAGE_IN, currentChannel, msg.getSenderId(), preSaleSessionId,
+                msg.getContent() == null ? 0 : msg.getContent().length(), msg.getMsgType());
+        logger.debug("【售前-消息接收】通道ID：{}，会话ID：{}，发送者：{}，接收者：{}，内容：{}",
                 channelId, preSaleSessionId, msg.getSenderId(), msg.getReceiverId(), msg.getContent());
 
-        // 1. 持久化消息
-        persistPreSaleMessage(msg, senderReceiverId);
+        // 持久化与转发交给会话车道（同一售前会话严格按序，不占用EventLoop；并发名额随任务转交）
+        AdmissionControl admissionControl = SpringContextUtil.getBean(AdmissionControl.class);
+        Runnable releasePermit = admissionControl.deferInFlight();
+        boolean queued = SpringContextUtil.getBean(SessionLaneExecutor.class).submit(preSaleSessionId, () -> {
+            try {
+                if (msg.getSendTime() == null) msg.setSendTime(new Date());
+
+                // 1. 持久化消息
+                persistPreSaleMessage(msg, context);
 
-        // 2. 转发消息（核心修复：增加离线兜底）
-        forwardPreSaleMessage(msg);
+                // 2. 转发消息（核心修复：增加离线兜底）
+                forwardPreSaleMessage(msg);
 
-        logger.info("【售前-消息处理完成】会话ID：{}，消息ID：{}", preSaleSessionId, msg.getMsgId());
+                logger.debug("【售前-消息处理完成】会话ID：{}，消息ID：{}", preSaleSessionId, msg.getMsgId());
+            } finally {
+                releasePermit.run();
+            }
+        });
+        if (!queued) {
+            releasePermit.run();
+            logger.error("【售前-消息处理失败】会话车道队列已满，消息丢弃，通道ID：{}，会话ID：{}", channelId, preSaleSessionId);
+            admissionControl.rejectBusy(currentChannel, RelayScope.PRE_SALE, senderReceiverId);
+        }
     }
 
     // 持久化消息
-    private void persistPreSaleMessage(PreSaleChatMessageVO msg, String authReceiverId) {
+    private void persistPreSaleMessage(PreSaleChatMessageVO msg, ConnectionContext context) {
         try {
             PreSaleChatMessageService service = SpringContextUtil.getBean(PreSaleChatMessageService.class);
 
-            // 修复：拼接R_FIXED_0000_前缀，适配ReceiverIdService校验
-            String realAuthReceiverId = "R_FIXED_0000_" + authReceiverId;
-            Result<Void> result = service.savePreSaleChatMessage(msg, realAuthReceiverId);
+            // 带R_FIXED_0000_前缀的ReceiverId（适配ReceiverIdService校验），握手时已拼好
+            Result<Void> result = service.savePreSaleChatMessage(msg, context.getAuthReceiverId());
 
             if (result.isSuccess()) {
-                logger.info("【售前-消息持久化成功】会话ID：{}，消息ID：{}", msg.getPreSaleSessionId(), msg.getMsgId());
+                logger.debug("【售前-消息持久化成功】会话ID：{}，消息ID：{}", msg.getPreSaleSessionId(), msg.getMsgId());
             } else {
                 logger.error("【售前-消息持久化失败】会话ID：{}，消息ID：{}，错误码：{}，错误信息：{}",
                         msg.getPreSaleSessionId(), msg.getMsgId(), result.getCode(), result.getMsg());
                 // 重试：使用原始ReceiverId
-                Result<Void> retryResult = service.savePreSaleChatMessage(msg, authReceiverId);
+                Result<Void> retryResult = service.savePreSaleChatMessage(msg, context.getReceiverId());
                 if (retryResult.isSuccess()) {
                     logger.info("【售前-消息持久化重试成功】会话ID：{}，消息ID：{}", msg.getPreSaleSessionId(), msg.getMsgId());
                 } else {
@@ -166,46 +201,69 @@ public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHand
         String targetReceiverId = msg.getReceiverId();
         String targetSessionId = msg.getPreSaleSessionId();
 
-        // 1. 获取目标通道
-        Channel targetChannel = PRE_SALE_RECEIVER_CHANNEL_MAP.get(targetReceiverId);
-        logger.info("【售前-消息转发】目标ReceiverId：{}，通道是否存在：{}，在线通道数：{}",
-                targetReceiverId, targetChannel != null, PRE_SALE_RECEIVER_CHANNEL_MAP.size());
-
-        // 2. 通道有效则直接转发
-        if (targetChannel != null && targetChannel.isOpen() && targetChannel.isActive() && targetChannel.isWritable()) {
-            // 绑定会话ID（如果未绑定）
-            String channelSessionId = targetChannel.attr(NettyConstant.PRE_SALE_SESSION_ID_KEY).get();
-            if (channelSessionId == null || !channelSessionId.equals(targetSessionId)) {
-                targetChannel.attr(NettyConstant.PRE_SALE_SESSION_ID_KEY).set(targetSessionId);
-                logger.info("【售前-消息转发】为目标通道绑定会话ID：{}", targetSessionId);
+        // 1. 本节点连接投递
+        List<Channel> targetChannels = deliverLocal(msg);
+        for (Channel targetChannel : targetChannels) {
+            auditLog.record(AuditEventType.MESSAGE_FORWARD, targetChannel, targetReceiverId, targetSessionId,
+                    0, msg.getSenderType());
+        }
+
+        // 2. 其他节点（多实例部署）经中继转发；本节点与其他节点都没有接收者连接时存储离线消息
+        SpringContextUtil.getBean(MessageRelay.class).route(RelayScope.PRE_SALE, targetReceiverId, targetSessionId, msg,
+                targetChannels.isEmpty() ? () -> {
+                    auditLog.record(AuditEventType.MESSAGE_OFFLINE, null, targetReceiverId, targetSessionId, 0, "RECEIVER_OFFLINE");
+                    saveOfflineMessage(targetReceiverId, msg);
+                } : null);
+    }
+
+    /**
+     * 本节点投递（本地发送与其他节点中继过来的消息共用）
+     * @return 投递到的本地通道，为空表示接收者不在本节点
+     */
+    static List<Channel> deliverLocal(PreSaleChatMessageVO msg) {
+        String targetReceiverId = msg.getReceiverId();
+        String targetSessionId = msg.getPreSaleSessionId();
+
+        // 1. 获取目标通道：优先取已绑定该会话的连接
+        List<Channel> targetChannels = PRE_SALE_REGISTRY.getChannels(targetReceiverId, targetSessionId);
+        if (targetChannels.isEmpty()) {
+            // 接收者的连接都未绑定该会话：为其全部活跃连接绑定会话ID（已绑定的其他会话保留）
+            targetChannels = new ArrayList<>();
+            for (Channel channel : PRE_SALE_REGISTRY.getChannelsByReceiverId(targetReceiverId)) {
+                if (channel.isActive()) {
+                    PRE_SALE_REGISTRY.bindSession(channel, targetSessionId);
+                    targetChannels.add(channel);
+                }
             }
+            if (!targetChannels.isEmpty()) {
+                logger.info("【售前-消息转发】为目标通道绑定会话ID：{}，通道数：{}", targetSessionId, targetChannels.size());
+            }
+        }
+        logger.debug("【售前-消息转发】目标ReceiverId：{}，目标通道数：{}，在线接收者数：{}",
+                targetReceiverId, targetChannels.size(), PRE_SALE_REGISTRY.size());
 
-            // 转发消息
+        // 2. 通道有效则经出站队列转发（暂时不可写不再判为离线，由队列暂存）
+        if (!targetChannels.isEmpty()) {
+            // 转发消息：全部通道均队列溢出/关闭/写出失败时降级存储离线消息（业务线程池执行）
             try {
-                String jsonMsg = JSON.toJSONString(msg);
-                targetChannel.writeAndFlush(new TextWebSocketFrame(jsonMsg))
-                        .addListener((ChannelFutureListener) future -> {
-                            if (future.isSuccess()) {
-                                logger.info("【售前-消息转发成功】接收者：{}，会话ID：{}", targetReceiverId, targetSessionId);
-                            } else {
-                                logger.error("【售前-消息转发失败】接收者：{}，异常：{}", targetReceiverId, future.cause().getMessage());
-                                // 转发失败则存储离线消息
-                                saveOfflineMessage(targetReceiverId, msg);
-                            }
-                        });
+                OutboundQueueManager outboundQueueManager = SpringContextUtil.getBean(OutboundQueueManager.class);
+                EncodedMessage encoded = EncodedMessage.of(msg);
+                try {
+                    outboundQueueManager.deliverAll(targetChannels, encoded,
+                            () -> saveOfflineMessage(targetReceiverId, msg));
+                } finally {
+                    encoded.release();
+                }
             } catch (Exception e) {
                 logger.error("【售前-消息转发异常】接收者：{}，异常：{}", targetReceiverId, e.getMessage(), e);
                 saveOfflineMessage(targetReceiverId, msg);
             }
-        } else {
-            // 3. 通道无效则存储离线消息
-            logger.info("【售前-消息转发】目标接收者离线，存储离线消息：{}", targetReceiverId);
-            saveOfflineMessage(targetReceiverId, msg);
         }
+        return targetChannels;
     }
 
     // 存储离线消息到Redis
-    private void saveOfflineMessage(String receiverId, PreSaleChatMessageVO msg) {
+    static void saveOfflineMessage(String receiverId, PreSaleChatMessageVO msg) {
         try {
             if (redisUtil == null) {
                 logger.warn("【售前-离线消息】Redis工具类未初始化，无法存储离线消息");
@@ -219,10 +277,12 @@ public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHand
         }
     }
 
-    // 推送离线消息
-    private void pushOfflineMessage(Channel channel, String receiverId) {
+    /**
+     * 推送Redis中的离线消息（含Redis阻塞调用，必须在业务线程池中调用，结果切回通道EventLoop批量写出）
+     */
+    static void pushOfflineMessage(Channel channel, String receiverId, ReplayBatchWriter replayBatchWriter) {
         try {
-            if (redisUtil == null) {
+            if (redisUtil == null || !channel.isActive()) {
                 return;
             }
             String redisKey = OFFLINE_MSG_PREFIX + receiverId;
@@ -237,14 +297,14 @@ public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHand
             }
 
             logger.info("【售前-离线消息推送】ReceiverId：{}，离线消息数：{}", receiverId, msgCount);
+            List<PreSaleChatMessageVO> messages = new ArrayList<>((int) msgCount);
             for (int i = 0; i < msgCount; i++) {
                 String msgStr = (String) redisUtil.lIndex(redisKey, i);
-                PreSaleChatMessageVO msg = JSON.parseObject(msgStr, PreSaleChatMessageVO.class);
-                channel.writeAndFlush(new TextWebSocketFrame(JSON.toJSONString(msg)));
+                messages.add(JSON.parseObject(msgStr, PreSaleChatMessageVO.class));
             }
-
-            // 删除已推送的离线消息
+            // 先删除已取出的离线消息，推送时出站队列溢出/通道关闭的消息由降级回调重新写入
             redisUtil.delete(redisKey);
+            replayBatchWriter.replay(channel, messages, msg -> saveOfflineMessage(receiverId, msg));
             logger.info("【售前-离线消息推送完成】ReceiverId：{}，共推送{}条", receiverId, msgCount);
         } catch (Exception e) {
             logger.error("【售前-离线消息推送异常】ReceiverId：{}，异常：{}", receiverId, e.getMessage(), e);
@@ -254,7 +314,7 @@ public class PreSaleNettyWebSocketServerHandler extends SimpleChannelInboundHand
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         Channel channel = ctx.channel();
-        String receiverId = channel.attr(NettyConstant.PRE_SALE_RECEIVER_ID_KEY).get();
+        String receiverId = ConnectionContext.receiverIdOf(channel);
         logger.error("【售前-通道异常】通道ID：{}，ReceiverId：{}，异常：{}",
                 channel.id().asShortText(), receiverId, cause.getMessage(), cause);
         channel.close();
@@ -15,14 +15,14 @@ public class PreSaleNettyWebSocketUtil {
         if (receiverId == null || receiverId.trim().isEmpty()) {
             return null;
         }
-        return PreSaleNettyWebSocketServerHandler.PRE_SALE_RECEIVER_CHANNEL_MAP.get(receiverId);
+        return PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.getByReceiverId(receiverId);
     }
 
     /**
-     * 判断售前ReceiverId是否在线
+     * 判断售前ReceiverId是否在线（暂时不可写由出站队列暂存，不视为离线）
      */
     public boolean isPreSaleReceiverOnline(String receiverId) {
         Channel channel = getPreSaleChannelByReceiverId(receiverId);
-        return channel != null && channel.isActive() && channel.isWritable();
+        return channel != null && channel.isActive();
     }
 }
\ No newline at end of file
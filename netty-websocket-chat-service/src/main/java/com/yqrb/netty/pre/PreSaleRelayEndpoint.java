@@ -0,0 +1,44 @@
+package com.yqrb.netty.pre;
+
+import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.audit.AuditEventType;
+import com.yqrb.netty.audit.AuditLog;
+import com.yqrb.netty.relay.RelayEndpoint;
+import com.yqrb.netty.relay.RelayEnvelope;
+import com.yqrb.pojo.vo.PreSaleChatMessageVO;
+import io.netty.channel.Channel;
+
+import java.util.List;
+
+/**
+ * 售前中继端点：其他节点转来的消息按售前规则投递到本节点连接（未绑定该会话时自动绑定）
+ * 接收者已离开本节点（目录租约尚未过期）时存储为Redis离线消息，避免消息丢失
+ */
+public class PreSaleRelayEndpoint implements RelayEndpoint {
+
+    private final AuditLog auditLog;
+
+    public PreSaleRelayEndpoint(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    @Override
+    public int deliver(RelayEnvelope envelope) {
+        PreSaleChatMessageVO msg = JSON.parseObject(envelope.getPayload(), PreSaleChatMessageVO.class);
+        List<Channel> channels = PreSaleNettyWebSocketServerHandler.deliverLocal(msg);
+        if (channels.isEmpty()) {
+            PreSaleNettyWebSocketServerHandler.saveOfflineMessage(envelope.getReceiverId(), msg);
+            return 0;
+        }
+        for (Channel channel : channels) {
+            auditLog.record(AuditEventType.MESSAGE_FORWARD, channel, envelope.getReceiverId(), envelope.getSessionId(),
+                    0, "RELAY:" + envelope.getOrigin());
+        }
+        return channels.size();
+    }
+
+    @Override
+    public boolean isLocal(String receiverId) {
+        return !PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.getChannelsByReceiverId(receiverId).isEmpty();
+    }
+}
@@ -1,7 +1,8 @@
 package com.yqrb.netty.pre;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONException;
+import com.yqrb.netty.codec.BinaryMsgCodec;
+import com.yqrb.netty.codec.JsonByteBufs;
 import com.yqrb.pojo.vo.PreSaleChatMessageVO;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
@@ -10,7 +11,6 @@ import io.netty.handler.codec.http.websocketx.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
 
@@ -21,18 +21,17 @@ public class PreSaleWebSocketMsgCodec extends MessageToMessageCodec<WebSocketFra
     protected void decode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
         String channelId = ctx.channel().id().asShortText();
         if (frame instanceof TextWebSocketFrame) {
-            String msgContent = ((TextWebSocketFrame) frame).text();
-            logger.info("【售前-解码】通道ID：{}，接收内容：{}", channelId, msgContent);
             PreSaleChatMessageVO vo = null;
 
-            // 尝试JSON解析
+            // 尝试JSON解析（直接从帧内容ByteBuf解析，不先转String）
             try {
-                vo = JSON.parseObject(msgContent, PreSaleChatMessageVO.class);
+                vo = JsonByteBufs.parse(frame.content(), PreSaleChatMessageVO.class);
                 if (vo.getMsgId() == null || vo.getMsgId().trim().isEmpty()) {
                     vo.setMsgId(UUID.randomUUID().toString().replace("-", ""));
                 }
             } catch (JSONException e) {
                 // 纯文本格式解析：receiverId:xxx|sessionId:xxx|消息内容
+                String msgContent = ((TextWebSocketFrame) frame).text();
                 vo = new PreSaleChatMessageVO();
                 vo.setMsgId(UUID.randomUUID().toString().replace("-", ""));
 
@@ -59,7 +58,7 @@ public class PreSaleWebSocketMsgCodec extends MessageToMessageCodec<WebSocketFra
                 vo.setReceiverId(targetReceiverId);
                 vo.setContent(realContent);
                 vo.setPreSaleSessionId(customSessionId); // 确保会话ID正确设置
-                logger.info("【售前-解码】通道ID：{}，纯文本消息封装完成，接收者ID：{}，会话ID：{}，内容：{}",
+                logger.debug("【售前-解码】通道ID：{}，纯文本消息封装完成，接收者ID：{}，会话ID：{}，内容：{}",
                         channelId, targetReceiverId, customSessionId, realContent);
             }
 
@@ -70,13 +69,11 @@ public class PreSaleWebSocketMsgCodec extends MessageToMessageCodec<WebSocketFra
         }
 
         if (frame instanceof BinaryWebSocketFrame) {
-            ByteBuf byteBuf = ((BinaryWebSocketFrame) frame).content();
-            int readerIndex = byteBuf.readerIndex();
-            byte[] bytes = new byte[byteBuf.readableBytes()];
-            byteBuf.readBytes(bytes);
-            byteBuf.readerIndex(readerIndex);
-            String jsonStr = new String(bytes, StandardCharsets.UTF_8);
-            PreSaleChatMessageVO vo = JSON.parseObject(jsonStr, PreSaleChatMessageVO.class);
+            // 协商chat.binary.v1的客户端按二进制协议直接从ByteBuf解码；其余按UTF-8 JSON解析
+            ByteBuf byteBuf = frame.content();
+            PreSaleChatMessageVO vo = BinaryMsgCodec.isBinaryClient(ctx.channel())
+                    ? BinaryMsgCodec.decodePreSaleMsg(byteBuf.duplicate())
+                    : JsonByteBufs.parse(byteBuf, PreSaleChatMessageVO.class);
             if (vo.getMsgId() == null || vo.getMsgId().trim().isEmpty()) {
                 vo.setMsgId(UUID.randomUUID().toString().replace("-", ""));
             }
@@ -84,26 +81,19 @@ public class PreSaleWebSocketMsgCodec extends MessageToMessageCodec<WebSocketFra
             return;
         }
 
-        if (frame instanceof PingWebSocketFrame) {
-            logger.info("【售前-解码】通道ID：{}，接收Ping帧，回复Pong", channelId);
-            ctx.channel().writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
-            return;
-        }
-        if (frame instanceof CloseWebSocketFrame) {
-            logger.info("【售前-解码】通道ID：{}，接收Close帧，关闭通道", channelId);
-            frame.retain();
-            ctx.channel().writeAndFlush(frame);
-            ctx.channel().close();
-        }
+        // 心跳/关闭帧由WebSocketServerProtocolHandler应答并消费，不会到达这里（审计见ControlFrameRecorder）
     }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, PreSaleChatMessageVO msg, List<Object> out) throws Exception {
         String channelId = ctx.channel().id().asShortText();
         try {
-            String jsonStr = JSON.toJSONString(msg);
-            logger.info("【售前-编码】通道ID：{}，发送内容：{}", channelId, jsonStr);
-            out.add(new TextWebSocketFrame(jsonStr));
+            if (BinaryMsgCodec.isBinaryClient(ctx.channel())) {
+                out.add(new BinaryWebSocketFrame(BinaryMsgCodec.encode(ctx.alloc(), msg)));
+                return;
+            }
+            ByteBuf json = JsonByteBufs.write(ctx.alloc(), msg);
+            out.add(new TextWebSocketFrame(json));
         } catch (Exception e) {
             logger.error("【售前-编码失败】通道ID：{}，异常：{}", channelId, e.getMessage(), e);
         }
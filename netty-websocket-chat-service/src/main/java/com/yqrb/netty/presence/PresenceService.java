@@ -0,0 +1,257 @@
+package com.yqrb.netty.presence;
+
+import com.yqrb.mapper.CustomerServiceMapperCustom;
+import com.yqrb.netty.relay.MessageRelay;
+import com.yqrb.netty.relay.RelayScope;
+import com.yqrb.pojo.vo.CustomerServiceVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在线状态服务（售前/售后共用，内存为准，批量异步落Redis）
+ * 1. 连接在线：由通道生命周期驱动（握手注册成功 connected，通道注销 disconnected），按 服务+receiverId 计连接数，
+ *    0->1 记为上线、1->0 记为下线；读取（isOnline）只查内存，不访问Redis
+ * 2. 落盘：状态变化只记入待刷新表（同一receiverId多次变化只保留最后一次），后台线程每flush-interval-millis
+ *    用一次pipeline批量SADD/SREM到本节点集合 netty:presence:{服务}:{nodeId}（节点集合带TTL，节点宕机后自动清理），
+ *    不再每次上下线整体读写ReceiverIdSessionVO
+ * 3. 在线客服：启动时从customer_service加载，客服登录/登出（DB事务提交后）同步更新内存，定期从DB全量校准
+ *    （多节点部署时其他节点的登录/登出在校准后可见）
+ */
+@Component
+public class PresenceService {
+    private static final Logger log = LoggerFactory.getLogger(PresenceService.class);
+
+    private static final String KEY_PREFIX = "netty:presence:";
+
+    @Value("${custom.netty.presence.flush-interval-millis:200}")
+    private long flushIntervalMillis;
+    @Value("${custom.netty.presence.batch-max:500}")
+    private int batchMax;
+    @Value("${custom.netty.presence.node-ttl-seconds:90}")
+    private int nodeTtlSeconds;
+    @Value("${custom.netty.presence.cs-reload-seconds:30}")
+    private int csReloadSeconds;
+
+    @Autowired(required = false)
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private CustomerServiceMapperCustom customerServiceMapperCustom;
+
+    @Autowired
+    private MessageRelay messageRelay;
+
+    // 服务:receiverId -> 本节点连接数
+    private final Map<String, Integer> connections = new ConcurrentHashMap<>();
+    // 待刷新的状态变化：服务:receiverId -> true上线/false下线
+    private final Map<String, Boolean> dirty = new ConcurrentHashMap<>();
+    // 在线客服：serviceStaffId -> 客服信息
+    private volatile Map<String, CustomerServiceVO> onlineCustomers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private String nodeId;
+    private long lastNodeRefresh;
+
+    private final LongAdder transitions = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedChanges = new LongAdder();
+    private final LongAdder flushErrors = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        nodeId = messageRelay.getNodeId();
+        reloadCustomers();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "netty-presence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::reloadCustomers, csReloadSeconds, csReloadSeconds, TimeUnit.SECONDS);
+        log.info("【在线状态】已启动，节点ID：{}，刷新间隔：{}ms，Redis：{}",
+                nodeId, flushIntervalMillis, stringRedisTemplate == null ? "未配置（仅内存）" : "已配置");
+    }
+
+    /**
+     * 通道注册成功（任意线程，无阻塞）
+     */
+    public void connected(RelayScope scope, String receiverId) {
+        if (receiverId == null) {
+            return;
+        }
+        String key = key(scope, receiverId);
+        boolean[] first = new boolean[1];
+        connections.compute(key, (k, count) -> {
+            first[0] = count == null;
+            return count == null ? 1 : count + 1;
+        });
+        if (first[0]) {
+            transitions.increment();
+            dirty.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 通道注销（任意线程，无阻塞）；未记录在线的receiverId忽略
+     */
+    public void disconnected(RelayScope scope, String receiverId) {
+        if (receiverId == null) {
+            return;
+        }
+        String key = key(scope, receiverId);
+        boolean[] last = new boolean[1];
+        connections.computeIfPresent(key, (k, count) -> {
+            last[0] = count <= 1;
+            return count <= 1 ? null : count - 1;
+        });
+        if (last[0]) {
+            transitions.increment();
+            dirty.put(key, Boolean.FALSE);
+        }
+    }
+
+    public boolean isOnline(RelayScope scope, String receiverId) {
+        return receiverId != null && connections.containsKey(key(scope, receiverId));
+    }
+
+    private static String key(RelayScope scope, String receiverId) {
+        return scope.name() + ":" + receiverId;
+    }
+
+    private String nodeKey(RelayScope scope) {
+        return KEY_PREFIX + scope.name() + ":" + nodeId;
+    }
+
+    /**
+     * 客服登录/登出（DB更新成功后调用）
+     */
+    public void customerOnline(CustomerServiceVO customerService) {
+        onlineCustomers.put(customerService.getServiceStaffId(), customerService);
+    }
+
+    public void customerOffline(String serviceStaffId) {
+        onlineCustomers.remove(serviceStaffId);
+    }
+
+    /**
+     * 在线客服列表（与原SQL一致按创建时间升序）
+     */
+    public List<CustomerServiceVO> getOnlineCustomers() {
+        List<CustomerServiceVO> customers = new ArrayList<>(onlineCustomers.values());
+        customers.sort(Comparator.comparing(CustomerServiceVO::getCreateTime,
+                Comparator.nullsLast(Comparator.<Date>naturalOrder())));
+        return customers;
+    }
+
+    private void reloadCustomers() {
+        try {
+            Map<String, CustomerServiceVO> loaded = new ConcurrentHashMap<>();
+            for (CustomerServiceVO customer : customerServiceMapperCustom.selectOnlineCustomer(CustomerServiceVO.STATUS_ONLINE)) {
+                loaded.put(customer.getServiceStaffId(), customer);
+            }
+            onlineCustomers = loaded;
+        } catch (Exception e) {
+            log.error("【在线状态】在线客服加载失败，沿用内存数据，原因：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把待刷新的状态变化分批pipeline写入Redis；写入失败的变化放回（期间产生的更新变化优先）
+     */
+    private void flush() {
+        if (stringRedisTemplate == null) {
+            dirty.clear();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean refreshNode = now - lastNodeRefresh >= nodeTtlSeconds * 1000L / 3;
+        if (dirty.isEmpty() && !refreshNode) {
+            return;
+        }
+        Map<String, Boolean> batch = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<String, Boolean>> it = dirty.entrySet().iterator(); it.hasNext() && batch.size() < batchMax; ) {
+            Map.Entry<String, Boolean> entry = it.next();
+            batch.put(entry.getKey(), entry.getValue());
+            it.remove();
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection redis = (StringRedisConnection) connection;
+                for (Map.Entry<String, Boolean> entry : batch.entrySet()) {
+                    String key = entry.getKey();
+                    int split = key.indexOf(':');
+                    String setKey = nodeKey(RelayScope.valueOf(key.substring(0, split)));
+                    if (entry.getValue()) {
+                        redis.sAdd(setKey, key.substring(split + 1));
+                    } else {
+                        redis.sRem(setKey, key.substring(split + 1));
+                    }
+                }
+                for (RelayScope scope : RelayScope.values()) {
+                    redis.expire(nodeKey(scope), nodeTtlSeconds);
+                }
+                return null;
+            });
+            lastNodeRefresh = now;
+            flushes.increment();
+            flushedChanges.add(batch.size());
+        } catch (Exception e) {
+            flushErrors.increment();
+            batch.forEach(dirty::putIfAbsent);
+            log.error("【在线状态】批量写入Redis失败，{}条变化待重试，原因：{}", batch.size(), e.getMessage());
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("onlineReceivers", connections.size());
+        metrics.put("onlineCustomers", onlineCustomers.size());
+        metrics.put("pendingChanges", dirty.size());
+        metrics.put("transitions", transitions.sum());
+        metrics.put("flushes", flushes.sum());
+        metrics.put("flushedChanges", flushedChanges.sum());
+        metrics.put("flushErrors", flushErrors.sum());
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机：本节点上的连接全部视为下线
+        if (stringRedisTemplate != null) {
+            try {
+                for (RelayScope scope : RelayScope.values()) {
+                    stringRedisTemplate.delete(nodeKey(scope));
+                }
+            } catch (Exception e) {
+                log.warn("【在线状态】停机清理节点集合失败，等待TTL过期，原因：{}", e.getMessage());
+            }
+        }
+    }
+}
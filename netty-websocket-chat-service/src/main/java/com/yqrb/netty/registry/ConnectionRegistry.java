@@ -0,0 +1,267 @@
+package com.yqrb.netty.registry;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 在线连接注册表（售前/售后各一个实例）
+ * 1. 主索引：receiverId -> 通道集合，同一接收者可同时保持多个连接（多标签页/多设备），新连接不再顶掉旧连接
+ * 2. 二级索引：sessionId -> 通道集合，握手注册、会话绑定、通道关闭时同步维护，按sessionId查找为O(1)，不再遍历全部连接
+ * 3. 会话标签：每个通道记录其绑定过的全部sessionId；sessionId属性保留最近一次绑定的会话（入站消息沿用该属性）
+ * 4. 无全局锁：索引增删均在ConcurrentHashMap的compute内完成（仅锁单个桶），注销只移除本通道，不会误删同一receiverId的新连接
+ * 5. 代数（generation）：每个通道注册时分配递增代数，注销时置为已退役；注销之后才到达的注册/会话绑定（重连风暴下的过期更新）
+ *    写入索引后发现通道已退役会自行撤销，关闭的通道不会残留在索引中
+ * 通道属性（receiverId/sessionId/会话标签/代数）由注册表统一写入，保证属性与索引一致。
+ */
+public class ConnectionRegistry {
+    private static final long RETIRED = -1L;
+
+    private final AttributeKey<String> receiverIdKey;
+    private final AttributeKey<String> sessionIdKey;
+    private final AttributeKey<Set<String>> sessionTagsKey;
+    private final AttributeKey<Long> generationKey;
+
+    private final Map<String, Set<Channel>> receivers = new ConcurrentHashMap<>();
+    private final Map<String, Set<Channel>> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger channelCount = new AtomicInteger();
+    private final AtomicLong generations = new AtomicLong();
+    private final LongAdder staleUpdates = new LongAdder();
+
+    public ConnectionRegistry(AttributeKey<String> receiverIdKey, AttributeKey<String> sessionIdKey) {
+        this.receiverIdKey = receiverIdKey;
+        this.sessionIdKey = sessionIdKey;
+        this.sessionTagsKey = AttributeKey.valueOf(sessionIdKey.name() + "_TAGS");
+        this.generationKey = AttributeKey.valueOf(sessionIdKey.name() + "_GENERATION");
+    }
+
+    /**
+     * 握手完成注册：绑定通道属性并写入两级索引，同一receiverId的已有连接保持不变
+     * 同一通道重复注册、或通道已注销（关闭先于注册执行）时视为过期更新，不写入索引
+     * @return 注册后该receiverId的连接数（过期更新返回0）
+     */
+    public int register(String receiverId, String sessionId, Channel channel) {
+        if (channel.attr(generationKey).setIfAbsent(generations.incrementAndGet()) != null) {
+            staleUpdates.increment();
+            return retired(channel) ? 0 : getChannelsByReceiverId(receiverId).size();
+        }
+        channel.attr(receiverIdKey).set(receiverId);
+        bindSession(channel, sessionId);
+        Set<Channel> channels = receivers.compute(receiverId, (k, existing) -> {
+            Set<Channel> target = existing == null ? ConcurrentHashMap.newKeySet() : existing;
+            if (target.add(channel)) {
+                channelCount.incrementAndGet();
+            }
+            return target;
+        });
+        // 写入期间通道已被注销：撤销本次写入（注销线程可能已扫描完毕）
+        if (retired(channel)) {
+            staleUpdates.increment();
+            if (unindex(receivers, receiverId, channel)) {
+                channelCount.decrementAndGet();
+            }
+            return 0;
+        }
+        return channels.size();
+    }
+
+    /**
+     * 会话绑定：通道追加该会话标签并写入二级索引，sessionId属性更新为该会话；已绑定的其他会话标签保留
+     */
+    public void bindSession(Channel channel, String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        channel.attr(sessionIdKey).set(sessionId);
+        Set<String> tags = channel.attr(sessionTagsKey).get();
+        if (tags == null) {
+            Set<String> created = ConcurrentHashMap.newKeySet();
+            tags = channel.attr(sessionTagsKey).setIfAbsent(created);
+            if (tags == null) {
+                tags = created;
+            }
+        }
+        tags.add(sessionId);
+        // 在compute内增删，避免与并发移除空集合交错导致通道丢失
+        sessions.compute(sessionId, (k, channels) -> {
+            Set<Channel> target = channels == null ? ConcurrentHashMap.newKeySet() : channels;
+            target.add(channel);
+            return target;
+        });
+        // 其他线程的会话绑定晚于通道注销到达：撤销，避免已关闭通道残留在会话索引
+        if (retired(channel)) {
+            staleUpdates.increment();
+            unindex(sessions, sessionId, channel);
+        }
+    }
+
+    /**
+     * 通道关闭注销：先将通道代数置为已退役，再从receiverId集合与全部会话标签索引中移除该通道
+     * @return 被移除的receiverId，未注册或已注销时为null
+     */
+    public String unregister(Channel channel) {
+        Long generation = channel.attr(generationKey).getAndSet(RETIRED);
+        if (generation == null || generation == RETIRED) {
+            return null;
+        }
+        Set<String> tags = channel.attr(sessionTagsKey).get();
+        if (tags != null) {
+            for (String sessionId : tags) {
+                unindex(sessions, sessionId, channel);
+            }
+        }
+        String receiverId = channel.attr(receiverIdKey).get();
+        if (receiverId != null && unindex(receivers, receiverId, channel)) {
+            channelCount.decrementAndGet();
+            return receiverId;
+        }
+        return null;
+    }
+
+    /**
+     * 按receiverId取任意一个活跃通道（兼容单连接调用方；需要全部连接时用getChannelsByReceiverId）
+     */
+    public Channel getByReceiverId(String receiverId) {
+        return firstActive(receiverId == null ? null : receivers.get(receiverId));
+    }
+
+    public Set<Channel> getChannelsByReceiverId(String receiverId) {
+        Set<Channel> channels = receiverId == null ? null : receivers.get(receiverId);
+        return channels == null ? Collections.emptySet() : Collections.unmodifiableSet(channels);
+    }
+
+    /**
+     * 该receiverId下绑定了指定会话的活跃通道（消息扇出目标）
+     */
+    public List<Channel> getChannels(String receiverId, String sessionId) {
+        Set<Channel> channels = receiverId == null ? null : receivers.get(receiverId);
+        if (channels == null || sessionId == null) {
+            return Collections.emptyList();
+        }
+        List<Channel> matched = new ArrayList<>(channels.size());
+        for (Channel channel : channels) {
+            if (channel.isActive() && isBound(channel, sessionId)) {
+                matched.add(channel);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 按sessionId取一个活跃通道
+     */
+    public Channel getBySessionId(String sessionId) {
+        return firstActive(sessionId == null ? null : sessions.get(sessionId));
+    }
+
+    public Set<Channel> getChannelsBySessionId(String sessionId) {
+        Set<Channel> channels = sessionId == null ? null : sessions.get(sessionId);
+        return channels == null ? Collections.emptySet() : Collections.unmodifiableSet(channels);
+    }
+
+    /**
+     * 遍历全部已注册通道（弱一致，遍历期间的注册/注销可能可见也可能不可见）
+     */
+    public void forEachChannel(BiConsumer<String, Channel> action) {
+        receivers.forEach((receiverId, channels) -> {
+            for (Channel channel : channels) {
+                action.accept(receiverId, channel);
+            }
+        });
+    }
+
+    /**
+     * 当前有连接的全部sessionId（只读视图，弱一致遍历）
+     */
+    public Set<String> sessionIds() {
+        return Collections.unmodifiableSet(sessions.keySet());
+    }
+
+    public boolean isBound(Channel channel, String sessionId) {
+        Set<String> tags = channel.attr(sessionTagsKey).get();
+        return tags != null && tags.contains(sessionId);
+    }
+
+    /**
+     * 在线receiverId数
+     */
+    public int size() {
+        return receivers.size();
+    }
+
+    /**
+     * 在线连接数（同一receiverId的多个连接分别计数）
+     */
+    public int channelCount() {
+        return channelCount.get();
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 通道注册代数（越大越新），未注册为0，已注销为-1
+     */
+    public long generation(Channel channel) {
+        Long generation = channel.attr(generationKey).get();
+        return generation == null ? 0 : generation;
+    }
+
+    /**
+     * 被拒绝/撤销的过期更新次数（重连风暴下注册、会话绑定晚于注销到达）
+     */
+    public long staleUpdates() {
+        return staleUpdates.sum();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("receivers", receivers.size());
+        metrics.put("channels", channelCount.get());
+        metrics.put("sessions", sessions.size());
+        metrics.put("generation", generations.get());
+        metrics.put("staleUpdates", staleUpdates.sum());
+        return metrics;
+    }
+
+    private boolean retired(Channel channel) {
+        Long generation = channel.attr(generationKey).get();
+        return generation != null && generation == RETIRED;
+    }
+
+    private static Channel firstActive(Set<Channel> channels) {
+        if (channels == null) {
+            return null;
+        }
+        for (Channel channel : channels) {
+            if (channel.isActive()) {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    private static boolean unindex(Map<String, Set<Channel>> index, String key, Channel channel) {
+        if (key == null) {
+            return false;
+        }
+        boolean[] removed = new boolean[1];
+        index.computeIfPresent(key, (k, channels) -> {
+            removed[0] = channels.remove(channel);
+            return channels.isEmpty() ? null : channels;
+        });
+        return removed[0];
+    }
+}
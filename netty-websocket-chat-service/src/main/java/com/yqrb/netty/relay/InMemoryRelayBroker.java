@@ -0,0 +1,106 @@
+package com.yqrb.netty.relay;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 进程内中继通道：多个RelayNode共享同一实例即可在单JVM内模拟多节点（测试/单机演示用）
+ * 发布为同步调用订阅者，租约按本地时钟过期
+ */
+public class InMemoryRelayBroker implements RelayBroker {
+
+    private final Map<String, Map<String, Long>> directory = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<String>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, String> memberAddresses = new ConcurrentHashMap<>();
+    private final Map<String, Long> memberLeases = new ConcurrentHashMap<>();
+
+    @Override
+    public void lease(String nodeId, Collection<String> receiverKeys, long ttlMillis) {
+        long expireAt = System.currentTimeMillis() + ttlMillis;
+        for (String key : receiverKeys) {
+            directory.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(nodeId, expireAt);
+        }
+    }
+
+    @Override
+    public void release(String nodeId, Collection<String> receiverKeys) {
+        for (String key : receiverKeys) {
+            directory.computeIfPresent(key, (k, nodes) -> {
+                nodes.remove(nodeId);
+                return nodes.isEmpty() ? null : nodes;
+            });
+        }
+    }
+
+    @Override
+    public Map<String, Set<String>> lookup(Collection<String> receiverKeys) {
+        long now = System.currentTimeMillis();
+        Map<String, Set<String>> result = new HashMap<>();
+        for (String key : receiverKeys) {
+            Map<String, Long> nodes = directory.get(key);
+            if (nodes == null) {
+                continue;
+            }
+            Set<String> live = new HashSet<>();
+            nodes.forEach((nodeId, expireAt) -> {
+                if (expireAt > now) {
+                    live.add(nodeId);
+                }
+            });
+            if (!live.isEmpty()) {
+                result.put(key, live);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long publish(String nodeId, String batch) {
+        Consumer<String> listener = subscribers.get(nodeId);
+        if (listener == null) {
+            return 0;
+        }
+        listener.accept(batch);
+        return 1;
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<String> listener) {
+        subscribers.put(nodeId, listener);
+    }
+
+    @Override
+    public void announce(String nodeId, String address, long ttlMillis) {
+        memberAddresses.put(nodeId, address);
+        memberLeases.put(nodeId, System.currentTimeMillis() + ttlMillis);
+    }
+
+    @Override
+    public void withdraw(String nodeId) {
+        memberLeases.remove(nodeId);
+        memberAddresses.remove(nodeId);
+    }
+
+    @Override
+    public Map<String, String> members() {
+        long now = System.currentTimeMillis();
+        Map<String, String> result = new HashMap<>();
+        memberLeases.forEach((nodeId, expireAt) -> {
+            String address = memberAddresses.get(nodeId);
+            if (expireAt > now && address != null) {
+                result.put(nodeId, address);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void close(String nodeId) {
+        subscribers.remove(nodeId);
+    }
+}
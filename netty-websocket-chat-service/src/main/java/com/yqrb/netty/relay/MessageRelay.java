@@ -0,0 +1,165 @@
+package com.yqrb.netty.relay;
+
+import com.alibaba.fastjson.JSON;
+import com.yqrb.netty.executor.NettyBusinessExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 跨节点消息中继（售前/售后共用）
+ * 多实例部署在负载均衡之后时，接收者可能连在其他节点：本节点投递完本地连接后，消息经中继发往接收者所在的其他节点，
+ * 所有节点都没有该接收者的连接时才按离线处理。未启用时（单节点部署）直接按原逻辑走离线处理，不访问Redis。
+ * broker=redis：Redis目录（带租约）+ pub/sub；broker=memory：进程内实现（单JVM多节点测试）
+ */
+@Component
+public class MessageRelay {
+    private static final Logger log = LoggerFactory.getLogger(MessageRelay.class);
+
+    @Value("${custom.netty.relay.enabled:false}")
+    private boolean enabled;
+    @Value("${custom.netty.relay.broker:redis}")
+    private String brokerType;
+    // 节点ID，留空则按 主机名+进程号+随机后缀 生成（重启后为新节点，旧节点租约自然过期）
+    @Value("${custom.netty.relay.node-id:}")
+    private String nodeId;
+    @Value("${custom.netty.relay.lease-seconds:30}")
+    private int leaseSeconds;
+    @Value("${custom.netty.relay.batch-max-messages:100}")
+    private int batchMaxMessages;
+    @Value("${custom.netty.relay.batch-delay-millis:2}")
+    private long batchDelayMillis;
+
+    @Autowired(required = false)
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private NettyBusinessExecutor nettyBusinessExecutor;
+
+    private RelayNode node;
+    private RelayBroker broker;
+
+    @PostConstruct
+    public void init() {
+        // 节点ID未启用中继时同样生成（在线状态等按节点区分的数据使用）
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        if (!enabled) {
+            log.info("【节点中继】未启用，消息只在本节点路由");
+            return;
+        }
+        if ("memory".equalsIgnoreCase(brokerType)) {
+            broker = new InMemoryRelayBroker();
+        } else if (stringRedisTemplate != null) {
+            broker = new RedisRelayBroker(stringRedisTemplate);
+        } else {
+            log.error("【节点中继】broker=redis但未找到StringRedisTemplate，中继未启用");
+            enabled = false;
+            return;
+        }
+        node = new RelayNode(nodeId, broker, leaseSeconds * 1000L, batchMaxMessages, batchDelayMillis);
+        node.start();
+        log.info("【节点中继】已启用，节点ID：{}，broker：{}，租约：{}s，单批最多{}条，攒批{}ms",
+                nodeId, brokerType, leaseSeconds, batchMaxMessages, batchDelayMillis);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 中继通道（未启用时为null），会话放置复用其节点成员登记
+     */
+    public RelayBroker getBroker() {
+        return broker;
+    }
+
+    public void registerEndpoint(RelayScope scope, RelayEndpoint endpoint) {
+        if (enabled) {
+            node.registerEndpoint(scope, endpoint);
+        }
+    }
+
+    public void online(RelayScope scope, String receiverId) {
+        if (enabled) {
+            node.online(scope, receiverId);
+        }
+    }
+
+    public void offline(RelayScope scope, String receiverId) {
+        if (enabled) {
+            node.offline(scope, receiverId);
+        }
+    }
+
+    /**
+     * 发往接收者所在的其他节点（任意线程可调用，只入队不阻塞）
+     * @param sessionId 非空时只投递到绑定了该会话的连接；为空时投递到接收者全部连接
+     * @param offline 本地与其他节点均未投递时的离线处理，可为null；未启用中继时立即在当前线程执行（与原逻辑一致），
+     *                启用时提交到业务线程池执行
+     */
+    public void route(RelayScope scope, String receiverId, String sessionId, Object message, Runnable offline) {
+        if (!enabled) {
+            if (offline != null) {
+                offline.run();
+            }
+            return;
+        }
+        Runnable noRoute = offline == null ? null : () -> {
+            if (!nettyBusinessExecutor.submit(receiverId, offline)) {
+                log.error("【节点中继】业务线程池已满，离线处理被拒绝，接收者：{}", receiverId);
+            }
+        };
+        node.route(scope, receiverId, sessionId, JSON.toJSONString(message), noRoute);
+    }
+
+    /**
+     * 接收者是否在其他节点在线（阻塞查询Redis，不可在EventLoop中调用）
+     */
+    public boolean isOnlineElsewhere(RelayScope scope, String receiverId) {
+        if (!enabled) {
+            return false;
+        }
+        try {
+            return node.isOnlineElsewhere(scope, receiverId);
+        } catch (Exception e) {
+            log.error("【节点中继】目录查询失败，接收者：{}，原因：{}", receiverId, e.getMessage());
+            return false;
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        if (!enabled) {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("enabled", false);
+            return metrics;
+        }
+        Map<String, Object> metrics = node.snapshot();
+        metrics.put("enabled", true);
+        metrics.put("broker", brokerType);
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (enabled) {
+            node.stop();
+            log.info("【节点中继】已停止，节点ID：{}，已释放目录租约", nodeId);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.yqrb.netty.relay;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 基于Redis的中继通道
+ * 1. 目录：每个receiverKey一个ZSET（netty:relay:dir:{receiverKey}），成员为节点ID，分值为租约到期时间戳；
+ *    查询只取未到期成员，key本身也设置过期，接收者全部下线后自动清理。批量登记/查询均走pipeline，一次往返
+ * 2. 投递：每个节点订阅自己的频道（netty:relay:node:{nodeId}），PUBLISH返回0说明目标节点已下线
+ * 3. 成员：ZSET netty:relay:members（分值为租约到期时间戳）+ HASH netty:relay:member-addr（节点ID -> 对外地址），
+ *    登记时顺带清理已过期成员
+ */
+public class RedisRelayBroker implements RelayBroker {
+
+    private static final String DIRECTORY_PREFIX = "netty:relay:dir:";
+    private static final String CHANNEL_PREFIX = "netty:relay:node:";
+    private static final String MEMBERS_KEY = "netty:relay:members";
+    private static final String MEMBER_ADDRESS_KEY = "netty:relay:member-addr";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public RedisRelayBroker(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = new RedisMessageListenerContainer();
+        this.listenerContainer.setConnectionFactory(redisTemplate.getConnectionFactory());
+        this.listenerContainer.afterPropertiesSet();
+        this.listenerContainer.start();
+    }
+
+    @Override
+    public void lease(String nodeId, Collection<String> receiverKeys, long ttlMillis) {
+        if (receiverKeys.isEmpty()) {
+            return;
+        }
+        long expireAt = System.currentTimeMillis() + ttlMillis;
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (String key : receiverKeys) {
+                String directoryKey = DIRECTORY_PREFIX + key;
+                redis.zAdd(directoryKey, expireAt, nodeId);
+                redis.pExpire(directoryKey, ttlMillis);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void release(String nodeId, Collection<String> receiverKeys) {
+        if (receiverKeys.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (String key : receiverKeys) {
+                redis.zRem(DIRECTORY_PREFIX + key, nodeId);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Set<String>> lookup(Collection<String> receiverKeys) {
+        Map<String, Set<String>> result = new HashMap<>();
+        if (receiverKeys.isEmpty()) {
+            return result;
+        }
+        List<String> keys = new ArrayList<>(receiverKeys);
+        long now = System.currentTimeMillis();
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (String key : keys) {
+                redis.zRangeByScore(DIRECTORY_PREFIX + key, now, Double.POSITIVE_INFINITY);
+            }
+            return null;
+        });
+        for (int i = 0; i < keys.size(); i++) {
+            Object reply = replies.get(i);
+            if (reply instanceof Set && !((Set<String>) reply).isEmpty()) {
+                result.put(keys.get(i), new HashSet<>((Set<String>) reply));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long publish(String nodeId, String batch) {
+        Long receivers = redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(
+                (CHANNEL_PREFIX + nodeId).getBytes(StandardCharsets.UTF_8), batch.getBytes(StandardCharsets.UTF_8)));
+        return receivers == null ? 0 : receivers;
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<String> listener) {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> listener.accept(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CHANNEL_PREFIX + nodeId));
+    }
+
+    @Override
+    public void announce(String nodeId, String address, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.zRemRangeByScore(MEMBERS_KEY, 0, now);
+            redis.zAdd(MEMBERS_KEY, now + ttlMillis, nodeId);
+            redis.hSet(MEMBER_ADDRESS_KEY, nodeId, address);
+            return null;
+        });
+    }
+
+    @Override
+    public void withdraw(String nodeId) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.zRem(MEMBERS_KEY, nodeId);
+            redis.hDel(MEMBER_ADDRESS_KEY, nodeId);
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, String> members() {
+        Map<String, String> result = new HashMap<>();
+        Set<String> nodeIds = redisTemplate.opsForZSet().rangeByScore(MEMBERS_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        if (nodeIds == null || nodeIds.isEmpty()) {
+            return result;
+        }
+        List<String> ids = new ArrayList<>(nodeIds);
+        List<Object> addresses = redisTemplate.opsForHash().multiGet(MEMBER_ADDRESS_KEY, new ArrayList<Object>(ids));
+        for (int i = 0; i < ids.size(); i++) {
+            Object address = addresses.get(i);
+            if (address != null) {
+                result.put(ids.get(i), address.toString());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close(String nodeId) {
+        try {
+            listenerContainer.destroy();
+        } catch (Exception ignored) {
+            // 关闭阶段忽略
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.yqrb.netty.relay;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 节点间中继通道：节点目录（receiverKey -> 节点ID，带租约）+ 按节点发布/订阅 + 节点成员（节点ID -> 对外地址，带租约）
+ * receiverKey = 服务 + ":" + receiverId
+ * 实现：RedisRelayBroker（生产，多JVM）/ InMemoryRelayBroker（单JVM内多节点测试）
+ */
+public interface RelayBroker {
+
+    /**
+     * 批量登记/续约：receiverKey在nodeId上，租约到期前未续约则自动失效（节点宕机后不再被路由）
+     */
+    void lease(String nodeId, Collection<String> receiverKeys, long ttlMillis);
+
+    /**
+     * 批量释放本节点的租约（接收者在本节点已无连接）
+     */
+    void release(String nodeId, Collection<String> receiverKeys);
+
+    /**
+     * 批量查询持有有效租约的节点
+     * @return receiverKey -> 节点ID集合（无在线节点的key不返回）
+     */
+    Map<String, Set<String>> lookup(Collection<String> receiverKeys);
+
+    /**
+     * 向目标节点发布一批消息
+     * @return 收到消息的订阅者数，0表示目标节点未订阅（已下线）
+     */
+    long publish(String nodeId, String batch);
+
+    /**
+     * 订阅发往本节点的消息
+     */
+    void subscribe(String nodeId, Consumer<String> listener);
+
+    /**
+     * 登记/续约节点成员（会话放置的一致性哈希环由全部有效成员构成）
+     * @param address 节点对外WebSocket地址（如 ws://10.0.0.5:8088），用于重定向客户端
+     */
+    void announce(String nodeId, String address, long ttlMillis);
+
+    /**
+     * 节点主动退出（停机时调用，不必等待租约过期）
+     */
+    void withdraw(String nodeId);
+
+    /**
+     * 查询持有有效租约的节点成员
+     * @return 节点ID -> 对外地址
+     */
+    Map<String, String> members();
+
+    /**
+     * 取消订阅、释放连接资源
+     */
+    void close(String nodeId);
+}
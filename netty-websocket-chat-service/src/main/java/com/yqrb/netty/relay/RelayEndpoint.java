@@ -0,0 +1,18 @@
+package com.yqrb.netty.relay;
+
+/**
+ * 本节点的中继投递端点（售前/售后各一个，由对应Netty服务启动时注册）
+ */
+public interface RelayEndpoint {
+
+    /**
+     * 将其他节点转来的消息投递到本节点的本地连接
+     * @return 投递到的通道数，0表示接收者已不在本节点（目录租约尚未过期）
+     */
+    int deliver(RelayEnvelope envelope);
+
+    /**
+     * 接收者当前是否仍有本节点连接（续约/释放目录租约前确认）
+     */
+    boolean isLocal(String receiverId);
+}
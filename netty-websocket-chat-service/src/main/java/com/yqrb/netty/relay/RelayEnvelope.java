@@ -0,0 +1,20 @@
+package com.yqrb.netty.relay;
+
+import lombok.Data;
+
+/**
+ * 节点间中继消息信封（同一目标节点的多条信封合并为一个JSON数组发布）
+ */
+@Data
+public class RelayEnvelope {
+    // 所属服务
+    private RelayScope scope;
+    // 接收者ID
+    private String receiverId;
+    // 会话ID：非空时只投递到绑定了该会话的连接；为空时投递到接收者全部连接（系统提醒）
+    private String sessionId;
+    // 消息JSON（WebSocketMsgVO / PreSaleChatMessageVO）
+    private String payload;
+    // 发送节点ID
+    private String origin;
+}
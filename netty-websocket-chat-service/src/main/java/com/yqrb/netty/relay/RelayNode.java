@@ -0,0 +1,345 @@
+package com.yqrb.netty.relay;
+
+import com.alibaba.fastjson.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个节点的中继核心（不依赖Spring，便于单JVM内构造多个节点测试）
+ * 1. 目录：本节点有连接的接收者登记租约，后台按租约1/3周期批量续约；接收者在本节点全部断开后释放
+ * 2. 出站：待中继消息先入队，单线程按批处理：一次批量查目录，按目标节点分组，每个节点每批只发布一次（JSON数组）
+ * 3. 入站：订阅本节点频道，按服务交给对应RelayEndpoint投递到本地连接
+ * 所有目录读写与发布都在中继线程执行，调用方（EventLoop/业务线程）只做入队
+ */
+public class RelayNode {
+    private static final Logger log = LoggerFactory.getLogger(RelayNode.class);
+
+    private final String nodeId;
+    private final RelayBroker broker;
+    private final long leaseMillis;
+    private final int batchMaxMessages;
+    private final long batchDelayMillis;
+
+    private final Map<RelayScope, RelayEndpoint> endpoints = new ConcurrentHashMap<>();
+    // 本节点持有租约的receiverKey
+    private final Set<String> localKeys = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Pending> outbound = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<String> toLease = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<String> toRelease = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder routed = new LongAdder();
+    private final LongAdder relayedOut = new LongAdder();
+    private final LongAdder batchesOut = new LongAdder();
+    private final LongAdder noRoute = new LongAdder();
+    private final LongAdder nodeGone = new LongAdder();
+    private final LongAdder relayedIn = new LongAdder();
+    private final LongAdder deliveredIn = new LongAdder();
+    private final LongAdder missedIn = new LongAdder();
+    private final LongAdder brokerErrors = new LongAdder();
+
+    public RelayNode(String nodeId, RelayBroker broker, long leaseMillis, int batchMaxMessages, long batchDelayMillis) {
+        this.nodeId = nodeId;
+        this.broker = broker;
+        this.leaseMillis = leaseMillis;
+        this.batchMaxMessages = Math.max(1, batchMaxMessages);
+        this.batchDelayMillis = Math.max(0, batchDelayMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "netty-relay-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        broker.subscribe(nodeId, this::onBatch);
+        long renewMillis = Math.max(1000, leaseMillis / 3);
+        scheduler.scheduleWithFixedDelay(this::renew, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void registerEndpoint(RelayScope scope, RelayEndpoint endpoint) {
+        endpoints.put(scope, endpoint);
+    }
+
+    /**
+     * 接收者在本节点上线（握手注册后调用）
+     */
+    public void online(RelayScope scope, String receiverId) {
+        toLease.offer(key(scope, receiverId));
+        scheduleFlush();
+    }
+
+    /**
+     * 接收者在本节点的某个连接断开（注销后调用）；中继线程确认本节点已无连接后才释放租约
+     */
+    public void offline(RelayScope scope, String receiverId) {
+        toRelease.offer(key(scope, receiverId));
+        scheduleFlush();
+    }
+
+    /**
+     * 中继到接收者所在的其他节点
+     * @param noRoute 其他节点均不在线（或均投递失败）时的回调，在中继线程执行，可为null
+     */
+    public void route(RelayScope scope, String receiverId, String sessionId, String payload, Runnable noRoute) {
+        RelayEnvelope envelope = new RelayEnvelope();
+        envelope.setScope(scope);
+        envelope.setReceiverId(receiverId);
+        envelope.setSessionId(sessionId);
+        envelope.setPayload(payload);
+        envelope.setOrigin(nodeId);
+        outbound.offer(new Pending(envelope, noRoute));
+        routed.increment();
+        scheduleFlush();
+    }
+
+    /**
+     * 同步查询接收者是否在其他节点在线（阻塞调用，不可在EventLoop中使用）
+     */
+    public boolean isOnlineElsewhere(RelayScope scope, String receiverId) {
+        String key = key(scope, receiverId);
+        Set<String> nodes = broker.lookup(Collections.singletonList(key)).get(key);
+        return nodes != null && (nodes.size() > 1 || !nodes.contains(nodeId));
+    }
+
+    public void stop() {
+        // 先处理完已入队的中继消息/目录变更，再停止
+        scheduler.execute(this::flush);
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            broker.release(nodeId, new ArrayList<>(localKeys));
+        } catch (Exception e) {
+            log.warn("【节点中继】停止时释放目录租约失败，节点：{}，原因：{}", nodeId, e.getMessage());
+        }
+        broker.close(nodeId);
+        localKeys.clear();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::flush, batchDelayMillis, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // 已停止：丢弃调度，待中继消息按无路由处理
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        try {
+            flushDirectory();
+        } catch (Exception e) {
+            brokerErrors.increment();
+            log.error("【节点中继】目录租约更新失败，节点：{}，原因：{}", nodeId, e.getMessage());
+        }
+        List<Pending> batch = new ArrayList<>();
+        for (Pending pending; (pending = outbound.poll()) != null; ) {
+            batch.add(pending);
+        }
+        if (!batch.isEmpty()) {
+            flushOutbound(batch);
+        }
+    }
+
+    /**
+     * 上线/下线事件到达中继线程时均以注册表当前状态为准，重连与断开交错时不会误释放仍在线接收者的租约
+     */
+    private void flushDirectory() {
+        List<String> releases = new ArrayList<>();
+        for (String key; (key = toRelease.poll()) != null; ) {
+            if (!isLocal(key) && localKeys.remove(key)) {
+                releases.add(key);
+            }
+        }
+        if (!releases.isEmpty()) {
+            broker.release(nodeId, releases);
+        }
+        Set<String> leases = new HashSet<>();
+        for (String key; (key = toLease.poll()) != null; ) {
+            if (isLocal(key)) {
+                localKeys.add(key);
+                leases.add(key);
+            }
+        }
+        if (!leases.isEmpty()) {
+            broker.lease(nodeId, leases, leaseMillis);
+        }
+    }
+
+    private void flushOutbound(List<Pending> batch) {
+        Set<String> keys = new HashSet<>();
+        for (Pending pending : batch) {
+            keys.add(key(pending.envelope.getScope(), pending.envelope.getReceiverId()));
+        }
+        Map<String, Set<String>> directory;
+        try {
+            directory = broker.lookup(keys);
+        } catch (Exception e) {
+            brokerErrors.increment();
+            log.error("【节点中继】目录查询失败，{}条消息按无路由处理，原因：{}", batch.size(), e.getMessage());
+            directory = Collections.emptyMap();
+        }
+
+        // 按目标节点分组（同一接收者的多个节点各发一份）
+        Map<String, List<Pending>> byNode = new HashMap<>();
+        for (Pending pending : batch) {
+            Set<String> nodes = directory.get(key(pending.envelope.getScope(), pending.envelope.getReceiverId()));
+            if (nodes != null) {
+                for (String target : nodes) {
+                    if (!nodeId.equals(target)) {
+                        byNode.computeIfAbsent(target, k -> new ArrayList<>()).add(pending);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, List<Pending>> entry : byNode.entrySet()) {
+            List<Pending> pendings = entry.getValue();
+            for (int from = 0; from < pendings.size(); from += batchMaxMessages) {
+                publish(entry.getKey(), pendings.subList(from, Math.min(pendings.size(), from + batchMaxMessages)));
+            }
+        }
+        for (Pending pending : batch) {
+            if (!pending.delivered) {
+                noRoute.increment();
+                if (pending.noRoute != null) {
+                    try {
+                        pending.noRoute.run();
+                    } catch (Exception e) {
+                        log.error("【节点中继】无路由回调异常，接收者：{}，原因：{}",
+                                pending.envelope.getReceiverId(), e.getMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void publish(String target, List<Pending> pendings) {
+        List<RelayEnvelope> envelopes = new ArrayList<>(pendings.size());
+        for (Pending pending : pendings) {
+            envelopes.add(pending.envelope);
+        }
+        long receivers;
+        try {
+            receivers = broker.publish(target, JSON.toJSONString(envelopes));
+        } catch (Exception e) {
+            brokerErrors.increment();
+            log.error("【节点中继】发布失败，目标节点：{}，消息数：{}，原因：{}", target, pendings.size(), e.getMessage());
+            return;
+        }
+        if (receivers <= 0) {
+            // 目标节点未订阅（已宕机，租约尚未过期）
+            nodeGone.increment();
+            log.warn("【节点中继】目标节点未订阅，消息数：{}，目标节点：{}", pendings.size(), target);
+            return;
+        }
+        batchesOut.increment();
+        relayedOut.add(pendings.size());
+        for (Pending pending : pendings) {
+            pending.delivered = true;
+        }
+    }
+
+    private void onBatch(String batch) {
+        List<RelayEnvelope> envelopes;
+        try {
+            envelopes = JSON.parseArray(batch, RelayEnvelope.class);
+        } catch (Exception e) {
+            log.error("【节点中继】入站消息解析失败，节点：{}，原因：{}", nodeId, e.getMessage());
+            return;
+        }
+        for (RelayEnvelope envelope : envelopes) {
+            relayedIn.increment();
+            RelayEndpoint endpoint = envelope.getScope() == null ? null : endpoints.get(envelope.getScope());
+            int delivered = 0;
+            try {
+                delivered = endpoint == null ? 0 : endpoint.deliver(envelope);
+            } catch (Exception e) {
+                log.error("【节点中继】本地投递异常，接收者：{}，原因：{}", envelope.getReceiverId(), e.getMessage(), e);
+            }
+            if (delivered > 0) {
+                deliveredIn.add(delivered);
+            } else {
+                missedIn.increment();
+            }
+        }
+    }
+
+    private void renew() {
+        if (localKeys.isEmpty()) {
+            return;
+        }
+        try {
+            broker.lease(nodeId, new ArrayList<>(localKeys), leaseMillis);
+        } catch (Exception e) {
+            brokerErrors.increment();
+            log.error("【节点中继】目录续约失败，节点：{}，接收者数：{}，原因：{}", nodeId, localKeys.size(), e.getMessage());
+        }
+    }
+
+    private boolean isLocal(String key) {
+        int split = key.indexOf(':');
+        RelayEndpoint endpoint = endpoints.get(RelayScope.valueOf(key.substring(0, split)));
+        return endpoint != null && endpoint.isLocal(key.substring(split + 1));
+    }
+
+    private static String key(RelayScope scope, String receiverId) {
+        return scope.name() + ":" + receiverId;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("nodeId", nodeId);
+        metrics.put("localReceivers", localKeys.size());
+        metrics.put("pending", outbound.size());
+        metrics.put("routed", routed.sum());
+        metrics.put("relayedOut", relayedOut.sum());
+        metrics.put("batchesOut", batchesOut.sum());
+        metrics.put("noRoute", noRoute.sum());
+        metrics.put("nodeGone", nodeGone.sum());
+        metrics.put("relayedIn", relayedIn.sum());
+        metrics.put("deliveredIn", deliveredIn.sum());
+        metrics.put("missedIn", missedIn.sum());
+        metrics.put("brokerErrors", brokerErrors.sum());
+        return metrics;
+    }
+
+    private static final class Pending {
+        final RelayEnvelope envelope;
+        final Runnable noRoute;
+        // 仅中继线程读写
+        boolean delivered;
+
+        Pending(RelayEnvelope envelope, Runnable noRoute) {
+            this.envelope = envelope;
+            this.noRoute = noRoute;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.yqrb.netty.relay;
+
+/**
+ * 中继消息所属服务（售前/售后的receiverId各自独立，目录与投递按服务区分）
+ */
+public enum RelayScope {
+    // 售后聊天（NettyWebSocketServer）
+    AFTER_SALE,
+    // 售前聊天（PreSaleNettyWebSocketServer）
+    PRE_SALE
+}
@@ -0,0 +1,127 @@
+package com.yqrb.netty.transport;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Netty传输层工厂（售前/售后共用）
+ * 1. Linux且native库可用时使用epoll，否则回退NIO（可通过custom.netty.transport.type强制指定）
+ * 2. epoll下支持SO_REUSEPORT：同一端口绑定多个Acceptor，由内核把连接分散到多个boss线程
+ * 3. 统一应用yml中的SO_BACKLOG/SO_KEEPALIVE/TCP_NODELAY/写缓冲水位/池化直接内存分配器
+ */
+@Component
+public class NettyTransportFactory {
+    private static final Logger log = LoggerFactory.getLogger(NettyTransportFactory.class);
+
+    public static final String TYPE_AUTO = "auto";
+    public static final String TYPE_EPOLL = "epoll";
+    public static final String TYPE_NIO = "nio";
+
+    // auto：优先epoll，不可用回退nio；epoll：强制epoll（不可用时仍回退nio并告警）；nio：强制nio
+    @Value("${custom.netty.transport.type:auto}")
+    private String transportType;
+
+    private boolean useEpoll;
+
+    @PostConstruct
+    public void init() {
+        if (TYPE_NIO.equalsIgnoreCase(transportType)) {
+            useEpoll = false;
+        } else {
+            useEpoll = Epoll.isAvailable();
+            if (!useEpoll && TYPE_EPOLL.equalsIgnoreCase(transportType)) {
+                log.warn("【Netty传输层】配置要求epoll，但当前环境不可用，回退NIO，原因：{}",
+                        Epoll.unavailabilityCause() == null ? "未知" : Epoll.unavailabilityCause().getMessage());
+            }
+        }
+        log.info("【Netty传输层】配置类型：{}，实际使用：{}", transportType, useEpoll ? TYPE_EPOLL : TYPE_NIO);
+    }
+
+    public boolean isEpoll() {
+        return useEpoll;
+    }
+
+    public String transportName() {
+        return useEpoll ? TYPE_EPOLL : TYPE_NIO;
+    }
+
+    /**
+     * 创建事件循环组（threads<=0 时使用Netty默认线程数：CPU核数×2）
+     */
+    public EventLoopGroup newEventLoopGroup(int threads, String threadPrefix) {
+        int n = Math.max(threads, 0);
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(threadPrefix);
+        return useEpoll ? new EpollEventLoopGroup(n, threadFactory) : new NioEventLoopGroup(n, threadFactory);
+    }
+
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return useEpoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * 实际生效的Acceptor数量：仅epoll支持SO_REUSEPORT多绑定，且不超过boss线程数（多出的Acceptor会挤在同一线程上，没有意义）
+     */
+    public int effectiveAcceptorCount(NettyTransportOptions options) {
+        if (!useEpoll) {
+            return 1;
+        }
+        return Math.max(1, Math.min(options.getAcceptorCount(), Math.max(options.getBossThreadCount(), 1)));
+    }
+
+    /**
+     * 为ServerBootstrap设置channel类型以及服务端/子通道参数
+     */
+    public ServerBootstrap configure(ServerBootstrap bootstrap, NettyTransportOptions options) {
+        bootstrap.channel(serverChannelClass())
+                .option(ChannelOption.SO_BACKLOG, options.getSoBacklog())
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childOption(ChannelOption.SO_KEEPALIVE, options.isSoKeepalive())
+                .childOption(ChannelOption.TCP_NODELAY, options.isTcpNodelay())
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(options.getWriteBufferLowWaterMark(), options.getWriteBufferHighWaterMark()));
+        if (effectiveAcceptorCount(options) > 1) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (options.isPooledAllocator()) {
+            bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        }
+        return bootstrap;
+    }
+
+    /**
+     * 绑定端口：epoll+SO_REUSEPORT时同一端口绑定多个Acceptor，否则只绑定一次
+     */
+    public List<Channel> bind(ServerBootstrap bootstrap, NettyTransportOptions options) throws InterruptedException {
+        int acceptorCount = effectiveAcceptorCount(options);
+        List<Channel> serverChannels = new ArrayList<>(acceptorCount);
+        for (int i = 0; i < acceptorCount; i++) {
+            serverChannels.add(bootstrap.bind(options.getPort()).sync().channel());
+        }
+        log.info("【Netty传输层】{} 绑定端口：{}，传输类型：{}，Acceptor数：{}，SO_BACKLOG：{}，TCP_NODELAY：{}，写缓冲水位：{}~{}，池化分配器：{}",
+                options.getServerName(), options.getPort(), transportName(), acceptorCount, options.getSoBacklog(),
+                options.isTcpNodelay(), options.getWriteBufferLowWaterMark(), options.getWriteBufferHighWaterMark(),
+                options.isPooledAllocator());
+        return serverChannels;
+    }
+}
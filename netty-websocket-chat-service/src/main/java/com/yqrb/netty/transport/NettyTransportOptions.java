@@ -0,0 +1,26 @@
+package com.yqrb.netty.transport;
+
+import lombok.Data;
+
+/**
+ * 单个Netty服务端的传输层参数（售前/售后各自从custom.netty.*读取后构建）
+ */
+@Data
+public class NettyTransportOptions {
+    // 服务名（仅用于线程名、日志）
+    private String serverName;
+    private int port;
+    private int bossThreadCount = 1;
+    private int workerThreadCount = 0;
+    // 同一端口绑定的Acceptor数量（>1时依赖epoll的SO_REUSEPORT，由内核分散accept负载）
+    private int acceptorCount = 1;
+
+    private int soBacklog = 1024;
+    private boolean soKeepalive = true;
+    private boolean tcpNodelay = true;
+    // 通道写缓冲水位（字节）：超过高水位 isWritable()=false，回落到低水位后恢复
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+    // 是否使用池化直接内存分配器
+    private boolean pooledAllocator = true;
+}
@@ -0,0 +1,309 @@
+package com.yqrb.netty.watchdog;
+
+import com.yqrb.netty.context.ConnectionContext;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * EventLoop阻塞监控（售前/售后/网关的Worker EventLoopGroup共用）
+ * 1. 后台线程按固定间隔向每个EventLoop投递一个探针任务，探针执行时记录排队延迟（投递到执行的时间）到该EventLoop的直方图
+ * 2. 探针超过阈值仍未执行，说明EventLoop正被某个任务阻塞（如channelRead0中的MariaDB写入、Redis调用、getBean查找）：
+ *    抓取该Worker线程的当前堆栈，连同正在处理的通道、业务处理器记录为一次阻塞现场（保留最近N条）
+ * 3. 正在处理的通道由位于处理链最前端的标记处理器在入站事件进出时记录，只写一个volatile字段
+ */
+@Component
+public class EventLoopWatchdog {
+    private static final Logger log = LoggerFactory.getLogger(EventLoopWatchdog.class);
+
+    // 业务处理器所在包（堆栈中第一个本项目的帧即为正在执行的处理器）
+    private static final String APP_PACKAGE = "com.yqrb.";
+    private static final String SELF_PACKAGE = EventLoopWatchdog.class.getPackage().getName() + ".";
+
+    @Value("${custom.netty.watchdog.enabled:true}")
+    private boolean enabled;
+    @Value("${custom.netty.watchdog.probe-interval-millis:100}")
+    private long probeIntervalMillis;
+    @Value("${custom.netty.watchdog.stall-threshold-millis:200}")
+    private long stallThresholdMillis;
+    @Value("${custom.netty.watchdog.max-stalls:50}")
+    private int maxStalls;
+    @Value("${custom.netty.watchdog.stack-depth:32}")
+    private int stackDepth;
+
+    private final Map<EventExecutor, LoopProbe> probes = new ConcurrentHashMap<>();
+    private final Deque<StallRecord> recentStalls = new ArrayDeque<>();
+    private final ChannelHandler marker = new InProgressMarker();
+    private ScheduledExecutorService ticker;
+    private long stallThresholdNanos;
+
+    private final LongAdder stalls = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(stallThresholdMillis);
+        if (!enabled) {
+            log.info("【EventLoop监控】未启用");
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "netty-loop-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("【EventLoop监控】探针间隔：{}ms，阻塞阈值：{}ms", probeIntervalMillis, stallThresholdMillis);
+    }
+
+    /**
+     * 登记一个EventLoopGroup的全部EventLoop（创建Worker Group后调用，Group关闭后自动注销）
+     * @param groupName 线程名前缀，用于指标展示
+     */
+    public void watch(String groupName, EventExecutorGroup group) {
+        if (!enabled) {
+            return;
+        }
+        int index = 0;
+        for (EventExecutor executor : group) {
+            probes.put(executor, new LoopProbe(groupName + "-" + index++, executor));
+        }
+        log.info("【EventLoop监控】已登记{}，EventLoop数：{}", groupName, index);
+    }
+
+    /**
+     * 正在处理通道标记（可共享，放在子通道处理链最前端）
+     */
+    public ChannelHandler marker() {
+        return marker;
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            for (LoopProbe probe : probes.values()) {
+                if (probe.executor.isShuttingDown()) {
+                    probes.remove(probe.executor);
+                    continue;
+                }
+                long submitted = probe.submittedNanos;
+                if (submitted == 0) {
+                    probe.submittedNanos = now;
+                    try {
+                        probe.executor.execute(probe);
+                    } catch (RejectedExecutionException e) {
+                        probes.remove(probe.executor);
+                    }
+                } else if (probe.stall == null && now - submitted >= stallThresholdNanos) {
+                    capture(probe, now - submitted);
+                }
+            }
+        } catch (Exception e) {
+            log.error("【EventLoop监控】探测异常：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 抓取阻塞现场（在监控线程执行，EventLoop此时仍在阻塞中）
+     */
+    private void capture(LoopProbe probe, long lagNanos) {
+        Thread thread = probe.thread;
+        Channel channel = probe.current;
+        StackTraceElement[] frames = thread == null ? new StackTraceElement[0] : thread.getStackTrace();
+        List<String> stack = new ArrayList<>(Math.min(frames.length, stackDepth));
+        String handler = null;
+        for (StackTraceElement frame : frames) {
+            if (stack.size() < stackDepth) {
+                stack.add(frame.toString());
+            }
+            if (handler == null && frame.getClassName().startsWith(APP_PACKAGE) && !frame.getClassName().startsWith(SELF_PACKAGE)) {
+                handler = frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+            }
+        }
+        if (handler == null && frames.length > 0) {
+            handler = frames[0].getClassName() + "." + frames[0].getMethodName();
+        }
+        StallRecord record = new StallRecord(System.currentTimeMillis(), probe.name,
+                thread == null ? null : thread.getName(), TimeUnit.NANOSECONDS.toMillis(lagNanos),
+                channel == null ? null : channel.id().asShortText(),
+                channel == null ? null : ConnectionContext.receiverIdOf(channel), handler, stack);
+        probe.stall = record;
+        stalls.increment();
+        synchronized (recentStalls) {
+            recentStalls.addFirst(record);
+            while (recentStalls.size() > maxStalls) {
+                recentStalls.removeLast();
+            }
+        }
+        log.warn("【EventLoop监控】{}已阻塞{}ms，线程：{}，通道ID：{}，ID：{}，处理器：{}，堆栈：{}",
+                probe.name, record.getLagMillisAtCapture(), record.getThread(), record.getChannelId(),
+                record.getReceiverId(), handler, String.join(" <- ", stack));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * 最近的阻塞现场（含堆栈，监控接口单独查询，避免汇总指标过大）
+     */
+    public List<StallRecord> recentStalls() {
+        synchronized (recentStalls) {
+            return new ArrayList<>(recentStalls);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> loops = new LinkedHashMap<>();
+        probes.values().stream()
+                .sorted((a, b) -> a.name.compareTo(b.name))
+                .forEach(probe -> {
+                    Map<String, Object> loop = probe.histogram.snapshot();
+                    loop.put("thread", probe.thread == null ? null : probe.thread.getName());
+                    loop.put("stalls", probe.stalls);
+                    long submitted = probe.submittedNanos;
+                    loop.put("pendingProbeMillis", submitted == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitted));
+                    loops.put(probe.name, loop);
+                });
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("probeIntervalMillis", probeIntervalMillis);
+        metrics.put("stallThresholdMillis", stallThresholdMillis);
+        metrics.put("stalls", stalls.sum());
+        metrics.put("eventLoops", loops);
+        return metrics;
+    }
+
+    /**
+     * 单个EventLoop的探针：由监控线程投递、在EventLoop上执行，同一时刻最多一个在途
+     */
+    private static final class LoopProbe implements Runnable {
+        private final String name;
+        private final EventExecutor executor;
+        private final LagHistogram histogram = new LagHistogram();
+        // 0=无在途探针
+        private volatile long submittedNanos;
+        private volatile Thread thread;
+        // 正在处理的通道（标记处理器写入）
+        private volatile Channel current;
+        // 本次在途探针已抓取的阻塞现场
+        private volatile StallRecord stall;
+        private volatile long stalls;
+
+        LoopProbe(String name, EventExecutor executor) {
+            this.name = name;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            long lagNanos = System.nanoTime() - submittedNanos;
+            thread = Thread.currentThread();
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(lagNanos));
+            StallRecord record = stall;
+            if (record != null) {
+                long durationMillis = TimeUnit.NANOSECONDS.toMillis(lagNanos);
+                record.recovered(durationMillis);
+                stalls++;
+                stall = null;
+                log.warn("【EventLoop监控】{}阻塞已恢复，总计{}ms，处理器：{}", name, durationMillis, record.getHandler());
+            }
+            submittedNanos = 0;
+        }
+    }
+
+    /**
+     * 记录EventLoop当前正在处理的通道，事件处理完毕后清除
+     */
+    @ChannelHandler.Sharable
+    private final class InProgressMarker extends ChannelInboundHandlerAdapter {
+
+        private LoopProbe enter(ChannelHandlerContext ctx) {
+            LoopProbe probe = probes.get(ctx.executor());
+            if (probe != null) {
+                probe.current = ctx.channel();
+            }
+            return probe;
+        }
+
+        private void exit(LoopProbe probe) {
+            if (probe != null) {
+                probe.current = null;
+            }
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            LoopProbe probe = enter(ctx);
+            try {
+                ctx.fireChannelActive();
+            } finally {
+                exit(probe);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            LoopProbe probe = enter(ctx);
+            try {
+                ctx.fireChannelInactive();
+            } finally {
+                exit(probe);
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            LoopProbe probe = enter(ctx);
+            try {
+                ctx.fireChannelRead(msg);
+            } finally {
+                exit(probe);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+            LoopProbe probe = enter(ctx);
+            try {
+                ctx.fireChannelReadComplete();
+            } finally {
+                exit(probe);
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            LoopProbe probe = enter(ctx);
+            try {
+                ctx.fireUserEventTriggered(evt);
+            } finally {
+                exit(probe);
+            }
+        }
+    }
+}
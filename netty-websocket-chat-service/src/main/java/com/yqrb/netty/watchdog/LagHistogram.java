@@ -0,0 +1,79 @@
+package com.yqrb.netty.watchdog;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * EventLoop排队延迟直方图（固定桶，单位微秒）
+ * 只由所属EventLoop线程写入（每次探针执行一次），监控接口读取为近似值。
+ */
+public class LagHistogram {
+
+    // 桶上界（微秒，含），最后一个桶为超过5秒
+    private static final long[] BOUNDS_MICROS = {100, 1_000, 5_000, 10_000, 50_000, 100_000, 200_000, 500_000, 1_000_000, 5_000_000};
+    private static final String[] LABELS = {"≤100μs", "≤1ms", "≤5ms", "≤10ms", "≤50ms", "≤100ms", "≤200ms", "≤500ms", "≤1s", "≤5s", ">5s"};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(LABELS.length);
+    private volatile long count;
+    private volatile long sumMicros;
+    private volatile long maxMicros;
+    private volatile long lastMicros;
+
+    public void record(long lagMicros) {
+        int index = 0;
+        while (index < BOUNDS_MICROS.length && lagMicros > BOUNDS_MICROS[index]) {
+            index++;
+        }
+        buckets.incrementAndGet(index);
+        count++;
+        sumMicros += lagMicros;
+        if (lagMicros > maxMicros) {
+            maxMicros = lagMicros;
+        }
+        lastMicros = lagMicros;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long maxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * 估算分位值（返回所在桶的上界，超过最后一个上界时返回最大值）
+     */
+    public long percentileMicros(double percentile) {
+        long total = count;
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return BOUNDS_MICROS[i];
+            }
+        }
+        return maxMicros;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long total = count;
+        metrics.put("samples", total);
+        metrics.put("lastLagMicros", lastMicros);
+        metrics.put("avgLagMicros", total == 0 ? 0 : sumMicros / total);
+        metrics.put("p99LagMicros", percentileMicros(0.99));
+        metrics.put("maxLagMicros", maxMicros);
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LABELS.length; i++) {
+            histogram.put(LABELS[i], buckets.get(i));
+        }
+        metrics.put("histogram", histogram);
+        return metrics;
+    }
+}
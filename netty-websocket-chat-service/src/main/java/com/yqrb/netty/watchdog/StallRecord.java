@@ -0,0 +1,72 @@
+package com.yqrb.netty.watchdog;
+
+import java.util.List;
+
+/**
+ * 一次EventLoop阻塞记录：探针超过阈值仍未执行时抓取的现场
+ * 抓取时EventLoop仍在阻塞中，durationMillis在探针最终执行后回填（-1表示仍未恢复）。
+ */
+public class StallRecord {
+
+    private final long capturedAt;
+    private final String eventLoop;
+    private final String thread;
+    private final long lagMillisAtCapture;
+    private final String channelId;
+    private final String receiverId;
+    private final String handler;
+    private final List<String> stack;
+    private volatile long durationMillis = -1;
+
+    StallRecord(long capturedAt, String eventLoop, String thread, long lagMillisAtCapture, String channelId,
+                String receiverId, String handler, List<String> stack) {
+        this.capturedAt = capturedAt;
+        this.eventLoop = eventLoop;
+        this.thread = thread;
+        this.lagMillisAtCapture = lagMillisAtCapture;
+        this.channelId = channelId;
+        this.receiverId = receiverId;
+        this.handler = handler;
+        this.stack = stack;
+    }
+
+    void recovered(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public long getCapturedAt() {
+        return capturedAt;
+    }
+
+    public String getEventLoop() {
+        return eventLoop;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public long getLagMillisAtCapture() {
+        return lagMillisAtCapture;
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    public String getReceiverId() {
+        return receiverId;
+    }
+
+    public String getHandler() {
+        return handler;
+    }
+
+    public List<String> getStack() {
+        return stack;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+}
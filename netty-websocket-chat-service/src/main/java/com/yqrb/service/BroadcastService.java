@@ -0,0 +1,20 @@
+package com.yqrb.service;
+
+import com.yqrb.pojo.query.BroadcastParam;
+import com.yqrb.pojo.vo.Result;
+
+import java.util.Map;
+
+/**
+ * 系统公告广播Service接口
+ */
+public interface BroadcastService {
+
+    /**
+     * 按目标选择器广播系统公告（消息只编码一次，按EventLoop分块写出）
+     * @param param 广播目标与内容
+     * @param receiverId 操作者ReceiverId（校验有效性，且必须是客服/管理员）
+     * @return 投递统计（目标通道数、进入出站队列数、已断开跳过数等）
+     */
+    Result<Map<String, Object>> broadcast(BroadcastParam param, String receiverId);
+}
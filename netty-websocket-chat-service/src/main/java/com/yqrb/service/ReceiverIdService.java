@@ -18,9 +18,11 @@ public interface ReceiverIdService {
     // 获取ReceiverId会话信息
     ReceiverIdSessionVO getReceiverIdSession(String receiverId);
 
-    // 标记用户在线状态
+    // 标记用户在线状态（已废弃：在线状态由连接建立/关闭维护，只校验会话，不修改在线状态）
+    @Deprecated
     boolean markOnline(String receiverId);
 
-    // 标记用户离线状态
+    // 标记用户离线状态（已废弃：同markOnline，只校验会话）
+    @Deprecated
     boolean markOffline(String receiverId);
 }
\ No newline at end of file
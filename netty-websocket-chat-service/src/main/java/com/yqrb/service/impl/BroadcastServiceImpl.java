@@ -0,0 +1,165 @@
+package com.yqrb.service.impl;
+
+import com.yqrb.netty.NettyWebSocketServerHandler;
+import com.yqrb.netty.broadcast.BroadcastDispatcher;
+import com.yqrb.netty.codec.EncodedMessage;
+import com.yqrb.netty.context.ConnectionContext;
+import com.yqrb.netty.context.SenderType;
+import com.yqrb.netty.pre.PreSaleNettyWebSocketServerHandler;
+import com.yqrb.pojo.query.BroadcastParam;
+import com.yqrb.pojo.vo.PreSaleChatMessageVO;
+import com.yqrb.pojo.vo.Result;
+import com.yqrb.pojo.vo.WebSocketMsgVO;
+import com.yqrb.service.BroadcastService;
+import com.yqrb.service.ReceiverIdService;
+import com.yqrb.util.UUIDUtil;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+@Service
+public class BroadcastServiceImpl implements BroadcastService {
+    private static final Logger log = LoggerFactory.getLogger(BroadcastServiceImpl.class);
+
+    @Resource
+    private ReceiverIdService receiverIdService;
+
+    @Resource
+    private BroadcastDispatcher broadcastDispatcher;
+
+    // 等待投递统计的最长时间，超时返回已受理（投递在EventLoop上继续进行）
+    @Value("${custom.netty.broadcast.result-timeout-millis:5000}")
+    private long resultTimeoutMillis;
+
+    @Override
+    public Result<Map<String, Object>> broadcast(BroadcastParam param, String receiverId) {
+        // 1. 校验ReceiverId有效性
+        if (!receiverIdService.validateReceiverId(receiverId)) {
+            return Result.unauthorized("ReceiverId无效或已过期，无广播权限");
+        }
+        // 只有客服/管理员可以广播（普通用户的ReceiverId同样能通过有效性校验）
+        if (!receiverId.startsWith(ConnectionContext.AUTH_PREFIX + "LYQY_CS_")
+                && !receiverId.startsWith(ConnectionContext.AUTH_PREFIX + "LYQY_ADMIN_")) {
+            log.warn("【系统公告广播】拒绝非客服/管理员广播，ReceiverId：{}", receiverId);
+            return Result.forbidden("仅客服/管理员可广播系统公告");
+        }
+        // 2. 校验参数
+        if (param == null || !StringUtils.hasText(param.getContent())) {
+            return Result.paramError("公告内容不能为空");
+        }
+        String target = param.getTarget();
+        if (BroadcastParam.TARGET_SESSIONS.equals(target)
+                && (param.getSessionIds() == null || param.getSessionIds().isEmpty())) {
+            return Result.paramError("target=SESSIONS时会话ID列表不能为空");
+        }
+
+        // 3. 按选择器收集本节点目标通道（售后/售前分开，消息格式不同）
+        Set<Channel> afterSaleChannels = new LinkedHashSet<>();
+        Set<Channel> preSaleChannels = new LinkedHashSet<>();
+        if (BroadcastParam.TARGET_ALL_CS.equals(target)) {
+            NettyWebSocketServerHandler.RECEIVER_REGISTRY.forEachChannel((id, channel) -> {
+                if (id.startsWith("LYQY_CS_")) {
+                    afterSaleChannels.add(channel);
+                }
+            });
+        } else if (BroadcastParam.TARGET_ALL_USERS.equals(target)) {
+            NettyWebSocketServerHandler.RECEIVER_REGISTRY.forEachChannel((id, channel) -> {
+                if (id.startsWith("LYQY_USER_")) {
+                    afterSaleChannels.add(channel);
+                }
+            });
+        } else if (BroadcastParam.TARGET_PRE_SALE_VISITORS.equals(target)) {
+            PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.forEachChannel((id, channel) -> {
+                ConnectionContext context = ConnectionContext.of(channel);
+                if (context != null && context.getSenderType() == SenderType.USER) {
+                    preSaleChannels.add(channel);
+                }
+            });
+        } else if (BroadcastParam.TARGET_SESSIONS.equals(target)) {
+            for (String sessionId : param.getSessionIds()) {
+                afterSaleChannels.addAll(NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannelsBySessionId(sessionId));
+                preSaleChannels.addAll(PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.getChannelsBySessionId(sessionId));
+            }
+        } else {
+            return Result.paramError("广播目标不支持：" + target + "，可选ALL_CS/ALL_USERS/PRE_SALE_VISITORS/SESSIONS");
+        }
+
+        // 4. 每种消息只编码一次，按EventLoop分块写出
+        Date sendTime = new Date();
+        CompletableFuture<Map<String, Object>> afterSale = dispatch(afterSaleChannels, () -> {
+            WebSocketMsgVO msg = new WebSocketMsgVO();
+            msg.setReceiverId("BROADCAST");
+            msg.setUserId("SYSTEM");
+            msg.setSenderType(WebSocketMsgVO.SENDER_TYPE_SYSTEM);
+            msg.setMsgType(WebSocketMsgVO.MSG_TYPE_ANNOUNCEMENT);
+            msg.setMsgContent(param.getContent());
+            msg.setSendTime(sendTime);
+            return EncodedMessage.of(msg);
+        });
+        CompletableFuture<Map<String, Object>> preSale = dispatch(preSaleChannels, () -> {
+            PreSaleChatMessageVO msg = new PreSaleChatMessageVO();
+            msg.setMsgId(UUIDUtil.generateMsgId());
+            msg.setSenderId("SYSTEM");
+            msg.setSenderType(PreSaleChatMessageVO.SENDER_TYPE_SYSTEM);
+            msg.setReceiverId("BROADCAST");
+            msg.setContent(param.getContent());
+            msg.setMsgType(PreSaleChatMessageVO.MSG_TYPE_ANNOUNCEMENT);
+            msg.setSendTime(sendTime);
+            return EncodedMessage.of(msg);
+        });
+
+        // 5. 等待投递统计
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("target", target);
+        result.put("afterSale", await(afterSale));
+        result.put("preSale", await(preSale));
+        log.info("【系统公告广播】目标：{}，售后通道：{}，售前通道：{}，结果：{}",
+                target, afterSaleChannels.size(), preSaleChannels.size(), result);
+
+        // 6. 刷新ReceiverId过期时间
+        receiverIdService.refreshReceiverIdExpire(receiverId);
+        return Result.success(result);
+    }
+
+    private CompletableFuture<Map<String, Object>> dispatch(Collection<Channel> channels,
+                                                            Supplier<EncodedMessage> encoder) {
+        if (channels.isEmpty()) {
+            Map<String, Object> empty = new LinkedHashMap<>();
+            empty.put("targeted", 0);
+            return CompletableFuture.completedFuture(empty);
+        }
+        return broadcastDispatcher.dispatch(channels, encoder.get());
+    }
+
+    private Map<String, Object> await(CompletableFuture<Map<String, Object>> future) {
+        try {
+            return future.get(resultTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Map<String, Object> pending = new LinkedHashMap<>();
+            pending.put("completed", false);
+            return pending;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Map<String, Object> failed = new LinkedHashMap<>();
+            failed.put("error", e.getMessage());
+            return failed;
+        }
+    }
+}
@@ -1,12 +1,11 @@
 package com.yqrb.service.impl;
 
-import com.alibaba.fastjson.JSON;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import com.yqrb.mapper.ChatMessageMapperCustom;
 import com.yqrb.netty.NettyWebSocketServerHandler;
 import com.yqrb.netty.NettyWebSocketUtil;
-import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.outbound.ReplayBatchWriter;
 import com.yqrb.pojo.vo.ChatMessageVO;
 import com.yqrb.pojo.vo.Result;
 import com.yqrb.pojo.vo.ResultCode;
@@ -17,7 +16,6 @@ import com.yqrb.service.cache.RedisUnreadMsgCacheService;
 import com.yqrb.util.DateUtil;
 import com.yqrb.util.UUIDUtil;
 import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -26,9 +24,10 @@ import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 @Service
 public class ChatMessageServiceImpl implements ChatMessageService {
@@ -38,6 +37,10 @@ public class ChatMessageServiceImpl implements ChatMessageService {
     @Resource
     private ChatMessageMapperCustom chatMessageMapperCustom;
 
+    // 批量补偿推送：N条未读只flush一次
+    @Resource
+    private ReplayBatchWriter replayBatchWriter;
+
     @Resource
     private ReceiverIdService receiverIdService;
 
@@ -64,18 +67,23 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 return Result.custom(ResultCode.SUCCESS, "重连成功，当前会话无未读消息");
             }
 
-            // 3. 查找通道：也可通过receiverId直接找（更高效，替代原有遍历）
-            Channel targetChannel = NettyWebSocketServerHandler.RECEIVER_CHANNEL_MAP.get(receiverId);
-            // 兜底：如果receiverId找不到，再用sessionId遍历（兼容原有逻辑）
-            if (targetChannel == null) {
-                targetChannel = findChannelBySessionId(sessionId);
+            // 3. 查找通道：该receiverId下绑定了此会话的全部连接（多标签页/多设备）
+            List<Channel> targetChannels = NettyWebSocketServerHandler.RECEIVER_REGISTRY.getChannels(receiverId, sessionId);
+            // 兜底：如果receiverId找不到，再按sessionId索引查找（兼容原有逻辑）
+            if (targetChannels.isEmpty()) {
+                Channel receiverChannel = NettyWebSocketServerHandler.RECEIVER_REGISTRY.getByReceiverId(receiverId);
+                Channel sessionChannel = receiverChannel != null ? receiverChannel : NettyWebSocketServerHandler.RECEIVER_REGISTRY.getBySessionId(sessionId);
+                if (sessionChannel != null) {
+                    targetChannels = Collections.singletonList(sessionChannel);
+                }
             }
-            if (targetChannel == null || !targetChannel.isActive() || !targetChannel.isWritable()) {
+            if (targetChannels.isEmpty()) {
                 // 修正点2：error方法返回Void类型，msg自定义，无数据
                 return Result.error("重连成功，但会话通道未在线，未读消息将在通道上线后自动推送");
             }
 
-            // 4. 批量推送（逻辑不变，格式兼容）
+            // 4. 批量推送（格式兼容；全部写出后只flush一次，chat.batch.v1客户端合并为数组帧）
+            List<WebSocketMsgVO> messages = new ArrayList<>(unreadMsgPOList.size());
             for (ChatMessageVO po : unreadMsgPOList) {
                 WebSocketMsgVO wsMsg = new WebSocketMsgVO();
                 wsMsg.setSessionId(po.getSessionId());
@@ -86,11 +94,16 @@ public class ChatMessageServiceImpl implements ChatMessageService {
                 wsMsg.setSendTime(po.getSendTime());
                 wsMsg.setSenderType(po.getSenderType());
 
-                targetChannel.writeAndFlush(new TextWebSocketFrame(JSON.toJSONString(wsMsg)));
+                messages.add(wsMsg);
+            }
+            for (Channel targetChannel : targetChannels) {
+                // 降级：消息仍为未读，下次重连时补偿推送
+                replayBatchWriter.replay(targetChannel, messages, wsMsg -> log.info(
+                        "【WebSocket重连降级】sessionId：{}，receiverId：{}，消息保留为未读", sessionId, receiverId));
             }
 
-            log.info("【WebSocket重连】sessionId：{}，receiverId：{}，成功推送{}条未读消息",
-                    sessionId, receiverId, unreadMsgPOList.size());
+            log.info("【WebSocket重连】sessionId：{}，receiverId：{}，成功推送{}条未读消息，通道数：{}",
+                    sessionId, receiverId, unreadMsgPOList.size(), targetChannels.size());
             // 修正点3：用custom方法返回Void类型+自定义成功msg
             return Result.custom(ResultCode.SUCCESS, "重连成功，已推送" + unreadMsgPOList.size() + "条未读消息");
 
@@ -101,21 +114,6 @@ public class ChatMessageServiceImpl implements ChatMessageService {
         }
     }
 
-    // 原有工具方法保留（兜底用）
-    private Channel findChannelBySessionId(String sessionId) {
-        Map<String, Channel> channelMap = NettyWebSocketServerHandler.RECEIVER_CHANNEL_MAP;
-        if (CollectionUtils.isEmpty(channelMap)) {
-            return null;
-        }
-        for (Channel channel : channelMap.values()) {
-            String bindSessionId = channel.attr(NettyConstant.SESSION_ID_KEY).get();
-            if (sessionId.equals(bindSessionId)) {
-                return channel;
-            }
-        }
-        return null;
-    }
-
 
     @Override
     @Transactional(rollbackFor = Exception.class)
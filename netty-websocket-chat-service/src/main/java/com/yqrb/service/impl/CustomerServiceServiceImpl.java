@@ -2,6 +2,7 @@ package com.yqrb.service.impl;
 
 import com.yqrb.mapper.CustomerServiceMapperCustom;
 import com.yqrb.netty.NettyWebSocketServer;
+import com.yqrb.netty.presence.PresenceService;
 import com.yqrb.pojo.vo.CustomerServiceVO;
 import com.yqrb.pojo.vo.Result;
 import com.yqrb.service.CustomerServiceService;
@@ -11,6 +12,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.Resource;
@@ -26,6 +29,10 @@ public class CustomerServiceServiceImpl implements CustomerServiceService {
     @Resource
     private ReceiverIdService receiverIdService;
 
+    // 在线客服列表取自内存，登录/登出提交后同步更新
+    @Resource
+    private PresenceService presenceService;
+
     // 新增客服（管理员接口，实现业务逻辑）
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -85,8 +92,8 @@ public class CustomerServiceServiceImpl implements CustomerServiceService {
             return Result.unauthorized("ReceiverId无效或已过期");
         }
 
-        // 2. 查询在线客服
-        List<CustomerServiceVO> customerList = customerServiceMapperCustom.selectOnlineCustomer(CustomerServiceVO.STATUS_ONLINE);
+        // 2. 查询在线客服（内存，不再每次查库）
+        List<CustomerServiceVO> customerList = presenceService.getOnlineCustomers();
 
         // 3. 刷新ReceiverId过期时间
         receiverIdService.refreshReceiverIdExpire(receiverId);
@@ -133,6 +140,7 @@ public class CustomerServiceServiceImpl implements CustomerServiceService {
         if (updateResult <= 0) {
             return Result.error("客服登录失败");
         }
+        afterCommit(() -> presenceService.customerOnline(customerService));
 
         // 4. 刷新ReceiverId过期时间
         receiverIdService.refreshReceiverIdExpire(receiverId);
@@ -162,10 +170,27 @@ public class CustomerServiceServiceImpl implements CustomerServiceService {
         if (updateResult <= 0) {
             return Result.error("客服登出失败");
         }
+        afterCommit(() -> presenceService.customerOffline(serviceStaffId));
 
         // 4. 刷新ReceiverId过期时间
         receiverIdService.refreshReceiverIdExpire(receiverId);
 
         return Result.success(true);
     }
-}
\ No newline at end of file
+
+    /**
+     * 事务提交后再更新内存在线状态，回滚时不产生脏数据
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
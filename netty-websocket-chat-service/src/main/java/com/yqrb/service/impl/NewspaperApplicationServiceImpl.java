@@ -7,8 +7,6 @@ import com.yqrb.pojo.vo.*;
 import com.yqrb.service.*;
 import com.yqrb.util.DateUtil;
 import com.yqrb.util.UUIDUtil;
-import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -248,13 +246,10 @@ public class NewspaperApplicationServiceImpl implements NewspaperApplicationServ
                 newAppMsg.setSessionId(sessionId); // 绑定会话ID
                 newAppMsg.setSendTime(submitTime); // 发送时间 = 提交时间
 
-                // 获取客服通道，推送消息
-                Channel csChannel = nettyWebSocketUtil.getChannelByReceiverId(csReceiverId);
-                if (csChannel != null) {
-                    String jsonMsg = com.alibaba.fastjson.JSON.toJSONString(newAppMsg);
-                    csChannel.writeAndFlush(new TextWebSocketFrame(jsonMsg));
-                    log.info("【新申请推送成功】客服{}已收到申请{}的提醒", csReceiverId, appId); // 替换System.out为日志
-                }
+                // 推送到客服全部通道（多标签页/多设备；客服连在其他节点时经中继转发）
+                // 经出站队列扇出投递（只编码一次，按各通道协商的子协议取帧）：全部通道均无法投递时降级存储为离线消息
+                nettyWebSocketUtil.pushToReceiver(newAppMsg, () -> this.saveOfflineMsgFallback(offlineMsgVO));
+                log.info("【新申请推送成功】客服{}已收到申请{}的提醒", csReceiverId, appId); // 替换System.out为日志
             } catch (Exception e) {
                 // 推送失败：降级存储为离线消息（兜底，避免消息丢失）
                 log.error("【新申请推送异常】客服{}，申请{}，原因：{}，已触发离线消息兜底",
@@ -599,12 +594,8 @@ public class NewspaperApplicationServiceImpl implements NewspaperApplicationServ
 
         try {
             if (nettyWebSocketUtil.isReceiverOnline(csReceiverId)) {
-                Channel csChannel = nettyWebSocketUtil.getChannelByReceiverId(csReceiverId);
-                if (csChannel != null) {
-                    String jsonMsg = com.alibaba.fastjson.JSON.toJSONString(refundApplyMsg);
-                    csChannel.writeAndFlush(new TextWebSocketFrame(jsonMsg));
-                    log.info("【退款申请推送成功】客服{}已收到申请{}的退款提醒", csReceiverId, appId);
-                }
+                nettyWebSocketUtil.pushToReceiver(refundApplyMsg, null);
+                log.info("【退款申请推送成功】客服{}已收到申请{}的退款提醒", csReceiverId, appId);
             } else {
                 // 客服离线，存储离线消息（复用现有离线消息逻辑）
                 log.info("【退款申请推送】客服{}未在线，已存储为离线消息", csReceiverId);
@@ -660,20 +651,16 @@ public class NewspaperApplicationServiceImpl implements NewspaperApplicationServ
         // 复用现有WebSocket推送逻辑
         try {
             if (nettyWebSocketUtil.isReceiverOnline(userReceiverId)) {
-                Channel userChannel = nettyWebSocketUtil.getChannelByReceiverId(userReceiverId);
-                if (userChannel != null) {
-                    WebSocketMsgVO refundResultMsg = new WebSocketMsgVO();
-                    refundResultMsg.setReceiverId(userReceiverId);
-                    refundResultMsg.setUserId("SYSTEM");
-                    refundResultMsg.setSenderType(WebSocketMsgVO.SENDER_TYPE_SYSTEM);
-                    refundResultMsg.setMsgContent(msgContent);
-                    refundResultMsg.setMsgType("SYSTEM_REFUND_AUDIT_RESULT");
-                    refundResultMsg.setSendTime(auditTime);
-
-                    String jsonMsg = com.alibaba.fastjson.JSON.toJSONString(refundResultMsg);
-                    userChannel.writeAndFlush(new TextWebSocketFrame(jsonMsg));
-                    log.info("【退款结果推送成功】用户{}已收到申请{}的退款审核结果", userReceiverId, appId);
-                }
+                WebSocketMsgVO refundResultMsg = new WebSocketMsgVO();
+                refundResultMsg.setReceiverId(userReceiverId);
+                refundResultMsg.setUserId("SYSTEM");
+                refundResultMsg.setSenderType(WebSocketMsgVO.SENDER_TYPE_SYSTEM);
+                refundResultMsg.setMsgContent(msgContent);
+                refundResultMsg.setMsgType("SYSTEM_REFUND_AUDIT_RESULT");
+                refundResultMsg.setSendTime(auditTime);
+
+                nettyWebSocketUtil.pushToReceiver(refundResultMsg, null);
+                log.info("【退款结果推送成功】用户{}已收到申请{}的退款审核结果", userReceiverId, appId);
             }
         } catch (Exception e) {
             log.error("【退款结果推送异常】用户{}，申请{}，原因：{}", userReceiverId, appId, e.getMessage());
@@ -2,11 +2,10 @@ package com.yqrb.service.impl;
 
 import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.lang.UUID;
-import com.alibaba.fastjson.JSON;
 import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import com.yqrb.mapper.PreSaleChatMessageMapper;
-import com.yqrb.netty.constant.NettyConstant;
+import com.yqrb.netty.outbound.ReplayBatchWriter;
 import com.yqrb.netty.pre.PreSaleNettyWebSocketServerHandler;
 import com.yqrb.pojo.po.PreSaleChatMessagePO;
 import com.yqrb.pojo.vo.PreSaleChatMessageVO;
@@ -19,7 +18,6 @@ import com.yqrb.service.cache.PreSaleRedisUnreadMsgCacheService;
 import com.yqrb.service.cache.RedisUnreadMsgCacheService;
 import com.yqrb.util.UUIDUtil;
 import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
@@ -30,9 +28,9 @@ import org.springframework.util.StringUtils;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 售前咨询聊天记录Service实现类（完整适配售后未读消息逻辑）
@@ -53,6 +51,10 @@ public class PreSaleChatMessageServiceImpl implements PreSaleChatMessageService
     @Resource
     private ReceiverIdService receiverIdService;
 
+    // 批量补偿推送（与售后共用）
+    @Resource
+    private ReplayBatchWriter replayBatchWriter;
+
     // 新增：注入Redis未读消息缓存服务
     @Resource
     private PreSaleRedisUnreadMsgCacheService preSaleRedisUnreadMsgCacheService;
@@ -81,16 +83,21 @@ public class PreSaleChatMessageServiceImpl implements PreSaleChatMessageService
                 return Result.custom(ResultCode.SUCCESS, "售前重连成功，当前会话无未读消息");
             }
 
-            // 3. 查找售前Netty通道（优先按真实ReceiverId，兜底按sessionId）
-            Channel targetChannel = PreSaleNettyWebSocketServerHandler.PRE_SALE_RECEIVER_CHANNEL_MAP.get(realReceiverId);
-            if (targetChannel == null) {
-                targetChannel = findPreSaleChannelBySessionId(sessionId);
+            // 3. 查找售前Netty通道（优先按真实ReceiverId下绑定该会话的全部连接，兜底按sessionId）
+            List<Channel> targetChannels = PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.getChannels(realReceiverId, sessionId);
+            if (targetChannels.isEmpty()) {
+                Channel receiverChannel = PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.getByReceiverId(realReceiverId);
+                Channel sessionChannel = receiverChannel != null ? receiverChannel : PreSaleNettyWebSocketServerHandler.PRE_SALE_REGISTRY.getBySessionId(sessionId);
+                if (sessionChannel != null) {
+                    targetChannels = Collections.singletonList(sessionChannel);
+                }
             }
-            if (targetChannel == null || !targetChannel.isActive() || !targetChannel.isWritable()) {
+            if (targetChannels.isEmpty()) {
                 return Result.error("售前重连成功，但会话通道未在线，未读消息将在通道上线后自动推送");
             }
 
-            // 4. 批量推送（适配售前WebSocketMsgVO）
+            // 4. 批量推送（适配售前WebSocketMsgVO；全部写出后只flush一次）
+            List<PreSaleWebSocketMsgVO> messages = new ArrayList<>(unreadMsgPOList.size());
             for (PreSaleChatMessagePO po : unreadMsgPOList) {
                 PreSaleWebSocketMsgVO wsMsg = new PreSaleWebSocketMsgVO();
                 wsMsg.setSessionId(po.getPreSaleSessionId());
@@ -101,11 +108,16 @@ public class PreSaleChatMessageServiceImpl implements PreSaleChatMessageService
                 wsMsg.setSendTime(po.getSendTime());
                 wsMsg.setSenderType(po.getSenderType());
 
-                targetChannel.writeAndFlush(new TextWebSocketFrame(JSON.toJSONString(wsMsg)));
+                messages.add(wsMsg);
+            }
+            for (Channel targetChannel : targetChannels) {
+                // 降级：消息仍为未读，下次重连时补偿推送
+                replayBatchWriter.replay(targetChannel, messages, wsMsg -> logger.info(
+                        "【售前WebSocket重连降级】sessionId：{}，receiverId：{}，消息保留为未读", sessionId, receiverId));
             }
 
-            logger.info("【售前WebSocket重连】sessionId：{}，receiverId：{}，成功推送{}条未读消息",
-                    sessionId, receiverId, unreadMsgPOList.size());
+            logger.info("【售前WebSocket重连】sessionId：{}，receiverId：{}，成功推送{}条未读消息，通道数：{}",
+                    sessionId, receiverId, unreadMsgPOList.size(), targetChannels.size());
             // 推送成功，自定义提示
             return Result.custom(ResultCode.SUCCESS, "售前重连成功，已推送" + unreadMsgPOList.size() + "条未读消息");
 
@@ -116,23 +128,6 @@ public class PreSaleChatMessageServiceImpl implements PreSaleChatMessageService
         }
     }
 
-    /**
-     * 私有工具：按售前sessionId查找Netty通道
-     */
-    private Channel findPreSaleChannelBySessionId(String sessionId) {
-        Map<String, Channel> channelMap = PreSaleNettyWebSocketServerHandler.PRE_SALE_RECEIVER_CHANNEL_MAP;
-        if (CollectionUtils.isEmpty(channelMap)) {
-            return null;
-        }
-        for (Channel channel : channelMap.values()) {
-            String bindSessionId = channel.attr(NettyConstant.PRE_SALE_SESSION_ID_KEY).get();
-            if (sessionId.equals(bindSessionId)) {
-                return channel;
-            }
-        }
-        return null;
-    }
-
     /**
      * 生成售前会话ID（对齐UUIDUtil风格，增加异常兜底）
      */
@@ -1,6 +1,8 @@
 package com.yqrb.service.impl;
 
 import cn.hutool.core.date.DateUtil;
+import com.yqrb.netty.presence.PresenceService;
+import com.yqrb.netty.relay.RelayScope;
 import com.yqrb.pojo.vo.ReceiverIdSessionVO;
 import com.yqrb.service.ReceiverIdService;
 import com.yqrb.util.RedisUtil;
@@ -17,6 +19,10 @@ public class ReceiverIdServiceImpl implements ReceiverIdService {
     @Resource
     private RedisUtil redisUtil;
 
+    // 在线状态（内存为准，由通道生命周期维护，批量落Redis）
+    @Resource
+    private PresenceService presenceService;
+
     @Value("${custom.receiver.session.expire-seconds}")
     private long expireSeconds;
 
@@ -101,34 +107,25 @@ public class ReceiverIdServiceImpl implements ReceiverIdService {
             return null;
         }
         String redisKey = receiverPrefix + receiverId;
-        return (ReceiverIdSessionVO) redisUtil.get(redisKey);
+        ReceiverIdSessionVO session = (ReceiverIdSessionVO) redisUtil.get(redisKey);
+        if (session != null) {
+            // 在线状态以内存为准（售前/售后任一服务有连接即在线）
+            session.setIsOnline(presenceService.isOnline(RelayScope.AFTER_SALE, receiverId)
+                    || presenceService.isOnline(RelayScope.PRE_SALE, receiverId));
+        }
+        return session;
     }
 
-    // ========== 核心修改3：markOnline 移除固定ID直接放行，统一Redis校验+状态更新 ==========
+    // ========== 核心修改3：在线状态只由通道生命周期维护（连接计数），markOnline/markOffline仅做会话校验，不再修改在线状态 ==========
     @Override
+    @Deprecated
     public boolean markOnline(String receiverId) {
-        // 1. 先通过Redis校验获取会话（固定ID也需要校验）
-        ReceiverIdSessionVO session = getReceiverIdSession(receiverId);
-        if (session == null) {
-            return false;
-        }
-        // 2. 更新在线状态，重新存入Redis（所有合法ID统一处理）
-        session.setIsOnline(true);
-        String redisKey = receiverPrefix + receiverId;
-        return redisUtil.set(redisKey, session, expireSeconds);
+        return validateReceiverId(receiverId);
     }
 
-    // ========== 核心修改4：markOffline 移除固定ID直接放行，统一Redis校验+状态更新 ==========
     @Override
+    @Deprecated
     public boolean markOffline(String receiverId) {
-        // 1. 先通过Redis校验获取会话（固定ID也需要校验）
-        ReceiverIdSessionVO session = getReceiverIdSession(receiverId);
-        if (session == null) {
-            return false;
-        }
-        // 2. 更新离线状态，重新存入Redis（所有合法ID统一处理）
-        session.setIsOnline(false);
-        String redisKey = receiverPrefix + receiverId;
-        return redisUtil.set(redisKey, session, expireSeconds);
+        return validateReceiverId(receiverId);
     }
 }
\ No newline at end of file